@@ -2,8 +2,10 @@ package com.binder.demo;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication(scanBasePackages = "com.binder.demo")
+@EnableScheduling
 public class BinderApplication {
 
 	public static void main(String[] args) {
@@ -25,6 +25,18 @@ public class Attachment {
     @Column(name = "user_owner", nullable = false)
     private UUID userOwner;
 
+    @Column(name = "blob_sha256", length = 64)
+    private String blobSha256;
+
+    @Column(name = "content_type")
+    private String contentType;
+
+    @Column(name = "size_bytes")
+    private Long sizeBytes;
+
+    @Column(name = "class_id")
+    private UUID classId;
+
     @PrePersist
     void prePersist() {
         if (attachmentId == null) attachmentId = UUID.randomUUID();
@@ -45,4 +57,16 @@ public class Attachment {
 
     public UUID getUserOwner() { return userOwner; }
     public void setUserOwner(UUID userOwner) { this.userOwner = userOwner; }
+
+    public String getBlobSha256() { return blobSha256; }
+    public void setBlobSha256(String blobSha256) { this.blobSha256 = blobSha256; }
+
+    public String getContentType() { return contentType; }
+    public void setContentType(String contentType) { this.contentType = contentType; }
+
+    public Long getSizeBytes() { return sizeBytes; }
+    public void setSizeBytes(Long sizeBytes) { this.sizeBytes = sizeBytes; }
+
+    public UUID getClassId() { return classId; }
+    public void setClassId(UUID classId) { this.classId = classId; }
 }
@@ -0,0 +1,26 @@
+package com.binder.demo.attachments;
+
+/**
+ * Downscaled JPEG copies generated for image attachments.
+ * Each rendition fits inside a square of {@link #maxEdge()} pixels and is stored next to
+ * the original blob.
+ */
+public enum Rendition {
+    THUMB(320),
+    PREVIEW(1280);
+
+    private final int maxEdge;
+
+    Rendition(int maxEdge) {
+        this.maxEdge = maxEdge;
+    }
+
+    /**
+     * Returns the longest edge of the rendition in pixels.
+     *
+     * @return maximum width or height
+     */
+    public int maxEdge() {
+        return maxEdge;
+    }
+}
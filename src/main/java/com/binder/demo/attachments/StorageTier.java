@@ -0,0 +1,11 @@
+package com.binder.demo.attachments;
+
+/**
+ * Where the content of a blob is kept.
+ * New uploads start {@link #HOT}; blobs nobody has read for a long time are moved to
+ * {@link #COLD}, gzip-compressed when that makes them noticeably smaller.
+ */
+public enum StorageTier {
+    HOT,
+    COLD
+}
@@ -0,0 +1,9 @@
+package com.binder.demo.attachments;
+
+/**
+ * What a storage_usage row totals: the files one user uploaded, or the files uploaded to one classroom.
+ */
+public enum UsageScope {
+    USER,
+    CLASSROOM
+}
@@ -1,49 +1,97 @@
 package com.binder.demo.controllers;
 
 import com.binder.demo.attachments.Attachment;
+import com.binder.demo.attachments.Rendition;
 import com.binder.demo.services.AttachmentService;
+import com.binder.demo.services.BlobStore;
+import com.binder.demo.services.BlobTieringService;
+import com.binder.demo.services.RenditionService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import java.io.IOException;
-import java.net.MalformedURLException;
 import java.net.URI;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Locale;
 import java.util.Optional;
 import java.util.UUID;
 
 /**
  * Serves attachment downloads and inline previews.
+ * Responses carry an ETag and Last-Modified so browsers can revalidate with a 304, and
+ * support single byte ranges so PDF viewers and media players can fetch only what they show.
+ * Image attachments also have downscaled thumbnail and preview renditions for page views.
  */
 @Controller
 @RequestMapping("/attachments")
 public class AttachmentController {
 
     private final AttachmentService attachmentService;
+    private final BlobStore blobStore;
     private final Path storageDir;
 
+    /**
+     * Renders thumbnails and previews of image attachments.
+     */
+    private final RenditionService renditionService;
+
+    /**
+     * Records reads so blobs nobody opens move to the cold tier.
+     */
+    private final BlobTieringService tieringService;
+
+    /**
+     * Cache-Control value sent with file responses.
+     */
+    private final String cacheControl;
+
+    /**
+     * Cache-Control value sent with renditions, which never change for a given attachment.
+     */
+    private final String renditionCacheControl;
+
     /**
      * Creates a controller with required services and storage configuration.
      *
      * @param attachmentService attachment service
-     * @param storageDir base directory for stored attachments
+     * @param blobStore store holding uploaded content
+     * @param renditionService renderer for image thumbnails and previews
+     * @param tieringService tracker of blob reads for storage tiering
+     * @param storageDir base directory for files uploaded before the blob store
+     * @param cacheMaxAge how long browsers may reuse a download before revalidating it
+     * @param renditionCacheMaxAge how long browsers may reuse a thumbnail or preview
      */
     public AttachmentController(AttachmentService attachmentService,
-                                @Value("${attachments.storage-dir:uploads}") String storageDir) {
+                                BlobStore blobStore,
+                                RenditionService renditionService,
+                                BlobTieringService tieringService,
+                                @Value("${attachments.storage-dir:uploads}") String storageDir,
+                                @Value("${attachments.download.cache-max-age:1h}") Duration cacheMaxAge,
+                                @Value("${attachments.renditions.cache-max-age:365d}") Duration renditionCacheMaxAge) {
         this.attachmentService = attachmentService;
+        this.blobStore = blobStore;
+        this.renditionService = renditionService;
+        this.tieringService = tieringService;
         this.storageDir = Path.of(storageDir).toAbsolutePath().normalize();
+        // Private: downloads require a session, so shared caches must not keep them.
+        this.cacheControl = CacheControl.maxAge(cacheMaxAge).cachePrivate().getHeaderValue();
+        this.renditionCacheControl = CacheControl.maxAge(renditionCacheMaxAge).cachePrivate().immutable().getHeaderValue();
     }
 
     /**
@@ -51,12 +99,15 @@ public class AttachmentController {
      *
      * @param attachmentId attachment id
      * @param session current session
-     * @return attachment response or error status
+     * @param request current request
+     * @param response current response
      */
     @GetMapping("/{attachmentId}")
-    public ResponseEntity<Resource> downloadAttachment(@PathVariable UUID attachmentId,
-                                                       HttpSession session) throws MalformedURLException {
-        return handleAttachmentRequest(attachmentId, session, false);
+    public void downloadAttachment(@PathVariable UUID attachmentId,
+                                   HttpSession session,
+                                   HttpServletRequest request,
+                                   HttpServletResponse response) throws IOException {
+        handleAttachmentRequest(attachmentId, session, request, response, false);
     }
 
     /**
@@ -64,90 +115,215 @@ public class AttachmentController {
      *
      * @param attachmentId attachment id
      * @param session current session
-     * @return attachment response or error status
+     * @param request current request
+     * @param response current response
      */
     @GetMapping("/{attachmentId}/inline")
-    public ResponseEntity<Resource> inlineAttachment(@PathVariable UUID attachmentId,
-                                                     HttpSession session) throws MalformedURLException {
-        return handleAttachmentRequest(attachmentId, session, true);
+    public void inlineAttachment(@PathVariable UUID attachmentId,
+                                 HttpSession session,
+                                 HttpServletRequest request,
+                                 HttpServletResponse response) throws IOException {
+        handleAttachmentRequest(attachmentId, session, request, response, true);
     }
 
     /**
-     * Loads an attachment and returns either a redirect or file response.
+     * Serves a small JPEG thumbnail of an image attachment.
      *
      * @param attachmentId attachment id
      * @param session current session
-     * @param inline true to use inline disposition
-     * @return attachment response or error status
+     * @param request current request
+     * @param response current response
      */
-    private ResponseEntity<Resource> handleAttachmentRequest(UUID attachmentId,
-                                                             HttpSession session,
-                                                             boolean inline) throws MalformedURLException {
-        if (!isAuthenticated(session)) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
-        }
+    @GetMapping("/{attachmentId}/thumb")
+    public void thumbnail(@PathVariable UUID attachmentId,
+                          HttpSession session,
+                          HttpServletRequest request,
+                          HttpServletResponse response) throws IOException {
+        handleRenditionRequest(attachmentId, session, request, response, Rendition.THUMB);
+    }
 
-        Optional<Attachment> attachmentOpt = attachmentService.get(attachmentId);
-        if (attachmentOpt.isEmpty()) {
-            return ResponseEntity.notFound().build();
+    /**
+     * Serves a screen-sized JPEG preview of an image attachment.
+     *
+     * @param attachmentId attachment id
+     * @param session current session
+     * @param request current request
+     * @param response current response
+     */
+    @GetMapping("/{attachmentId}/preview")
+    public void preview(@PathVariable UUID attachmentId,
+                        HttpSession session,
+                        HttpServletRequest request,
+                        HttpServletResponse response) throws IOException {
+        handleRenditionRequest(attachmentId, session, request, response, Rendition.PREVIEW);
+    }
+
+    /**
+     * Loads an attachment and answers with a redirect, a 304, or the requested bytes.
+     *
+     * @param attachmentId attachment id
+     * @param session current session
+     * @param request current request
+     * @param response current response
+     * @param inline true to use inline disposition
+     */
+    private void handleAttachmentRequest(UUID attachmentId,
+                                         HttpSession session,
+                                         HttpServletRequest request,
+                                         HttpServletResponse response,
+                                         boolean inline) throws IOException {
+        Attachment attachment = findAttachment(attachmentId, session, response);
+        if (attachment == null) {
+            return;
         }
 
-        Attachment attachment = attachmentOpt.get();
         String url = attachment.getUrl().trim();
         URI uri;
         try {
             uri = URI.create(url);
         } catch (IllegalArgumentException ex) {
-            return ResponseEntity.badRequest().build();
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return;
         }
 
         if (uri.isAbsolute()) {
-            return redirectTo(uri);
+            response.setStatus(HttpServletResponse.SC_FOUND);
+            response.setHeader(HttpHeaders.LOCATION, uri.toString());
+            return;
         }
 
-        String path = uri.getPath();
-        if (path == null || path.isBlank()) {
-            return ResponseEntity.badRequest().build();
+        Resource resource;
+        String etag;
+        if (attachment.getBlobSha256() != null) {
+            try {
+                resource = blobStore.resource(attachment.getBlobSha256());
+            } catch (IOException | IllegalArgumentException ex) {
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            // Blob content never changes for a given hash, so the hash is a strong validator.
+            etag = "\"" + attachment.getBlobSha256() + "\"";
+        } else {
+            Path path = resolveStoragePath(uri.getPath());
+            if (path == null) {
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                return;
+            }
+            resource = new FileSystemResource(path);
+            etag = null;
+        }
+        if (!resource.exists()) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
         }
-        return serveLocalAttachment(path, inline);
+        tieringService.recordAccess(attachment.getBlobSha256());
+
+        long length = attachment.getSizeBytes() != null ? attachment.getSizeBytes() : resource.contentLength();
+        long lastModified = attachment.getBlobSha256() != null && attachment.getUploadedAt() != null
+                ? attachment.getUploadedAt().toEpochMilli()
+                : resource.lastModified();
+        if (etag == null) {
+            etag = "W/\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+        }
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return;
+        }
+
+        String filename = AttachmentService.filenameFromUrl(url);
+        ContentDisposition disposition = inline
+                ? ContentDisposition.inline().filename(filename, StandardCharsets.UTF_8).build()
+                : ContentDisposition.attachment().filename(filename, StandardCharsets.UTF_8).build();
+        response.setContentType(mediaTypeFor(attachment, filename));
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, disposition.toString());
+        response.setHeader("X-Content-Type-Options", "nosniff");
+
+        RangeDownloadWriter.write(request, response, resource, length, etag, lastModified);
     }
 
     /**
-     * Determines if the current session has a logged-in user.
+     * Answers with a rendition of an image attachment, rendering it on first use.
+     * Renditions are derived from immutable blob content, so browsers may keep them for a
+     * long time. Files that cannot be rendered, such as links, formats ImageIO does not read,
+     * or images not ready in time, redirect to the original.
      *
+     * @param attachmentId attachment id
      * @param session current session
-     * @return true when authenticated
+     * @param request current request
+     * @param response current response
+     * @param rendition rendition size
      */
-    private boolean isAuthenticated(HttpSession session) {
-        return session != null && session.getAttribute("userId") != null;
+    private void handleRenditionRequest(UUID attachmentId,
+                                        HttpSession session,
+                                        HttpServletRequest request,
+                                        HttpServletResponse response,
+                                        Rendition rendition) throws IOException {
+        Attachment attachment = findAttachment(attachmentId, session, response);
+        if (attachment == null) {
+            return;
+        }
+        String inlineUrl = request.getContextPath() + "/attachments/" + attachmentId + "/inline";
+        if (attachment.getBlobSha256() == null) {
+            response.sendRedirect(inlineUrl);
+            return;
+        }
+
+        Optional<Resource> resource;
+        try {
+            resource = renditionService.rendition(attachment.getBlobSha256(), rendition);
+        } catch (IllegalArgumentException ex) {
+            resource = Optional.empty();
+        }
+        if (resource.isEmpty()) {
+            // Temporary answer: a later request may find the rendition ready.
+            response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+            response.sendRedirect(inlineUrl);
+            return;
+        }
+
+        String etag = "\"" + attachment.getBlobSha256() + "-" + rendition.name().toLowerCase(Locale.ROOT) + "\"";
+        long lastModified = attachment.getUploadedAt() != null ? attachment.getUploadedAt().toEpochMilli() : -1;
+        response.setHeader(HttpHeaders.CACHE_CONTROL, renditionCacheControl);
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return;
+        }
+
+        response.setContentType(MediaType.IMAGE_JPEG_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.inline().build().toString());
+        response.setHeader("X-Content-Type-Options", "nosniff");
+        RangeDownloadWriter.write(request, response, resource.get(), resource.get().contentLength(), etag, lastModified);
     }
 
     /**
-     * Builds a redirect response to an external URL.
+     * Loads an attachment for the current user, setting the error status when there is none.
      *
-     * @param uri external URI
-     * @return redirect response
+     * @param attachmentId attachment id
+     * @param session current session
+     * @param response current response
+     * @return attachment, or null when the response has been answered with an error status
      */
-    private ResponseEntity<Resource> redirectTo(URI uri) {
-        return ResponseEntity.status(HttpStatus.FOUND).location(uri).build();
+    private Attachment findAttachment(UUID attachmentId, HttpSession session, HttpServletResponse response) {
+        if (!isAuthenticated(session)) {
+            response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            return null;
+        }
+        Optional<Attachment> attachment = attachmentService.get(attachmentId);
+        if (attachment.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return null;
+        }
+        return attachment.get();
     }
 
     /**
-     * Serves a local attachment file from the configured storage directory.
+     * Determines if the current session has a logged-in user.
      *
-     * @param url stored relative URL
-     * @param inline true to use inline disposition
-     * @return file response or error status
+     * @param session current session
+     * @return true when authenticated
      */
-    private ResponseEntity<Resource> serveLocalAttachment(String url, boolean inline) throws MalformedURLException {
-        Path resolved = resolveStoragePath(url);
-        if (resolved == null) {
-            return ResponseEntity.badRequest().build();
-        }
-        if (!Files.exists(resolved) || !Files.isRegularFile(resolved)) {
-            return ResponseEntity.notFound().build();
-        }
-        return buildFileResponse(resolved, inline);
+    private boolean isAuthenticated(HttpSession session) {
+        return session != null && session.getAttribute("userId") != null;
     }
 
     /**
@@ -157,6 +333,9 @@ public class AttachmentController {
      * @return normalized path within storage or null when invalid
      */
     private Path resolveStoragePath(String url) {
+        if (url == null || url.isBlank()) {
+            return null;
+        }
         Path candidate = storageDir.resolve(url).normalize();
         if (!candidate.startsWith(storageDir)) {
             return null;
@@ -165,44 +344,19 @@ public class AttachmentController {
     }
 
     /**
-     * Builds a response for a local file attachment.
+     * Returns the content type recorded at upload, or one derived from the display name
+     * for attachments saved before content types were recorded.
      *
-     * @param path local file path
-     * @param inline true to use inline disposition
-     * @return response entity with resource body
+     * @param attachment attachment being served
+     * @param filename name shown to the user
+     * @return content type header value
      */
-    private ResponseEntity<Resource> buildFileResponse(Path path, boolean inline) throws MalformedURLException {
-        Resource resource = new UrlResource(path.toUri());
-        if (!resource.exists()) {
-            return ResponseEntity.notFound().build();
-        }
-
-        MediaType mediaType = detectMediaType(path);
-        ContentDisposition disposition = inline
-                ? ContentDisposition.inline().filename(path.getFileName().toString()).build()
-                : ContentDisposition.attachment().filename(path.getFileName().toString()).build();
-
-        return ResponseEntity.ok()
-                .contentType(mediaType)
-                .header(HttpHeaders.CONTENT_DISPOSITION, disposition.toString())
-                .body(resource);
-    }
-
-    /**
-     * Determines the content type for a local file.
-     *
-     * @param path local file path
-     * @return resolved media type or octet-stream
-     */
-    private MediaType detectMediaType(Path path) {
-        try {
-            String contentType = Files.probeContentType(path);
-            if (contentType != null) {
-                return MediaType.parseMediaType(contentType);
-            }
-        } catch (IOException ignored) {
-            // Fall back to octet-stream when probing fails.
+    private String mediaTypeFor(Attachment attachment, String filename) {
+        if (attachment.getContentType() != null) {
+            return attachment.getContentType();
         }
-        return MediaType.APPLICATION_OCTET_STREAM;
+        return MediaTypeFactory.getMediaType(filename)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM)
+                .toString();
     }
 }
@@ -1,13 +1,18 @@
 package com.binder.demo.controllers;
 
-import com.binder.demo.classroom.Classroom;
 import com.binder.demo.services.ClassroomEnrollmentService;
+import com.binder.demo.services.PasswordHashingService;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.security.crypto.bcrypt.BCrypt;
 import org.springframework.stereotype.Controller;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -16,6 +21,9 @@ import org.springframework.web.bind.annotation.RequestParam;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.regex.Pattern;
 
 /**
@@ -24,6 +32,8 @@ import java.util.regex.Pattern;
 @Controller
 public class AuthController {
 
+    private static final Logger log = LoggerFactory.getLogger(AuthController.class);
+
     /**
      * Executes SQL queries and updates.
      */
@@ -34,6 +44,22 @@ public class AuthController {
      */
     private final ClassroomEnrollmentService enrollmentService;
 
+    /**
+     * Hashes and verifies passwords off the request threads.
+     */
+    private final PasswordHashingService passwordHashingService;
+
+    /**
+     * Runs the registration inserts once the password hash is ready.
+     */
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * MVC async executor that continues a request once its hash or check is done, so database
+     * and session work never holds one of the password hashing threads.
+     */
+    private final Executor requestExecutor;
+
     /**
      * Basic email format checker.
      */
@@ -44,11 +70,21 @@ public class AuthController {
      * Creates a controller with the required services.
      *
      * @param jdbcTemplate SQL helper
-     * @param classroomService classroom service
+     * @param enrollmentService enrollment service
+     * @param passwordHashingService password hashing service
+     * @param transactionTemplate transaction helper for registration
+     * @param requestExecutor executor that completes async requests
      */
-    public AuthController(JdbcTemplate jdbcTemplate, ClassroomEnrollmentService enrollmentService) {
+    public AuthController(JdbcTemplate jdbcTemplate,
+                          ClassroomEnrollmentService enrollmentService,
+                          PasswordHashingService passwordHashingService,
+                          TransactionTemplate transactionTemplate,
+                          @Qualifier("applicationTaskExecutor") Executor requestExecutor) {
         this.jdbcTemplate = jdbcTemplate;
         this.enrollmentService = enrollmentService;
+        this.passwordHashingService = passwordHashingService;
+        this.transactionTemplate = transactionTemplate;
+        this.requestExecutor = requestExecutor;
     }
 
     /**
@@ -77,25 +113,29 @@ public class AuthController {
 
     /**
      * Processes a login request for a local account.
+     * The password check runs on the password hashing executor; the session is then set up on the
+     * MVC async executor, which completes the request.
      *
      * @param email user email
      * @param password user password
      * @param session current session
+     * @param response HTTP response, used to signal overload
      * @param model view model for errors
      * @return redirect to dashboard or login view with error
      */
     @PostMapping("/login")
-    public String processLogin(@RequestParam String email,
-                               @RequestParam String password,
-                               HttpSession session,
-                               Model model) {
+    public CompletableFuture<String> processLogin(@RequestParam String email,
+                                                  @RequestParam String password,
+                                                  HttpSession session,
+                                                  HttpServletResponse response,
+                                                  Model model) {
 
         email = (email == null) ? "" : email.trim();
         password = (password == null) ? "" : password;
 
         if (email.isBlank() || password.isBlank()) {
             model.addAttribute("error", "Please enter your email and password.");
-            return "login";
+            return CompletableFuture.completedFuture("login");
         }
 
         String sql = "SELECT a.password_hash, u.full_name, u.user_id, u.email, u.role " +
@@ -104,28 +144,68 @@ public class AuthController {
                 "WHERE u.email = ? AND a.provider = 'LOCAL'";
 
         List<Map<String, Object>> results = jdbcTemplate.queryForList(sql, email);
+        String savedHash = results.isEmpty() ? null : (String) results.get(0).get("password_hash");
 
-        if (!results.isEmpty()) {
-            String savedHash = (String) results.get(0).get("password_hash");
+        if (savedHash == null) {
+            model.addAttribute("error", "Invalid email or password");
+            return CompletableFuture.completedFuture("login");
+        }
 
-            if (savedHash != null && BCrypt.checkpw(password, savedHash)) {
+        Map<String, Object> user = results.get(0);
+        // Normalise userId into a real UUID before storing in session
+        Object rawUserId = user.get("user_id");
+        UUID userId = (rawUserId instanceof UUID)
+                ? (UUID) rawUserId
+                : UUID.fromString(rawUserId.toString());
+        String rawPassword = password;
+        CompletableFuture<Boolean> verification;
+        try {
+            verification = passwordHashingService.verify(userId, password, savedHash);
+        } catch (RejectedExecutionException ex) {
+            return overloaded(response, model, "login");
+        }
 
-                // Normalise userId into a real UUID before storing in session
-                Object rawUserId = results.get(0).get("user_id");
-                UUID userId = (rawUserId instanceof UUID)
-                        ? (UUID) rawUserId
-                        : UUID.fromString(rawUserId.toString());
+        return verification.thenApplyAsync(matches -> {
+            if (!matches) {
+                model.addAttribute("error", "Invalid email or password");
+                return "login";
+            }
 
-                session.setAttribute("userId", userId);
-                session.setAttribute("userName", results.get(0).get("full_name"));
-                session.setAttribute("userEmail", results.get(0).get("email"));
-                session.setAttribute("userRole", results.get(0).get("role").toString().trim());
-                return "redirect:/dashboard";
+            session.setAttribute("userId", userId);
+            session.setAttribute("userName", user.get("full_name"));
+            session.setAttribute("userEmail", user.get("email"));
+            session.setAttribute("userRole", user.get("role").toString().trim());
+
+            if (passwordHashingService.needsRehash(savedHash)) {
+                upgradePasswordHash(userId, rawPassword, savedHash);
             }
-        }
+            return "redirect:/dashboard";
+        }, requestExecutor);
+    }
 
-        model.addAttribute("error", "Invalid email or password");
-        return "login";
+    /**
+     * Replaces a stored hash made with an outdated cost, without delaying the login.
+     * The update only applies while the stored hash is unchanged, so a concurrent
+     * password change is never overwritten.
+     *
+     * @param userId user id
+     * @param password verified raw password
+     * @param savedHash hash the password was verified against
+     */
+    private void upgradePasswordHash(UUID userId, String password, String savedHash) {
+        try {
+            passwordHashingService.hash(password)
+                    .thenAcceptAsync(newHash -> jdbcTemplate.update(
+                            "UPDATE authentications SET password_hash = ? " +
+                                    "WHERE user_id = ? AND provider = 'LOCAL' AND password_hash = ?",
+                            newHash, userId, savedHash), requestExecutor)
+                    .exceptionally(ex -> {
+                        log.warn("Could not upgrade password hash for user {}", userId, ex);
+                        return null;
+                    });
+        } catch (RejectedExecutionException ex) {
+            // The executor is saturated; the hash is upgraded on a later login.
+        }
     }
 
     /**
@@ -147,7 +227,7 @@ public class AuthController {
         model.addAttribute("role", session.getAttribute("userRole"));
 
         // Fetch classrooms for the dashboard.
-        List<Classroom> classrooms = enrollmentService.getClassroomsForUser(userId);
+        List<ClassroomEnrollmentService.DashboardClassroom> classrooms = enrollmentService.getDashboardClassrooms(userId);
         model.addAttribute("classrooms", classrooms);
 
         return "dashboard";
@@ -188,16 +268,17 @@ public class AuthController {
      * @param password user password
      * @param fullName user full name
      * @param role user role string
+     * @param response HTTP response, used to signal overload
      * @param model view model for errors
      * @return redirect to login or register view with error
      */
-    @Transactional
     @PostMapping("/register")
-    public String processRegistration(@RequestParam String email,
-                                      @RequestParam String password,
-                                      @RequestParam String fullName,
-                                      @RequestParam String role,
-                                      Model model) {
+    public CompletableFuture<String> processRegistration(@RequestParam String email,
+                                                         @RequestParam String password,
+                                                         @RequestParam String fullName,
+                                                         @RequestParam String role,
+                                                         HttpServletResponse response,
+                                                         Model model) {
 
         email = (email == null) ? "" : email.trim();
         fullName = (fullName == null) ? "" : fullName.trim();
@@ -206,13 +287,13 @@ public class AuthController {
         // Required fields
         if (email.isBlank() || fullName.isBlank() || password.isBlank() || role.isBlank()) {
             model.addAttribute("error", "Please fill in all fields.");
-            return "register";
+            return CompletableFuture.completedFuture("register");
         }
 
         // Email format
         if (!EMAIL_PATTERN.matcher(email).matches()) {
             model.addAttribute("error", "Please enter a valid email address.");
-            return "register";
+            return CompletableFuture.completedFuture("register");
         }
 
         // Password rules
@@ -221,7 +302,7 @@ public class AuthController {
                 !password.matches(".*\\d.*")) {
             model.addAttribute("error",
                     "Password must be at least 8 characters and include letters and numbers.");
-            return "register";
+            return CompletableFuture.completedFuture("register");
         }
 
         // Check if email already exists
@@ -233,28 +314,54 @@ public class AuthController {
 
         if (count != null && count > 0) {
             model.addAttribute("error", "An account with that email already exists.");
-            return "register";
+            return CompletableFuture.completedFuture("register");
         }
 
-        UUID userId = UUID.randomUUID();
-        String hashedPassword = BCrypt.hashpw(password, BCrypt.gensalt());
-
+        CompletableFuture<String> hashing;
         try {
-            jdbcTemplate.update(
-                    "INSERT INTO users (user_id, email, full_name, role) VALUES (?, ?, ?, ?)",
-                    userId, email, fullName, role
-            );
-
-            jdbcTemplate.update(
-                    "INSERT INTO authentications (user_id, provider, provider_id, password_hash) " +
-                            "VALUES (?, 'LOCAL', ?, ?)",
-                    userId, email, hashedPassword
-            );
-        } catch (DataAccessException ex) {
-            model.addAttribute("error", "Registration failed. Please try again.");
-            return "register";
+            hashing = passwordHashingService.hash(password);
+        } catch (RejectedExecutionException ex) {
+            return overloaded(response, model, "register");
         }
 
-        return "redirect:/login";
+        String userEmail = email;
+        String userFullName = fullName;
+        return hashing.thenApplyAsync(hashedPassword -> {
+            UUID userId = UUID.randomUUID();
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    jdbcTemplate.update(
+                            "INSERT INTO users (user_id, email, full_name, role) VALUES (?, ?, ?, ?)",
+                            userId, userEmail, userFullName, role
+                    );
+
+                    jdbcTemplate.update(
+                            "INSERT INTO authentications (user_id, provider, provider_id, password_hash) " +
+                                    "VALUES (?, 'LOCAL', ?, ?)",
+                            userId, userEmail, hashedPassword
+                    );
+                });
+            } catch (DataAccessException ex) {
+                model.addAttribute("error", "Registration failed. Please try again.");
+                return "register";
+            }
+
+            return "redirect:/login";
+        }, requestExecutor);
+    }
+
+    /**
+     * Answers with 503 when the password hashing executor is saturated.
+     *
+     * @param response HTTP response
+     * @param model view model for errors
+     * @param view view to render
+     * @return completed future with the view name
+     */
+    private CompletableFuture<String> overloaded(HttpServletResponse response, Model model, String view) {
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        model.addAttribute("error", "We are handling a lot of sign-ins right now. Please try again in a moment.");
+        return CompletableFuture.completedFuture(view);
     }
 }
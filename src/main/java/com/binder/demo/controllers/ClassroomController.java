@@ -2,14 +2,28 @@ package com.binder.demo.controllers;
 
 import com.binder.demo.classroom.Classroom;
 import com.binder.demo.services.ClassroomEnrollmentService;
+import com.binder.demo.services.ClassroomPageService;
 import com.binder.demo.services.ClassroomPostService;
 import com.binder.demo.services.ClassroomService;
 import com.binder.demo.services.ClassroomSubmissionService;
+import com.binder.demo.services.RosterImportService;
+import com.binder.demo.services.UserService;
+import com.binder.demo.user.Role;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -36,6 +50,14 @@ public class ClassroomController {
      * Post service used to load posts for classroom views.
      */
     private final ClassroomPostService classroomPostService;
+    /**
+     * Page service used to assemble the classroom view.
+     */
+    private final ClassroomPageService classroomPageService;
+    /**
+     * Roster import service used for CSV enrollments.
+     */
+    private final RosterImportService rosterImportService;
 
     /**
      * Creates a controller with required services.
@@ -44,15 +66,21 @@ public class ClassroomController {
      * @param enrollmentService enrollment service
      * @param submissionService submission service
      * @param classroomPostService post service
+     * @param classroomPageService classroom page service
+     * @param rosterImportService roster import service
      */
     public ClassroomController(ClassroomService classroomService,
                                ClassroomEnrollmentService enrollmentService,
                                ClassroomSubmissionService submissionService,
-                               ClassroomPostService classroomPostService) {
+                               ClassroomPostService classroomPostService,
+                               ClassroomPageService classroomPageService,
+                               RosterImportService rosterImportService) {
         this.classroomService = classroomService;
         this.enrollmentService = enrollmentService;
         this.submissionService = submissionService;
         this.classroomPostService = classroomPostService;
+        this.classroomPageService = classroomPageService;
+        this.rosterImportService = rosterImportService;
     }
 
     /**
@@ -120,27 +148,80 @@ public class ClassroomController {
             return "redirect:/login";
         }
 
-        Optional<Classroom> classroom = classroomService.getClassById(id);
-        if (classroom.isPresent()) {
-            model.addAttribute("classroom", classroom.get());
+        Object role = session.getAttribute("userRole");
+        Optional<ClassroomPageService.ClassroomPage> page;
+        try {
+            page = classroomPageService.loadPage(id, userId, roleOf(role));
+        } catch (IllegalStateException ex) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage(), ex);
+        }
+
+        if (page.isPresent()) {
+            ClassroomPageService.ClassroomPage view = page.get();
+            model.addAttribute("classroom", view.classroom());
             model.addAttribute("name", session.getAttribute("userName"));
-            model.addAttribute("role", session.getAttribute("userRole"));
-            model.addAttribute("posts", classroomPostService.getPostsForClassroom(id));
-            model.addAttribute("enrolledStudents", enrollmentService.getEnrolledStudentEmails(id));
-            model.addAttribute("enrolledTeachers", enrollmentService.getEnrolledTeacherEmails(id));
-            Object role = session.getAttribute("userRole");
-            if ("TEACHER".equals(role)) {
-                model.addAttribute("submissionReviews", submissionService.getSubmissionReviewsForClassroom(id));
+            model.addAttribute("role", role);
+            model.addAttribute("feed", view.feed());
+            model.addAttribute("assignmentOptions", view.assignmentOptions());
+            model.addAttribute("enrolledStudents", view.enrolledStudents());
+            model.addAttribute("enrolledTeachers", view.enrolledTeachers());
+            model.addAttribute("degradedSections", view.degradedSections());
+            if (view.assignmentStats() != null) {
+                model.addAttribute("assignmentStats", view.assignmentStats());
             }
-            if ("STUDENT".equals(role)) {
-                model.addAttribute("submittedPostIds", submissionService.getSubmittedAssignmentIds(id, userId));
-                model.addAttribute("studentSubmissionResults", submissionService.getSubmissionResultsForStudent(id, userId));
+            if (view.submittedPostIds() != null) {
+                model.addAttribute("submittedPostIds", view.submittedPostIds());
+                model.addAttribute("studentSubmissionResults", view.studentSubmissionResults());
             }
             return "classroom";
         }
         return "redirect:/dashboard";
     }
 
+    /**
+     * Renders the next page of classroom posts for the stream.
+     *
+     * @param id unique identifier of the classroom
+     * @param cursor opaque cursor returned with the previous page
+     * @param model Spring UI model
+     * @param session current HTTP session
+     * @return feed page fragment or redirect when not logged in
+     */
+    @GetMapping("/classrooms/{id}/feed")
+    public String getClassroomFeed(@PathVariable UUID id,
+                                   @RequestParam(required = false) String cursor,
+                                   Model model,
+                                   HttpSession session) {
+        UUID userId = (UUID) session.getAttribute("userId");
+        if (userId == null) {
+            return "redirect:/login";
+        }
+
+        Optional<Classroom> classroom = classroomService.getClassById(id);
+        if (classroom.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }
+
+        ClassroomPostService.FeedPage feed;
+        try {
+            feed = classroomPostService.getFeedPage(id, cursor);
+        } catch (IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+
+        Object role = session.getAttribute("userRole");
+        boolean isStudent = "STUDENT".equals(role);
+        model.addAttribute("classroom", classroom.get());
+        model.addAttribute("feed", feed);
+        model.addAttribute("isTeacher", "TEACHER".equals(role));
+        model.addAttribute("isStudent", isStudent);
+        if (isStudent) {
+            model.addAttribute("submittedPostIds", submissionService.getSubmittedAssignmentIds(id, userId));
+        }
+        return "fragments/post-feed :: feedPage(feedPage=${feed}, classroom=${classroom}, "
+                + "submittedPostIds=${submittedPostIds}, isTeacher=${isTeacher}, isStudent=${isStudent})";
+    }
+
     /**
      * Enrolls students in a classroom by email list.
      *
@@ -160,10 +241,11 @@ public class ClassroomController {
 
         if (userId != null && "TEACHER".equals(role)) {
             if (enrollmentService.isUserInClass(classId, userId, com.binder.demo.user.Role.TEACHER)) {
-                List<String> mismatched = enrollmentService.enrollStudentsByEmailsWithValidation(classId, studentEmails);
-                if (!mismatched.isEmpty()) {
-                    redirectAttributes.addFlashAttribute("studentEnrollError",
-                            "These emails are not students: " + String.join(", ", mismatched));
+                UserService.BulkEnrollmentResult result =
+                        enrollmentService.enrollStudentsByEmailsWithValidation(classId, studentEmails);
+                String error = enrollmentError(result, "students");
+                if (error != null) {
+                    redirectAttributes.addFlashAttribute("studentEnrollError", error);
                 }
             }
         }
@@ -190,10 +272,11 @@ public class ClassroomController {
 
         if (userId != null && "TEACHER".equals(role)) {
             if (enrollmentService.isUserInClass(classId, userId, com.binder.demo.user.Role.TEACHER)) {
-                List<String> mismatched = enrollmentService.enrollTeachersByEmailsWithValidation(classId, teacherEmails);
-                if (!mismatched.isEmpty()) {
-                    redirectAttributes.addFlashAttribute("teacherEnrollError",
-                            "These emails are not teachers: " + String.join(", ", mismatched));
+                UserService.BulkEnrollmentResult result =
+                        enrollmentService.enrollTeachersByEmailsWithValidation(classId, teacherEmails);
+                String error = enrollmentError(result, "teachers");
+                if (error != null) {
+                    redirectAttributes.addFlashAttribute("teacherEnrollError", error);
                 }
             }
         }
@@ -201,6 +284,43 @@ public class ClassroomController {
         return "redirect:/classrooms/" + classId;
     }
 
+    /**
+     * Imports a CSV roster of student emails and streams back a per-row result report.
+     *
+     * @param id unique identifier of the classroom
+     * @param file CSV roster with emails in the first column
+     * @param session current HTTP session
+     * @param response HTTP response receiving the CSV report
+     * @throws IOException when the upload cannot be read or the report cannot be written
+     */
+    @PostMapping("/classrooms/{id}/roster")
+    public void importRoster(@PathVariable UUID id,
+                             @RequestParam(required = false) MultipartFile file,
+                             HttpSession session,
+                             HttpServletResponse response) throws IOException {
+        UUID userId = (UUID) session.getAttribute("userId");
+        if (userId == null) {
+            response.sendRedirect("/login");
+            return;
+        }
+        if (!"TEACHER".equals(session.getAttribute("userRole"))
+                || !enrollmentService.isUserInClass(id, userId, Role.TEACHER)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN);
+        }
+        if (file == null || file.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Roster file is required.");
+        }
+
+        response.setContentType("text/csv");
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.attachment().filename("roster-import-results.csv").build().toString());
+
+        try (Reader roster = new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8)) {
+            rosterImportService.importStudents(id, roster, response.getWriter());
+        }
+    }
+
     /**
      * Removes a student from the classroom by email.
      *
@@ -277,4 +397,35 @@ public class ClassroomController {
         return "redirect:/dashboard";
     }
 
+    /**
+     * Maps the session role attribute to a role.
+     *
+     * @param role session role attribute
+     * @return matching role or null when missing or unknown
+     */
+    private Role roleOf(Object role) {
+        if ("TEACHER".equals(role)) return Role.TEACHER;
+        if ("STUDENT".equals(role)) return Role.STUDENT;
+        return null;
+    }
+
+    /**
+     * Builds the enrollment error message for unknown and role-mismatched emails.
+     *
+     * @param result bulk enrollment result
+     * @param roleLabel plural role name used in the message
+     * @return error message, or null when every email was enrolled
+     */
+    private String enrollmentError(UserService.BulkEnrollmentResult result, String roleLabel) {
+        StringBuilder error = new StringBuilder();
+        if (!result.roleMismatched().isEmpty()) {
+            error.append("These emails are not ").append(roleLabel).append(": ")
+                    .append(String.join(", ", result.roleMismatched()));
+        }
+        if (!result.unknown().isEmpty()) {
+            if (!error.isEmpty()) error.append(". ");
+            error.append("No account found for: ").append(String.join(", ", result.unknown()));
+        }
+        return error.isEmpty() ? null : error.toString();
+    }
 }
@@ -0,0 +1,138 @@
+package com.binder.demo.controllers;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Writes a stored file to the response, honouring a single byte range.
+ * Local files are handed to the container's sendfile support when it is available and
+ * otherwise copied with {@link FileChannel#transferTo}; other resources are streamed.
+ */
+final class RangeDownloadWriter {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private RangeDownloadWriter() {
+    }
+
+    /**
+     * Sets the status, length and range headers and writes the requested bytes.
+     * Multiple ranges are answered with the whole file, which RFC 9110 allows.
+     * Content type, disposition and validators must already be set on the response.
+     *
+     * @param request current request
+     * @param response current response
+     * @param resource file content
+     * @param length content length in bytes
+     * @param etag entity tag sent with the response, used to evaluate If-Range
+     * @param lastModified last modification time in epoch milliseconds, used to evaluate If-Range
+     * @throws IOException when the content cannot be read or written
+     */
+    static void write(HttpServletRequest request,
+                      HttpServletResponse response,
+                      Resource resource,
+                      long length,
+                      String etag,
+                      long lastModified) throws IOException {
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        long start = 0;
+        long end = length - 1;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && rangeApplies(request, etag, lastModified)) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException ex) {
+                // A malformed Range header is ignored and the whole file is sent.
+                ranges = List.of();
+            }
+            if (ranges.size() == 1) {
+                HttpRange range = ranges.get(0);
+                long rangeStart = range.getRangeStart(length);
+                long rangeEnd = range.getRangeEnd(length);
+                if (length == 0 || rangeStart >= length || rangeStart > rangeEnd) {
+                    response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    return;
+                }
+                start = rangeStart;
+                end = rangeEnd;
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        long count = Math.max(0, end - start + 1);
+        response.setContentLengthLong(count);
+        if ("HEAD".equals(request.getMethod()) || count == 0) {
+            return;
+        }
+
+        if (resource.isFile()) {
+            Path path = resource.getFile().toPath();
+            if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+                // Tomcat sends the file straight from the page cache once the handler returns.
+                request.setAttribute(SENDFILE_FILENAME, path.toRealPath().toString());
+                request.setAttribute(SENDFILE_START, start);
+                request.setAttribute(SENDFILE_END, end + 1);
+                return;
+            }
+            transferFile(path, start, count, response.getOutputStream());
+            return;
+        }
+
+        try (InputStream input = resource.getInputStream()) {
+            StreamUtils.copyRange(input, response.getOutputStream(), start, end);
+        }
+    }
+
+    /**
+     * Checks an If-Range precondition; a range is only served when the client's copy is current.
+     */
+    private static boolean rangeApplies(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) return true;
+        if (ifRange.startsWith("\"")) {
+            // Only a strong validator may be used for If-Range.
+            return etag != null && !etag.startsWith("W/") && etag.equals(ifRange);
+        }
+        try {
+            long ifRangeDate = request.getDateHeader(HttpHeaders.IF_RANGE);
+            return ifRangeDate != -1 && lastModified / 1000 == ifRangeDate / 1000;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    private static void transferFile(Path path, long position, long count, OutputStream output) throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(output);
+            long sent = 0;
+            while (sent < count) {
+                long transferred = file.transferTo(position + sent, count - sent, target);
+                if (transferred <= 0) {
+                    throw new IOException("File ended before the requested range: " + path.getFileName());
+                }
+                sent += transferred;
+            }
+        }
+    }
+}
@@ -6,13 +6,11 @@ import com.binder.demo.services.AttachmentService;
 import com.binder.demo.services.ClassroomEnrollmentService;
 import com.binder.demo.user.Role;
 import jakarta.servlet.http.HttpSession;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.nio.file.Path;
 import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
@@ -43,16 +41,13 @@ public class AssignmentController {
      * @param assignmentPostService assignment service
      * @param enrollmentService enrollment service
      * @param attachmentService attachment service
-     * @param storageDir base directory for uploaded files
      */
     public AssignmentController(AssignmentPostService assignmentPostService,
                                 ClassroomEnrollmentService enrollmentService,
-                                AttachmentService attachmentService,
-                                @Value("${attachments.storage-dir:uploads}") String storageDir) {
+                                AttachmentService attachmentService) {
         this.assignmentPostService = assignmentPostService;
         this.enrollmentService = enrollmentService;
-        this.attachmentHelper = new PostAttachmentHelper(attachmentService,
-                Path.of(storageDir).toAbsolutePath().normalize());
+        this.attachmentHelper = new PostAttachmentHelper(attachmentService);
     }
 
     /**
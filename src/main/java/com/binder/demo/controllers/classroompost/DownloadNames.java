@@ -0,0 +1,36 @@
+package com.binder.demo.controllers.classroompost;
+
+/**
+ * Builds names for files that teachers download, such as gradebook exports and submission archives.
+ */
+final class DownloadNames {
+
+    /**
+     * Longest name kept, leaving room for a suffix and extension.
+     */
+    private static final int MAX_LENGTH = 120;
+
+    private DownloadNames() {
+    }
+
+    /**
+     * Makes a name safe to use as a ZIP entry or download name on common file systems.
+     *
+     * @param name raw name
+     * @param fallback name used when nothing usable remains
+     * @return sanitized name
+     */
+    static String sanitize(String name, String fallback) {
+        if (name == null) {
+            return fallback;
+        }
+        String cleaned = name.replaceAll("[\\\\/:*?\"<>|\\p{Cntrl}]", "_").strip();
+        while (cleaned.startsWith(".")) {
+            cleaned = cleaned.substring(1);
+        }
+        if (cleaned.length() > MAX_LENGTH) {
+            cleaned = cleaned.substring(0, MAX_LENGTH).strip();
+        }
+        return cleaned.isEmpty() ? fallback : cleaned;
+    }
+}
@@ -0,0 +1,96 @@
+package com.binder.demo.controllers.classroompost;
+
+import com.binder.demo.classroom.Classroom;
+import com.binder.demo.services.ClassroomEnrollmentService;
+import com.binder.demo.services.ClassroomService;
+import com.binder.demo.services.GradebookExportService;
+import com.binder.demo.user.Role;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Streams a classroom's gradebook as a CSV download for teachers to import into other systems.
+ * Rows are written to the response as they are read from the database, so the export is never
+ * held in memory.
+ */
+@Controller
+public class GradebookController {
+
+    /**
+     * Export service writing the CSV.
+     */
+    private final GradebookExportService exportService;
+    /**
+     * Enrollment service used for membership checks.
+     */
+    private final ClassroomEnrollmentService enrollmentService;
+    /**
+     * Classroom service used to name the download.
+     */
+    private final ClassroomService classroomService;
+
+    /**
+     * Creates a controller with required services.
+     *
+     * @param exportService gradebook export service
+     * @param enrollmentService enrollment service
+     * @param classroomService classroom service
+     */
+    public GradebookController(GradebookExportService exportService,
+                               ClassroomEnrollmentService enrollmentService,
+                               ClassroomService classroomService) {
+        this.exportService = exportService;
+        this.enrollmentService = enrollmentService;
+        this.classroomService = classroomService;
+    }
+
+    /**
+     * Streams the students × assignments marks of a classroom as CSV.
+     *
+     * @param classroomId classroom id
+     * @param session current HTTP session
+     * @param response current response
+     * @throws IOException when the export cannot be written
+     */
+    @GetMapping("/classroom/gradebook/download")
+    public void downloadGradebook(@RequestParam UUID classroomId,
+                                  HttpSession session,
+                                  HttpServletResponse response) throws IOException {
+        UUID userId = (UUID) session.getAttribute("userId");
+        String role = (String) session.getAttribute("userRole");
+        if (userId == null || !Role.TEACHER.name().equals(role)
+                || !enrollmentService.isUserInClass(classroomId, userId, Role.TEACHER)) {
+            response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        Classroom classroom = classroomService.getClassById(classroomId).orElse(null);
+        if (classroom == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        String filename = DownloadNames.sanitize(classroom.getName(), "classroom") + " gradebook.csv";
+        response.setContentType("text/csv;charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.attachment().filename(filename, StandardCharsets.UTF_8).build().toString());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noStore().getHeaderValue());
+        response.setHeader("X-Content-Type-Options", "nosniff");
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+        exportService.writeGradebook(classroomId, out);
+        out.flush();
+    }
+}
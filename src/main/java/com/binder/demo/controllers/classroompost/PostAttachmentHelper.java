@@ -1,23 +1,16 @@
 package com.binder.demo.controllers.classroompost;
 
 import com.binder.demo.attachments.Attachment;
-import com.binder.demo.attachments.AttachmentType;
 import com.binder.demo.classroom.Assignment;
 import com.binder.demo.classroom.ClassroomPost;
 import com.binder.demo.classroom.Resource;
 import com.binder.demo.services.AttachmentService;
+import com.binder.demo.services.UploadRejectedException;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 
@@ -27,20 +20,13 @@ final class PostAttachmentHelper {
      * Service used to persist attachments.
      */
     private final AttachmentService attachmentService;
-    /**
-     * Base directory for uploaded files.
-     */
-    private final Path storageDir;
-
     /**
      * Creates an attachment helper.
      *
      * @param attachmentService attachment service
-     * @param storageDir base directory for uploaded files
      */
-    PostAttachmentHelper(AttachmentService attachmentService, Path storageDir) {
+    PostAttachmentHelper(AttachmentService attachmentService) {
         this.attachmentService = attachmentService;
-        this.storageDir = storageDir;
     }
 
     /**
@@ -58,7 +44,7 @@ final class PostAttachmentHelper {
         if (post == null || files == null || files.length == 0 || userId == null) {
             return;
         }
-        Set<Attachment> stored = storeAttachments(files, userId);
+        Set<Attachment> stored = storeAttachments(files, userId, post.getClassId());
         if (stored.isEmpty()) return;
         if (post instanceof Assignment assignment) {
             updateAttachments(assignment, stored, replaceExisting);
@@ -69,6 +55,24 @@ final class PostAttachmentHelper {
         }
     }
 
+    /**
+     * Adds an attachment that has already been saved to a post.
+     *
+     * @param post classroom post
+     * @param attachment saved attachment
+     */
+    void addAttachment(ClassroomPost post, Attachment attachment) {
+        if (post == null || attachment == null) return;
+        Set<Attachment> added = new HashSet<>(Set.of(attachment));
+        if (post instanceof Assignment assignment) {
+            updateAttachments(assignment, added, false);
+            return;
+        }
+        if (post instanceof Resource resource) {
+            updateAttachments(resource, added, false);
+        }
+    }
+
     /**
      * Removes attachments from a post when requested.
      *
@@ -133,19 +137,19 @@ final class PostAttachmentHelper {
     }
 
     /**
-     * Writes uploaded files to disk and persists attachment metadata.
+     * Stages uploaded files and persists attachment metadata; the files reach storage after each save commits.
      *
      * @param files uploaded files
      * @param userId owner id
      * @return persisted attachments
      */
-    private Set<Attachment> storeAttachments(MultipartFile[] files, UUID userId) {
+    private Set<Attachment> storeAttachments(MultipartFile[] files, UUID userId, UUID classId) {
         Set<Attachment> stored = new HashSet<>();
         for (MultipartFile file : files) {
             if (file == null || file.isEmpty()) {
                 continue;
             }
-            Attachment attachment = storeAttachment(file, userId);
+            Attachment attachment = storeAttachment(file, userId, classId);
             if (attachment != null) {
                 stored.add(attachment);
             }
@@ -153,90 +157,17 @@ final class PostAttachmentHelper {
         return stored;
     }
 
-    private Attachment storeAttachment(MultipartFile file, UUID userId) {
-        String contentType = Optional.ofNullable(file.getContentType()).orElse("");
-        String attachmentId = UUID.randomUUID().toString();
-        String extension = extensionFromContentType(contentType);
-        String filename = attachmentId + extension;
-        String displayName = safeDisplayName(file.getOriginalFilename(), filename);
-        Path baseDir = storageDir.resolve("attachments").normalize();
-        String relativePath = "attachments/" + filename + "?name=" + URLEncoder.encode(displayName, StandardCharsets.UTF_8);
-        Path destination = baseDir.resolve(filename).normalize();
-
-        if (!destination.startsWith(baseDir)) {
+    private Attachment storeAttachment(MultipartFile file, UUID userId, UUID classId) {
+        AttachmentService.StagedUpload upload;
+        try {
+            upload = attachmentService.stage(file);
+        } catch (IOException | UploadRejectedException ex) {
             return null;
         }
-
         try {
-            Files.createDirectories(baseDir);
-            Path realBase = baseDir.toRealPath();
-            Path parent = destination.getParent();
-            if (parent == null) {
-                return null;
-            }
-            Path realParent = parent.toRealPath();
-            if (!realBase.equals(realParent)) {
-                return null;
-            }
-            if (Files.exists(destination)) {
-                return null;
-            }
-            try (InputStream input = file.getInputStream()) {
-                try (var output = Files.newOutputStream(destination, StandardOpenOption.CREATE_NEW)) {
-                    input.transferTo(output);
-                }
-            }
-        } catch (IOException ex) {
+            return attachmentService.upload(upload, userId, classId);
+        } catch (UploadRejectedException ex) {
             return null;
         }
-
-        Attachment attachment = new Attachment();
-        attachment.setAttachmentType(contentType.startsWith("image/") ? AttachmentType.IMAGE : AttachmentType.FILE);
-        attachment.setUrl(relativePath);
-        attachment.setUserOwner(userId);
-        return attachmentService.upload(attachment);
-    }
-
-    /**
-     * Maps a content type to a safe filename extension.
-     *
-     * @param contentType uploaded content type
-     * @return extension with a leading dot when known, otherwise empty
-     */
-    private String extensionFromContentType(String contentType) {
-        String type = contentType == null ? "" : contentType.toLowerCase();
-        return switch (type) {
-            case "image/png" -> ".png";
-            case "image/jpeg" -> ".jpg";
-            case "image/gif" -> ".gif";
-            case "image/webp" -> ".webp";
-            case "application/pdf" -> ".pdf";
-            case "text/plain" -> ".txt";
-            default -> "";
-        };
-    }
-
-    /**
-     * Normalizes uploaded filenames for safe storage.
-     *
-     * @param originalName raw filename
-     * @param fallback fallback name when missing
-     * @return sanitized filename
-     */
-    private String safeDisplayName(String originalName, String fallback) {
-        String baseName = Optional.ofNullable(originalName).orElse("");
-        String fileName = baseName.isBlank() ? fallback : Path.of(baseName).getFileName().toString();
-        String sanitized = fileName.replaceAll("[^A-Za-z0-9._-]", "_");
-        while (sanitized.contains("..")) {
-            sanitized = sanitized.replace("..", ".");
-        }
-        sanitized = sanitized.replaceAll("^\\.+", "");
-        if (sanitized.isBlank()) {
-            sanitized = fallback;
-        }
-        if (sanitized.length() > 120) {
-            sanitized = sanitized.substring(0, 120);
-        }
-        return sanitized;
     }
 }
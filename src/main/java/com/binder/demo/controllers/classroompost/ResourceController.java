@@ -6,13 +6,11 @@ import com.binder.demo.services.ClassroomEnrollmentService;
 import com.binder.demo.services.ResourcePostService;
 import com.binder.demo.user.Role;
 import jakarta.servlet.http.HttpSession;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.nio.file.Path;
 import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
@@ -43,16 +41,13 @@ public class ResourceController {
      * @param resourcePostService resource service
      * @param enrollmentService enrollment service
      * @param attachmentService attachment service
-     * @param storageDir base directory for uploaded files
      */
     public ResourceController(ResourcePostService resourcePostService,
                               ClassroomEnrollmentService enrollmentService,
-                              AttachmentService attachmentService,
-                              @Value("${attachments.storage-dir:uploads}") String storageDir) {
+                              AttachmentService attachmentService) {
         this.resourcePostService = resourcePostService;
         this.enrollmentService = enrollmentService;
-        this.attachmentHelper = new PostAttachmentHelper(attachmentService,
-                Path.of(storageDir).toAbsolutePath().normalize());
+        this.attachmentHelper = new PostAttachmentHelper(attachmentService);
     }
 
     /**
@@ -0,0 +1,317 @@
+package com.binder.demo.controllers.classroompost;
+
+import com.binder.demo.services.ClassroomEnrollmentService;
+import com.binder.demo.services.ResumableUploadService;
+import com.binder.demo.services.UploadRejectedException;
+import com.binder.demo.user.Role;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Resumable submission uploads, following the core of the tus 1.0 protocol with the
+ * creation, expiration, checksum and termination extensions. The client creates an upload
+ * with its total length, sends the file in PATCH requests that each start at the offset the
+ * server reported, and after a dropped connection asks for the offset with HEAD and carries on
+ * from there. The submission is saved when the last byte arrives.
+ */
+@Controller
+@RequestMapping("/classroom/post/assignment/submit/uploads")
+public class ResumableUploadController {
+
+    private static final String TUS_VERSION = "1.0.0";
+    private static final String TUS_RESUMABLE = "Tus-Resumable";
+    private static final String UPLOAD_OFFSET = "Upload-Offset";
+    private static final String UPLOAD_LENGTH = "Upload-Length";
+    private static final String UPLOAD_EXPIRES = "Upload-Expires";
+    private static final MediaType OFFSET_OCTET_STREAM = MediaType.parseMediaType("application/offset+octet-stream");
+
+    /**
+     * Status tus uses for a chunk that does not match its checksum.
+     */
+    private static final int CHECKSUM_MISMATCH = 460;
+
+    /**
+     * Service holding the uploads in progress.
+     */
+    private final ResumableUploadService uploadService;
+    /**
+     * Service used to validate classroom membership.
+     */
+    private final ClassroomEnrollmentService enrollmentService;
+
+    /**
+     * Creates a controller with required services.
+     *
+     * @param uploadService resumable upload service
+     * @param enrollmentService enrollment service
+     */
+    public ResumableUploadController(ResumableUploadService uploadService,
+                                     ClassroomEnrollmentService enrollmentService) {
+        this.uploadService = uploadService;
+        this.enrollmentService = enrollmentService;
+    }
+
+    /**
+     * Describes the supported protocol version, extensions and limits.
+     *
+     * @return empty response carrying the protocol headers
+     */
+    @RequestMapping(method = RequestMethod.OPTIONS)
+    public ResponseEntity<Void> options() {
+        return ResponseEntity.noContent()
+                .header(TUS_RESUMABLE, TUS_VERSION)
+                .header("Tus-Version", TUS_VERSION)
+                .header("Tus-Extension", "creation,expiration,checksum,termination")
+                .header("Tus-Max-Size", String.valueOf(uploadService.getMaxUploadBytes()))
+                .header("Tus-Checksum-Algorithm", "sha256")
+                .build();
+    }
+
+    /**
+     * Starts an upload of a submission file.
+     *
+     * @param classroomId classroom id
+     * @param assignmentId assignment id
+     * @param tusResumable protocol version sent by the client
+     * @param uploadLength total file length
+     * @param uploadMetadata tus metadata with base64 {@code filename} and {@code filetype} values
+     * @param session current session
+     * @return 201 with the upload URL in Location, or 404 when the assignment is not in the classroom
+     * @throws IOException when the upload cannot be created
+     */
+    @PostMapping
+    public ResponseEntity<Void> create(@RequestParam UUID classroomId,
+                                       @RequestParam UUID assignmentId,
+                                       @RequestHeader(value = TUS_RESUMABLE, required = false) String tusResumable,
+                                       @RequestHeader(value = UPLOAD_LENGTH, required = false) Long uploadLength,
+                                       @RequestHeader(value = "Upload-Metadata", required = false) String uploadMetadata,
+                                       HttpSession session) throws IOException {
+        if (!TUS_VERSION.equals(tusResumable)) return unsupportedVersion();
+        UUID userId = (UUID) session.getAttribute("userId");
+        String role = (String) session.getAttribute("userRole");
+        if (userId == null || !Role.STUDENT.name().equals(role)
+                || !enrollmentService.isUserInClass(classroomId, userId, Role.STUDENT)) {
+            return status(HttpStatus.FORBIDDEN).build();
+        }
+        if (uploadLength == null) {
+            return status(HttpStatus.BAD_REQUEST).build();
+        }
+
+        Map<String, String> metadata = parseMetadata(uploadMetadata);
+        Optional<ResumableUploadService.ResumableUpload> created = uploadService.create(userId, classroomId,
+                assignmentId, uploadLength, metadata.get("filename"), metadata.get("filetype"));
+        if (created.isEmpty()) {
+            return status(HttpStatus.NOT_FOUND).build();
+        }
+        ResumableUploadService.ResumableUpload upload = created.get();
+        URI location = ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/classroom/post/assignment/submit/uploads/{id}")
+                .buildAndExpand(upload.uploadId())
+                .toUri();
+        return status(HttpStatus.CREATED)
+                .location(location)
+                .header(UPLOAD_OFFSET, "0")
+                .header(UPLOAD_EXPIRES, httpDate(upload.expiresAt()))
+                .build();
+    }
+
+    /**
+     * Reports how many bytes of an upload have been received.
+     *
+     * @param uploadId upload id
+     * @param tusResumable protocol version sent by the client
+     * @param session current session
+     * @return offset and length headers, or 404 when the upload is gone
+     */
+    @RequestMapping(value = "/{uploadId}", method = RequestMethod.HEAD)
+    public ResponseEntity<Void> offset(@PathVariable UUID uploadId,
+                                       @RequestHeader(value = TUS_RESUMABLE, required = false) String tusResumable,
+                                       HttpSession session) {
+        if (!TUS_VERSION.equals(tusResumable)) return unsupportedVersion();
+        UUID userId = (UUID) session.getAttribute("userId");
+        if (userId == null) return status(HttpStatus.FORBIDDEN).build();
+
+        return uploadService.find(uploadId, userId)
+                .map(upload -> status(HttpStatus.OK)
+                        .cacheControl(CacheControl.noStore())
+                        .header(UPLOAD_OFFSET, String.valueOf(upload.offsetBytes()))
+                        .header(UPLOAD_LENGTH, String.valueOf(upload.lengthBytes()))
+                        .header(UPLOAD_EXPIRES, httpDate(upload.expiresAt()))
+                        .<Void>build())
+                .orElseGet(() -> status(HttpStatus.NOT_FOUND).cacheControl(CacheControl.noStore()).build());
+    }
+
+    /**
+     * Appends the request body to an upload.
+     *
+     * @param uploadId upload id
+     * @param tusResumable protocol version sent by the client
+     * @param uploadOffset offset the body starts at
+     * @param uploadChecksum optional {@code sha256 <base64 digest>} of the body
+     * @param request current request, whose body is the chunk
+     * @param session current session
+     * @return 204 with the new offset, or 404 when the upload is gone
+     * @throws IOException when the chunk cannot be read or written
+     */
+    @PatchMapping("/{uploadId}")
+    public ResponseEntity<Void> append(@PathVariable UUID uploadId,
+                                       @RequestHeader(value = TUS_RESUMABLE, required = false) String tusResumable,
+                                       @RequestHeader(value = UPLOAD_OFFSET, required = false) Long uploadOffset,
+                                       @RequestHeader(value = "Upload-Checksum", required = false) String uploadChecksum,
+                                       HttpServletRequest request,
+                                       HttpSession session) throws IOException {
+        if (!TUS_VERSION.equals(tusResumable)) return unsupportedVersion();
+        UUID userId = (UUID) session.getAttribute("userId");
+        if (userId == null) return status(HttpStatus.FORBIDDEN).build();
+        if (request.getContentType() == null
+                || !OFFSET_OCTET_STREAM.equalsTypeAndSubtype(MediaType.parseMediaType(request.getContentType()))) {
+            return status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).build();
+        }
+        if (uploadOffset == null || uploadOffset < 0) {
+            return status(HttpStatus.BAD_REQUEST).build();
+        }
+        String expectedSha256 = sha256FromUploadChecksum(uploadChecksum);
+        if (uploadChecksum != null && expectedSha256 == null) {
+            return status(HttpStatus.BAD_REQUEST).build();
+        }
+
+        Optional<ResumableUploadService.AppendResult> result = uploadService.append(uploadId, userId, uploadOffset,
+                request.getInputStream(), expectedSha256);
+        if (result.isEmpty()) {
+            return status(HttpStatus.NOT_FOUND).build();
+        }
+        ResumableUploadService.AppendResult appended = result.get();
+        if (appended.complete() && appended.attachment() == null) {
+            // Received in full, but the assignment is gone or another request already submitted it.
+            return status(HttpStatus.NOT_FOUND).build();
+        }
+        ResponseEntity.BodyBuilder response = status(HttpStatus.NO_CONTENT)
+                .header(UPLOAD_OFFSET, String.valueOf(appended.offsetBytes()));
+        if (appended.expiresAt() != null) {
+            response.header(UPLOAD_EXPIRES, httpDate(appended.expiresAt()));
+        }
+        return response.build();
+    }
+
+    /**
+     * Cancels an upload.
+     *
+     * @param uploadId upload id
+     * @param tusResumable protocol version sent by the client
+     * @param session current session
+     * @return 204, or 404 when the upload is gone
+     */
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<Void> terminate(@PathVariable UUID uploadId,
+                                          @RequestHeader(value = TUS_RESUMABLE, required = false) String tusResumable,
+                                          HttpSession session) {
+        if (!TUS_VERSION.equals(tusResumable)) return unsupportedVersion();
+        UUID userId = (UUID) session.getAttribute("userId");
+        if (userId == null) return status(HttpStatus.FORBIDDEN).build();
+        return status(uploadService.terminate(uploadId, userId) ? HttpStatus.NO_CONTENT : HttpStatus.NOT_FOUND).build();
+    }
+
+    /**
+     * Answers a refused upload or chunk with the status tus clients expect.
+     *
+     * @param ex rejection
+     * @return error response with a short message
+     */
+    @ExceptionHandler(UploadRejectedException.class)
+    public ResponseEntity<String> handleRejectedUpload(UploadRejectedException ex) {
+        int status = switch (ex.getReason()) {
+            case TOO_LARGE -> HttpStatus.CONTENT_TOO_LARGE.value();
+            case UNSUPPORTED_TYPE -> HttpStatus.UNSUPPORTED_MEDIA_TYPE.value();
+            case EMPTY -> HttpStatus.BAD_REQUEST.value();
+            case CHECKSUM_MISMATCH -> CHECKSUM_MISMATCH;
+            case OFFSET_MISMATCH -> HttpStatus.CONFLICT.value();
+            case QUOTA_EXCEEDED -> HttpStatus.INSUFFICIENT_STORAGE.value();
+        };
+        return ResponseEntity.status(status)
+                .header(TUS_RESUMABLE, TUS_VERSION)
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(ex.getMessage());
+    }
+
+    private static ResponseEntity.BodyBuilder status(HttpStatus status) {
+        return ResponseEntity.status(status).header(TUS_RESUMABLE, TUS_VERSION);
+    }
+
+    private static ResponseEntity<Void> unsupportedVersion() {
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).header("Tus-Version", TUS_VERSION).build();
+    }
+
+    private static String httpDate(Instant instant) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setDate(HttpHeaders.EXPIRES, instant.toEpochMilli());
+        return headers.getFirst(HttpHeaders.EXPIRES);
+    }
+
+    /**
+     * Parses tus metadata: comma-separated pairs of a key and an optional base64 value.
+     * Malformed values are ignored, since they only name the file.
+     *
+     * @param header header value, possibly null
+     * @return decoded values by key
+     */
+    private static Map<String, String> parseMetadata(String header) {
+        Map<String, String> metadata = new HashMap<>();
+        if (header == null) return metadata;
+        for (String pair : header.split(",")) {
+            String[] parts = pair.trim().split(" ", 2);
+            if (parts[0].isEmpty() || parts.length < 2) continue;
+            try {
+                metadata.put(parts[0], new String(Base64.getDecoder().decode(parts[1].trim()), StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException ex) {
+                // Leave the key out.
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * Reads a tus Upload-Checksum header such as {@code sha256 X48E9qOokqqrvdts8nOJRJN3OWDUoyWxBf7kbu9DBPE=}.
+     *
+     * @param header header value, possibly null
+     * @return lowercase hex digest, or null when the header is absent, malformed or uses another algorithm
+     */
+    private static String sha256FromUploadChecksum(String header) {
+        if (header == null) return null;
+        String[] parts = header.trim().split(" ", 2);
+        if (parts.length != 2 || !"sha256".equals(parts[0].toLowerCase(Locale.ROOT))) return null;
+        try {
+            byte[] digest = Base64.getDecoder().decode(parts[1].trim());
+            return digest.length == 32 ? HexFormat.of().formatHex(digest) : null;
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+}
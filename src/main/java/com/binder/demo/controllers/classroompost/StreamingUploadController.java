@@ -0,0 +1,260 @@
+package com.binder.demo.controllers.classroompost;
+
+import com.binder.demo.attachments.Attachment;
+import com.binder.demo.classroom.Assignment;
+import com.binder.demo.classroom.ClassroomPost;
+import com.binder.demo.classroom.Resource;
+import com.binder.demo.services.AssignmentPostService;
+import com.binder.demo.services.AttachmentService;
+import com.binder.demo.services.ClassroomEnrollmentService;
+import com.binder.demo.services.ClassroomSubmissionService;
+import com.binder.demo.services.ResourcePostService;
+import com.binder.demo.services.StorageUsageService;
+import com.binder.demo.services.UploadRejectedException;
+import com.binder.demo.user.Role;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Handles file uploads sent as the raw request body instead of a multipart form.
+ * The body is read as it arrives and copied straight to staging: its type is checked from
+ * the first bytes, oversized bodies are refused from their Content-Length or once the limit
+ * is reached, and the checksum is computed on the way. Membership and the storage quotas
+ * are checked before any of the body is read.
+ */
+@Controller
+public class StreamingUploadController {
+
+    /**
+     * Submission service used for assignment submissions.
+     */
+    private final ClassroomSubmissionService submissionService;
+    /**
+     * Service used to validate classroom membership.
+     */
+    private final ClassroomEnrollmentService enrollmentService;
+    /**
+     * Service used to load and save assignments.
+     */
+    private final AssignmentPostService assignmentPostService;
+    /**
+     * Service used to load and save resources.
+     */
+    private final ResourcePostService resourcePostService;
+    /**
+     * Service used to stage and persist attachments.
+     */
+    private final AttachmentService attachmentService;
+    /**
+     * Service used to refuse uploads that would not fit in the storage quotas.
+     */
+    private final StorageUsageService usageService;
+    /**
+     * Helper used to manage post attachments.
+     */
+    private final PostAttachmentHelper attachmentHelper;
+
+    /**
+     * Creates a controller with required services.
+     *
+     * @param submissionService submission service
+     * @param enrollmentService enrollment service
+     * @param assignmentPostService assignment service
+     * @param resourcePostService resource service
+     * @param attachmentService attachment service
+     * @param usageService storage usage service
+     */
+    public StreamingUploadController(ClassroomSubmissionService submissionService,
+                                     ClassroomEnrollmentService enrollmentService,
+                                     AssignmentPostService assignmentPostService,
+                                     ResourcePostService resourcePostService,
+                                     AttachmentService attachmentService,
+                                     StorageUsageService usageService) {
+        this.submissionService = submissionService;
+        this.enrollmentService = enrollmentService;
+        this.assignmentPostService = assignmentPostService;
+        this.resourcePostService = resourcePostService;
+        this.attachmentService = attachmentService;
+        this.usageService = usageService;
+        this.attachmentHelper = new PostAttachmentHelper(attachmentService);
+    }
+
+    /**
+     * Submits an assignment with the request body as the submission file.
+     *
+     * @param classroomId classroom id
+     * @param assignmentId assignment id
+     * @param name original filename
+     * @param request current request, whose body is the file
+     * @param session current session
+     * @return the saved attachment
+     * @throws IOException when the body cannot be read or staged
+     */
+    @PostMapping("/classroom/post/assignment/submit/stream")
+    @ResponseBody
+    public ResponseEntity<StreamedUpload> submitAssignmentFile(@RequestParam UUID classroomId,
+                                                               @RequestParam UUID assignmentId,
+                                                               @RequestParam(required = false) String name,
+                                                               HttpServletRequest request,
+                                                               HttpSession session) throws IOException {
+        UUID userId = (UUID) session.getAttribute("userId");
+        String role = (String) session.getAttribute("userRole");
+        if (userId == null || !Role.STUDENT.name().equals(role)
+                || !enrollmentService.isUserInClass(classroomId, userId, Role.STUDENT)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        AttachmentService.StagedUpload upload = stage(request, name, userId, classroomId);
+        Optional<Attachment> saved = submissionService.submitAssignment(classroomId, assignmentId, userId, upload);
+        return saved.map(attachment -> ResponseEntity.status(HttpStatus.CREATED).body(StreamedUpload.of(attachment)))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+    }
+
+    /**
+     * Adds the request body as a file attachment to an assignment or resource post.
+     *
+     * @param classroomId classroom id
+     * @param postId assignment or resource id
+     * @param name original filename
+     * @param request current request, whose body is the file
+     * @param session current session
+     * @return the saved attachment
+     * @throws IOException when the body cannot be read or staged
+     */
+    @PostMapping("/classroom/post/attachments/stream")
+    @ResponseBody
+    public ResponseEntity<StreamedUpload> addPostFile(@RequestParam UUID classroomId,
+                                                      @RequestParam UUID postId,
+                                                      @RequestParam(required = false) String name,
+                                                      HttpServletRequest request,
+                                                      HttpSession session) throws IOException {
+        UUID userId = (UUID) session.getAttribute("userId");
+        String role = (String) session.getAttribute("userRole");
+        if (userId == null || !Role.TEACHER.name().equals(role)
+                || !enrollmentService.isUserInClass(classroomId, userId, Role.TEACHER)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        Optional<ClassroomPost> postOpt = assignmentPostService.findAssignment(postId)
+                .<ClassroomPost>map(assignment -> assignment)
+                .or(() -> resourcePostService.findResource(postId))
+                .filter(post -> classroomId.equals(post.getClassId()));
+        if (postOpt.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+
+        AttachmentService.StagedUpload upload = stage(request, name, userId, classroomId);
+        Attachment attachment = attachmentService.upload(upload, userId, classroomId);
+        ClassroomPost post = postOpt.get();
+        attachmentHelper.addAttachment(post, attachment);
+        if (post instanceof Assignment assignment) {
+            assignmentPostService.updateAssignment(assignment);
+        } else if (post instanceof Resource resource) {
+            resourcePostService.updateResource(resource);
+        }
+        return ResponseEntity.status(HttpStatus.CREATED).body(StreamedUpload.of(attachment));
+    }
+
+    /**
+     * Answers a refused upload with a status that tells the client what to fix.
+     *
+     * @param ex rejection
+     * @return error response with a short message
+     */
+    @ExceptionHandler(UploadRejectedException.class)
+    public ResponseEntity<String> handleRejectedUpload(UploadRejectedException ex) {
+        HttpStatus status = switch (ex.getReason()) {
+            case TOO_LARGE -> HttpStatus.CONTENT_TOO_LARGE;
+            case UNSUPPORTED_TYPE -> HttpStatus.UNSUPPORTED_MEDIA_TYPE;
+            case EMPTY, CHECKSUM_MISMATCH -> HttpStatus.BAD_REQUEST;
+            case OFFSET_MISMATCH -> HttpStatus.CONFLICT;
+            case QUOTA_EXCEEDED -> HttpStatus.INSUFFICIENT_STORAGE;
+        };
+        return ResponseEntity.status(status).contentType(MediaType.TEXT_PLAIN).body(ex.getMessage());
+    }
+
+    /**
+     * Stages the request body, refusing it up front when its Content-Length would not fit
+     * in the uploader's or the classroom's storage quota.
+     *
+     * @param request current request
+     * @param name original filename
+     * @param userId uploading user
+     * @param classroomId classroom the file is for
+     * @return staged upload
+     * @throws IOException when the body cannot be read or staged
+     */
+    private AttachmentService.StagedUpload stage(HttpServletRequest request, String name,
+                                                 UUID userId, UUID classroomId) throws IOException {
+        usageService.checkQuota(userId, classroomId, request.getContentLengthLong());
+        return attachmentService.stage(request.getInputStream(), name, request.getContentType(),
+                request.getContentLengthLong(), sha256FromContentDigest(request.getHeader("Content-Digest")));
+    }
+
+    /**
+     * Reads the SHA-256 value of an RFC 9530 Content-Digest header, such as
+     * {@code sha-256=:X48E9qOokqqrvdts8nOJRJN3OWDUoyWxBf7kbu9DBPE=:}.
+     *
+     * @param header header value, possibly null
+     * @return lowercase hex digest, or null when the header carries no SHA-256 value
+     * @throws UploadRejectedException when the SHA-256 value is malformed
+     */
+    private static String sha256FromContentDigest(String header) {
+        if (header == null) return null;
+        for (String member : header.split(",")) {
+            int eq = member.indexOf('=');
+            if (eq < 0 || !"sha-256".equals(member.substring(0, eq).trim().toLowerCase(Locale.ROOT))) {
+                continue;
+            }
+            String value = member.substring(eq + 1).trim();
+            try {
+                if (value.length() < 2 || !value.startsWith(":") || !value.endsWith(":")) {
+                    throw new IllegalArgumentException("Digest is not a byte sequence.");
+                }
+                byte[] digest = Base64.getDecoder().decode(value.substring(1, value.length() - 1));
+                if (digest.length != 32) {
+                    throw new IllegalArgumentException("Digest has the wrong length.");
+                }
+                return HexFormat.of().formatHex(digest);
+            } catch (IllegalArgumentException ex) {
+                throw new UploadRejectedException(UploadRejectedException.Reason.CHECKSUM_MISMATCH,
+                        "The Content-Digest header is malformed.");
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Attachment created from a streamed upload.
+     *
+     * @param attachmentId attachment id
+     * @param name display name
+     * @param contentType content type detected from the file
+     * @param sizeBytes stored size
+     * @param sha256 content hash
+     */
+    public record StreamedUpload(UUID attachmentId, String name, String contentType, Long sizeBytes, String sha256) {
+        static StreamedUpload of(Attachment attachment) {
+            return new StreamedUpload(attachment.getAttachmentId(),
+                    AttachmentService.filenameFromUrl(attachment.getUrl()),
+                    attachment.getContentType(),
+                    attachment.getSizeBytes(),
+                    attachment.getBlobSha256());
+        }
+    }
+}
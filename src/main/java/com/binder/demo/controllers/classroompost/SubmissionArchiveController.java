@@ -0,0 +1,295 @@
+package com.binder.demo.controllers.classroompost;
+
+import com.binder.demo.classroom.Assignment;
+import com.binder.demo.services.AssignmentPostService;
+import com.binder.demo.services.AttachmentService;
+import com.binder.demo.services.BlobStore;
+import com.binder.demo.services.BlobTieringService;
+import com.binder.demo.services.ClassroomEnrollmentService;
+import com.binder.demo.services.ClassroomSubmissionService;
+import com.binder.demo.user.Role;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams every file submitted for an assignment as a single ZIP download for teachers.
+ * The archive is written entry by entry straight to the response, so neither the archive
+ * nor any submission is held in memory or spooled to a temporary file.
+ */
+@Controller
+public class SubmissionArchiveController {
+
+    private static final Logger log = LoggerFactory.getLogger(SubmissionArchiveController.class);
+
+    /**
+     * Name of the entry listing submissions whose files could not be read.
+     */
+    private static final String MISSING_ENTRY = "MISSING.txt";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Submission service used to list submitted files.
+     */
+    private final ClassroomSubmissionService submissionService;
+    /**
+     * Enrollment service used for membership checks.
+     */
+    private final ClassroomEnrollmentService enrollmentService;
+    /**
+     * Assignment service used to check the assignment belongs to the classroom.
+     */
+    private final AssignmentPostService assignmentPostService;
+    /**
+     * Blob store holding deduplicated submission content.
+     */
+    private final BlobStore blobStore;
+    /**
+     * Records reads so blobs nobody opens move to the cold tier.
+     */
+    private final BlobTieringService tieringService;
+    /**
+     * Base directory for files uploaded before the blob store.
+     */
+    private final Path storageDir;
+
+    /**
+     * Creates a controller with required services.
+     *
+     * @param submissionService submission service
+     * @param enrollmentService enrollment service
+     * @param assignmentPostService assignment service
+     * @param blobStore blob store holding submission content
+     * @param tieringService tracker of blob reads for storage tiering
+     * @param storageDir base directory for files uploaded before the blob store
+     */
+    public SubmissionArchiveController(ClassroomSubmissionService submissionService,
+                                       ClassroomEnrollmentService enrollmentService,
+                                       AssignmentPostService assignmentPostService,
+                                       BlobStore blobStore,
+                                       BlobTieringService tieringService,
+                                       @Value("${attachments.storage-dir:uploads}") String storageDir) {
+        this.submissionService = submissionService;
+        this.enrollmentService = enrollmentService;
+        this.assignmentPostService = assignmentPostService;
+        this.blobStore = blobStore;
+        this.tieringService = tieringService;
+        this.storageDir = Path.of(storageDir).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Streams a ZIP of every submitted file for an assignment, one entry per submission
+     * named after the student. Files that cannot be read are listed in a {@value #MISSING_ENTRY}
+     * entry instead of failing the whole download.
+     *
+     * @param classroomId classroom id
+     * @param assignmentId assignment id
+     * @param session current HTTP session
+     * @param response current response
+     * @throws IOException when the archive cannot be written
+     */
+    @GetMapping("/classroom/post/assignment/submissions/download")
+    public void downloadSubmissions(@RequestParam UUID classroomId,
+                                    @RequestParam UUID assignmentId,
+                                    HttpSession session,
+                                    HttpServletResponse response) throws IOException {
+        UUID userId = (UUID) session.getAttribute("userId");
+        String role = (String) session.getAttribute("userRole");
+        if (userId == null || !Role.TEACHER.name().equals(role)
+                || !enrollmentService.isUserInClass(classroomId, userId, Role.TEACHER)) {
+            response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        Assignment assignment = assignmentPostService.findAssignment(assignmentId)
+                .filter(found -> classroomId.equals(found.getClassId()))
+                .orElse(null);
+        if (assignment == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        // Metadata only; the query's connection is released before any content is streamed.
+        List<ClassroomSubmissionService.SubmissionFile> files =
+                submissionService.getSubmissionFiles(classroomId, assignmentId);
+
+        String archiveName = DownloadNames.sanitize(assignment.getTitle(), "submissions") + ".zip";
+        response.setContentType("application/zip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.attachment().filename(archiveName, StandardCharsets.UTF_8).build().toString());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noStore().getHeaderValue());
+        response.setHeader("X-Content-Type-Options", "nosniff");
+
+        ZipOutputStream zip = new ZipOutputStream(response.getOutputStream(), StandardCharsets.UTF_8);
+        Set<String> usedNames = new HashSet<>();
+        List<String> missing = new ArrayList<>();
+        for (ClassroomSubmissionService.SubmissionFile file : files) {
+            String filename = AttachmentService.filenameFromUrl(file.attachmentUrl());
+            Resource resource = resolve(file);
+            if (resource == null || !resource.exists()) {
+                missing.add(file.studentName() + " <" + file.studentEmail() + ">: " + filename);
+                continue;
+            }
+            String entryName = uniqueName(DownloadNames.sanitize(file.studentName(), "student") + " - "
+                    + DownloadNames.sanitize(filename, "attachment"), usedNames);
+            ZipEntry entry = new ZipEntry(entryName);
+            if (file.submissionTime() != null) {
+                entry.setLastModifiedTime(FileTime.from(file.submissionTime()));
+            }
+            if (!writeEntry(zip, entry, resource, AttachmentService.isCompressedFormat(file.contentType(), filename))) {
+                missing.add(file.studentName() + " <" + file.studentEmail() + ">: " + filename);
+            } else {
+                tieringService.recordAccess(file.blobSha256());
+            }
+        }
+        if (!missing.isEmpty()) {
+            zip.setMethod(ZipOutputStream.DEFLATED);
+            zip.setLevel(Deflater.DEFAULT_COMPRESSION);
+            zip.putNextEntry(new ZipEntry(uniqueName(MISSING_ENTRY, usedNames)));
+            zip.write(("These submissions could not be read from storage:\n"
+                    + String.join("\n", missing) + "\n").getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        zip.finish();
+        zip.flush();
+    }
+
+    /**
+     * Writes one archive entry. Already-compressed content is stored rather than deflated:
+     * local files get true STORED entries, whose size and CRC are taken in a read-only pass
+     * before the copy, while remote objects use level 0 deflate so they are fetched only once.
+     *
+     * @param zip archive being written
+     * @param entry entry to add
+     * @param resource entry content
+     * @param compressed whether the content is already compressed
+     * @return {@code false} when the content could not be opened and the entry was skipped
+     * @throws IOException when writing to the archive fails part way through an entry
+     */
+    private boolean writeEntry(ZipOutputStream zip, ZipEntry entry, Resource resource, boolean compressed)
+            throws IOException {
+        if (compressed && resource.isFile()) {
+            try {
+                long[] sizeAndCrc = sizeAndCrc(resource);
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(sizeAndCrc[0]);
+                entry.setCompressedSize(sizeAndCrc[0]);
+                entry.setCrc(sizeAndCrc[1]);
+            } catch (IOException ex) {
+                log.warn("Skipping unreadable submission file {}", resource.getDescription(), ex);
+                return false;
+            }
+        } else {
+            entry.setMethod(ZipEntry.DEFLATED);
+            zip.setLevel(compressed ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+        }
+
+        InputStream in;
+        try {
+            in = resource.getInputStream();
+        } catch (IOException ex) {
+            log.warn("Skipping unreadable submission file {}", resource.getDescription(), ex);
+            return false;
+        }
+        try (in) {
+            zip.putNextEntry(entry);
+            in.transferTo(zip);
+            zip.closeEntry();
+        }
+        return true;
+    }
+
+    /**
+     * Reads a file once to find its length and CRC-32, as a STORED entry header needs both.
+     *
+     * @param resource local file
+     * @return length and CRC-32 of the content
+     * @throws IOException when the file cannot be read
+     */
+    private static long[] sizeAndCrc(Resource resource) throws IOException {
+        CRC32 crc = new CRC32();
+        long size = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = resource.getInputStream()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+                size += read;
+            }
+        }
+        return new long[] {size, crc.getValue()};
+    }
+
+    /**
+     * Finds the stored content of a submission file.
+     *
+     * @param file submission file
+     * @return content, or {@code null} when the file is not held in local or blob storage
+     */
+    private Resource resolve(ClassroomSubmissionService.SubmissionFile file) {
+        if (file.blobSha256() != null) {
+            try {
+                return blobStore.resource(file.blobSha256());
+            } catch (IOException | IllegalArgumentException ex) {
+                return null;
+            }
+        }
+        URI uri;
+        try {
+            uri = URI.create(file.attachmentUrl().trim());
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+        if (uri.isAbsolute() || uri.getPath() == null || uri.getPath().isBlank()) {
+            return null;
+        }
+        Path candidate = storageDir.resolve(uri.getPath()).normalize();
+        return candidate.startsWith(storageDir) ? new FileSystemResource(candidate) : null;
+    }
+
+    /**
+     * Adds a numeric suffix before the extension when an entry name is already taken,
+     * for example when two students share a name.
+     *
+     * @param name preferred entry name
+     * @param usedNames names already in the archive, compared without case
+     * @return unused entry name, which is recorded in {@code usedNames}
+     */
+    private static String uniqueName(String name, Set<String> usedNames) {
+        String candidate = name;
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        for (int i = 2; !usedNames.add(candidate.toLowerCase(Locale.ROOT)); i++) {
+            candidate = base + " (" + i + ")" + extension;
+        }
+        return candidate;
+    }
+}
@@ -2,12 +2,21 @@ package com.binder.demo.controllers.classroompost;
 
 import com.binder.demo.services.ClassroomEnrollmentService;
 import com.binder.demo.services.ClassroomSubmissionService;
+import com.binder.demo.services.UploadRejectedException;
 import jakarta.servlet.http.HttpSession;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -45,6 +54,7 @@ public class SubmissionController {
      * @param file optional submission file
      * @param markComplete submit without file when true
      * @param session current HTTP session
+     * @param redirectAttributes flash attributes for a refused file
      * @return redirect to classroom
      */
     @PostMapping("/classroom/post/assignment/submit")
@@ -53,20 +63,66 @@ public class SubmissionController {
                                          @RequestParam(required = false) MultipartFile file,
                                          @RequestParam(required = false) Boolean markComplete,
                                          @RequestParam(required = false) Boolean removeAttachment,
-                                         HttpSession session) {
+                                         HttpSession session,
+                                         RedirectAttributes redirectAttributes) {
         UUID userId = (UUID) session.getAttribute("userId");
         String role = (String) session.getAttribute("userRole");
 
         if (userId != null && "STUDENT".equals(role)) {
             if (enrollmentService.isUserInClass(classroomId, userId, com.binder.demo.user.Role.STUDENT)) {
-                submissionService.submitAssignment(classroomId, assignmentId, userId, file,
-                        Boolean.TRUE.equals(markComplete), Boolean.TRUE.equals(removeAttachment));
+                try {
+                    submissionService.submitAssignment(classroomId, assignmentId, userId, file,
+                            Boolean.TRUE.equals(markComplete), Boolean.TRUE.equals(removeAttachment));
+                } catch (UploadRejectedException ex) {
+                    redirectAttributes.addFlashAttribute("submissionError", ex.getMessage());
+                }
             }
         }
 
         return "redirect:/classrooms/" + classroomId;
     }
 
+    /**
+     * Renders one page of an assignment's submissions for the review modal, ordered by
+     * student name and optionally limited to graded or ungraded submissions.
+     *
+     * @param classroomId classroom id
+     * @param assignmentId assignment id
+     * @param status which submissions to include
+     * @param cursor opaque cursor returned with the previous page
+     * @param model Spring UI model
+     * @param session current HTTP session
+     * @return review page fragment
+     */
+    @GetMapping("/classroom/post/assignment/submissions")
+    public String getSubmissionReviews(@RequestParam UUID classroomId,
+                                       @RequestParam UUID assignmentId,
+                                       @RequestParam(defaultValue = "ALL") ClassroomSubmissionService.ReviewStatus status,
+                                       @RequestParam(required = false) String cursor,
+                                       Model model,
+                                       HttpSession session) {
+        UUID userId = (UUID) session.getAttribute("userId");
+        String role = (String) session.getAttribute("userRole");
+        if (userId == null || !"TEACHER".equals(role)
+                || !enrollmentService.isUserInClass(classroomId, userId, com.binder.demo.user.Role.TEACHER)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN);
+        }
+
+        ClassroomSubmissionService.ReviewPage page;
+        try {
+            page = submissionService.getSubmissionReviewPage(classroomId, assignmentId, status, cursor);
+        } catch (IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+
+        model.addAttribute("reviewPage", page);
+        model.addAttribute("classroomId", classroomId);
+        model.addAttribute("assignmentId", assignmentId);
+        model.addAttribute("status", status);
+        return "fragments/classroom-modals :: submissionReviewPage(reviewPage=${reviewPage}, "
+                + "classroomId=${classroomId}, assignmentId=${assignmentId}, status=${status})";
+    }
+
     /**
      * Applies a grade to a submission.
      *
@@ -95,4 +151,31 @@ public class SubmissionController {
         return "redirect:/classrooms/" + classroomId;
     }
 
+    /**
+     * Applies a batch of grades in one request, for grading many submissions at once.
+     *
+     * @param classroomId classroom id
+     * @param grades submission ids with their marks and feedback
+     * @param session current HTTP session
+     * @return outcome per grade, in the order given
+     */
+    @PostMapping("/classroom/post/assignment/grades")
+    @ResponseBody
+    public List<ClassroomSubmissionService.GradeResult> handleGradeSubmissions(
+            @RequestParam UUID classroomId,
+            @RequestBody List<ClassroomSubmissionService.GradeEntry> grades,
+            HttpSession session) {
+        UUID userId = (UUID) session.getAttribute("userId");
+        String role = (String) session.getAttribute("userRole");
+        if (userId == null || !"TEACHER".equals(role)
+                || !enrollmentService.isUserInClass(classroomId, userId, com.binder.demo.user.Role.TEACHER)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN);
+        }
+
+        try {
+            return submissionService.gradeSubmissions(classroomId, userId, grades);
+        } catch (IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        }
+    }
 }
@@ -7,6 +7,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -22,6 +23,15 @@ public class AssignmentPostService {
     @PersistenceContext
     private EntityManager em;
 
+    /**
+     * Recounts late submissions when a due date changes.
+     */
+    private final AssignmentStatsService statsService;
+
+    public AssignmentPostService(AssignmentStatsService statsService) {
+        this.statsService = statsService;
+    }
+
     /**
      * Persists a new assignment post.
      *
@@ -59,13 +69,19 @@ public class AssignmentPostService {
     }
 
     /**
-     * Updates an assignment with new values.
+     * Updates an assignment with new values, recounting late submissions when the due date changed.
      *
      * @param assignment assignment to update
      */
     @Transactional
     public void updateAssignment(Assignment assignment) {
         if (assignment == null) return;
+        Assignment stored = assignment.getAssignmentId() == null ? null : em.find(Assignment.class, assignment.getAssignmentId());
+        Instant previousDueDate = stored == null ? null : stored.getDueDate();
         em.merge(assignment);
+        if (stored != null && !Objects.equals(previousDueDate, assignment.getDueDate())) {
+            em.flush();
+            statsService.rebuild(assignment.getAssignmentId());
+        }
     }
 }
@@ -0,0 +1,471 @@
+package com.binder.demo.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Keeps submission counts and mark statistics per assignment in assignment_stats, with a
+ * histogram of marks in assignment_mark_counts for the median. Submitting and grading
+ * adjust them in the same transaction as the submission or grade row, and the classroom
+ * page reads them with two queries per classroom, whatever the number of submissions.
+ * <p>
+ * A periodic job recomputes every assignment from its submissions and grades to repair
+ * drift, for example after users are deleted and their submissions cascade away. A rebuild
+ * locks the assignment's stats row before it reads, so it cannot interleave with a
+ * submission or grade being counted.
+ */
+@Service
+public class AssignmentStatsService {
+
+    private static final Logger log = LoggerFactory.getLogger(AssignmentStatsService.class);
+
+    /**
+     * JDBC access to the statistics tables.
+     */
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Runs each assignment rebuild in its own transaction.
+     */
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Number of assignments read per rebuild query.
+     */
+    private final int batchSize;
+
+    private final Counter repairedAssignments;
+
+    public AssignmentStatsService(JdbcTemplate jdbcTemplate,
+                                  PlatformTransactionManager transactionManager,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${assignments.stats.rebuild-batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = Math.max(1, batchSize);
+        this.repairedAssignments = Counter.builder("assignments.stats.repaired")
+                .description("Assignments whose statistics differed from their submissions when rebuilt")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Counts a new submission, or a resubmission that moved the submission time.
+     * Must run in the transaction that saves the submission.
+     *
+     * @param assignmentId assignment id
+     * @param dueDate assignment due date, or null
+     * @param previousTime submission time before this submission, or null for a new submission
+     * @param submissionTime submission time now recorded
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordSubmission(UUID assignmentId, Instant dueDate, Instant previousTime, Instant submissionTime) {
+        recordSubmissions(List.of(new SubmissionChange(assignmentId, dueDate, previousTime, submissionTime)));
+    }
+
+    /**
+     * Counts a set of submissions with one statement per assignment.
+     * Must run in the transaction that saves the submissions.
+     *
+     * @param changes submissions saved, in any order
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordSubmissions(List<SubmissionChange> changes) {
+        Map<UUID, int[]> totals = new TreeMap<>();
+        for (SubmissionChange change : changes) {
+            if (change.assignmentId() == null) continue;
+            int submitted = change.previousTime() == null ? 1 : 0;
+            int late = (isLate(change.submissionTime(), change.dueDate()) ? 1 : 0)
+                    - (change.previousTime() != null && isLate(change.previousTime(), change.dueDate()) ? 1 : 0);
+            if (submitted == 0 && late == 0) continue;
+            int[] total = totals.computeIfAbsent(change.assignmentId(), id -> new int[2]);
+            total[0] += submitted;
+            total[1] += late;
+        }
+        totals.forEach((assignmentId, total) -> adjust(assignmentId, total[0], 0, total[1], 0, 0));
+    }
+
+    /**
+     * Moves a submission's grade in the statistics from its previous value to its new one.
+     * Must run in the transaction that saves the grade.
+     *
+     * @param assignmentId assignment id
+     * @param previous grade before the change, or null when the submission was not graded
+     * @param current grade after the change
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordGrade(UUID assignmentId, GradeValue previous, GradeValue current) {
+        recordGrades(List.of(new GradeChange(assignmentId, previous, current)));
+    }
+
+    /**
+     * Applies a set of grade changes with one statement per assignment and one batch per
+     * kind of histogram change, whatever the number of grades.
+     * Must run in the transaction that saves the grades.
+     *
+     * @param changes grade changes, in any order
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordGrades(List<GradeChange> changes) {
+        // Sorted so concurrent batches lock the stats rows of several assignments in the same order
+        Map<UUID, long[]> totals = new TreeMap<>();
+        Map<MarkBucket, Integer> buckets = new LinkedHashMap<>();
+        for (GradeChange change : changes) {
+            GradeValue before = change.previous() == null ? GradeValue.NONE : change.previous();
+            GradeValue after = change.current() == null ? GradeValue.NONE : change.current();
+            if (change.assignmentId() == null || before.equals(after)) continue;
+
+            long[] total = totals.computeIfAbsent(change.assignmentId(), id -> new long[3]);
+            total[0] += (after.isGraded() ? 1 : 0) - (before.isGraded() ? 1 : 0);
+            total[1] += (after.marks() != null ? 1 : 0) - (before.marks() != null ? 1 : 0);
+            total[2] += (after.marks() != null ? after.marks() : 0L) - (before.marks() != null ? before.marks() : 0L);
+            if (before.marks() != null) {
+                buckets.merge(new MarkBucket(change.assignmentId(), before.marks()), -1, Integer::sum);
+            }
+            if (after.marks() != null) {
+                buckets.merge(new MarkBucket(change.assignmentId(), after.marks()), 1, Integer::sum);
+            }
+        }
+        totals.forEach((assignmentId, total) ->
+                adjust(assignmentId, 0, (int) total[0], 0, (int) total[1], total[2]));
+
+        List<Object[]> removed = new ArrayList<>();
+        List<Object[]> added = new ArrayList<>();
+        buckets.forEach((bucket, delta) -> {
+            if (delta < 0) removed.add(new Object[] {bucket.assignmentId(), bucket.marks(), -delta});
+            if (delta > 0) added.add(new Object[] {bucket.assignmentId(), bucket.marks(), delta});
+        });
+        if (!removed.isEmpty()) {
+            // Buckets that would reach zero are deleted rather than updated, as a bucket is never empty
+            jdbcTemplate.batchUpdate("""
+                    DELETE FROM assignment_mark_counts
+                    WHERE assignment_id = ? AND marks = ? AND submissions <= ?
+                    """, removed);
+            jdbcTemplate.batchUpdate("""
+                    UPDATE assignment_mark_counts
+                    SET submissions = submissions - ?
+                    WHERE assignment_id = ? AND marks = ? AND submissions > ?
+                    """, removed.stream()
+                    .map(row -> new Object[] {row[2], row[0], row[1], row[2]})
+                    .toList());
+        }
+        if (!added.isEmpty()) {
+            int[] updated = jdbcTemplate.batchUpdate("""
+                    UPDATE assignment_mark_counts
+                    SET submissions = submissions + ?
+                    WHERE assignment_id = ? AND marks = ?
+                    """, added.stream()
+                    .map(row -> new Object[] {row[2], row[0], row[1]})
+                    .toList());
+            List<Object[]> missing = new ArrayList<>();
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] == 0) missing.add(added.get(i));
+            }
+            if (!missing.isEmpty()) {
+                jdbcTemplate.batchUpdate(
+                        "INSERT INTO assignment_mark_counts (assignment_id, marks, submissions) VALUES (?, ?, ?)",
+                        missing);
+            }
+        }
+    }
+
+    /**
+     * Loads the statistics of every assignment in a classroom.
+     *
+     * @param classId classroom id
+     * @return statistics by assignment id; assignments without statistics yet are absent
+     */
+    @Transactional(readOnly = true)
+    public Map<UUID, Stats> getStatsForClassroom(UUID classId) {
+        if (classId == null) return Map.of();
+
+        Map<UUID, List<int[]>> histograms = new HashMap<>();
+        jdbcTemplate.query("""
+                SELECT m.assignment_id, m.marks, m.submissions
+                FROM assignment_mark_counts m
+                JOIN assignments a ON a.assignment_id = m.assignment_id
+                WHERE a.class_id = ?
+                ORDER BY m.assignment_id, m.marks
+                """, rs -> {
+            histograms.computeIfAbsent(SqlValues.toUuid(rs.getObject("assignment_id")), id -> new ArrayList<>())
+                    .add(new int[] {rs.getInt("marks"), rs.getInt("submissions")});
+        }, classId);
+
+        Map<UUID, Stats> stats = new HashMap<>();
+        jdbcTemplate.query("""
+                SELECT st.assignment_id, st.submitted_count, st.graded_count, st.late_count,
+                       st.marks_count, st.marks_sum
+                FROM assignment_stats st
+                JOIN assignments a ON a.assignment_id = st.assignment_id
+                WHERE a.class_id = ?
+                """, rs -> {
+            UUID assignmentId = SqlValues.toUuid(rs.getObject("assignment_id"));
+            int marksCount = rs.getInt("marks_count");
+            stats.put(assignmentId, new Stats(rs.getInt("submitted_count"), rs.getInt("graded_count"),
+                    rs.getInt("late_count"), marksCount,
+                    marksCount == 0 ? null : (double) rs.getLong("marks_sum") / marksCount,
+                    median(histograms.getOrDefault(assignmentId, List.of()), marksCount)));
+        }, classId);
+        return stats;
+    }
+
+    /**
+     * Recomputes the statistics of every assignment from its submissions and grades.
+     *
+     * @return number of assignments whose statistics had drifted
+     */
+    @Scheduled(fixedDelayString = "${assignments.stats.rebuild-interval:24h}",
+            initialDelayString = "${assignments.stats.rebuild-initial-delay:2h}")
+    public int rebuildAll() {
+        int repaired = 0;
+        UUID after = null;
+        try {
+            while (true) {
+                List<UUID> page = after == null
+                        ? jdbcTemplate.query("SELECT assignment_id FROM assignments ORDER BY assignment_id LIMIT ?",
+                                (rs, rowNum) -> SqlValues.toUuid(rs.getObject(1)), batchSize)
+                        : jdbcTemplate.query("""
+                                SELECT assignment_id FROM assignments
+                                WHERE assignment_id > ?
+                                ORDER BY assignment_id
+                                LIMIT ?
+                                """, (rs, rowNum) -> SqlValues.toUuid(rs.getObject(1)), after, batchSize);
+                for (UUID assignmentId : page) {
+                    if (Boolean.TRUE.equals(transactionTemplate.execute(status -> rebuild(assignmentId)))) {
+                        repairedAssignments.increment();
+                        repaired++;
+                    }
+                }
+                if (page.size() < batchSize) break;
+                after = page.get(page.size() - 1);
+            }
+        } catch (RuntimeException ex) {
+            log.error("Assignment statistics rebuild stopped early", ex);
+        }
+        if (repaired > 0) {
+            log.warn("Repaired statistics of {} assignments", repaired);
+        }
+        return repaired;
+    }
+
+    /**
+     * Recomputes one assignment's statistics from its submissions and grades, for example
+     * after its due date changed.
+     *
+     * @param assignmentId assignment id
+     * @return true when the stored statistics differed
+     */
+    @Transactional
+    public boolean rebuild(UUID assignmentId) {
+        Timestamp now = Timestamp.from(Instant.now());
+        ensureRow(assignmentId, now);
+        // Locks the row first, so submissions and grades counted meanwhile wait for this rebuild
+        // and the reads below see every one that was counted before it.
+        List<Map<String, Object>> stored = jdbcTemplate.queryForList("""
+                SELECT submitted_count, graded_count, late_count, marks_count, marks_sum
+                FROM assignment_stats
+                WHERE assignment_id = ?
+                FOR UPDATE
+                """, assignmentId);
+        Map<String, Object> actual = jdbcTemplate.queryForMap("""
+                SELECT COUNT(*) AS submitted_count,
+                       COUNT(CASE WHEN g.marks_scored IS NOT NULL OR g.feedback IS NOT NULL THEN 1 END) AS graded_count,
+                       COUNT(CASE WHEN a.due_date IS NOT NULL AND s.submission_time > a.due_date THEN 1 END) AS late_count,
+                       COUNT(g.marks_scored) AS marks_count,
+                       COALESCE(SUM(g.marks_scored), 0) AS marks_sum
+                FROM assignment_submissions s
+                JOIN assignments a ON a.assignment_id = s.assignment_id
+                LEFT JOIN grades g ON g.submission_id = s.submission_id
+                WHERE s.assignment_id = ?
+                """, assignmentId);
+        List<Map<String, Object>> storedMarks = jdbcTemplate.queryForList("""
+                SELECT marks, submissions
+                FROM assignment_mark_counts
+                WHERE assignment_id = ?
+                ORDER BY marks
+                """, assignmentId);
+        List<Map<String, Object>> actualMarks = jdbcTemplate.queryForList("""
+                SELECT g.marks_scored AS marks, COUNT(*) AS submissions
+                FROM assignment_submissions s
+                JOIN grades g ON g.submission_id = s.submission_id
+                WHERE s.assignment_id = ? AND g.marks_scored IS NOT NULL
+                GROUP BY g.marks_scored
+                ORDER BY g.marks_scored
+                """, assignmentId);
+
+        boolean drifted = stored.isEmpty() || !sameNumbers(stored.get(0), actual) || !sameRows(storedMarks, actualMarks);
+        if (!drifted) return false;
+
+        jdbcTemplate.update("""
+                UPDATE assignment_stats
+                SET submitted_count = ?, graded_count = ?, late_count = ?, marks_count = ?, marks_sum = ?, updated_at = ?
+                WHERE assignment_id = ?
+                """, number(actual, "submitted_count"), number(actual, "graded_count"), number(actual, "late_count"),
+                number(actual, "marks_count"), number(actual, "marks_sum"), now, assignmentId);
+        jdbcTemplate.update("DELETE FROM assignment_mark_counts WHERE assignment_id = ?", assignmentId);
+        List<Object[]> rows = new ArrayList<>(actualMarks.size());
+        for (Map<String, Object> row : actualMarks) {
+            rows.add(new Object[] {assignmentId, number(row, "marks"), number(row, "submissions")});
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO assignment_mark_counts (assignment_id, marks, submissions) VALUES (?, ?, ?)", rows);
+        return true;
+    }
+
+    private void adjust(UUID assignmentId, int submitted, int graded, int late, int marks, long sum) {
+        Timestamp now = Timestamp.from(Instant.now());
+        String sql = """
+                UPDATE assignment_stats
+                SET submitted_count = submitted_count + ?,
+                    graded_count = graded_count + ?,
+                    late_count = late_count + ?,
+                    marks_count = marks_count + ?,
+                    marks_sum = marks_sum + ?,
+                    updated_at = ?
+                WHERE assignment_id = ?
+                """;
+        if (jdbcTemplate.update(sql, submitted, graded, late, marks, sum, now, assignmentId) == 0) {
+            ensureRow(assignmentId, now);
+            jdbcTemplate.update(sql, submitted, graded, late, marks, sum, now, assignmentId);
+        }
+    }
+
+    private void ensureRow(UUID assignmentId, Timestamp now) {
+        jdbcTemplate.update("""
+                INSERT INTO assignment_stats (assignment_id, submitted_count, graded_count, late_count,
+                                              marks_count, marks_sum, updated_at)
+                VALUES (?, 0, 0, 0, 0, 0, ?)
+                ON CONFLICT DO NOTHING
+                """, assignmentId, now);
+    }
+
+    private static boolean isLate(Instant submissionTime, Instant dueDate) {
+        return submissionTime != null && dueDate != null && submissionTime.isAfter(dueDate);
+    }
+
+    /**
+     * Reads the median from a histogram ordered by mark.
+     *
+     * @param histogram pairs of mark and number of submissions, lowest mark first
+     * @param count number of marked submissions
+     * @return median mark, or null when nothing is marked
+     */
+    private static Double median(List<int[]> histogram, int count) {
+        if (count <= 0 || histogram.isEmpty()) return null;
+        int lowerRank = (count + 1) / 2;
+        int upperRank = count / 2 + 1;
+        Integer lower = null;
+        int seen = 0;
+        for (int[] bucket : histogram) {
+            seen += bucket[1];
+            if (lower == null && seen >= lowerRank) {
+                lower = bucket[0];
+            }
+            if (seen >= upperRank) {
+                return (lower + bucket[0]) / 2.0;
+            }
+        }
+        return lower == null ? null : lower.doubleValue();
+    }
+
+    private static boolean sameNumbers(Map<String, Object> stored, Map<String, Object> actual) {
+        for (String column : actual.keySet()) {
+            if (number(stored, column) != number(actual, column)) return false;
+        }
+        return true;
+    }
+
+    private static boolean sameRows(List<Map<String, Object>> stored, List<Map<String, Object>> actual) {
+        if (stored.size() != actual.size()) return false;
+        for (int i = 0; i < stored.size(); i++) {
+            if (!sameNumbers(stored.get(i), actual.get(i))) return false;
+        }
+        return true;
+    }
+
+    private static long number(Map<String, Object> row, String column) {
+        Object value = row.get(column);
+        return value == null ? 0 : ((Number) value).longValue();
+    }
+
+    /**
+     * Grade of one submission as it affects the statistics.
+     *
+     * @param marks marks awarded, or null
+     * @param hasFeedback whether feedback was given
+     */
+    public record GradeValue(Integer marks, boolean hasFeedback) {
+
+        static final GradeValue NONE = new GradeValue(null, false);
+
+        /**
+         * Returns whether the submission counts as graded, as on the review cards.
+         *
+         * @return true when marks or feedback were given
+         */
+        public boolean isGraded() {
+            return marks != null || hasFeedback;
+        }
+    }
+
+    /**
+     * One submission saved, with the times that decide whether it counts as late.
+     *
+     * @param assignmentId assignment id
+     * @param dueDate assignment due date, or null
+     * @param previousTime submission time before this submission, or null for a new submission
+     * @param submissionTime submission time now recorded
+     */
+    public record SubmissionChange(UUID assignmentId, Instant dueDate, Instant previousTime, Instant submissionTime) {
+    }
+
+    /**
+     * One submission's grade before and after a change.
+     *
+     * @param assignmentId assignment the submission belongs to
+     * @param previous grade before the change, or null when the submission was not graded
+     * @param current grade after the change
+     */
+    public record GradeChange(UUID assignmentId, GradeValue previous, GradeValue current) {
+    }
+
+    private record MarkBucket(UUID assignmentId, int marks) {
+    }
+
+    /**
+     * Statistics of one assignment.
+     *
+     * @param submittedCount number of submissions
+     * @param gradedCount number of submissions with marks or feedback
+     * @param lateCount number of submissions made after the due date
+     * @param marksCount number of submissions with marks
+     * @param meanMarks mean of the marks, or null when nothing is marked
+     * @param medianMarks median of the marks, or null when nothing is marked
+     */
+    public record Stats(int submittedCount,
+                        int gradedCount,
+                        int lateCount,
+                        int marksCount,
+                        Double meanMarks,
+                        Double medianMarks) {
+    }
+}
@@ -3,17 +3,30 @@ package com.binder.demo.services;
 import com.binder.demo.attachments.Attachment;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
 
 import com.binder.demo.attachments.AttachmentType;
 
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.net.URI;
 import java.net.URLDecoder;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Instant;
 import java.util.Locale;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.regex.Pattern;
 
@@ -26,18 +39,65 @@ public class AttachmentService {
     private static final Pattern PATH_TRAVERSAL = Pattern.compile("(^|[\\\\/])\\.\\.([\\\\/]|$)");
     private static final int MAX_URL_LENGTH = 2048;
 
+    /**
+     * Compressed formats that {@link #isCompressedFormat(String, String)} cannot tell from the type family alone.
+     */
+    private static final Set<String> COMPRESSED_TYPES = Set.of(
+            "application/pdf",
+            "application/zip",
+            "application/gzip",
+            "application/x-7z-compressed",
+            "application/vnd.rar",
+            "application/epub+zip",
+            "application/msword",
+            "application/vnd.ms-excel",
+            "application/vnd.ms-powerpoint");
+
     /**
      * JPA entity manager used for attachment persistence and queries.
      */
     @PersistenceContext
     private EntityManager em;
 
+    /**
+     * Blob store holding the reference counts for stored files.
+     */
+    private final BlobStore blobStore;
+
+    /**
+     * Renders thumbnails and previews of uploaded images.
+     */
+    private final RenditionService renditionService;
+
+    /**
+     * Per-user and per-classroom totals of stored bytes, checked against the quotas.
+     */
+    private final StorageUsageService usageService;
+
+    /**
+     * Largest accepted upload in bytes.
+     */
+    private final long maxUploadBytes;
+
+    public AttachmentService(BlobStore blobStore,
+                             RenditionService renditionService,
+                             StorageUsageService usageService,
+                             @Value("${attachments.upload.max-size:50MB}") DataSize maxUploadSize) {
+        this.blobStore = blobStore;
+        this.renditionService = renditionService;
+        this.usageService = usageService;
+        this.maxUploadBytes = maxUploadSize.toBytes();
+    }
+
     /**
      * Persists a new attachment after validation and populating missing fields.
-     * Generates an attachment ID and upload timestamp when absent.
+     * Generates an attachment ID and upload timestamp when absent, adds stored files to the
+     * storage usage of their owner and classroom, and takes a reference on the stored blob
+     * when the attachment points at one.
      *
      * @param attachment attachment to persist
      * @return persisted attachment
+     * @throws UploadRejectedException when a stored file would exceed a storage quota
      */
     @Transactional
     public Attachment upload(Attachment attachment) {
@@ -48,10 +108,172 @@ public class AttachmentService {
         if (attachment.getUploadedAt() == null) {
             attachment.setUploadedAt(Instant.now());
         }
+        addUsage(attachment);
         em.persist(attachment);
+        retainBlob(attachment);
         return attachment;
     }
 
+    /**
+     * Stages an uploaded file: copies and hashes it locally without touching the database,
+     * so it can run before a transaction starts. Pass the result to
+     * {@link #upload(StagedUpload, UUID, UUID)}, or to {@link #discard(StagedUpload)} when it is not needed.
+     *
+     * @param file uploaded file
+     * @return staged upload
+     * @throws IOException when the upload cannot be read or staged
+     * @throws UploadRejectedException when the file is empty, too large or of a type that is not accepted
+     */
+    public StagedUpload stage(MultipartFile file) throws IOException {
+        try (InputStream input = file.getInputStream()) {
+            return stage(input, file.getOriginalFilename(), file.getContentType(), file.getSize(), null);
+        }
+    }
+
+    /**
+     * Stages an upload read directly from a request body. The content type is taken from the
+     * first block of bytes rather than from the client, oversized bodies are refused as soon as
+     * the limit is known or reached, and the SHA-256 is computed while the body is copied.
+     *
+     * @param input upload content
+     * @param originalName filename supplied by the client
+     * @param declaredType content type supplied by the client, only used to name unnamed files
+     * @param declaredLength length announced by the client, or -1 when unknown
+     * @param expectedSha256 hex digest the client sent with the upload, or null
+     * @return staged upload
+     * @throws IOException when the upload cannot be read or staged
+     * @throws UploadRejectedException when the upload is empty, too large, of a type that is not
+     *                                 accepted, or does not match the expected digest
+     */
+    public StagedUpload stage(InputStream input,
+                              String originalName,
+                              String declaredType,
+                              long declaredLength,
+                              String expectedSha256) throws IOException {
+        if (declaredLength > maxUploadBytes) {
+            throw tooLarge();
+        }
+        String displayName = displayName(originalName, declaredType);
+        byte[] head = input.readNBytes(ContentSniffer.HEAD_SIZE);
+        String contentType = contentType(head, head.length, head.length < ContentSniffer.HEAD_SIZE, displayName);
+
+        InputStream body = new SizeLimitedInputStream(
+                new SequenceInputStream(new ByteArrayInputStream(head), input), maxUploadBytes);
+        BlobStore.StagedBlob blob = blobStore.stage(body);
+        if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(blob.sha256())) {
+            blobStore.discard(blob);
+            throw new UploadRejectedException(UploadRejectedException.Reason.CHECKSUM_MISMATCH,
+                    "The upload does not match its digest.");
+        }
+        AttachmentType type = contentType.startsWith("image/") ? AttachmentType.IMAGE : AttachmentType.FILE;
+        return new StagedUpload(blob, displayName, type, contentType);
+    }
+
+    /**
+     * Stages a complete upload that was assembled on the local disk, such as a finished
+     * resumable upload. The file is checked like a streamed upload and then moved into
+     * staging instead of being copied.
+     *
+     * @param file assembled upload; moved away when it is accepted
+     * @param originalName filename supplied by the client
+     * @param declaredType content type supplied by the client, only used to name unnamed files
+     * @return staged upload
+     * @throws IOException when the file cannot be read or staged
+     * @throws UploadRejectedException when the file is empty, too large or of a type that is not accepted
+     */
+    public StagedUpload stage(Path file, String originalName, String declaredType) throws IOException {
+        if (Files.size(file) > maxUploadBytes) {
+            throw tooLarge();
+        }
+        String displayName = displayName(originalName, declaredType);
+        byte[] head;
+        try (InputStream input = Files.newInputStream(file)) {
+            head = input.readNBytes(ContentSniffer.HEAD_SIZE);
+        }
+        String contentType = contentType(head, head.length, head.length < ContentSniffer.HEAD_SIZE, displayName);
+        BlobStore.StagedBlob blob = blobStore.adopt(file);
+        AttachmentType type = contentType.startsWith("image/") ? AttachmentType.IMAGE : AttachmentType.FILE;
+        return new StagedUpload(blob, displayName, type, contentType);
+    }
+
+    /**
+     * Checks the leading bytes of an upload that is still arriving, so a file of the wrong
+     * type can be refused before the rest of it is sent.
+     *
+     * @param head leading bytes of the upload
+     * @param length number of valid bytes in {@code head}
+     * @param complete true when {@code head} holds the whole upload
+     * @param originalName filename supplied by the client
+     * @param declaredType content type supplied by the client
+     * @throws UploadRejectedException when the upload is empty or of a type that is not accepted
+     */
+    public void checkUploadHead(byte[] head, int length, boolean complete, String originalName, String declaredType) {
+        contentType(head, length, complete, displayName(originalName, declaredType));
+    }
+
+    /**
+     * Returns the largest accepted upload.
+     *
+     * @return size limit in bytes
+     */
+    public long getMaxUploadBytes() {
+        return maxUploadBytes;
+    }
+
+    /**
+     * Persists an attachment for a staged upload that does not belong to a classroom.
+     *
+     * @param upload staged upload
+     * @param ownerId owning user id
+     * @return persisted attachment
+     * @throws UploadRejectedException when the file would exceed the owner's storage quota
+     * @see #upload(StagedUpload, UUID, UUID)
+     */
+    @Transactional
+    public Attachment upload(StagedUpload upload, UUID ownerId) {
+        return upload(upload, ownerId, null);
+    }
+
+    /**
+     * Persists an attachment for a staged upload and takes a reference on its blob.
+     * The file is counted against the storage quotas of its owner and classroom in the same
+     * transaction, the content is written to storage once that transaction commits, and
+     * renditions of images are rendered after that. When a quota is exceeded the transaction
+     * rolls back and the staged content is dropped without being written.
+     *
+     * @param upload staged upload
+     * @param ownerId owning user id
+     * @param classId classroom the file is uploaded to, or null
+     * @return persisted attachment
+     * @throws UploadRejectedException when the file would exceed a storage quota
+     */
+    @Transactional
+    public Attachment upload(StagedUpload upload, UUID ownerId, UUID classId) {
+        blobStore.commit(upload.blob());
+        Attachment attachment = new Attachment();
+        attachment.setAttachmentType(upload.type());
+        attachment.setUrl(upload.blob().key() + "?name=" + URLEncoder.encode(upload.displayName(), StandardCharsets.UTF_8));
+        attachment.setBlobSha256(upload.blob().sha256());
+        attachment.setContentType(upload.contentType());
+        attachment.setSizeBytes(upload.blob().sizeBytes());
+        attachment.setUserOwner(ownerId);
+        attachment.setClassId(classId);
+        Attachment saved = upload(attachment);
+        if (upload.type() == AttachmentType.IMAGE) {
+            renditionService.renderAfterCommit(upload.blob().sha256());
+        }
+        return saved;
+    }
+
+    /**
+     * Drops a staged upload that will not be saved.
+     *
+     * @param upload staged upload
+     */
+    public void discard(StagedUpload upload) {
+        blobStore.discard(upload.blob());
+    }
+
     /**
      * Retrieves an attachment by ID.
      *
@@ -78,14 +300,17 @@ public class AttachmentService {
                 attachment.setUploadedAt(Instant.now());
             }
             attachment.setAttachmentId(UUID.randomUUID());
+            addUsage(attachment);
             em.persist(attachment);
+            retainBlob(attachment);
             return attachment;
         }
         return em.merge(attachment);
     }
 
     /**
-     * Deletes an attachment if present.
+     * Deletes an attachment if present, takes it off the storage usage of its owner and
+     * classroom, and releases its blob reference.
      *
      * @param attachmentId attachment id to delete
      */
@@ -95,6 +320,24 @@ public class AttachmentService {
         Attachment attachment = em.find(Attachment.class, attachmentId);
         if (attachment != null) {
             em.remove(attachment);
+            if (attachment.getSizeBytes() != null) {
+                usageService.remove(attachment.getUserOwner(), attachment.getClassId(), attachment.getSizeBytes());
+            }
+            if (attachment.getBlobSha256() != null) {
+                blobStore.release(attachment.getBlobSha256());
+            }
+        }
+    }
+
+    private void addUsage(Attachment attachment) {
+        if (attachment.getSizeBytes() != null) {
+            usageService.add(attachment.getUserOwner(), attachment.getClassId(), attachment.getSizeBytes());
+        }
+    }
+
+    private void retainBlob(Attachment attachment) {
+        if (attachment.getBlobSha256() != null) {
+            blobStore.retain(attachment.getBlobSha256());
         }
     }
 
@@ -168,6 +411,49 @@ public class AttachmentService {
         }
     }
 
+    /**
+     * Maps a content type to a safe filename extension.
+     *
+     * @param contentType uploaded content type
+     * @return extension with a leading dot when known, otherwise empty
+     */
+    private static String extensionFromContentType(String contentType) {
+        String type = contentType == null ? "" : contentType.toLowerCase(Locale.ROOT);
+        return switch (type) {
+            case "image/png" -> ".png";
+            case "image/jpeg" -> ".jpg";
+            case "image/gif" -> ".gif";
+            case "image/webp" -> ".webp";
+            case "application/pdf" -> ".pdf";
+            case "text/plain" -> ".txt";
+            default -> "";
+        };
+    }
+
+    /**
+     * Normalizes uploaded filenames for display and download.
+     *
+     * @param originalName raw filename
+     * @param fallback fallback name when missing
+     * @return sanitized filename
+     */
+    private static String safeDisplayName(String originalName, String fallback) {
+        String baseName = Optional.ofNullable(originalName).orElse("");
+        String fileName = baseName.isBlank() ? fallback : Path.of(baseName).getFileName().toString();
+        String sanitized = fileName.replaceAll("[^A-Za-z0-9._-]", "_");
+        while (sanitized.contains("..")) {
+            sanitized = sanitized.replace("..", ".");
+        }
+        sanitized = sanitized.replaceAll("^\\.+", "");
+        if (sanitized.isBlank()) {
+            sanitized = fallback;
+        }
+        if (sanitized.length() > 120) {
+            sanitized = sanitized.substring(0, 120);
+        }
+        return sanitized;
+    }
+
     /**
      * Extracts the filename from a URL or path.
      *
@@ -203,6 +489,34 @@ public class AttachmentService {
         return name.isBlank() ? "attachment" : name;
     }
 
+    /**
+     * Checks whether a file is in a format whose content is already compressed, so
+     * compressing it again costs CPU for little or no gain.
+     *
+     * @param contentType recorded content type, if any
+     * @param filename file name used when no content type is recorded
+     * @return {@code true} for images, audio, video, archives, PDFs and office documents
+     */
+    public static boolean isCompressedFormat(String contentType, String filename) {
+        String type = contentType != null
+                ? contentType
+                : MediaTypeFactory.getMediaType(filename == null ? "" : filename).map(Object::toString).orElse("");
+        type = type.toLowerCase(Locale.ROOT);
+        int params = type.indexOf(';');
+        if (params >= 0) {
+            type = type.substring(0, params).trim();
+        }
+        if (type.equals("image/svg+xml") || type.equals("image/bmp") || type.equals("audio/wav")) {
+            return false;
+        }
+        return type.startsWith("image/")
+                || type.startsWith("audio/")
+                || type.startsWith("video/")
+                || type.startsWith("application/vnd.openxmlformats-officedocument.")
+                || type.startsWith("application/vnd.oasis.opendocument.")
+                || COMPRESSED_TYPES.contains(type);
+    }
+
     private static String queryFilename(String query) {
         if (query == null || query.isBlank()) {
             return null;
@@ -224,4 +538,74 @@ public class AttachmentService {
         }
         return null;
     }
+
+    private static String displayName(String originalName, String declaredType) {
+        return safeDisplayName(originalName,
+                "attachment" + extensionFromContentType(Optional.ofNullable(declaredType).orElse("")));
+    }
+
+    /**
+     * Identifies an upload from its leading bytes.
+     *
+     * @return content type to store
+     * @throws UploadRejectedException when the upload is empty or of a type that is not accepted
+     */
+    private static String contentType(byte[] head, int length, boolean complete, String displayName) {
+        if (length == 0) {
+            throw new UploadRejectedException(UploadRejectedException.Reason.EMPTY, "The upload is empty.");
+        }
+        return ContentSniffer.sniff(head, length, complete, displayName)
+                .orElseThrow(() -> new UploadRejectedException(UploadRejectedException.Reason.UNSUPPORTED_TYPE,
+                        "This file type is not accepted."));
+    }
+
+    private static UploadRejectedException tooLarge() {
+        return new UploadRejectedException(UploadRejectedException.Reason.TOO_LARGE, "The upload is too large.");
+    }
+
+    /**
+     * Fails the copy as soon as more than the allowed number of bytes has been read.
+     */
+    private static final class SizeLimitedInputStream extends FilterInputStream {
+
+        private final long limit;
+        private long count;
+
+        private SizeLimitedInputStream(InputStream input, long limit) {
+            super(input);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) count(read);
+            return read;
+        }
+
+        private void count(int read) {
+            count += read;
+            if (count > limit) {
+                throw tooLarge();
+            }
+        }
+    }
+
+    /**
+     * An uploaded file that has been staged and hashed but not saved yet.
+     *
+     * @param blob staged content
+     * @param displayName sanitized name shown to users
+     * @param type attachment type derived from the content type
+     * @param contentType content type served on download
+     */
+    public record StagedUpload(BlobStore.StagedBlob blob, String displayName, AttachmentType type, String contentType) {
+    }
 }
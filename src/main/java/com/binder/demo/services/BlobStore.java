@@ -0,0 +1,719 @@
+package com.binder.demo.services;
+
+import com.binder.demo.attachments.Rendition;
+import com.binder.demo.attachments.StorageTier;
+import com.binder.demo.storage.AttachmentStorage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed store for uploaded files.
+ * Each upload is hashed with SHA-256 while it is copied to a local staging file, and identical
+ * bytes are kept once under {@code blobs/<first two hex digits>/<sha256>} in the configured
+ * {@link AttachmentStorage}. The staged file is only handed to the storage backend after the
+ * database transaction that references it commits, on a small background pool, so a slow
+ * backend does not hold a database connection and a rollback leaves nothing behind.
+ * Until the backend holds the content, the blob row names the staged file as pending and the
+ * staged copy is served to readers. Writes that fail, that the pool has no room for or that a
+ * restart cuts off stay pending and are picked up by {@link #retryPendingWrites()}, with a
+ * delay that grows with the time the blob has been pending.
+ * Attachment rows hold a reference on the blob they point at; blobs nobody references are
+ * removed by a background sweep once a grace period has passed, together with their renditions.
+ * Blobs that have not been read for a long time are moved by {@link BlobTieringService} to
+ * {@code cold/<first two hex digits>/<sha256>[.gz]}; reads follow the tier recorded on the
+ * blob row and decompress cold objects on the fly.
+ */
+@Service
+public class BlobStore {
+
+    private static final Logger log = LoggerFactory.getLogger(BlobStore.class);
+    private static final Pattern SHA256_HEX = Pattern.compile("^[0-9a-f]{64}$");
+
+    /**
+     * Value of attachment_blobs.compression for gzip-compressed cold objects.
+     */
+    static final String GZIP = "gzip";
+
+    /**
+     * JDBC access to the attachment_blobs table.
+     */
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Runs each garbage collection step in its own transaction.
+     */
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Backend holding the blob content.
+     */
+    private final AttachmentStorage storage;
+
+    /**
+     * Local directory for uploads that have not been handed to the backend yet.
+     */
+    private final Path stagingDir;
+
+    /**
+     * Staged files whose backend write is queued or running in this process.
+     */
+    private final Set<Path> writesInFlight = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Background pool for backend writes; when its queue is full, writes are left to the retry sweep.
+     */
+    private final ThreadPoolExecutor writer;
+
+    /**
+     * Shortest wait before a pending write is retried.
+     */
+    private final Duration retryBackoff;
+
+    /**
+     * Longest wait between retries of a pending write.
+     */
+    private final Duration maxRetryBackoff;
+
+    /**
+     * How long a blob may stay pending without a staged copy on this instance, waiting for
+     * the instance that has one, before it is reported lost.
+     */
+    private final Duration pendingLostAfter;
+
+    /**
+     * Maximum number of pending writes looked at per retry run.
+     */
+    private final int retryBatchSize;
+
+    /**
+     * How long an unreferenced blob is kept before it may be collected.
+     */
+    private final Duration gcGracePeriod;
+
+    /**
+     * Maximum number of blobs removed per collection run.
+     */
+    private final int gcBatchSize;
+
+    private final Timer writeTimer;
+    private final Counter writeFailures;
+    private final Counter writesRejected;
+    private final Counter writesLost;
+    private final Timer hotOpenTimer;
+    private final Timer coldOpenTimer;
+
+    public BlobStore(JdbcTemplate jdbcTemplate,
+                     PlatformTransactionManager transactionManager,
+                     AttachmentStorage storage,
+                     MeterRegistry meterRegistry,
+                     @Value("${attachments.staging-dir:${attachments.storage-dir:uploads}/.staging}") String stagingDir,
+                     @Value("${attachments.storage.write-threads:2}") int writeThreads,
+                     @Value("${attachments.storage.write-queue-capacity:256}") int writeQueueCapacity,
+                     @Value("${attachments.storage.retry-backoff:30s}") Duration retryBackoff,
+                     @Value("${attachments.storage.retry-max-backoff:1h}") Duration maxRetryBackoff,
+                     @Value("${attachments.storage.retry-batch-size:500}") int retryBatchSize,
+                     @Value("${attachments.storage.pending-lost-after:24h}") Duration pendingLostAfter,
+                     @Value("${attachments.blob-gc.grace-period:1h}") Duration gcGracePeriod,
+                     @Value("${attachments.blob-gc.batch-size:500}") int gcBatchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.storage = storage;
+        this.stagingDir = Path.of(stagingDir).toAbsolutePath().normalize();
+        this.gcGracePeriod = gcGracePeriod;
+        this.gcBatchSize = Math.max(1, gcBatchSize);
+        this.retryBackoff = retryBackoff;
+        this.maxRetryBackoff = maxRetryBackoff.compareTo(retryBackoff) < 0 ? retryBackoff : maxRetryBackoff;
+        this.retryBatchSize = Math.max(1, retryBatchSize);
+        this.pendingLostAfter = pendingLostAfter;
+
+        int threads = Math.max(1, writeThreads);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.writer = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, writeQueueCapacity)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "attachment-writer-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.writer.allowCoreThreadTimeOut(true);
+
+        this.writeTimer = Timer.builder("attachments.storage.write")
+                .description("Time spent writing a staged blob to the storage backend")
+                .register(meterRegistry);
+        this.writeFailures = Counter.builder("attachments.storage.write.failures")
+                .description("Staged blobs that could not be written to the storage backend")
+                .register(meterRegistry);
+        this.writesRejected = Counter.builder("attachments.storage.write.rejected")
+                .description("Blob writes left to the retry sweep because the writer queue was full")
+                .register(meterRegistry);
+        this.writesLost = Counter.builder("attachments.storage.write.lost")
+                .description("Pending blobs given up because neither a staged copy nor the stored content was found")
+                .register(meterRegistry);
+        Gauge.builder("attachments.storage.pending", writesInFlight, Set::size)
+                .description("Staged blobs being written to the storage backend by this instance")
+                .register(meterRegistry);
+        this.hotOpenTimer = openTimer(meterRegistry, StorageTier.HOT);
+        this.coldOpenTimer = openTimer(meterRegistry, StorageTier.COLD);
+    }
+
+    /**
+     * Copies an upload to a local staging file, hashing it on the way. Touches neither the
+     * database nor the storage backend, so it can run outside a transaction.
+     *
+     * @param input upload content; not closed by this method
+     * @return staged blob
+     * @throws IOException when the upload cannot be read or written
+     */
+    public StagedBlob stage(InputStream input) throws IOException {
+        Files.createDirectories(stagingDir);
+        Path temp = Files.createTempFile(stagingDir, "upload-", ".part");
+        try {
+            MessageDigest digest = sha256();
+            long size;
+            try (DigestInputStream hashing = new DigestInputStream(input, digest);
+                 OutputStream output = Files.newOutputStream(temp)) {
+                size = hashing.transferTo(output);
+            }
+            return new StagedBlob(HexFormat.of().formatHex(digest.digest()), size, temp);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(temp);
+            throw ex;
+        }
+    }
+
+    /**
+     * Stages a file that was already assembled on the local disk, such as a finished
+     * resumable upload. The file is moved into the staging directory, so it must be on the
+     * same file system, and hashed there without copying its content.
+     *
+     * @param file complete upload; no longer exists at this path afterwards
+     * @return staged blob
+     * @throws IOException when the file cannot be moved or read
+     */
+    public StagedBlob adopt(Path file) throws IOException {
+        Files.createDirectories(stagingDir);
+        Path temp = Files.createTempFile(stagingDir, "upload-", ".part");
+        try {
+            Files.move(file, temp, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            MessageDigest digest = sha256();
+            long size;
+            try (InputStream input = new DigestInputStream(Files.newInputStream(temp), digest)) {
+                size = input.transferTo(OutputStream.nullOutputStream());
+            }
+            return new StagedBlob(HexFormat.of().formatHex(digest.digest()), size, temp);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(temp);
+            throw ex;
+        }
+    }
+
+    /**
+     * Registers a staged blob in the current transaction, records the staged file as pending
+     * and schedules the backend write for after it commits. On rollback the staged file is
+     * deleted instead. Without an active transaction the write is scheduled immediately.
+     * The blob starts without references; call {@link #retain(String)} in the same transaction.
+     *
+     * @param blob staged blob
+     */
+    public void commit(StagedBlob blob) {
+        touch(blob.sha256(), blob.sizeBytes());
+        markPending(blob);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            scheduleWrite(blob);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    scheduleWrite(blob);
+                } else {
+                    discard(blob);
+                }
+            }
+        });
+    }
+
+    /**
+     * Deletes a staged file that will not be committed.
+     *
+     * @param blob staged blob
+     */
+    public void discard(StagedBlob blob) {
+        try {
+            Files.deleteIfExists(blob.file());
+        } catch (IOException ex) {
+            log.warn("Could not delete staged upload {}", blob.file(), ex);
+        }
+    }
+
+    /**
+     * Adds a reference to a blob. Runs in the caller's transaction.
+     *
+     * @param sha256 blob hash
+     * @throws IllegalStateException when the blob no longer exists
+     */
+    public void retain(String sha256) {
+        int updated = jdbcTemplate.update("""
+                UPDATE attachment_blobs
+                SET ref_count = ref_count + 1, updated_at = ?
+                WHERE sha256 = ?
+                """, Timestamp.from(Instant.now()), sha256);
+        if (updated == 0) {
+            throw new IllegalStateException("Blob " + sha256 + " does not exist.");
+        }
+    }
+
+    /**
+     * Drops a reference to a blob. Runs in the caller's transaction.
+     * The content stays in storage until the collector removes it.
+     *
+     * @param sha256 blob hash
+     */
+    public void release(String sha256) {
+        jdbcTemplate.update("""
+                UPDATE attachment_blobs
+                SET ref_count = ref_count - 1, updated_at = ?
+                WHERE sha256 = ? AND ref_count > 0
+                """, Timestamp.from(Instant.now()), sha256);
+    }
+
+    /**
+     * Returns the content of a blob, from its staging file while the backend write is pending
+     * and otherwise from the tier recorded on its row. Cold blobs stored compressed are
+     * decompressed while they are read and report their original length.
+     *
+     * @param sha256 blob hash
+     * @return blob resource; check {@link Resource#exists()} before reading
+     * @throws IOException when the hash is malformed
+     */
+    public Resource resource(String sha256) throws IOException {
+        String key = keyFor(sha256);
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList("""
+                SELECT storage_tier, compression, size_bytes, pending_file
+                FROM attachment_blobs
+                WHERE sha256 = ?
+                """, sha256);
+        Map<String, Object> row = rows.isEmpty() ? Map.of() : rows.get(0);
+        Path pending = stagedFile((String) row.get("pending_file"));
+        if (pending != null && Files.isRegularFile(pending)) {
+            return new FileSystemResource(pending);
+        }
+        if (StorageTier.COLD.name().equals(row.get("storage_tier"))) {
+            boolean gzip = GZIP.equals(row.get("compression"));
+            long sizeBytes = ((Number) row.get("size_bytes")).longValue();
+            return new TieredBlobResource(storage.resource(coldKeyFor(sha256, gzip)), StorageTier.COLD, gzip,
+                    sizeBytes, coldOpenTimer);
+        }
+        return new TieredBlobResource(storage.resource(key), StorageTier.HOT, false, -1, hotOpenTimer);
+    }
+
+    /**
+     * Builds the storage key of a blob.
+     *
+     * @param sha256 blob hash
+     * @return storage key, also used as the attachment URL path
+     * @throws IllegalArgumentException when the hash is malformed
+     */
+    public static String keyFor(String sha256) {
+        if (sha256 == null || !SHA256_HEX.matcher(sha256).matches()) {
+            throw new IllegalArgumentException("Invalid blob hash.");
+        }
+        return "blobs/" + sha256.substring(0, 2) + "/" + sha256;
+    }
+
+    /**
+     * Builds the storage key of a blob in the cold tier.
+     *
+     * @param sha256 blob hash
+     * @param gzip whether the cold object is gzip-compressed
+     * @return storage key
+     * @throws IllegalArgumentException when the hash is malformed
+     */
+    public static String coldKeyFor(String sha256, boolean gzip) {
+        return "cold/" + keyFor(sha256).substring("blobs/".length()) + (gzip ? ".gz" : "");
+    }
+
+    /**
+     * Builds the storage key of a rendition, which sits next to its original blob.
+     *
+     * @param sha256 hash of the original blob
+     * @param rendition rendition size
+     * @return storage key
+     * @throws IllegalArgumentException when the hash is malformed
+     */
+    public static String renditionKeyFor(String sha256, Rendition rendition) {
+        return keyFor(sha256) + "." + rendition.name().toLowerCase(Locale.ROOT) + ".jpg";
+    }
+
+    /**
+     * Removes blobs that have had no references for longer than the grace period.
+     * Blobs still waiting for their backend write are left until it is done.
+     * Each blob is locked, re-checked and deleted in its own short transaction.
+     */
+    @Scheduled(fixedDelayString = "${attachments.blob-gc.interval:1h}",
+            initialDelayString = "${attachments.blob-gc.initial-delay:10m}")
+    public void collectGarbage() {
+        Timestamp cutoff = Timestamp.from(Instant.now().minus(gcGracePeriod));
+        List<String> candidates = jdbcTemplate.queryForList("""
+                SELECT sha256
+                FROM attachment_blobs
+                WHERE ref_count = 0 AND updated_at < ? AND pending_file IS NULL
+                ORDER BY updated_at
+                LIMIT ?
+                """, String.class, cutoff, gcBatchSize);
+
+        long blobsFreed = 0;
+        long bytesFreed = 0;
+        for (String sha256 : candidates) {
+            try {
+                Long size = transactionTemplate.execute(status -> collect(sha256, cutoff));
+                if (size != null) {
+                    blobsFreed++;
+                    bytesFreed += size;
+                }
+            } catch (RuntimeException ex) {
+                log.warn("Could not collect blob {}", sha256, ex);
+            }
+        }
+        if (blobsFreed > 0) {
+            log.info("Blob garbage collection freed {} blobs ({} bytes)", blobsFreed, bytesFreed);
+        }
+    }
+
+    /**
+     * Deletes one unreferenced blob if it is still eligible once locked.
+     *
+     * @param sha256 blob hash
+     * @param cutoff latest updated_at that may be collected
+     * @return bytes freed, or null when the blob was skipped
+     */
+    private Long collect(String sha256, Timestamp cutoff) {
+        List<Long> locked = jdbcTemplate.queryForList("""
+                SELECT size_bytes
+                FROM attachment_blobs
+                WHERE sha256 = ? AND ref_count = 0 AND updated_at < ? AND pending_file IS NULL
+                FOR UPDATE
+                """, Long.class, sha256, cutoff);
+        if (locked.isEmpty()) return null;
+
+        jdbcTemplate.update("DELETE FROM attachment_blobs WHERE sha256 = ?", sha256);
+        try {
+            // Deleting the content before commit keeps the row lock until it is gone, so a
+            // concurrent upload of the same content re-creates both.
+            storage.delete(keyFor(sha256));
+            storage.delete(coldKeyFor(sha256, false));
+            storage.delete(coldKeyFor(sha256, true));
+            for (Rendition rendition : Rendition.values()) {
+                storage.delete(renditionKeyFor(sha256, rendition));
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not delete blob " + sha256, ex);
+        }
+        return locked.get(0);
+    }
+
+    /**
+     * Inserts the blob row, or refreshes updated_at when it already exists.
+     * An upload counts as an access, so re-uploaded content is not moved to the cold tier.
+     */
+    private void touch(String sha256, long size) {
+        Timestamp now = Timestamp.from(Instant.now());
+        int updated = jdbcTemplate.update(
+                "UPDATE attachment_blobs SET updated_at = ?, last_accessed_at = ? WHERE sha256 = ?", now, now, sha256);
+        if (updated > 0) return;
+        int inserted = jdbcTemplate.update("""
+                INSERT INTO attachment_blobs (sha256, size_bytes, ref_count, created_at, updated_at,
+                                              last_accessed_at, storage_tier)
+                VALUES (?, ?, 0, ?, ?, ?, 'HOT')
+                ON CONFLICT DO NOTHING
+                """, sha256, size, now, now, now);
+        if (inserted == 0) {
+            jdbcTemplate.update("UPDATE attachment_blobs SET updated_at = ?, last_accessed_at = ? WHERE sha256 = ?",
+                    now, now, sha256);
+        }
+    }
+
+    /**
+     * Moves a cold blob back to the hot tier once its hot copy has been written again,
+     * which happens when the same content is uploaded anew.
+     */
+    private void promote(String sha256) {
+        int promoted = jdbcTemplate.update("""
+                UPDATE attachment_blobs
+                SET storage_tier = 'HOT', compression = NULL, stored_bytes = NULL
+                WHERE sha256 = ? AND storage_tier = 'COLD'
+                """, sha256);
+        if (promoted == 0) return;
+        try {
+            storage.delete(coldKeyFor(sha256, false));
+            storage.delete(coldKeyFor(sha256, true));
+        } catch (IOException ex) {
+            log.warn("Could not delete cold copy of re-uploaded blob {}", sha256, ex);
+        }
+    }
+
+    /**
+     * Writes pending blobs whose retry is due: writes that failed, that the writer queue had
+     * no room for, or that a restart cut off, which is why the first run follows start-up
+     * closely. A pending blob whose staged file is not on this instance is left to the
+     * instance that staged it, unless the backend already holds the content or the blob has
+     * been pending for longer than {@code attachments.storage.pending-lost-after}.
+     *
+     * @return number of writes scheduled
+     */
+    @Scheduled(fixedDelayString = "${attachments.storage.retry-interval:1m}",
+            initialDelayString = "${attachments.storage.retry-initial-delay:30s}")
+    public int retryPendingWrites() {
+        Instant now = Instant.now();
+        List<Map<String, Object>> due = jdbcTemplate.queryForList("""
+                SELECT sha256, size_bytes, pending_file, pending_since
+                FROM attachment_blobs
+                WHERE pending_file IS NOT NULL AND next_write_at <= ?
+                ORDER BY next_write_at
+                LIMIT ?
+                """, Timestamp.from(now), retryBatchSize);
+
+        int scheduled = 0;
+        for (Map<String, Object> row : due) {
+            String sha256 = (String) row.get("sha256");
+            String pendingFile = (String) row.get("pending_file");
+            Path file = stagedFile(pendingFile);
+            if (file != null && writesInFlight.contains(file)) continue;
+            try {
+                if (file != null && Files.isRegularFile(file)) {
+                    long size = ((Number) row.get("size_bytes")).longValue();
+                    if (scheduleWrite(new StagedBlob(sha256, size, file))) scheduled++;
+                } else if (storage.exists(keyFor(sha256))) {
+                    clearPending(sha256, pendingFile);
+                } else if (((Timestamp) row.get("pending_since")).toInstant().isBefore(now.minus(pendingLostAfter))) {
+                    writesLost.increment();
+                    log.error("Giving up on blob {}: staged copy {} is gone and the content was never stored",
+                            sha256, pendingFile);
+                    clearPending(sha256, pendingFile);
+                } else {
+                    postpone(sha256, pendingFile);
+                }
+            } catch (IOException | RuntimeException ex) {
+                log.warn("Could not retry the write of blob {}", sha256, ex);
+            }
+        }
+        if (scheduled > 0) {
+            log.info("Retrying {} pending blob writes", scheduled);
+        }
+        return scheduled;
+    }
+
+    /**
+     * Records a staged file as the pending copy of its blob, in the caller's transaction.
+     * When an earlier upload of the same content is still pending, its staged file is kept as
+     * the pending copy and this one is only written if it gets there first.
+     * next_write_at starts one backoff away, so the retry sweep leaves the blob to the write
+     * scheduled after commit.
+     */
+    private void markPending(StagedBlob blob) {
+        Timestamp now = Timestamp.from(Instant.now());
+        jdbcTemplate.update("""
+                UPDATE attachment_blobs
+                SET pending_file = COALESCE(pending_file, ?),
+                    pending_since = COALESCE(pending_since, ?),
+                    next_write_at = COALESCE(next_write_at, ?)
+                WHERE sha256 = ?
+                """, pendingName(blob.file()), now, Timestamp.from(now.toInstant().plus(retryBackoff)), blob.sha256());
+    }
+
+    /**
+     * Queues the backend write of a staged blob. When the queue is full the write is left to
+     * {@link #retryPendingWrites()} instead of running on the caller, which is usually a
+     * request thread finishing its transaction.
+     *
+     * @return whether the write was queued
+     */
+    private boolean scheduleWrite(StagedBlob blob) {
+        if (!writesInFlight.add(blob.file())) return false;
+        try {
+            writer.execute(() -> write(blob));
+            return true;
+        } catch (RejectedExecutionException ex) {
+            writesInFlight.remove(blob.file());
+            writesRejected.increment();
+            log.warn("Blob writer queue is full; blob {} is left to the retry sweep", blob.sha256());
+            return false;
+        }
+    }
+
+    /**
+     * Hands a staged file to the backend unless the content is already stored, then clears
+     * the blob's pending state. On failure the staged copy is kept, and keeps being served,
+     * and the next attempt is scheduled on the blob row, so no upload is lost.
+     */
+    private void write(StagedBlob blob) {
+        String key = keyFor(blob.sha256());
+        String pendingFile = pendingName(blob.file());
+        Timer.Sample sample = Timer.start();
+        try {
+            if (storage.exists(key)) {
+                Files.deleteIfExists(blob.file());
+            } else {
+                storage.put(key, blob.file());
+            }
+            clearPending(blob.sha256(), pendingFile);
+            promote(blob.sha256());
+        } catch (IOException | RuntimeException ex) {
+            writeFailures.increment();
+            try {
+                if (postpone(blob.sha256(), pendingFile)) {
+                    log.error("Could not write blob {} to storage; staged copy kept at {} and retried later",
+                            blob.sha256(), blob.file(), ex);
+                } else {
+                    // An earlier upload of the same content is pending in its own staged file.
+                    log.warn("Could not write blob {} to storage; its pending copy is retried instead",
+                            blob.sha256(), ex);
+                    Files.deleteIfExists(blob.file());
+                }
+            } catch (IOException | RuntimeException retryEx) {
+                ex.addSuppressed(retryEx);
+                log.error("Could not write blob {} to storage; staged copy kept at {}", blob.sha256(), blob.file(), ex);
+            }
+        } finally {
+            writesInFlight.remove(blob.file());
+            sample.stop(writeTimer);
+        }
+    }
+
+    /**
+     * Clears the pending state of a blob whose content is now stored. Leaves the row alone
+     * when another staged file is pending for it.
+     */
+    private void clearPending(String sha256, String pendingFile) {
+        jdbcTemplate.update("""
+                UPDATE attachment_blobs
+                SET pending_file = NULL, pending_since = NULL, next_write_at = NULL
+                WHERE sha256 = ? AND pending_file = ?
+                """, sha256, pendingFile);
+    }
+
+    /**
+     * Schedules the next attempt at a pending write. The wait is as long as the blob has been
+     * pending, within the configured backoff bounds, so it roughly doubles with each attempt.
+     *
+     * @return false when this staged file is not the pending copy of the blob
+     */
+    private boolean postpone(String sha256, String pendingFile) {
+        List<Timestamp> since = jdbcTemplate.queryForList(
+                "SELECT pending_since FROM attachment_blobs WHERE sha256 = ? AND pending_file = ?",
+                Timestamp.class, sha256, pendingFile);
+        if (since.isEmpty()) return false;
+        Instant now = Instant.now();
+        Duration backoff = since.get(0) == null ? retryBackoff : Duration.between(since.get(0).toInstant(), now);
+        if (backoff.compareTo(retryBackoff) < 0) backoff = retryBackoff;
+        if (backoff.compareTo(maxRetryBackoff) > 0) backoff = maxRetryBackoff;
+        return jdbcTemplate.update(
+                "UPDATE attachment_blobs SET next_write_at = ? WHERE sha256 = ? AND pending_file = ?",
+                Timestamp.from(now.plus(backoff)), sha256, pendingFile) > 0;
+    }
+
+    /**
+     * Name of a staged file as stored in attachment_blobs.pending_file, relative to the
+     * staging directory.
+     */
+    private String pendingName(Path file) {
+        return stagingDir.relativize(file.toAbsolutePath().normalize()).toString();
+    }
+
+    /**
+     * Resolves attachment_blobs.pending_file against the staging directory.
+     *
+     * @return staged file, or null when none is recorded or the name leaves the staging directory
+     */
+    private Path stagedFile(String pendingFile) {
+        if (pendingFile == null) return null;
+        Path file = stagingDir.resolve(pendingFile).normalize();
+        return file.startsWith(stagingDir) ? file : null;
+    }
+
+    private static Timer openTimer(MeterRegistry meterRegistry, StorageTier tier) {
+        return Timer.builder("attachments.storage.read")
+                .description("Time to open blob content for reading, including the first bytes of compressed objects")
+                .tag("tier", tier.name().toLowerCase(Locale.ROOT))
+                .register(meterRegistry);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available.", ex);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        // Let queued writes finish; the rest stay pending on their rows and resume after a restart.
+        writer.shutdown();
+        if (!writer.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("Stopped with {} blob writes in flight; they are retried after the restart", writesInFlight.size());
+            writer.shutdownNow();
+        }
+    }
+
+    /**
+     * An upload copied to local staging and hashed, not yet in the storage backend.
+     *
+     * @param sha256 content hash
+     * @param sizeBytes content length
+     * @param file staging file
+     */
+    public record StagedBlob(String sha256, long sizeBytes, Path file) {
+
+        /**
+         * Returns the storage key, which doubles as the attachment URL path.
+         *
+         * @return storage key
+         */
+        public String key() {
+            return keyFor(sha256);
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package com.binder.demo.services;
+
+import com.binder.demo.attachments.StorageTier;
+import com.binder.demo.storage.AttachmentStorage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Moves blobs that nobody has read for a long time from the hot tier to the cold tier.
+ * Reads are recorded in memory by {@link #recordAccess(String)} and written to
+ * attachment_blobs.last_accessed_at in batches, so serving a download never waits on an
+ * UPDATE. A periodic job then copies each blob that has not been read for
+ * {@code attachments.tiering.cold-after} to {@code cold/}, gzip-compressed unless it is in
+ * an already-compressed format or gzip saves too little, flips its tier and removes the hot
+ * copy. Renditions stay in the hot tier, since pages keep showing them.
+ * <p>
+ * Point {@code cold/} at cheaper storage to get the full benefit: a mount below
+ * {@code attachments.storage-dir} for local storage, or a lifecycle rule moving the prefix to
+ * an infrequent-access storage class on S3.
+ */
+@Service
+public class BlobTieringService {
+
+    private static final Logger log = LoggerFactory.getLogger(BlobTieringService.class);
+
+    /**
+     * Gzip is only kept when it saves at least this share of the original size.
+     */
+    private static final double MIN_SAVINGS = 0.1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * JDBC access to the attachment_blobs table.
+     */
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Runs each tier change in its own transaction.
+     */
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Backend holding the blob content of both tiers.
+     */
+    private final AttachmentStorage storage;
+
+    /**
+     * Local directory where cold copies are prepared before they are handed to the backend.
+     */
+    private final Path stagingDir;
+
+    /**
+     * Time without reads after which a blob moves to the cold tier.
+     */
+    private final Duration coldAfter;
+
+    /**
+     * Number of blobs read or moved per query.
+     */
+    private final int batchSize;
+
+    /**
+     * Latest read per blob hash, waiting to be written to last_accessed_at.
+     */
+    private final Map<String, Instant> pendingAccesses = new ConcurrentHashMap<>();
+
+    private final Counter movedBlobs;
+    private final Map<StorageTier, AtomicLong> blobsByTier = new EnumMap<>(StorageTier.class);
+    private final Map<StorageTier, AtomicLong> storedBytesByTier = new EnumMap<>(StorageTier.class);
+    private final AtomicLong savedBytes = new AtomicLong();
+
+    public BlobTieringService(JdbcTemplate jdbcTemplate,
+                              PlatformTransactionManager transactionManager,
+                              AttachmentStorage storage,
+                              MeterRegistry meterRegistry,
+                              @Value("${attachments.staging-dir:${attachments.storage-dir:uploads}/.staging}") String stagingDir,
+                              @Value("${attachments.tiering.cold-after:120d}") Duration coldAfter,
+                              @Value("${attachments.tiering.batch-size:200}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.storage = storage;
+        this.stagingDir = Path.of(stagingDir).toAbsolutePath().normalize();
+        this.coldAfter = coldAfter;
+        this.batchSize = Math.max(1, batchSize);
+
+        this.movedBlobs = Counter.builder("attachments.tiering.moved")
+                .description("Blobs moved to the cold tier")
+                .register(meterRegistry);
+        for (StorageTier tier : StorageTier.values()) {
+            String tag = tier.name().toLowerCase(Locale.ROOT);
+            AtomicLong blobs = new AtomicLong();
+            AtomicLong bytes = new AtomicLong();
+            blobsByTier.put(tier, blobs);
+            storedBytesByTier.put(tier, bytes);
+            Gauge.builder("attachments.storage.tier.blobs", blobs, AtomicLong::get)
+                    .description("Blobs kept in each storage tier, as of the last tiering run")
+                    .tag("tier", tag)
+                    .register(meterRegistry);
+            Gauge.builder("attachments.storage.tier.stored", bytes, AtomicLong::get)
+                    .description("Bytes stored in each storage tier, as of the last tiering run")
+                    .baseUnit("bytes")
+                    .tag("tier", tag)
+                    .register(meterRegistry);
+        }
+        Gauge.builder("attachments.storage.tier.saved", savedBytes, AtomicLong::get)
+                .description("Bytes saved by compressing cold blobs, as of the last tiering run")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Notes that a blob was read. Only kept in memory until the next flush.
+     *
+     * @param sha256 blob hash
+     */
+    public void recordAccess(String sha256) {
+        if (sha256 != null) {
+            pendingAccesses.put(sha256, Instant.now());
+        }
+    }
+
+    /**
+     * Writes the reads recorded since the last flush to attachment_blobs, in batches.
+     *
+     * @return number of blobs whose last access was written
+     */
+    @Scheduled(fixedDelayString = "${attachments.tiering.access-flush-interval:1m}")
+    public int flushAccesses() {
+        List<Object[]> batch = new ArrayList<>(batchSize);
+        int flushed = 0;
+        for (String sha256 : pendingAccesses.keySet()) {
+            Instant accessedAt = pendingAccesses.remove(sha256);
+            if (accessedAt == null) continue;
+            Timestamp timestamp = Timestamp.from(accessedAt);
+            batch.add(new Object[] {timestamp, sha256, timestamp});
+            if (batch.size() == batchSize) {
+                flushed += writeAccesses(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            flushed += writeAccesses(batch);
+        }
+        return flushed;
+    }
+
+    /**
+     * Moves every referenced hot blob that has not been read for the configured period to the
+     * cold tier, least recently read first, then refreshes the per-tier gauges.
+     *
+     * @return what was done
+     */
+    @Scheduled(fixedDelayString = "${attachments.tiering.interval:24h}",
+            initialDelayString = "${attachments.tiering.initial-delay:1h}")
+    public Report moveColdBlobs() {
+        Report report = new Report();
+        try {
+            flushAccesses();
+            Timestamp cutoff = Timestamp.from(Instant.now().minus(coldAfter));
+            Timestamp afterAccess = new Timestamp(0);
+            String afterSha256 = "";
+            while (true) {
+                List<Candidate> candidates = candidates(cutoff, afterAccess, afterSha256);
+                for (Candidate candidate : candidates) {
+                    try {
+                        moveToCold(candidate, cutoff, report);
+                    } catch (IOException | RuntimeException ex) {
+                        log.warn("Could not move blob {} to the cold tier", candidate.sha256(), ex);
+                    }
+                }
+                if (candidates.size() < batchSize) break;
+                Candidate last = candidates.get(candidates.size() - 1);
+                afterAccess = last.lastAccessedAt();
+                afterSha256 = last.sha256();
+            }
+            refreshTierGauges();
+        } catch (RuntimeException ex) {
+            log.error("Storage tiering stopped early", ex);
+        }
+        log.info("Storage tiering moved {} blobs ({} bytes, {} stored) to the cold tier",
+                report.blobsMoved, report.bytesMoved, report.bytesStored);
+        return report;
+    }
+
+    /**
+     * Returns the next page of hot blobs last read before the cutoff, in
+     * (last_accessed_at, sha256) order so blobs that could not be moved are not read again.
+     */
+    private List<Candidate> candidates(Timestamp cutoff, Timestamp afterAccess, String afterSha256) {
+        return jdbcTemplate.query("""
+                SELECT b.sha256,
+                       b.size_bytes,
+                       b.last_accessed_at,
+                       (SELECT att.content_type
+                        FROM attachments att
+                        WHERE att.blob_sha256 = b.sha256 AND att.content_type IS NOT NULL
+                        LIMIT 1) AS content_type
+                FROM attachment_blobs b
+                WHERE b.storage_tier = 'HOT'
+                  AND b.ref_count > 0
+                  AND b.pending_file IS NULL
+                  AND b.last_accessed_at < ?
+                  AND (b.last_accessed_at, b.sha256) > (?, ?)
+                ORDER BY b.last_accessed_at, b.sha256
+                LIMIT ?
+                """, (rs, rowNum) -> new Candidate(
+                rs.getString("sha256"),
+                rs.getLong("size_bytes"),
+                rs.getTimestamp("last_accessed_at"),
+                rs.getString("content_type")),
+                cutoff, afterAccess, afterSha256, batchSize);
+    }
+
+    /**
+     * Copies one blob to the cold tier and switches its row over. The copy is prepared in a
+     * local file first; the row is then locked, re-checked and flipped in the transaction that
+     * writes the cold object, so a failed write leaves the blob hot. The hot copy is removed
+     * once that commits. Candidates have not been read for months, so a reader resolving the
+     * hot key just before the flip is not guarded against.
+     */
+    private void moveToCold(Candidate candidate, Timestamp cutoff, Report report) throws IOException {
+        String hotKey = BlobStore.keyFor(candidate.sha256());
+        Resource hot = storage.resource(hotKey);
+        if (!hot.exists()) {
+            log.warn("Hot copy of blob {} is missing; leaving it in the hot tier", candidate.sha256());
+            return;
+        }
+
+        Files.createDirectories(stagingDir);
+        Path temp = Files.createTempFile(stagingDir, "cold-", ".part");
+        try {
+            boolean gzip = !AttachmentService.isCompressedFormat(candidate.contentType(), null)
+                    && copy(hot, temp, true) <= candidate.sizeBytes() * (1 - MIN_SAVINGS);
+            long storedBytes = gzip ? Files.size(temp) : copy(hot, temp, false);
+            String coldKey = BlobStore.coldKeyFor(candidate.sha256(), gzip);
+
+            Boolean moved = transactionTemplate.execute(status -> {
+                int updated = jdbcTemplate.update("""
+                        UPDATE attachment_blobs
+                        SET storage_tier = 'COLD', compression = ?, stored_bytes = ?
+                        WHERE sha256 = ? AND storage_tier = 'HOT' AND ref_count > 0 AND pending_file IS NULL
+                          AND last_accessed_at < ?
+                        """, gzip ? BlobStore.GZIP : null, storedBytes, candidate.sha256(), cutoff);
+                if (updated == 0) return false;
+                try {
+                    storage.put(coldKey, temp);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                return true;
+            });
+            if (!Boolean.TRUE.equals(moved)) return;
+
+            try {
+                storage.delete(hotKey);
+            } catch (IOException ex) {
+                log.warn("Could not delete hot copy of cold blob {}", candidate.sha256(), ex);
+            }
+            movedBlobs.increment();
+            report.blobsMoved++;
+            report.bytesMoved += candidate.sizeBytes();
+            report.bytesStored += storedBytes;
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Copies blob content into a local file, optionally gzip-compressing it.
+     *
+     * @return size of the written file
+     */
+    private static long copy(Resource source, Path target, boolean gzip) throws IOException {
+        try (InputStream input = source.getInputStream();
+             OutputStream file = Files.newOutputStream(target);
+             OutputStream output = gzip ? new GZIPOutputStream(file, BUFFER_SIZE) : file) {
+            input.transferTo(output);
+        }
+        return Files.size(target);
+    }
+
+    private int writeAccesses(List<Object[]> batch) {
+        // Never moves last_accessed_at backwards when an older read is flushed late.
+        jdbcTemplate.batchUpdate("""
+                UPDATE attachment_blobs
+                SET last_accessed_at = ?
+                WHERE sha256 = ? AND last_accessed_at < ?
+                """, batch);
+        return batch.size();
+    }
+
+    private void refreshTierGauges() {
+        Map<StorageTier, long[]> totals = new EnumMap<>(StorageTier.class);
+        jdbcTemplate.query("""
+                SELECT storage_tier,
+                       COUNT(*) AS blobs,
+                       COALESCE(SUM(COALESCE(stored_bytes, size_bytes)), 0) AS stored_bytes,
+                       COALESCE(SUM(size_bytes - COALESCE(stored_bytes, size_bytes)), 0) AS saved_bytes
+                FROM attachment_blobs
+                GROUP BY storage_tier
+                """, rs -> {
+            totals.put(StorageTier.valueOf(rs.getString("storage_tier")), new long[] {
+                    rs.getLong("blobs"), rs.getLong("stored_bytes"), rs.getLong("saved_bytes")});
+        });
+        long saved = 0;
+        for (StorageTier tier : StorageTier.values()) {
+            long[] values = totals.getOrDefault(tier, new long[3]);
+            blobsByTier.get(tier).set(values[0]);
+            storedBytesByTier.get(tier).set(values[1]);
+            saved += values[2];
+        }
+        savedBytes.set(saved);
+    }
+
+    private record Candidate(String sha256, long sizeBytes, Timestamp lastAccessedAt, String contentType) {
+    }
+
+    /**
+     * Counts of what a tiering run did.
+     */
+    public static final class Report {
+        private long blobsMoved;
+        private long bytesMoved;
+        private long bytesStored;
+
+        public long getBlobsMoved() { return blobsMoved; }
+        public long getBytesMoved() { return bytesMoved; }
+        public long getBytesStored() { return bytesStored; }
+    }
+}
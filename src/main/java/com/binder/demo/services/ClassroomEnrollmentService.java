@@ -1,12 +1,14 @@
 package com.binder.demo.services;
 
-import com.binder.demo.classroom.Classroom;
 import com.binder.demo.user.Role;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -26,8 +28,14 @@ public class ClassroomEnrollmentService {
      */
     private final UserService userService;
 
-    public ClassroomEnrollmentService(UserService userService) {
+    /**
+     * Per-user cache of dashboard classrooms.
+     */
+    private final DashboardCache dashboardCache;
+
+    public ClassroomEnrollmentService(UserService userService, DashboardCache dashboardCache) {
         this.userService = userService;
+        this.dashboardCache = dashboardCache;
     }
 
     /**
@@ -61,25 +69,25 @@ public class ClassroomEnrollmentService {
     }
 
     /**
-     * Enrolls students and returns any emails that do not match the role.
+     * Enrolls students and reports emails that are unknown or do not match the role.
      *
      * @param classId classroom id
      * @param emails list of emails
-     * @return list of emails that are not students
+     * @return enrollment outcome per email
      */
-    public List<String> enrollStudentsByEmailsWithValidation(UUID classId, String emails) {
-        return userService.enrollUsersByEmailsWithRoleValidation(classId, emails, Role.STUDENT);
+    public UserService.BulkEnrollmentResult enrollStudentsByEmailsWithValidation(UUID classId, String emails) {
+        return userService.enrollByEmails(classId, emails, Role.STUDENT);
     }
 
     /**
-     * Enrolls teachers and returns any emails that do not match the role.
+     * Enrolls teachers and reports emails that are unknown or do not match the role.
      *
      * @param classId classroom id
      * @param emails list of emails
-     * @return list of emails that are not teachers
+     * @return enrollment outcome per email
      */
-    public List<String> enrollTeachersByEmailsWithValidation(UUID classId, String emails) {
-        return userService.enrollUsersByEmailsWithRoleValidation(classId, emails, Role.TEACHER);
+    public UserService.BulkEnrollmentResult enrollTeachersByEmailsWithValidation(UUID classId, String emails) {
+        return userService.enrollByEmails(classId, emails, Role.TEACHER);
     }
 
     /**
@@ -95,24 +103,42 @@ public class ClassroomEnrollmentService {
     }
 
     /**
-     * Returns classrooms where the user is a student or teacher.
+     * Returns the classrooms shown on a user's dashboard, newest first, with the user's role in each.
+     * Each membership table is read through its per-user index, so the cost follows the number
+     * of classes the user belongs to rather than the size of those classes.
      *
      * @param userId user id
-     * @return list of classrooms
+     * @return dashboard classrooms
      */
-    public List<Classroom> getClassroomsForUser(UUID userId) {
+    public List<DashboardClassroom> getDashboardClassrooms(UUID userId) {
         if (userId == null) return List.of();
+        return dashboardCache.get(userId, () -> loadDashboardClassrooms(userId));
+    }
 
-        return em.createNativeQuery("""
-            SELECT DISTINCT c.*
-            FROM classrooms c
-            LEFT JOIN enrollments e ON c.class_id = e.class_id
-            LEFT JOIN classroom_teachers ct ON c.class_id = ct.class_id
-            WHERE e.student_id = :userId OR ct.teacher_id = :userId
-            ORDER BY c.created_at DESC
-            """, Classroom.class)
+    private List<DashboardClassroom> loadDashboardClassrooms(UUID userId) {
+        List<?> rows = em.createNativeQuery("""
+            SELECT c.class_id, c.name, c.description, m.role
+            FROM (
+                SELECT e.class_id, 'STUDENT' AS role FROM enrollments e WHERE e.student_id = :userId
+                UNION
+                SELECT ct.class_id, 'TEACHER' AS role FROM classroom_teachers ct WHERE ct.teacher_id = :userId
+            ) m
+            JOIN classrooms c ON c.class_id = m.class_id
+            ORDER BY c.created_at DESC, c.class_id
+            """)
                 .setParameter("userId", userId)
                 .getResultList();
+
+        // A user listed in both tables for a class sees it once, as a teacher.
+        Map<UUID, DashboardClassroom> byId = new LinkedHashMap<>();
+        for (Object row : rows) {
+            Object[] arr = (Object[]) row;
+            DashboardClassroom classroom = new DashboardClassroom(SqlValues.toUuid(arr[0]), (String) arr[1],
+                    (String) arr[2], Role.valueOf(arr[3].toString().trim()));
+            byId.merge(classroom.classId(), classroom,
+                    (existing, added) -> existing.role() == Role.TEACHER ? existing : added);
+        }
+        return new ArrayList<>(byId.values());
     }
 
     /**
@@ -164,4 +190,10 @@ public class ClassroomEnrollmentService {
                 .setParameter("classId", classId)
                 .getResultList();
     }
+
+    /**
+     * Lightweight classroom view used by the dashboard.
+     */
+    public record DashboardClassroom(UUID classId, String name, String description, Role role) {
+    }
 }
@@ -0,0 +1,329 @@
+package com.binder.demo.services;
+
+import com.binder.demo.classroom.Classroom;
+import com.binder.demo.user.Role;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Assembles the classroom page model by running its independent lookups concurrently.
+ * Each section runs in its own read-only transaction on a bounded executor and is timed,
+ * so page latency follows the slowest section rather than the sum of all of them.
+ * <p>
+ * The page timeout is enforced inside each section as well as by the request waiting for
+ * them: a section that starts after the deadline does not run, and one that does runs in a
+ * transaction whose timeout is the time left, which bounds its queries. When the executor is
+ * saturated, sections are not run on the request thread. The page fails when it would be
+ * misleading without the rejected section, such as a feed or roster shown as empty; the
+ * few optional sections are left empty and listed so the page can say it is incomplete.
+ */
+@Service
+public class ClassroomPageService {
+
+    private static final Logger log = LoggerFactory.getLogger(ClassroomPageService.class);
+
+    private final ClassroomService classroomService;
+    private final ClassroomPostService postService;
+    private final ClassroomEnrollmentService enrollmentService;
+    private final ClassroomSubmissionService submissionService;
+    private final AssignmentStatsService statsService;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Transaction manager for the read-only transaction of each section.
+     */
+    private final PlatformTransactionManager transactionManager;
+
+    /**
+     * Bounded pool that runs page sections; optional sections it rejects fall back to their
+     * empty value, and the others fail the page.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Maximum time to wait for all sections of one page.
+     */
+    private final Duration timeout;
+
+    /**
+     * Sections slower than this are logged with their timing.
+     */
+    private final Duration slowSectionThreshold;
+
+    public ClassroomPageService(ClassroomService classroomService,
+                                ClassroomPostService postService,
+                                ClassroomEnrollmentService enrollmentService,
+                                ClassroomSubmissionService submissionService,
+                                AssignmentStatsService statsService,
+                                PlatformTransactionManager transactionManager,
+                                MeterRegistry meterRegistry,
+                                @Value("${classroom.page.threads:16}") int threads,
+                                @Value("${classroom.page.queue-capacity:256}") int queueCapacity,
+                                @Value("${classroom.page.timeout:5s}") Duration timeout,
+                                @Value("${classroom.page.slow-section-threshold:500ms}") Duration slowSectionThreshold) {
+        this.classroomService = classroomService;
+        this.postService = postService;
+        this.enrollmentService = enrollmentService;
+        this.submissionService = submissionService;
+        this.statsService = statsService;
+        this.meterRegistry = meterRegistry;
+        this.timeout = timeout;
+        this.slowSectionThreshold = slowSectionThreshold;
+
+        this.transactionManager = transactionManager;
+
+        int poolSize = Math.max(1, threads);
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                namedThreads("classroom-page-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Loads everything the classroom page shows for a user.
+     *
+     * @param classId classroom id
+     * @param userId current user id
+     * @param role current user role, or null when unknown
+     * @return page model, or empty when the classroom does not exist
+     * @throws IllegalStateException when a section fails or the page times out
+     */
+    public Optional<ClassroomPage> loadPage(UUID classId, UUID userId, Role role) {
+        if (classId == null || userId == null) return Optional.empty();
+
+        PageLoad load = new PageLoad(new ConcurrentHashMap<>(), new ArrayList<>(), new ArrayList<>(),
+                System.nanoTime() + timeout.toNanos());
+
+        CompletableFuture<Optional<Classroom>> classroom =
+                section("classroom", load, null, () -> classroomService.getClassById(classId));
+        CompletableFuture<ClassroomPostService.FeedPage> feed =
+                section("feed", load, null, () -> postService.getFeedPage(classId, null));
+        CompletableFuture<List<ClassroomPostService.AssignmentOption>> assignmentOptions =
+                section("assignmentOptions", load, List::of, () -> postService.getAssignmentOptions(classId));
+        CompletableFuture<List<String>> students =
+                section("students", load, null, () -> enrollmentService.getEnrolledStudentEmails(classId));
+        CompletableFuture<List<String>> teachers =
+                section("teachers", load, null, () -> enrollmentService.getEnrolledTeacherEmails(classId));
+
+        // Teachers' submission reviews are not part of the page; the review modal loads them
+        // one assignment and one page at a time. Their statistics come precomputed.
+        CompletableFuture<Map<UUID, AssignmentStatsService.Stats>> assignmentStats = completedNull();
+        CompletableFuture<List<UUID>> submittedIds = completedNull();
+        CompletableFuture<List<ClassroomSubmissionService.StudentSubmissionResult>> results = completedNull();
+        if (role == Role.TEACHER) {
+            assignmentStats = section("assignmentStats", load, Map::of,
+                    () -> statsService.getStatsForClassroom(classId));
+        }
+        if (role == Role.STUDENT) {
+            submittedIds = section("submittedPostIds", load, null,
+                    () -> submissionService.getSubmittedAssignmentIds(classId, userId));
+            results = section("studentSubmissionResults", load, null,
+                    () -> submissionService.getSubmissionResultsForStudent(classId, userId));
+        }
+
+        awaitAll(classId, load);
+
+        Optional<Classroom> loaded = classroom.join();
+        if (loaded.isEmpty()) return Optional.empty();
+
+        return Optional.of(new ClassroomPage(loaded.get(), feed.join(), assignmentOptions.join(),
+                students.join(), teachers.join(), assignmentStats.join(), submittedIds.join(), results.join(),
+                load.degraded(), orderedTimings(load.sections(), load.timings())));
+    }
+
+    /**
+     * Starts one section of the page on the executor.
+     *
+     * @param name section name used in timings and metrics
+     * @param load page being loaded
+     * @param fallback value shown when the executor rejects the section, or {@code null} when
+     *                 the page cannot be shown without it; an empty value would pass for real
+     *                 data, so only sections the page can do without have one
+     * @param loader section query
+     * @return future section value
+     */
+    private <T> CompletableFuture<T> section(String name,
+                                             PageLoad load,
+                                             Supplier<T> fallback,
+                                             Supplier<T> loader) {
+        Timer timer = Timer.builder("classroom.page.section")
+                .description("Time to load one section of the classroom page")
+                .tag("section", name)
+                .register(meterRegistry);
+        Map<String, Duration> timings = load.timings();
+
+        CompletableFuture<T> future;
+        try {
+            future = CompletableFuture.supplyAsync(() -> {
+                long start = System.nanoTime();
+                try {
+                    return readOnlyTx(load.deadlineNanos(), name).execute(status -> loader.get());
+                } finally {
+                    Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+                    timer.record(elapsed);
+                    timings.put(name, elapsed);
+                    if (elapsed.compareTo(slowSectionThreshold) > 0) {
+                        log.warn("Slow classroom page section '{}' took {} ms", name, elapsed.toMillis());
+                    }
+                }
+            }, executor);
+        } catch (RejectedExecutionException ex) {
+            meterRegistry.counter("classroom.page.section.rejected", "section", name).increment();
+            if (fallback == null) {
+                load.sections().forEach(section -> section.future().cancel(true));
+                throw new IllegalStateException("Too busy to load classroom page section '" + name + "'", ex);
+            }
+            log.warn("Classroom page section '{}' rejected by a saturated executor; shown as not loaded", name);
+            load.degraded().add(name);
+            future = CompletableFuture.completedFuture(fallback.get());
+        }
+        load.sections().add(new PageSection(name, future));
+        return future;
+    }
+
+    /**
+     * Creates the read-only transaction for a section, timing out when the page does.
+     * Spring applies the transaction timeout to each statement the section runs, so a slow
+     * query is cancelled by the database rather than left running after the page gave up.
+     *
+     * @param deadlineNanos {@link System#nanoTime()} by which the page must be loaded
+     * @param name section name
+     * @return transaction template
+     * @throws IllegalStateException when the deadline has already passed
+     */
+    private TransactionTemplate readOnlyTx(long deadlineNanos, String name) {
+        long remaining = deadlineNanos - System.nanoTime();
+        if (remaining <= 0) {
+            throw new IllegalStateException("Classroom page section '" + name + "' started after the page timed out");
+        }
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        tx.setTimeout((int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remaining + TimeUnit.SECONDS.toNanos(1) - 1)));
+        return tx;
+    }
+
+    private void awaitAll(UUID classId, PageLoad load) {
+        List<PageSection> sections = load.sections();
+        Map<String, Duration> timings = load.timings();
+        CompletableFuture<Void> all = CompletableFuture.allOf(sections.stream()
+                .map(PageSection::future)
+                .toArray(CompletableFuture[]::new));
+        try {
+            all.get(Math.max(0, load.deadlineNanos() - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException ex) {
+            List<String> pending = new ArrayList<>();
+            for (PageSection section : sections) {
+                if (!section.future().isDone()) {
+                    pending.add(section.name());
+                    section.future().cancel(true);
+                }
+            }
+            throw new IllegalStateException("Timed out loading classroom " + classId
+                    + " after " + timeout.toMillis() + " ms; pending sections " + pending
+                    + ", completed " + timings, ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            sections.forEach(section -> section.future().cancel(true));
+            throw new IllegalStateException("Interrupted while loading classroom " + classId, ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Failed to load classroom " + classId, ex.getCause());
+        }
+    }
+
+    private Map<String, Duration> orderedTimings(List<PageSection> sections, Map<String, Duration> timings) {
+        Map<String, Duration> ordered = new LinkedHashMap<>();
+        for (PageSection section : sections) {
+            Duration elapsed = timings.get(section.name());
+            if (elapsed != null) {
+                ordered.put(section.name(), elapsed);
+            }
+        }
+        return ordered;
+    }
+
+    private static <T> CompletableFuture<T> completedNull() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private record PageSection(String name, CompletableFuture<?> future) {
+    }
+
+    /**
+     * Sections started for one page, their timings, the optional sections that were not
+     * loaded and the page deadline.
+     */
+    private record PageLoad(Map<String, Duration> timings,
+                            List<PageSection> sections,
+                            List<String> degraded,
+                            long deadlineNanos) {
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Immutable model for the classroom page.
+     * Role-specific sections are null when they do not apply to the viewer. Sections listed in
+     * {@code degradedSections} were not loaded and are empty rather than known to have no data.
+     */
+    public record ClassroomPage(Classroom classroom,
+                                ClassroomPostService.FeedPage feed,
+                                List<ClassroomPostService.AssignmentOption> assignmentOptions,
+                                List<String> enrolledStudents,
+                                List<String> enrolledTeachers,
+                                Map<UUID, AssignmentStatsService.Stats> assignmentStats,
+                                List<UUID> submittedPostIds,
+                                List<ClassroomSubmissionService.StudentSubmissionResult> studentSubmissionResults,
+                                List<String> degradedSections,
+                                Map<String, Duration> sectionTimings) {
+        public ClassroomPage {
+            assignmentOptions = List.copyOf(assignmentOptions);
+            enrolledStudents = List.copyOf(enrolledStudents);
+            enrolledTeachers = List.copyOf(enrolledTeachers);
+            assignmentStats = assignmentStats == null ? null : Map.copyOf(assignmentStats);
+            submittedPostIds = submittedPostIds == null ? null : List.copyOf(submittedPostIds);
+            studentSubmissionResults = studentSubmissionResults == null ? null : List.copyOf(studentSubmissionResults);
+            degradedSections = List.copyOf(degradedSections);
+            sectionTimings = Collections.unmodifiableMap(new LinkedHashMap<>(sectionTimings));
+        }
+    }
+}
@@ -2,15 +2,24 @@ package com.binder.demo.services;
 
 import com.binder.demo.classroom.Assignment;
 import com.binder.demo.classroom.ClassroomPost;
+import com.binder.demo.classroom.PostType;
 import com.binder.demo.classroom.Resource;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Base64;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -19,6 +28,28 @@ import java.util.UUID;
 @Service
 public class ClassroomPostService {
 
+    /**
+     * Merges both post tables into one keyset-ordered stream, newest first.
+     * The keyset predicate is repeated inside each branch so each table can
+     * be read from its (class_id, created_at, id) order.
+     */
+    private static final String FEED_SQL = """
+            SELECT p.post_type, p.post_id, p.created_at
+            FROM (
+                SELECT 'ASSIGNMENT' AS post_type, a.assignment_id AS post_id, a.created_at AS created_at
+                FROM assignments a
+                WHERE a.class_id = :classId%s
+                UNION ALL
+                SELECT 'RESOURCE' AS post_type, r.resource_id AS post_id, r.created_at AS created_at
+                FROM resources r
+                WHERE r.class_id = :classId%s
+            ) p
+            ORDER BY p.created_at DESC, p.post_id DESC
+            LIMIT :limit
+            """;
+
+    private static final String CURSOR_SEPARATOR = "|";
+
     /**
      * JPA entity manager used for post persistence and queries.
      */
@@ -26,32 +57,189 @@ public class ClassroomPostService {
     private EntityManager em;
 
     /**
-     * Loads all posts for a classroom and sorts them by creation time.
+     * Number of posts returned per feed page.
+     */
+    private final int pageSize;
+
+    public ClassroomPostService(@Value("${classroom.feed.page-size:20}") int pageSize) {
+        this.pageSize = Math.max(1, pageSize);
+    }
+
+    /**
+     * Loads one page of posts for a classroom, newest first.
+     *
+     * @param classId classroom id
+     * @param cursor opaque cursor from a previous page, or null for the first page
+     * @return page of posts with the cursor for the following page
+     * @throws IllegalArgumentException when the cursor cannot be decoded
+     */
+    @Transactional(readOnly = true)
+    public FeedPage getFeedPage(UUID classId, String cursor) {
+        if (classId == null) return FeedPage.empty();
+
+        FeedCursor after = FeedCursor.decode(cursor);
+        List<FeedKey> keys = fetchFeedKeys(classId, after, pageSize + 1);
+
+        String nextCursor = null;
+        if (keys.size() > pageSize) {
+            keys = keys.subList(0, pageSize);
+            FeedKey last = keys.get(keys.size() - 1);
+            nextCursor = new FeedCursor(last.createdAt(), last.postId()).encode();
+        }
+
+        return new FeedPage(loadPosts(keys), nextCursor);
+    }
+
+    /**
+     * Loads the assignments of a classroom as lightweight options for selectors.
      *
      * @param classId classroom id
-     * @return list of posts for the classroom
+     * @return assignment options ordered by creation time, newest first
      */
     @Transactional(readOnly = true)
-    public List<ClassroomPost> getPostsForClassroom(UUID classId) {
+    public List<AssignmentOption> getAssignmentOptions(UUID classId) {
         if (classId == null) return List.of();
 
-        List<Assignment> assignments = em.createQuery(
-                "select a from Assignment a where a.classId = :classId",
-                Assignment.class
-        ).setParameter("classId", classId).getResultList();
+        List<Object[]> rows = em.createQuery("""
+                select a.assignmentId, a.title, a.dueDate
+                from Assignment a
+                where a.classId = :classId
+                order by a.createdAt desc, a.assignmentId desc
+                """, Object[].class)
+                .setParameter("classId", classId)
+                .getResultList();
+
+        List<AssignmentOption> options = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            options.add(new AssignmentOption((UUID) row[0], (String) row[1], (Instant) row[2]));
+        }
+        return options;
+    }
+
+    private List<FeedKey> fetchFeedKeys(UUID classId, FeedCursor after, int limit) {
+        String assignmentKeyset = after == null ? "" : " AND (a.created_at, a.assignment_id) < (:createdAt, :postId)";
+        String resourceKeyset = after == null ? "" : " AND (r.created_at, r.resource_id) < (:createdAt, :postId)";
 
-        List<Resource> resources = em.createQuery(
-                "select r from Resource r where r.classId = :classId",
-                Resource.class
-        ).setParameter("classId", classId).getResultList();
+        Query query = em.createNativeQuery(FEED_SQL.formatted(assignmentKeyset, resourceKeyset))
+                .setParameter("classId", classId)
+                .setParameter("limit", limit);
+        if (after != null) {
+            query.setParameter("createdAt", after.createdAt());
+            query.setParameter("postId", after.postId());
+        }
 
-        List<ClassroomPost> posts = new ArrayList<>();
-        posts.addAll(assignments);
-        posts.addAll(resources);
+        List<?> raw = query.getResultList();
+        List<FeedKey> keys = new ArrayList<>(raw.size());
+        for (Object row : raw) {
+            if (row instanceof Object[] arr) {
+                keys.add(new FeedKey(PostType.valueOf(arr[0].toString().trim()), SqlValues.toUuid(arr[1]), SqlValues.toLocalDateTime(arr[2])));
+            }
+        }
+        return keys;
+    }
 
-        posts.sort(Comparator.comparing(ClassroomPost::getCreatedAt,
-                Comparator.nullsLast(Comparator.reverseOrder())));
+    /**
+     * Hydrates the posts behind a page of feed keys, keeping the keyset order.
+     * Attachments are fetched in the same set-based query per post table, so a
+     * page costs a fixed number of statements however many posts it holds.
+     *
+     * @param keys ordered feed keys
+     * @return posts in feed order with attachments initialized
+     */
+    private List<ClassroomPost> loadPosts(List<FeedKey> keys) {
+        if (keys.isEmpty()) return List.of();
+
+        List<UUID> assignmentIds = new ArrayList<>();
+        List<UUID> resourceIds = new ArrayList<>();
+        for (FeedKey key : keys) {
+            if (key.postType() == PostType.ASSIGNMENT) {
+                assignmentIds.add(key.postId());
+            } else {
+                resourceIds.add(key.postId());
+            }
+        }
+
+        Map<UUID, ClassroomPost> byId = new HashMap<>();
+        if (!assignmentIds.isEmpty()) {
+            em.createQuery("""
+                    select distinct a from Assignment a
+                    left join fetch a.attachments
+                    where a.assignmentId in :ids
+                    """, Assignment.class)
+                    .setParameter("ids", assignmentIds)
+                    .getResultList()
+                    .forEach(a -> byId.put(a.getAssignmentId(), a));
+        }
+        if (!resourceIds.isEmpty()) {
+            em.createQuery("""
+                    select distinct r from Resource r
+                    left join fetch r.attachments
+                    where r.resourceId in :ids
+                    """, Resource.class)
+                    .setParameter("ids", resourceIds)
+                    .getResultList()
+                    .forEach(r -> byId.put(r.getResourceId(), r));
+        }
+
+        List<ClassroomPost> posts = new ArrayList<>(keys.size());
+        for (FeedKey key : keys) {
+            ClassroomPost post = byId.get(key.postId());
+            if (post != null) posts.add(post);
+        }
         return posts;
     }
 
+    /**
+     * One page of the classroom feed.
+     *
+     * @param posts posts on this page, newest first
+     * @param nextCursor cursor for the following page, or null on the last page
+     */
+    public record FeedPage(List<ClassroomPost> posts, String nextCursor) {
+        public FeedPage {
+            posts = List.copyOf(posts);
+        }
+
+        static FeedPage empty() {
+            return new FeedPage(List.of(), null);
+        }
+
+        public boolean hasMore() {
+            return nextCursor != null;
+        }
+    }
+
+    /**
+     * Lightweight assignment view used by assignment selectors.
+     */
+    public record AssignmentOption(UUID assignmentId, String title, Instant dueDate) {
+    }
+
+    private record FeedKey(PostType postType, UUID postId, LocalDateTime createdAt) {
+    }
+
+    /**
+     * Position in the feed, encoded for clients as an opaque URL-safe token.
+     */
+    private record FeedCursor(LocalDateTime createdAt, UUID postId) {
+
+        String encode() {
+            String raw = createdAt + CURSOR_SEPARATOR + postId;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static FeedCursor decode(String cursor) {
+            if (cursor == null || cursor.isBlank()) return null;
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+                int idx = raw.indexOf(CURSOR_SEPARATOR);
+                if (idx <= 0) {
+                    throw new IllegalArgumentException("Invalid feed cursor.");
+                }
+                return new FeedCursor(LocalDateTime.parse(raw.substring(0, idx)), UUID.fromString(raw.substring(idx + 1)));
+            } catch (DateTimeParseException ex) {
+                throw new IllegalArgumentException("Invalid feed cursor.", ex);
+            }
+        }
+    }
 }
@@ -27,8 +27,22 @@ public class ClassroomService {
      */
     private final ClassroomEnrollmentService enrollmentService;
 
-    public ClassroomService(ClassroomEnrollmentService enrollmentService) {
+    /**
+     * Membership cache cleared when a classroom is removed.
+     */
+    private final MembershipCache membershipCache;
+
+    /**
+     * Dashboard cache cleared when a classroom is renamed or removed.
+     */
+    private final DashboardCache dashboardCache;
+
+    public ClassroomService(ClassroomEnrollmentService enrollmentService,
+                            MembershipCache membershipCache,
+                            DashboardCache dashboardCache) {
         this.enrollmentService = enrollmentService;
+        this.membershipCache = membershipCache;
+        this.dashboardCache = dashboardCache;
     }
 
     /**
@@ -82,6 +96,7 @@ public class ClassroomService {
     public void updateClass(Classroom classroom) {
         if (classroom == null) return;
         em.merge(classroom);
+        dashboardCache.invalidateAll();
     }
 
     /**
@@ -94,5 +109,7 @@ public class ClassroomService {
         if (classId == null) return;
         Classroom c = em.find(Classroom.class, classId);
         if (c != null) em.remove(c);
+        membershipCache.invalidateClass(classId);
+        dashboardCache.invalidateAll();
     }
 }
@@ -1,30 +1,33 @@
 package com.binder.demo.services;
 
 import com.binder.demo.attachments.Attachment;
-import com.binder.demo.attachments.AttachmentType;
 import com.binder.demo.classroom.Assignment;
 import com.binder.demo.classroom.AssignmentSubmission;
-import com.binder.demo.classroom.Grade;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -33,6 +36,58 @@ import java.util.UUID;
 @Service
 public class ClassroomSubmissionService {
 
+    /**
+     * Loads one assignment's submissions in (full_name, submission_id) order. The keyset
+     * predicate and status filter are spliced in, so the first page and unfiltered pages
+     * carry no extra conditions.
+     */
+    private static final String REVIEW_PAGE_SQL = """
+            SELECT s.submission_id,
+                   s.assignment_id,
+                   a.title,
+                   a.maximum_marks,
+                   s.student_id,
+                   u.full_name,
+                   u.email,
+                   s.submission_time,
+                   s.attachment_id,
+                   att.url,
+                   g.marks_scored,
+                   g.feedback
+            FROM assignment_submissions s
+            JOIN assignments a ON s.assignment_id = a.assignment_id
+            JOIN users u ON s.student_id = u.user_id
+            LEFT JOIN grades g ON g.submission_id = s.submission_id
+            LEFT JOIN attachments att ON s.attachment_id = att.attachment_id
+            WHERE a.class_id = :classId
+              AND s.assignment_id = :assignmentId%s%s
+            ORDER BY u.full_name, s.submission_id
+            LIMIT :limit
+            """;
+
+    /**
+     * A submission counts as graded once it has marks or feedback, as on the review cards.
+     */
+    private static final String GRADED = "(g.marks_scored IS NOT NULL OR g.feedback IS NOT NULL)";
+
+    /**
+     * Loads the submissions of a grading batch that belong to the classroom, with their
+     * mark limit and current grade, so the whole batch is validated in one statement.
+     */
+    private static final String GRADE_TARGETS_SQL = """
+            SELECT s.submission_id,
+                   s.assignment_id,
+                   a.maximum_marks,
+                   g.submission_id AS graded_submission_id,
+                   g.marks_scored,
+                   g.feedback
+            FROM assignment_submissions s
+            JOIN assignments a ON s.assignment_id = a.assignment_id
+            LEFT JOIN grades g ON g.submission_id = s.submission_id
+            WHERE a.class_id = ?
+              AND s.submission_id = ANY(?)
+            """;
+
     /**
      * JPA entity manager used for submission persistence and queries.
      */
@@ -45,49 +100,126 @@ public class ClassroomSubmissionService {
     private final AttachmentService attachmentService;
 
     /**
-     * Base directory for uploaded files.
+     * Runs the submission row updates once the upload has been staged.
+     */
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Number of submissions returned per review page.
      */
-    private final Path storageDir;
+    private final int reviewPageSize;
+
+    /**
+     * Largest number of grades accepted in one batch.
+     */
+    private final int maxGradeBatch;
+
+    /**
+     * JDBC access for batched grade writes.
+     */
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Keeps the per-assignment statistics in step with submissions and grades.
+     */
+    private final AssignmentStatsService statsService;
+
+    /**
+     * Batches submission writes when ingest mode is enabled.
+     */
+    private final SubmissionIngestService ingestService;
 
     public ClassroomSubmissionService(AttachmentService attachmentService,
-                                      @Value("${attachments.storage-dir:uploads}") String storageDir) {
+                                      AssignmentStatsService statsService,
+                                      SubmissionIngestService ingestService,
+                                      JdbcTemplate jdbcTemplate,
+                                      PlatformTransactionManager transactionManager,
+                                      @Value("${classroom.reviews.page-size:25}") int reviewPageSize,
+                                      @Value("${classroom.grading.max-batch:500}") int maxGradeBatch) {
         this.attachmentService = attachmentService;
-        this.storageDir = Path.of(storageDir).toAbsolutePath().normalize();
+        this.statsService = statsService;
+        this.ingestService = ingestService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.reviewPageSize = Math.max(1, reviewPageSize);
+        this.maxGradeBatch = Math.max(1, maxGradeBatch);
+    }
+
+    /**
+     * Loads one page of submission reviews for an assignment, ordered by student name.
+     *
+     * @param classId classroom id
+     * @param assignmentId assignment id
+     * @param status which submissions to include, or null for all of them
+     * @param cursor opaque cursor from a previous page, or null for the first page
+     * @return page of reviews with the cursor for the following page
+     * @throws IllegalArgumentException when the cursor cannot be decoded
+     */
+    @Transactional(readOnly = true)
+    public ReviewPage getSubmissionReviewPage(UUID classId, UUID assignmentId, ReviewStatus status, String cursor) {
+        if (classId == null || assignmentId == null) return ReviewPage.empty();
+
+        ReviewCursor after = ReviewCursor.decode(cursor);
+        String keyset = after == null ? "" : " AND (u.full_name, s.submission_id) > (:studentName, :submissionId)";
+        String filter = switch (status == null ? ReviewStatus.ALL : status) {
+            case ALL -> "";
+            case GRADED -> " AND " + GRADED;
+            case UNGRADED -> " AND NOT " + GRADED;
+        };
+        List<Object[]> rows = fetchRows(REVIEW_PAGE_SQL.formatted(keyset, filter), (query) -> {
+            query.setParameter("classId", classId);
+            query.setParameter("assignmentId", assignmentId);
+            query.setParameter("limit", reviewPageSize + 1);
+            if (after != null) {
+                query.setParameter("studentName", after.studentName());
+                query.setParameter("submissionId", after.submissionId());
+            }
+        });
+
+        List<SubmissionReview> reviews = mapRows(rows, SubmissionReview::fromRow);
+        String nextCursor = null;
+        if (reviews.size() > reviewPageSize) {
+            reviews = reviews.subList(0, reviewPageSize);
+            SubmissionReview last = reviews.get(reviews.size() - 1);
+            nextCursor = new ReviewCursor(last.studentName(), last.submissionId()).encode();
+        }
+        return new ReviewPage(reviews, nextCursor);
     }
 
     /**
-     * Loads submission reviews for all assignments in a classroom.
+     * Lists the stored files submitted for one assignment, using the review list's join without the grades.
+     * Only metadata is loaded; callers read the content from storage one file at a time.
      *
      * @param classId classroom id
-     * @return list of submission reviews sorted by student name.
+     * @param assignmentId assignment id
+     * @return submitted files ordered by student name
      */
     @Transactional(readOnly = true)
-    public List<SubmissionReview> getSubmissionReviewsForClassroom(UUID classId) {
-        if (classId == null) return List.of();
+    public List<SubmissionFile> getSubmissionFiles(UUID classId, UUID assignmentId) {
+        if (classId == null || assignmentId == null) return List.of();
 
         List<Object[]> rows = fetchRows("""
             SELECT s.submission_id,
-                   s.assignment_id,
-                   a.title,
-                   a.maximum_marks,
-                   s.student_id,
                    u.full_name,
                    u.email,
                    s.submission_time,
-                   s.attachment_id,
                    att.url,
-                   g.marks_scored,
-                   g.feedback
+                   att.blob_sha256,
+                   att.content_type,
+                   att.size_bytes
             FROM assignment_submissions s
             JOIN assignments a ON s.assignment_id = a.assignment_id
             JOIN users u ON s.student_id = u.user_id
-            LEFT JOIN grades g ON g.submission_id = s.submission_id
-            LEFT JOIN attachments att ON s.attachment_id = att.attachment_id
+            JOIN attachments att ON s.attachment_id = att.attachment_id
             WHERE a.class_id = :classId
+              AND a.assignment_id = :assignmentId
             ORDER BY u.full_name, s.submission_time DESC
-            """, (query) -> query.setParameter("classId", classId));
+            """, (query) -> {
+            query.setParameter("classId", classId);
+            query.setParameter("assignmentId", assignmentId);
+        });
 
-        return mapRows(rows, SubmissionReview::fromRow);
+        return mapRows(rows, SubmissionFile::fromRow);
     }
 
     /**
@@ -105,42 +237,114 @@ public class ClassroomSubmissionService {
                                 UUID teacherId,
                                 Integer marksScored,
                                 String feedback) {
-        if (classroomId == null || submissionId == null || teacherId == null) return;
+        if (submissionId == null) return;
+        gradeSubmissions(classroomId, teacherId, List.of(new GradeEntry(submissionId, marksScored, feedback)));
+    }
 
-        List<Object[]> rows = fetchRows("""
-            SELECT s.assignment_id, a.class_id, a.maximum_marks
-            FROM assignment_submissions s
-            JOIN assignments a ON s.assignment_id = a.assignment_id
-            WHERE s.submission_id = :submissionId
-            """, (query) -> query.setParameter("submissionId", submissionId));
-
-        if (rows.isEmpty()) return;
-        Object[] row = rows.get(0);
-        if (row == null || row.length < 2) return;
-        UUID assignmentClassId = (UUID) row[1];
-        if (!classroomId.equals(assignmentClassId)) return;
-
-        Integer maxMarks = row[2] == null ? null : ((Number) row[2]).intValue();
-        AssignmentSubmission submission = em.find(AssignmentSubmission.class, submissionId);
-        if (submission == null) return;
-
-        Integer clampedMarks = clampMarks(marksScored, maxMarks);
-        Grade grade = em.find(Grade.class, submissionId);
-        if (grade == null) {
-            grade = new Grade();
-            grade.setSubmission(submission);
-            grade.setSubmissionId(submissionId);
-            grade.setTeacherId(teacherId);
-            grade.setMarksScored(clampedMarks);
-            grade.setFeedback(blankToNull(feedback));
-            em.persist(grade);
-            return;
+    /**
+     * Applies or updates grades for a batch of submissions with a fixed number of statements:
+     * one lock, one lookup that checks every submission belongs to the classroom, one batched
+     * insert for new grades and one batched update for existing ones.
+     *
+     * @param classroomId classroom id
+     * @param teacherId teacher id
+     * @param entries grades to apply
+     * @return outcome per entry, in the order given
+     * @throws IllegalArgumentException when the batch is larger than the configured maximum
+     */
+    @Transactional
+    public List<GradeResult> gradeSubmissions(UUID classroomId, UUID teacherId, List<GradeEntry> entries) {
+        if (entries == null || entries.isEmpty()) return List.of();
+        if (entries.size() > maxGradeBatch) {
+            throw new IllegalArgumentException("At most " + maxGradeBatch + " grades can be sent at once.");
         }
 
-        grade.setTeacherId(teacherId);
-        grade.setMarksScored(clampedMarks);
-        grade.setFeedback(blankToNull(feedback));
-        em.merge(grade);
+        Set<UUID> ids = new LinkedHashSet<>();
+        for (GradeEntry entry : entries) {
+            if (entry != null && entry.submissionId() != null) ids.add(entry.submissionId());
+        }
+        Map<UUID, GradeTarget> targets = new HashMap<>();
+        if (classroomId != null && teacherId != null && !ids.isEmpty()) {
+            UUID[] idArray = ids.toArray(UUID[]::new);
+            // Every grading path takes the submission locks first, so the current grades read
+            // below cannot change before they are overwritten and counted in the statistics.
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement("""
+                        SELECT submission_id FROM assignment_submissions
+                        WHERE submission_id = ANY(?)
+                        ORDER BY submission_id
+                        FOR UPDATE
+                        """);
+                ps.setArray(1, con.createArrayOf("uuid", idArray));
+                return ps;
+            }, rs -> {
+            });
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(GRADE_TARGETS_SQL);
+                ps.setObject(1, classroomId);
+                ps.setArray(2, con.createArrayOf("uuid", idArray));
+                return ps;
+            }, rs -> {
+                Number maxMarks = (Number) rs.getObject("maximum_marks");
+                Number marks = (Number) rs.getObject("marks_scored");
+                UUID submissionId = SqlValues.toUuid(rs.getObject("submission_id"));
+                targets.put(submissionId, new GradeTarget(
+                        SqlValues.toUuid(rs.getObject("assignment_id")),
+                        maxMarks == null ? null : maxMarks.intValue(),
+                        rs.getObject("graded_submission_id") == null ? null : new AssignmentStatsService.GradeValue(
+                                marks == null ? null : marks.intValue(), rs.getString("feedback") != null)));
+            });
+        }
+
+        List<GradeResult> results = new ArrayList<>(entries.size());
+        Map<UUID, GradeEntry> accepted = new LinkedHashMap<>();
+        for (GradeEntry entry : entries) {
+            UUID submissionId = entry == null ? null : entry.submissionId();
+            GradeTarget target = submissionId == null ? null : targets.get(submissionId);
+            if (target == null) {
+                results.add(new GradeResult(submissionId, GradeOutcome.NOT_FOUND, null));
+            } else if (accepted.containsKey(submissionId)) {
+                results.add(new GradeResult(submissionId, GradeOutcome.DUPLICATE, null));
+            } else {
+                GradeEntry clamped = new GradeEntry(submissionId,
+                        clampMarks(entry.marksScored(), target.maxMarks()), blankToNull(entry.feedback()));
+                accepted.put(submissionId, clamped);
+                results.add(new GradeResult(submissionId,
+                        target.current() == null ? GradeOutcome.CREATED : GradeOutcome.UPDATED,
+                        clamped.marksScored()));
+            }
+        }
+        if (accepted.isEmpty()) return results;
+
+        List<Object[]> inserts = new ArrayList<>();
+        List<Object[]> updates = new ArrayList<>();
+        List<AssignmentStatsService.GradeChange> changes = new ArrayList<>();
+        for (GradeEntry entry : accepted.values()) {
+            GradeTarget target = targets.get(entry.submissionId());
+            if (target.current() == null) {
+                inserts.add(new Object[] {entry.submissionId(), teacherId, entry.marksScored(), entry.feedback()});
+            } else {
+                updates.add(new Object[] {teacherId, entry.marksScored(), entry.feedback(), entry.submissionId()});
+            }
+            changes.add(new AssignmentStatsService.GradeChange(target.assignmentId(), target.current(),
+                    new AssignmentStatsService.GradeValue(entry.marksScored(), entry.feedback() != null)));
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate("""
+                    INSERT INTO grades (submission_id, teacher_id, marks_scored, feedback)
+                    VALUES (?, ?, ?, ?)
+                    ON CONFLICT DO NOTHING
+                    """, inserts);
+        }
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate("""
+                    UPDATE grades
+                    SET teacher_id = ?, marks_scored = ?, feedback = ?
+                    WHERE submission_id = ?
+                    """, updates);
+        }
+        statsService.recordGrades(changes);
+        return results;
     }
 
     /**
@@ -202,6 +406,9 @@ public class ClassroomSubmissionService {
 
     /**
      * Submits or updates an assignment submission for a student.
+     * A submitted file is staged before the transaction starts and written to storage after it
+     * commits, so the database connection is only held for the row updates. The submission
+     * time is when the request was accepted, however long the file and the row take to save.
      *
      * @param classroomId classroom id
      * @param assignmentId assignment id
@@ -209,8 +416,9 @@ public class ClassroomSubmissionService {
      * @param file optional submission file
      * @param markComplete whether to submit without a file
      * @param removeAttachment whether to remove an existing attachment
+     * @throws UploadRejectedException when the file is refused, for example because of its type
+     *                                 or a storage quota; nothing is saved then
      */
-    @Transactional
     public void submitAssignment(UUID classroomId,
                                  UUID assignmentId,
                                  UUID studentId,
@@ -218,15 +426,176 @@ public class ClassroomSubmissionService {
                                  boolean markComplete,
                                  boolean removeAttachment) {
         if (classroomId == null || assignmentId == null || studentId == null) return;
-        Assignment assignment = em.find(Assignment.class, assignmentId);
-        if (assignment == null || !classroomId.equals(assignment.getClassId())) {
-            return;
-        }
+        Instant acceptedAt = Instant.now();
         boolean hasFile = file != null && !file.isEmpty();
         if (!hasFile && !markComplete && !removeAttachment) {
             return;
         }
 
+        AttachmentService.StagedUpload upload = null;
+        if (hasFile) {
+            try {
+                upload = attachmentService.stage(file);
+            } catch (IOException ex) {
+                upload = null;
+            }
+        }
+
+        Attachment saved = null;
+        try {
+            saved = store(classroomId, assignmentId, studentId, upload, removeAttachment, acceptedAt);
+        } finally {
+            if (upload != null && saved == null) {
+                attachmentService.discard(upload);
+            }
+        }
+    }
+
+    /**
+     * Submits an assignment with a file that has already been staged, for uploads streamed
+     * from the request body. The staged file is discarded when it is not used.
+     *
+     * @param classroomId classroom id
+     * @param assignmentId assignment id
+     * @param studentId student id
+     * @param upload staged submission file
+     * @return the saved attachment, or empty when the assignment is not in the classroom
+     */
+    public Optional<Attachment> submitAssignment(UUID classroomId,
+                                                 UUID assignmentId,
+                                                 UUID studentId,
+                                                 AttachmentService.StagedUpload upload) {
+        Instant acceptedAt = Instant.now();
+        Attachment saved = null;
+        try {
+            if (classroomId != null && assignmentId != null && studentId != null) {
+                saved = store(classroomId, assignmentId, studentId, upload, false, acceptedAt);
+            }
+        } finally {
+            if (saved == null) {
+                attachmentService.discard(upload);
+            }
+        }
+        return Optional.ofNullable(saved);
+    }
+
+    /**
+     * Submits an assignment with a staged file in a single transaction that also runs
+     * {@code inSameTransaction}, so the caller's own bookkeeping commits or rolls back with the
+     * submission. Bypasses the ingest queue, whose writer commits rows separately. The staged
+     * file is discarded when it is not used.
+     *
+     * @param classroomId classroom id
+     * @param assignmentId assignment id
+     * @param studentId student id
+     * @param upload staged submission file
+     * @param inSameTransaction work to commit with the submission; runs even when the
+     *                          assignment is not in the classroom
+     * @return the saved attachment, or empty when the assignment is not in the classroom
+     */
+    public Optional<Attachment> submitAssignment(UUID classroomId,
+                                                 UUID assignmentId,
+                                                 UUID studentId,
+                                                 AttachmentService.StagedUpload upload,
+                                                 Runnable inSameTransaction) {
+        Instant acceptedAt = Instant.now();
+        Attachment saved = null;
+        try {
+            saved = transactionTemplate.execute(status -> {
+                Attachment attachment = saveSubmission(classroomId, assignmentId, studentId, upload, false, acceptedAt);
+                inSameTransaction.run();
+                return attachment;
+            });
+        } finally {
+            if (saved == null) {
+                attachmentService.discard(upload);
+            }
+        }
+        return Optional.ofNullable(saved);
+    }
+
+    /**
+     * Saves a submission, through the ingest queue when it is enabled and has room, or in its
+     * own transaction otherwise.
+     *
+     * @return the attachment created for the staged file, or null when none was saved
+     */
+    private Attachment store(UUID classroomId,
+                             UUID assignmentId,
+                             UUID studentId,
+                             AttachmentService.StagedUpload upload,
+                             boolean removeAttachment,
+                             Instant acceptedAt) {
+        if (!ingestService.isEnabled()) {
+            return transactionTemplate.execute(status ->
+                    saveSubmission(classroomId, assignmentId, studentId, upload, removeAttachment, acceptedAt));
+        }
+
+        if (!isInClassroom(classroomId, assignmentId)) {
+            return null;
+        }
+        // The file is stored by the request; only the submission row waits for the queue.
+        Attachment attachment = upload == null ? null
+                : transactionTemplate.execute(status -> attachmentService.upload(upload, studentId, classroomId));
+        UUID attachmentId = attachment == null ? null : attachment.getAttachmentId();
+        boolean saved;
+        try {
+            saved = ingestService.submit(new SubmissionIngestService.PendingSubmission(
+                            classroomId, assignmentId, studentId, acceptedAt, attachmentId, removeAttachment))
+                    .orElseGet(() -> Boolean.TRUE.equals(transactionTemplate.execute(status -> saveSubmissionRow(
+                            classroomId, assignmentId, studentId, attachment, removeAttachment, acceptedAt))));
+        } catch (RuntimeException ex) {
+            if (attachment != null) {
+                attachmentService.delete(attachmentId);
+            }
+            throw ex;
+        }
+        if (!saved && attachment != null) {
+            // The assignment was moved or deleted while the submission was queued
+            attachmentService.delete(attachmentId);
+            return null;
+        }
+        return attachment;
+    }
+
+    /**
+     * Creates or updates the submission row, attaching the staged file when present.
+     *
+     * @return the attachment created for the staged file, or null when none was saved
+     */
+    private Attachment saveSubmission(UUID classroomId,
+                                      UUID assignmentId,
+                                      UUID studentId,
+                                      AttachmentService.StagedUpload upload,
+                                      boolean removeAttachment,
+                                      Instant submittedAt) {
+        if (!isInClassroom(classroomId, assignmentId)) {
+            return null;
+        }
+
+        Attachment attachment = upload == null ? null : attachmentService.upload(upload, studentId, classroomId);
+        saveSubmissionRow(classroomId, assignmentId, studentId, attachment, removeAttachment, submittedAt);
+        return attachment;
+    }
+
+    /**
+     * Creates or updates the submission row and counts it in the assignment statistics.
+     *
+     * @param attachment file for the submission, or null to keep the current one
+     * @param removeAttachment whether to remove the current file when no new one is given
+     * @return false when the assignment is not in the classroom
+     */
+    private boolean saveSubmissionRow(UUID classroomId,
+                                      UUID assignmentId,
+                                      UUID studentId,
+                                      Attachment attachment,
+                                      boolean removeAttachment,
+                                      Instant submittedAt) {
+        Assignment assignment = em.find(Assignment.class, assignmentId);
+        if (assignment == null || !classroomId.equals(assignment.getClassId())) {
+            return false;
+        }
+
         AssignmentSubmission submission = em.createQuery(
                 "select s from AssignmentSubmission s where s.assignmentId = :assignmentId and s.studentId = :studentId",
                 AssignmentSubmission.class
@@ -242,97 +611,33 @@ public class ClassroomSubmissionService {
             submission.setStudentId(studentId);
         }
 
-        if (hasFile) {
-            Attachment attachment = storeSubmissionAttachment(file, studentId);
-            if (attachment != null) {
-                submission.setAttachment(attachment);
-            }
+        if (attachment != null) {
+            submission.setAttachment(attachment);
         } else if (removeAttachment) {
             submission.setAttachment(null);
         }
-        submission.setSubmissionTime(Instant.now());
+        Instant previousTime = submission.getSubmissionId() == null ? null : submission.getSubmissionTime();
+        submission.setSubmissionTime(submittedAt);
 
         if (submission.getSubmissionId() == null) {
             em.persist(submission);
         } else {
             em.merge(submission);
         }
+        // Writes the row first so its lock is taken before the statistics row, in the same
+        // order as batched submissions and grading.
+        em.flush();
+        statsService.recordSubmission(assignmentId, assignment.getDueDate(), previousTime, submittedAt);
+        return true;
     }
 
-
-    private Attachment storeSubmissionAttachment(MultipartFile file, UUID userId) {
-        if (file == null || file.isEmpty() || userId == null) return null;
-        String contentType = Optional.ofNullable(file.getContentType()).orElse("");
-        String attachmentId = UUID.randomUUID().toString();
-        String extension = extensionFromContentType(contentType);
-        String filename = attachmentId + extension;
-        String displayName = safeDisplayName(file.getOriginalFilename(), filename);
-        Path baseDir = storageDir.resolve("attachments").normalize();
-        String relativePath = "attachments/" + filename + "?name=" + URLEncoder.encode(displayName, StandardCharsets.UTF_8);
-        Path destination = baseDir.resolve(filename).normalize();
-
-        if (!destination.startsWith(baseDir)) {
-            return null;
-        }
-
-        try {
-            Files.createDirectories(baseDir);
-            Path realBase = baseDir.toRealPath();
-            Path parent = destination.getParent();
-            if (parent == null) {
-                return null;
-            }
-            Path realParent = parent.toRealPath();
-            if (!realBase.equals(realParent)) {
-                return null;
-            }
-            if (Files.exists(destination)) {
-                return null;
-            }
-            try (InputStream input = file.getInputStream()) {
-                try (var output = Files.newOutputStream(destination, StandardOpenOption.CREATE_NEW)) {
-                    input.transferTo(output);
-                }
-            }
-        } catch (IOException ex) {
-            return null;
-        }
-
-        Attachment attachment = new Attachment();
-        attachment.setAttachmentType(contentType.startsWith("image/") ? AttachmentType.IMAGE : AttachmentType.FILE);
-        attachment.setUrl(relativePath);
-        attachment.setUserOwner(userId);
-        return attachmentService.upload(attachment);
-    }
-
-    private String extensionFromContentType(String contentType) {
-        String type = contentType == null ? "" : contentType.toLowerCase();
-        return switch (type) {
-            case "image/png" -> ".png";
-            case "image/jpeg" -> ".jpg";
-            case "image/gif" -> ".gif";
-            case "image/webp" -> ".webp";
-            case "application/pdf" -> ".pdf";
-            case "text/plain" -> ".txt";
-            default -> "";
-        };
-    }
-
-    private String safeDisplayName(String originalName, String fallback) {
-        String baseName = Optional.ofNullable(originalName).orElse("");
-        String fileName = baseName.isBlank() ? fallback : Path.of(baseName).getFileName().toString();
-        String sanitized = fileName.replaceAll("[^A-Za-z0-9._-]", "_");
-        while (sanitized.contains("..")) {
-            sanitized = sanitized.replace("..", ".");
-        }
-        sanitized = sanitized.replaceAll("^\\.+", "");
-        if (sanitized.isBlank()) {
-            sanitized = fallback;
-        }
-        if (sanitized.length() > 120) {
-            sanitized = sanitized.substring(0, 120);
-        }
-        return sanitized;
+    /**
+     * Checks that an assignment belongs to the classroom before a file is stored for it, so a
+     * submission that would be refused costs no storage write or quota.
+     */
+    private boolean isInClassroom(UUID classroomId, UUID assignmentId) {
+        Assignment assignment = em.find(Assignment.class, assignmentId);
+        return assignment != null && classroomId.equals(assignment.getClassId());
     }
 
     private String blankToNull(String value) {
@@ -369,6 +674,92 @@ public class ClassroomSubmissionService {
         return results;
     }
 
+    /**
+     * Which submissions a review page includes.
+     */
+    public enum ReviewStatus {
+        ALL,
+        GRADED,
+        UNGRADED
+    }
+
+    /**
+     * One page of submission reviews.
+     *
+     * @param reviews reviews on this page, ordered by student name
+     * @param nextCursor cursor for the following page, or null on the last page
+     */
+    public record ReviewPage(List<SubmissionReview> reviews, String nextCursor) {
+        public ReviewPage {
+            reviews = List.copyOf(reviews);
+        }
+
+        static ReviewPage empty() {
+            return new ReviewPage(List.of(), null);
+        }
+
+        public boolean hasMore() {
+            return nextCursor != null;
+        }
+    }
+
+    /**
+     * One grade in a grading batch.
+     *
+     * @param submissionId submission to grade
+     * @param marksScored score awarded, clamped to the assignment's maximum
+     * @param feedback optional feedback
+     */
+    public record GradeEntry(UUID submissionId, Integer marksScored, String feedback) {
+    }
+
+    /**
+     * What happened to one entry of a grading batch.
+     */
+    public enum GradeOutcome {
+        CREATED,
+        UPDATED,
+        /** The submission does not exist or belongs to another classroom. */
+        NOT_FOUND,
+        /** The submission appeared earlier in the same batch, which was applied instead. */
+        DUPLICATE
+    }
+
+    /**
+     * Outcome of one entry of a grading batch.
+     *
+     * @param submissionId submission id from the entry
+     * @param outcome what happened to the entry
+     * @param marksScored marks stored after clamping, or null when nothing was stored
+     */
+    public record GradeResult(UUID submissionId, GradeOutcome outcome, Integer marksScored) {
+    }
+
+    private record GradeTarget(UUID assignmentId, Integer maxMarks, AssignmentStatsService.GradeValue current) {
+    }
+
+    /**
+     * Position in a review list, encoded for clients as an opaque URL-safe token.
+     * The id comes first because names may contain any character.
+     */
+    private record ReviewCursor(String studentName, UUID submissionId) {
+
+        String encode() {
+            String raw = submissionId + ":" + studentName;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static ReviewCursor decode(String cursor) {
+            if (cursor == null || cursor.isBlank()) return null;
+            String raw = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+            int idx = raw.indexOf(':');
+            if (idx <= 0) {
+                throw new IllegalArgumentException("Invalid review cursor.");
+            }
+            return new ReviewCursor(raw.substring(idx + 1), UUID.fromString(raw.substring(0, idx)));
+        }
+    }
+
     /**
      * Summary view of a submission for teachers.
      */
@@ -386,7 +777,7 @@ public class ClassroomSubmissionService {
                                    String feedback) {
         static SubmissionReview fromRow(Object[] row) {
             CommonSubmissionFields common = CommonSubmissionFields.fromRow(row, 7, 8, 9, 10, 11);
-            UUID studentId = (UUID) row[4];
+            UUID studentId = SqlValues.toUuid(row[4]);
             String studentName = row[5] == null ? "" : row[5].toString();
             String studentEmail = row[6] == null ? "" : row[6].toString();
             return new SubmissionReview(common.submissionId(), common.assignmentId(), common.assignmentTitle(),
@@ -395,6 +786,29 @@ public class ClassroomSubmissionService {
         }
     }
 
+    /**
+     * Stored file attached to a submission, used to build download archives.
+     */
+    public record SubmissionFile(UUID submissionId,
+                                 String studentName,
+                                 String studentEmail,
+                                 Instant submissionTime,
+                                 String attachmentUrl,
+                                 String blobSha256,
+                                 String contentType,
+                                 Long sizeBytes) {
+        static SubmissionFile fromRow(Object[] row) {
+            return new SubmissionFile(SqlValues.toUuid(row[0]),
+                    row[1] == null ? "" : row[1].toString(),
+                    row[2] == null ? "" : row[2].toString(),
+                    toInstant(row[3]),
+                    row[4] == null ? "" : row[4].toString(),
+                    row[5] == null ? null : row[5].toString(),
+                    row[6] == null ? null : row[6].toString(),
+                    row[7] == null ? null : ((Number) row[7]).longValue());
+        }
+    }
+
     /**
      * Summary view of a student's submission results.
      */
@@ -430,12 +844,12 @@ public class ClassroomSubmissionService {
                                               int attachmentUrlIndex,
                                               int marksIndex,
                                               int feedbackIndex) {
-            UUID submissionId = (UUID) row[0];
-            UUID assignmentId = (UUID) row[1];
+            UUID submissionId = SqlValues.toUuid(row[0]);
+            UUID assignmentId = SqlValues.toUuid(row[1]);
             String assignmentTitle = row[2] == null ? "" : row[2].toString();
             Integer maxMarks = row[3] == null ? null : ((Number) row[3]).intValue();
             Instant submissionTime = toInstant(row[submissionTimeIndex]);
-            UUID attachmentId = (UUID) row[attachmentIdIndex];
+            UUID attachmentId = SqlValues.toUuid(row[attachmentIdIndex]);
             String attachmentUrl = row[attachmentUrlIndex] == null ? "" : row[attachmentUrlIndex].toString();
             Integer marksScored = row[marksIndex] == null ? null : ((Number) row[marksIndex]).intValue();
             String feedback = row[feedbackIndex] == null ? "" : row[feedbackIndex].toString();
@@ -0,0 +1,197 @@
+package com.binder.demo.services;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Identifies uploads from their leading bytes instead of the content type the browser sent.
+ * Only the formats listed here are accepted; anything else, such as executables or HTML,
+ * is rejected before it is stored.
+ */
+final class ContentSniffer {
+
+    /**
+     * Number of leading bytes inspected.
+     */
+    static final int HEAD_SIZE = 4096;
+
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] JPEG = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
+    private static final byte[] GIF87 = "GIF87a".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] GIF89 = "GIF89a".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PDF = "%PDF-".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ZIP = {'P', 'K', 3, 4};
+    private static final byte[] OLE2 = {(byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0, (byte) 0xA1, (byte) 0xB1, 0x1A, (byte) 0xE1};
+    private static final byte[] ID3 = "ID3".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] OGG = "OggS".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FLAC = "fLaC".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * ISO base media brands of HEIF still images and image sequences.
+     */
+    private static final Set<String> HEIF_BRANDS = Set.of("heic", "heix", "heim", "heis", "hevc", "hevx", "mif1", "msf1");
+
+    /**
+     * ISO base media brands of AVIF images and image sequences.
+     */
+    private static final Set<String> AVIF_BRANDS = Set.of("avif", "avis");
+
+    /**
+     * ISO base media brands of audio-only MPEG-4 files: AAC audio, audiobooks and protected audio.
+     */
+    private static final Set<String> AUDIO_BRANDS = Set.of("M4A ", "M4B ", "M4P ");
+
+    /**
+     * Extensions that name a ZIP-based document format.
+     */
+    private static final Set<String> ZIP_FORMATS = Set.of("docx", "xlsx", "pptx", "odt", "ods", "odp", "epub", "zip");
+
+    /**
+     * Extensions that name a legacy Office format.
+     */
+    private static final Set<String> OLE2_FORMATS = Set.of("doc", "xls", "ppt");
+
+    /**
+     * Text types that are safe to serve as named; every other text file is served as plain text.
+     */
+    private static final Set<String> TEXT_TYPES = Set.of("text/plain", "text/csv", "text/markdown");
+
+    private ContentSniffer() {
+    }
+
+    /**
+     * Determines the content type of an upload from its first bytes. The filename only
+     * chooses between formats that share a signature, such as the ZIP-based Office formats.
+     *
+     * @param head leading bytes of the upload
+     * @param length number of valid bytes in {@code head}
+     * @param complete true when {@code head} holds the whole upload
+     * @param displayName sanitized filename
+     * @return content type to store, or empty when the format is not accepted
+     */
+    static Optional<String> sniff(byte[] head, int length, boolean complete, String displayName) {
+        if (startsWith(head, length, PNG)) return Optional.of(MediaType.IMAGE_PNG_VALUE);
+        if (startsWith(head, length, JPEG)) return Optional.of(MediaType.IMAGE_JPEG_VALUE);
+        if (startsWith(head, length, GIF87) || startsWith(head, length, GIF89)) return Optional.of(MediaType.IMAGE_GIF_VALUE);
+        if (length >= 12 && matches(head, 0, "RIFF") && matches(head, 8, "WEBP")) return Optional.of("image/webp");
+        if (startsWith(head, length, PDF)) return Optional.of(MediaType.APPLICATION_PDF_VALUE);
+        if (length >= 12 && matches(head, 4, "ftyp")) return Optional.of(isoMediaType(head, length, displayName));
+        if (length >= 12 && matches(head, 0, "RIFF") && matches(head, 8, "WAVE")) return Optional.of("audio/wav");
+        if (startsWith(head, length, OGG)) return Optional.of("ogv".equals(extension(displayName)) ? "video/ogg" : "audio/ogg");
+        if (startsWith(head, length, FLAC)) return Optional.of("audio/flac");
+        if (startsWith(head, length, ID3) || isMpegAudioFrame(head, length)) return Optional.of("audio/mpeg");
+        if (startsWith(head, length, ZIP)) {
+            return ZIP_FORMATS.contains(extension(displayName))
+                    ? Optional.of(typeFromName(displayName).orElse("application/zip"))
+                    : Optional.of("application/zip");
+        }
+        if (startsWith(head, length, OLE2)) {
+            return OLE2_FORMATS.contains(extension(displayName)) ? typeFromName(displayName) : Optional.empty();
+        }
+        if (isText(head, length, complete)) {
+            String named = typeFromName(displayName).orElse(MediaType.TEXT_PLAIN_VALUE);
+            return Optional.of(TEXT_TYPES.contains(named) ? named : MediaType.TEXT_PLAIN_VALUE);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Names an ISO base media file (MP4, QuickTime, HEIF, AVIF, 3GP) from the major brand at
+     * bytes 8-11 of its {@code ftyp} box. HEIF files that only declare the generic {@code mif1}
+     * or {@code msf1} brand are AVIF when {@code avif} is among their compatible brands.
+     */
+    private static String isoMediaType(byte[] head, int length, String displayName) {
+        String major = new String(head, 8, 4, StandardCharsets.US_ASCII);
+        if (AVIF_BRANDS.contains(major)) return "image/avif";
+        if (HEIF_BRANDS.contains(major)) {
+            return major.startsWith("m") && hasCompatibleBrand(head, length, "avif") ? "image/avif" : "image/heic";
+        }
+        if (major.equals("qt  ")) return "video/quicktime";
+        if (major.startsWith("3gp")) return "video/3gpp";
+        if (major.startsWith("3g2")) return "video/3gpp2";
+        if (AUDIO_BRANDS.contains(major) || "m4a".equals(extension(displayName))) return "audio/mp4";
+        return "video/mp4";
+    }
+
+    /**
+     * Looks for a brand in the compatible brands of the leading {@code ftyp} box, which follow
+     * the major brand and minor version.
+     */
+    private static boolean hasCompatibleBrand(byte[] head, int length, String brand) {
+        long boxSize = ((head[0] & 0xFFL) << 24) | ((head[1] & 0xFF) << 16) | ((head[2] & 0xFF) << 8) | (head[3] & 0xFF);
+        int end = (int) Math.min(boxSize, length);
+        for (int offset = 16; offset + 4 <= end; offset += 4) {
+            if (matches(head, offset, brand)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Recognises an MP3 file without an ID3 tag from the header of its first MPEG audio frame:
+     * an 11-bit frame sync followed by a valid version, layer, bitrate and sample rate.
+     * JPEG, which also starts with {@code 0xFF}, is matched before this.
+     */
+    private static boolean isMpegAudioFrame(byte[] head, int length) {
+        if (length < 4 || (head[0] & 0xFF) != 0xFF || (head[1] & 0xE0) != 0xE0) return false;
+        int version = (head[1] >> 3) & 0x03;
+        int layer = (head[1] >> 1) & 0x03;
+        int bitrate = (head[2] >> 4) & 0x0F;
+        int sampleRate = (head[2] >> 2) & 0x03;
+        return version != 1 && layer != 0 && bitrate != 0x0F && sampleRate != 0x03;
+    }
+
+    /**
+     * Accepts UTF-8 text without NUL or other binary control characters. A multi-byte
+     * character cut off at the end of an incomplete head is allowed.
+     */
+    private static boolean isText(byte[] head, int length, boolean complete) {
+        for (int i = 0; i < length; i++) {
+            int b = head[i] & 0xFF;
+            if (b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f') {
+                return false;
+            }
+        }
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        ByteBuffer input = ByteBuffer.wrap(head, 0, length);
+        CoderResult result = decoder.decode(input, CharBuffer.allocate(length), complete);
+        if (result.isError()) return false;
+        // Up to three bytes of an unfinished character may remain when the head was cut short.
+        return complete ? !input.hasRemaining() : input.remaining() < 4;
+    }
+
+    private static Optional<String> typeFromName(String displayName) {
+        return MediaTypeFactory.getMediaType(displayName).map(MediaType::toString);
+    }
+
+    private static String extension(String displayName) {
+        int dot = displayName == null ? -1 : displayName.lastIndexOf('.');
+        return dot < 0 ? "" : displayName.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean startsWith(byte[] head, int length, byte[] signature) {
+        if (length < signature.length) return false;
+        for (int i = 0; i < signature.length; i++) {
+            if (head[i] != signature[i]) return false;
+        }
+        return true;
+    }
+
+    private static boolean matches(byte[] head, int offset, String ascii) {
+        for (int i = 0; i < ascii.length(); i++) {
+            if (head[offset + i] != (byte) ascii.charAt(i)) return false;
+        }
+        return true;
+    }
+}
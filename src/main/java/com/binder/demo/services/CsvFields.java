@@ -0,0 +1,36 @@
+package com.binder.demo.services;
+
+/**
+ * Escapes fields for the CSV files teachers download, such as gradebook exports and roster
+ * import reports.
+ */
+final class CsvFields {
+
+    /**
+     * Leading characters that make a spreadsheet read a field as a formula.
+     */
+    private static final String FORMULA_TRIGGERS = "=+-@\t\r";
+
+    private CsvFields() {
+    }
+
+    /**
+     * Quotes a field when it holds a separator, quote or line break. Text a spreadsheet would
+     * read as a formula, such as a name starting with {@code =}, is prefixed with a quote mark
+     * so that opening the file cannot run it; marks are digits only and never affected.
+     *
+     * @param value raw field value
+     * @return CSV field; {@code null} is written as an empty field
+     */
+    static String escape(String value) {
+        if (value == null || value.isEmpty()) {
+            return "";
+        }
+        String field = FORMULA_TRIGGERS.indexOf(value.charAt(0)) >= 0 ? "'" + value : value;
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0
+                && field.indexOf('\n') < 0 && field.indexOf('\r') < 0) {
+            return field;
+        }
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,79 @@
+package com.binder.demo.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Per-user cache of the dashboard classroom list.
+ * Hit and miss counts are published as the "dashboardClassrooms" cache metrics.
+ */
+@Component
+public class DashboardCache {
+
+    /**
+     * Cached dashboard entries keyed by user id.
+     */
+    private final Cache<UUID, List<ClassroomEnrollmentService.DashboardClassroom>> cache;
+
+    public DashboardCache(MeterRegistry meterRegistry,
+                          @Value("${dashboard.cache.max-size:10000}") long maxSize,
+                          @Value("${dashboard.cache.ttl:10m}") Duration ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, maxSize))
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "dashboardClassrooms");
+    }
+
+    /**
+     * Returns the cached classroom list for a user, loading it on a miss.
+     *
+     * @param userId user id
+     * @param loader database lookup used on a miss
+     * @return classrooms shown on the user's dashboard
+     */
+    public List<ClassroomEnrollmentService.DashboardClassroom> get(
+            UUID userId, Supplier<List<ClassroomEnrollmentService.DashboardClassroom>> loader) {
+        return cache.get(userId, key -> List.copyOf(loader.get()));
+    }
+
+    /**
+     * Drops the cached list for one user, again after the current transaction completes.
+     *
+     * @param userId user whose classrooms changed
+     */
+    public void invalidate(UUID userId) {
+        evictNowAndAfterCompletion(() -> cache.invalidate(userId));
+    }
+
+    /**
+     * Drops every cached list, used when a classroom itself changes.
+     */
+    public void invalidateAll() {
+        evictNowAndAfterCompletion(cache::invalidateAll);
+    }
+
+    private void evictNowAndAfterCompletion(Runnable eviction) {
+        eviction.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    eviction.run();
+                }
+            });
+        }
+    }
+}
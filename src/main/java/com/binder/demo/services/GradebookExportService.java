@@ -0,0 +1,201 @@
+package com.binder.demo.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Writes a classroom's gradebook as CSV: one row per student, one column per assignment.
+ * <p>
+ * Cells are read through a single forward-only cursor ordered by student and written as soon
+ * as the next student's first row arrives, so only the current student's row is held in memory
+ * however many grade cells the class has. The cursor keeps its connection until the last row
+ * is written, which for a slow client means for the length of the download.
+ */
+@Service
+public class GradebookExportService {
+
+    /**
+     * Assignment columns, ordered by due date with undated assignments last.
+     */
+    private static final String COLUMNS_SQL = """
+            SELECT a.assignment_id, a.title, a.maximum_marks
+            FROM assignments a
+            WHERE a.class_id = ?
+            ORDER BY a.due_date NULLS LAST, a.created_at, a.assignment_id
+            """;
+
+    /**
+     * Every enrolled student, plus anyone who submitted before leaving the class, with one row
+     * per submission. Students without submissions come back once with a null assignment.
+     */
+    private static final String CELLS_SQL = """
+            WITH students AS (
+                SELECT e.student_id
+                FROM enrollments e
+                WHERE e.class_id = ?
+                UNION
+                SELECT s.student_id
+                FROM assignment_submissions s
+                JOIN assignments a ON s.assignment_id = a.assignment_id
+                WHERE a.class_id = ?
+            )
+            SELECT u.user_id, u.full_name, u.email, s.assignment_id, g.marks_scored
+            FROM students st
+            JOIN users u ON st.student_id = u.user_id
+            LEFT JOIN assignment_submissions s
+                   ON s.student_id = u.user_id
+                  AND s.assignment_id IN (SELECT a.assignment_id FROM assignments a WHERE a.class_id = ?)
+            LEFT JOIN grades g ON g.submission_id = s.submission_id
+            ORDER BY u.full_name, u.user_id
+            """;
+
+    /**
+     * JDBC access to the gradebook tables.
+     */
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Rows fetched from the cursor per round trip.
+     */
+    private final int fetchSize;
+
+    /**
+     * Creates the export service.
+     *
+     * @param jdbcTemplate JDBC access to the gradebook tables
+     * @param fetchSize rows fetched from the cursor per round trip
+     */
+    public GradebookExportService(JdbcTemplate jdbcTemplate,
+                                  @Value("${classroom.gradebook.fetch-size:500}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Writes the gradebook of a classroom as CSV. The header names each assignment, with its
+     * maximum marks when set; a cell holds the marks given, and is empty when the student has
+     * not submitted or the submission has no marks yet.
+     * <p>
+     * Runs in a read-only transaction so that Postgres serves the query from a cursor in
+     * batches of the fetch size rather than sending the whole result at once.
+     *
+     * @param classId classroom id
+     * @param out destination, which is not flushed or closed
+     * @throws IOException when writing to {@code out} fails
+     */
+    @Transactional(readOnly = true)
+    public void writeGradebook(UUID classId, Writer out) throws IOException {
+        List<String> header = new ArrayList<>(List.of("Student", "Email"));
+        Map<UUID, Integer> columnByAssignment = new HashMap<>();
+        jdbcTemplate.query(COLUMNS_SQL, rs -> {
+            UUID assignmentId = SqlValues.toUuid(rs.getObject(1));
+            Integer maxMarks = rs.getObject(3, Integer.class);
+            columnByAssignment.put(assignmentId, columnByAssignment.size());
+            header.add(maxMarks == null ? rs.getString(2) : rs.getString(2) + " (/" + maxMarks + ")");
+        }, classId);
+        writeRow(out, header);
+
+        GradebookRow row = new GradebookRow(out, columnByAssignment.size());
+        try {
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(CELLS_SQL);
+                ps.setFetchSize(fetchSize);
+                ps.setObject(1, classId);
+                ps.setObject(2, classId);
+                ps.setObject(3, classId);
+                return ps;
+            }, rs -> {
+                UUID studentId = SqlValues.toUuid(rs.getObject(1));
+                row.startStudent(studentId, rs.getString(2), rs.getString(3));
+                Integer column = columnByAssignment.get(SqlValues.toUuid(rs.getObject(4)));
+                Integer marks = rs.getObject(5, Integer.class);
+                if (column != null && marks != null) {
+                    row.cells[column] = marks.toString();
+                }
+            });
+            row.finish();
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * The student row being filled from the cursor, written out when the cursor moves on.
+     */
+    private static final class GradebookRow {
+
+        private final Writer out;
+        private final String[] cells;
+        private UUID studentId;
+        private String name;
+        private String email;
+
+        private GradebookRow(Writer out, int columns) {
+            this.out = out;
+            this.cells = new String[columns];
+        }
+
+        /**
+         * Writes the previous student's row when {@code studentId} starts a new one.
+         */
+        private void startStudent(UUID studentId, String name, String email) {
+            if (studentId.equals(this.studentId)) {
+                return;
+            }
+            finish();
+            this.studentId = studentId;
+            this.name = name;
+            this.email = email;
+            Arrays.fill(cells, null);
+        }
+
+        /**
+         * Writes the current student's row, if any.
+         */
+        private void finish() {
+            if (studentId == null) {
+                return;
+            }
+            List<String> values = new ArrayList<>(cells.length + 2);
+            values.add(name);
+            values.add(email);
+            values.addAll(Arrays.asList(cells));
+            try {
+                writeRow(out, values);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            studentId = null;
+        }
+    }
+
+    /**
+     * Writes one CSV record, ending it with CRLF as RFC 4180 asks.
+     *
+     * @param out destination
+     * @param values field values; {@code null} is written as an empty field
+     * @throws IOException when writing fails
+     */
+    static void writeRow(Writer out, List<String> values) throws IOException {
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write(CsvFields.escape(values.get(i)));
+        }
+        out.write("\r\n");
+    }
+}
@@ -0,0 +1,90 @@
+package com.binder.demo.services;
+
+import com.binder.demo.user.Role;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, time-limited cache of classroom membership checks.
+ * Hit and miss counts are published as the "classroomMembership" cache metrics.
+ */
+@Component
+public class MembershipCache {
+
+    /**
+     * Cached membership answers keyed by classroom, user, and role.
+     */
+    private final Cache<MembershipKey, Boolean> cache;
+
+    public MembershipCache(MeterRegistry meterRegistry,
+                           @Value("${membership.cache.max-size:50000}") long maxSize,
+                           @Value("${membership.cache.ttl:5m}") Duration ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, maxSize))
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "classroomMembership");
+    }
+
+    /**
+     * Returns the cached membership answer, loading it on a miss.
+     *
+     * @param classId classroom id
+     * @param userId user id
+     * @param role role to verify
+     * @param loader database check used on a miss
+     * @return true when the user holds the role in the classroom
+     */
+    public boolean isMember(UUID classId, UUID userId, Role role, Supplier<Boolean> loader) {
+        return cache.get(new MembershipKey(classId, userId, role), key -> loader.get());
+    }
+
+    /**
+     * Drops the cached answer for one membership.
+     * When called inside a transaction the entry is dropped again after it completes,
+     * so a concurrent reader cannot re-cache the pre-commit state.
+     *
+     * @param classId classroom id
+     * @param userId user id
+     * @param role role that changed
+     */
+    public void invalidate(UUID classId, UUID userId, Role role) {
+        MembershipKey key = new MembershipKey(classId, userId, role);
+        evictNowAndAfterCompletion(() -> cache.invalidate(key));
+    }
+
+    /**
+     * Drops every cached answer for a classroom.
+     *
+     * @param classId classroom id
+     */
+    public void invalidateClass(UUID classId) {
+        evictNowAndAfterCompletion(() -> cache.asMap().keySet().removeIf(key -> key.classId().equals(classId)));
+    }
+
+    private void evictNowAndAfterCompletion(Runnable eviction) {
+        eviction.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    eviction.run();
+                }
+            });
+        }
+    }
+
+    private record MembershipKey(UUID classId, UUID userId, Role role) {
+    }
+}
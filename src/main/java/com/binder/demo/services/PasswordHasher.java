@@ -0,0 +1,115 @@
+package com.binder.demo.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.stereotype.Component;
+
+/**
+ * Encodes and checks the BCrypt hashes stored in {@code authentications.password_hash}.
+ * The work factor is configurable per deployment; hashes made with a different cost
+ * are reported by {@link #needsRehash(String)} so they can be upgraded on login.
+ */
+@Component
+public class PasswordHasher {
+
+    private static final int MIN_COST = 4;
+    private static final int MAX_COST = 31;
+
+    /**
+     * BCrypt work factor used for new hashes.
+     */
+    private final int cost;
+
+    public PasswordHasher(@Value("${auth.bcrypt.cost:10}") int cost) {
+        if (cost < MIN_COST || cost > MAX_COST) {
+            throw new IllegalArgumentException("auth.bcrypt.cost must be between " + MIN_COST + " and " + MAX_COST);
+        }
+        this.cost = cost;
+    }
+
+    /**
+     * Hashes a password with a fresh salt at the configured cost.
+     *
+     * @param password raw password
+     * @return encoded hash
+     */
+    public String hash(String password) {
+        return BCrypt.hashpw(password, BCrypt.gensalt(cost));
+    }
+
+    /**
+     * Checks a password against a stored hash.
+     *
+     * @param password raw password
+     * @param hash stored hash
+     * @return true when the password matches
+     */
+    public boolean matches(String password, String hash) {
+        return verify(password, hash) == Verification.MATCH;
+    }
+
+    /**
+     * Checks a password against a stored hash, telling a wrong password apart from a stored
+     * value that is not a valid BCrypt hash, such as one left by a legacy import. The latter
+     * never matches.
+     *
+     * @param password raw password
+     * @param hash stored hash
+     * @return outcome of the check
+     */
+    public Verification verify(String password, String hash) {
+        if (hash == null) return Verification.MISMATCH;
+        if (costOf(hash) < 0) return Verification.MALFORMED_HASH;
+        try {
+            return BCrypt.checkpw(password, hash) ? Verification.MATCH : Verification.MISMATCH;
+        } catch (IllegalArgumentException ex) {
+            return Verification.MALFORMED_HASH;
+        }
+    }
+
+    /**
+     * Checks whether a stored hash was made with a different cost than the configured one.
+     *
+     * @param hash stored hash
+     * @return true when the hash should be replaced
+     */
+    public boolean needsRehash(String hash) {
+        int storedCost = costOf(hash);
+        return storedCost >= 0 && storedCost != cost;
+    }
+
+    /**
+     * Returns the configured work factor.
+     *
+     * @return BCrypt cost
+     */
+    public int getCost() {
+        return cost;
+    }
+
+    /**
+     * Reads the work factor from an encoded hash such as {@code $2a$10$...}.
+     *
+     * @param hash stored hash
+     * @return cost, or -1 when the hash is not a BCrypt hash
+     */
+    static int costOf(String hash) {
+        if (hash == null || hash.length() < 7 || hash.charAt(0) != '$' || hash.charAt(3) != '$' || hash.charAt(6) != '$') {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(hash.substring(4, 6));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Outcome of checking a password against a stored hash.
+     */
+    public enum Verification {
+        MATCH,
+        MISMATCH,
+        MALFORMED_HASH
+    }
+}
@@ -0,0 +1,148 @@
+package com.binder.demo.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs password hashing and verification on a dedicated, bounded executor.
+ * BCrypt is deliberately slow, so keeping it off the servlet threads stops a burst of
+ * logins from starving page and asset requests. When the queue is full, work is rejected
+ * immediately instead of piling up.
+ */
+@Service
+public class PasswordHashingService {
+
+    private static final Logger log = LoggerFactory.getLogger(PasswordHashingService.class);
+
+    /**
+     * Bounded pool for hashing work; rejects new work when its queue is full.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Hash encoder holding the configured work factor.
+     */
+    private final PasswordHasher passwordHasher;
+
+    private final Timer hashTimer;
+    private final Timer verifyTimer;
+    private final Counter rejections;
+    private final Counter malformedHashes;
+
+    public PasswordHashingService(PasswordHasher passwordHasher,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${auth.hash.threads:0}") int threads,
+                                  @Value("${auth.hash.queue-capacity:64}") int queueCapacity) {
+        this.passwordHasher = passwordHasher;
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                namedThreads("password-hash-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+
+        this.hashTimer = Timer.builder("auth.hash.latency")
+                .description("Time spent hashing or verifying a password")
+                .tag("operation", "hash")
+                .register(meterRegistry);
+        this.verifyTimer = Timer.builder("auth.hash.latency")
+                .description("Time spent hashing or verifying a password")
+                .tag("operation", "verify")
+                .register(meterRegistry);
+        this.rejections = Counter.builder("auth.hash.rejected")
+                .description("Password hashing requests rejected because the executor was saturated")
+                .register(meterRegistry);
+        this.malformedHashes = Counter.builder("auth.hash.malformed")
+                .description("Logins refused because the stored password hash is not a valid BCrypt hash")
+                .register(meterRegistry);
+        Gauge.builder("auth.hash.queue.depth", executor, pool -> pool.getQueue().size())
+                .description("Password hashing requests waiting for a thread")
+                .register(meterRegistry);
+        Gauge.builder("auth.hash.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Password hashing requests currently running")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Hashes a password with a fresh salt at the configured cost.
+     *
+     * @param password raw password
+     * @return future completed with the encoded hash
+     * @throws RejectedExecutionException when the executor is saturated
+     */
+    public CompletableFuture<String> hash(String password) {
+        return submit(hashTimer, () -> passwordHasher.hash(password));
+    }
+
+    /**
+     * Checks a password against a user's stored hash. A stored value that is not a valid
+     * BCrypt hash never matches; each such login is counted and logged with the user id so
+     * the account can be repaired.
+     *
+     * @param userId user the hash belongs to
+     * @param password raw password
+     * @param hash stored hash
+     * @return future completed with true when the password matches
+     * @throws RejectedExecutionException when the executor is saturated
+     */
+    public CompletableFuture<Boolean> verify(UUID userId, String password, String hash) {
+        return submit(verifyTimer, () -> {
+            PasswordHasher.Verification verification = passwordHasher.verify(password, hash);
+            if (verification == PasswordHasher.Verification.MALFORMED_HASH) {
+                malformedHashes.increment();
+                log.warn("Stored password hash of user {} is not a valid BCrypt hash; login refused", userId);
+            }
+            return verification == PasswordHasher.Verification.MATCH;
+        });
+    }
+
+    /**
+     * Checks whether a stored hash should be upgraded to the configured cost.
+     *
+     * @param hash stored hash
+     * @return true when the hash was made with a different cost
+     */
+    public boolean needsRehash(String hash) {
+        return passwordHasher.needsRehash(hash);
+    }
+
+    private <T> CompletableFuture<T> submit(Timer timer, Supplier<T> work) {
+        try {
+            return CompletableFuture.supplyAsync(() -> timer.record(work), executor);
+        } catch (RejectedExecutionException ex) {
+            rejections.increment();
+            throw ex;
+        }
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
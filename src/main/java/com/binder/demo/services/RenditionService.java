@@ -0,0 +1,451 @@
+package com.binder.demo.services;
+
+import com.binder.demo.attachments.Rendition;
+import com.binder.demo.storage.AttachmentStorage;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.imageio.IIOException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.FileImageOutputStream;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates downscaled JPEG renditions of image attachments with the JDK's ImageIO.
+ * Renditions are written to the attachment storage next to the original blob, so they are
+ * rendered once per content hash and shared by every attachment with the same bytes.
+ * Rendering runs on a small bounded pool: it is started after an image upload commits, and
+ * otherwise on the first request. Concurrent requests for a rendition that is being rendered
+ * wait for the same task instead of decoding the image again.
+ */
+@Service
+public class RenditionService {
+
+    private static final Logger log = LoggerFactory.getLogger(RenditionService.class);
+    private static final float JPEG_QUALITY = 0.82f;
+
+    /**
+     * Source of the original images.
+     */
+    private final BlobStore blobStore;
+
+    /**
+     * Backend holding the rendered files.
+     */
+    private final AttachmentStorage storage;
+
+    /**
+     * Local directory for renditions that have not been handed to the backend yet.
+     */
+    private final Path stagingDir;
+
+    /**
+     * Rendering tasks by storage key; a rendition being rendered has exactly one task.
+     */
+    private final Map<String, CompletableFuture<Boolean>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Hashes of blobs that could not be decoded, so they are not decoded again on every request.
+     * Entries expire, so an image that fails because of a reader bug or a missing plugin is
+     * retried after an upgrade without a restart.
+     */
+    private final Cache<String, Boolean> unrenderable;
+
+    /**
+     * Background pool for rendering; rejects work when its queue is full.
+     */
+    private final ThreadPoolExecutor renderer;
+
+    /**
+     * How long a request waits for a rendition before falling back to the original.
+     */
+    private final Duration requestWait;
+
+    /**
+     * Largest source image, in pixels, that will be decoded.
+     */
+    private final long maxSourcePixels;
+
+    private final Timer renderTimer;
+    private final Counter renderFailures;
+
+    public RenditionService(BlobStore blobStore,
+                            AttachmentStorage storage,
+                            MeterRegistry meterRegistry,
+                            @Value("${attachments.staging-dir:${attachments.storage-dir:uploads}/.staging}") String stagingDir,
+                            @Value("${attachments.renditions.threads:2}") int threads,
+                            @Value("${attachments.renditions.queue-capacity:64}") int queueCapacity,
+                            @Value("${attachments.renditions.request-wait:10s}") Duration requestWait,
+                            @Value("${attachments.renditions.max-source-pixels:40000000}") long maxSourcePixels,
+                            @Value("${attachments.renditions.unrenderable-ttl:1h}") Duration unrenderableTtl) {
+        this.blobStore = blobStore;
+        this.storage = storage;
+        this.stagingDir = Path.of(stagingDir).toAbsolutePath().normalize();
+        this.requestWait = requestWait;
+        this.maxSourcePixels = maxSourcePixels;
+        this.unrenderable = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(unrenderableTtl)
+                .build();
+
+        int poolSize = Math.max(1, threads);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.renderer = new ThreadPoolExecutor(poolSize, poolSize, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "attachment-renderer-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.renderer.allowCoreThreadTimeOut(true);
+
+        this.renderTimer = Timer.builder("attachments.renditions.render")
+                .description("Time spent decoding, scaling and storing an image rendition")
+                .register(meterRegistry);
+        this.renderFailures = Counter.builder("attachments.renditions.failures")
+                .description("Image renditions that could not be rendered or stored")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns a rendition of an image blob, rendering it first when it does not exist yet.
+     *
+     * @param sha256 hash of the original image
+     * @param rendition rendition size
+     * @return stored rendition, or empty when the image cannot be rendered right now
+     * @throws IOException when the hash is malformed or the storage backend cannot be reached
+     */
+    public Optional<Resource> rendition(String sha256, Rendition rendition) throws IOException {
+        String key = BlobStore.renditionKeyFor(sha256, rendition);
+        Resource stored = storage.resource(key);
+        if (stored.exists()) {
+            return Optional.of(stored);
+        }
+        if (unrenderable.getIfPresent(sha256) != null) {
+            return Optional.empty();
+        }
+
+        boolean rendered;
+        try {
+            rendered = submit(sha256, rendition).get(requestWait.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException | TimeoutException | ExecutionException ex) {
+            // The task keeps running after a timeout; later requests pick up its result.
+            return Optional.empty();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        }
+        return rendered ? Optional.of(storage.resource(key)) : Optional.empty();
+    }
+
+    /**
+     * Queues every rendition of an uploaded image once the current transaction commits,
+     * so the first page view finds them ready. Work that does not fit the queue is left
+     * for the first request.
+     *
+     * @param sha256 hash of the uploaded image
+     */
+    public void renderAfterCommit(String sha256) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            renderAll(sha256);
+            return;
+        }
+        // Registered after the blob store's own callback, so the blob is already scheduled
+        // for writing and readable from staging when rendering starts.
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    renderAll(sha256);
+                }
+            }
+        });
+    }
+
+    private void renderAll(String sha256) {
+        for (Rendition rendition : Rendition.values()) {
+            try {
+                submit(sha256, rendition);
+            } catch (RejectedExecutionException ex) {
+                log.debug("Rendition queue full; {} of {} will be rendered on request", rendition, sha256);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the running task for a rendition, starting one when there is none.
+     *
+     * @throws RejectedExecutionException when the rendering queue is full
+     */
+    private CompletableFuture<Boolean> submit(String sha256, Rendition rendition) {
+        String key = BlobStore.renditionKeyFor(sha256, rendition);
+        CompletableFuture<Boolean> task = inFlight.computeIfAbsent(key,
+                ignored -> CompletableFuture.supplyAsync(() -> render(sha256, rendition, key), renderer));
+        task.whenComplete((rendered, error) -> inFlight.remove(key, task));
+        return task;
+    }
+
+    /**
+     * Decodes the original, scales it and stores the result under its rendition key.
+     * Only an original that fails to decode is remembered as unrenderable; when it cannot be
+     * read, or the rendition cannot be stored, the next request tries again.
+     *
+     * @return true when the rendition is stored, false when it could not be rendered
+     */
+    private Boolean render(String sha256, Rendition rendition, String key) {
+        Timer.Sample sample = Timer.start();
+        Path temp = null;
+        try {
+            if (storage.exists(key)) {
+                return true;
+            }
+            BufferedImage source;
+            try {
+                source = decode(blobStore.resource(sha256), rendition.maxEdge());
+            } catch (FileNotFoundException | NoSuchFileException ex) {
+                // The staged copy was moved to the backend while it was being opened.
+                source = decode(blobStore.resource(sha256), rendition.maxEdge());
+            }
+            if (source == null) {
+                unrenderable.put(sha256, Boolean.TRUE);
+                return false;
+            }
+
+            Files.createDirectories(stagingDir);
+            temp = Files.createTempFile(stagingDir, "rendition-", ".jpg");
+            writeJpeg(scale(source, rendition.maxEdge()), temp);
+            storage.put(key, temp);
+            return true;
+        } catch (UndecodableImageException ex) {
+            // Corrupt or unsupported image data will not decode on a second attempt either.
+            unrenderable.put(sha256, Boolean.TRUE);
+            renderFailures.increment();
+            log.warn("Could not decode blob {} to render {}", sha256, rendition, ex);
+            return false;
+        } catch (IOException | RuntimeException ex) {
+            renderFailures.increment();
+            log.warn("Could not render {} of blob {}", rendition, sha256, ex);
+            return false;
+        } finally {
+            deleteQuietly(temp);
+            sample.stop(renderTimer);
+        }
+    }
+
+    /**
+     * Decodes an image, reading only every n-th pixel when it is much larger than needed.
+     *
+     * @param original image content
+     * @param maxEdge longest edge of the rendition
+     * @return decoded image, or null when the format is unknown or the image is too large
+     * @throws UndecodableImageException when the content was read but is not a valid image
+     * @throws IOException when the content cannot be read
+     */
+    private BufferedImage decode(Resource original, int maxEdge) throws IOException {
+        if (original.isFile()) {
+            try (ImageInputStream input = new FileImageInputStream(original.getFile())) {
+                return decode(input, null, maxEdge);
+            }
+        }
+        try (ReadFailureTrackingInputStream stream = new ReadFailureTrackingInputStream(original.getInputStream());
+             ImageInputStream input = new MemoryCacheImageInputStream(stream)) {
+            return decode(input, stream, maxEdge);
+        }
+    }
+
+    /**
+     * Decodes the first image of a stream.
+     *
+     * @param source stream under {@code input} when it comes from the storage backend, so that
+     *               failures to read it are not taken for bad image data; null for local files
+     */
+    private BufferedImage decode(ImageInputStream input, ReadFailureTrackingInputStream source, int maxEdge)
+            throws IOException {
+        try {
+            return read(input, maxEdge);
+        } catch (IOException | RuntimeException ex) {
+            if (source != null && source.failed) {
+                throw ex;
+            }
+            // ImageIO reports malformed data as IIOException, and some readers as runtime exceptions.
+            throw new UndecodableImageException(ex);
+        }
+    }
+
+    private BufferedImage read(ImageInputStream input, int maxEdge) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            return null;
+        }
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(input, true, true);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            // Checked before decoding so a small file claiming huge dimensions is never expanded.
+            if (width <= 0 || height <= 0 || (long) width * height > maxSourcePixels) {
+                return null;
+            }
+            ImageReadParam param = reader.getDefaultReadParam();
+            int step = Math.max(1, Math.max(width, height) / (maxEdge * 2));
+            param.setSourceSubsampling(step, step, 0, 0);
+            return reader.read(0, param);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * Scales an image to fit the rendition, halving it in steps so bilinear filtering
+     * does not skip source pixels. Transparent areas become white.
+     */
+    private static BufferedImage scale(BufferedImage source, int maxEdge) {
+        double ratio = Math.min(1.0, (double) maxEdge / Math.max(source.getWidth(), source.getHeight()));
+        int targetWidth = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+
+        BufferedImage current = source;
+        do {
+            int width = Math.max(targetWidth, current.getWidth() / 2);
+            int height = Math.max(targetHeight, current.getHeight() / 2);
+            BufferedImage next = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, width, height);
+                graphics.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (current.getWidth() != targetWidth || current.getHeight() != targetHeight);
+        return current;
+    }
+
+    private static void writeJpeg(BufferedImage image, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream output = new FileImageOutputStream(target.toFile())) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * Original image content that was read in full but could not be decoded.
+     */
+    private static final class UndecodableImageException extends IIOException {
+
+        private UndecodableImageException(Throwable cause) {
+            super("Could not decode image", cause);
+        }
+    }
+
+    /**
+     * Remembers whether reading the underlying stream failed, which ImageIO readers do not
+     * tell apart from malformed data.
+     */
+    private static final class ReadFailureTrackingInputStream extends FilterInputStream {
+
+        private volatile boolean failed;
+
+        private ReadFailureTrackingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (IOException | RuntimeException ex) {
+                failed = true;
+                throw ex;
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            try {
+                return super.read(buffer, offset, length);
+            } catch (IOException | RuntimeException ex) {
+                failed = true;
+                throw ex;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            try {
+                return super.skip(n);
+            } catch (IOException | RuntimeException ex) {
+                failed = true;
+                throw ex;
+            }
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            log.warn("Could not delete temporary rendition {}", file, ex);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        // Renditions are rebuilt on demand, so pending work can simply be dropped.
+        renderer.shutdownNow();
+    }
+}
@@ -0,0 +1,563 @@
+package com.binder.demo.services;
+
+import com.binder.demo.attachments.Attachment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Receives large submission files in chunks that can be resumed after a dropped connection.
+ * Each upload has a row in upload_sessions recording how many bytes are safely on disk and a
+ * part file under {@code <staging dir>/resumable}. A chunk is appended under a file lock,
+ * optionally checked against a SHA-256 sent with it, and flushed before the new offset is
+ * recorded, so the recorded offset never runs ahead of the file. Once the last byte arrives
+ * the session is marked as completing, the file is checked and staged like any other upload,
+ * and the session is deleted in the transaction that saves the submission. Until then the
+ * part file is kept, so a submission that fails can be finished by repeating the last chunk.
+ * Uploads that stop receiving chunks expire and are removed by a background sweep.
+ */
+@Service
+public class ResumableUploadService {
+
+    private static final Logger log = LoggerFactory.getLogger(ResumableUploadService.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final RowMapper<ResumableUpload> ROW_MAPPER = (rs, rowNum) -> new ResumableUpload(
+            SqlValues.toUuid(rs.getObject("upload_id")),
+            SqlValues.toUuid(rs.getObject("owner_id")),
+            SqlValues.toUuid(rs.getObject("class_id")),
+            SqlValues.toUuid(rs.getObject("assignment_id")),
+            rs.getString("file_name"),
+            rs.getString("declared_type"),
+            rs.getLong("length_bytes"),
+            rs.getLong("offset_bytes"),
+            rs.getTimestamp("expires_at").toInstant());
+
+    /**
+     * JDBC access to the upload_sessions table.
+     */
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Attachment service used to check and stage finished uploads.
+     */
+    private final AttachmentService attachmentService;
+
+    /**
+     * Submission service that saves finished uploads.
+     */
+    private final ClassroomSubmissionService submissionService;
+
+    /**
+     * Storage usage service used to refuse uploads that would not fit in the quotas.
+     */
+    private final StorageUsageService usageService;
+
+    /**
+     * Directory holding the part files; inside the staging directory so finished files can be moved.
+     */
+    private final Path uploadDir;
+
+    /**
+     * How long an upload may go without receiving a chunk.
+     */
+    private final Duration ttl;
+
+    /**
+     * Maximum number of expired uploads removed per sweep.
+     */
+    private final int sweepBatchSize;
+
+    /**
+     * How long a session marked as completing is left to the request submitting it; after that
+     * the request is assumed to have died and another may finish the upload.
+     */
+    private final Duration completionTimeout;
+
+    public ResumableUploadService(JdbcTemplate jdbcTemplate,
+                                  AttachmentService attachmentService,
+                                  ClassroomSubmissionService submissionService,
+                                  StorageUsageService usageService,
+                                  @Value("${attachments.staging-dir:${attachments.storage-dir:uploads}/.staging}") String stagingDir,
+                                  @Value("${attachments.resumable.ttl:24h}") Duration ttl,
+                                  @Value("${attachments.resumable.sweep-batch-size:500}") int sweepBatchSize,
+                                  @Value("${attachments.resumable.completion-timeout:15m}") Duration completionTimeout) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.attachmentService = attachmentService;
+        this.submissionService = submissionService;
+        this.usageService = usageService;
+        this.uploadDir = Path.of(stagingDir).toAbsolutePath().normalize().resolve("resumable");
+        this.ttl = ttl;
+        this.sweepBatchSize = Math.max(1, sweepBatchSize);
+        this.completionTimeout = completionTimeout;
+    }
+
+    /**
+     * Starts a resumable submission upload. Callers check that the student belongs to the classroom.
+     *
+     * @param ownerId student id
+     * @param classId classroom id
+     * @param assignmentId assignment id
+     * @param lengthBytes total length announced by the client
+     * @param fileName original filename, or null
+     * @param declaredType content type supplied by the client, or null
+     * @return the new upload, or empty when the assignment is not in the classroom
+     * @throws IOException when the part file cannot be created
+     * @throws UploadRejectedException when the announced length is zero, above the upload limit,
+     *                                 or more than the student's or classroom's storage quota has left
+     */
+    public Optional<ResumableUpload> create(UUID ownerId,
+                                  UUID classId,
+                                  UUID assignmentId,
+                                  long lengthBytes,
+                                  String fileName,
+                                  String declaredType) throws IOException {
+        if (lengthBytes <= 0) {
+            throw new UploadRejectedException(UploadRejectedException.Reason.EMPTY, "The upload is empty.");
+        }
+        if (lengthBytes > attachmentService.getMaxUploadBytes()) {
+            throw new UploadRejectedException(UploadRejectedException.Reason.TOO_LARGE, "The upload is too large.");
+        }
+        Integer assignments = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM assignments WHERE assignment_id = ? AND class_id = ?",
+                Integer.class, assignmentId, classId);
+        if (assignments == null || assignments == 0) {
+            return Optional.empty();
+        }
+        usageService.checkQuota(ownerId, classId, lengthBytes);
+        UUID uploadId = UUID.randomUUID();
+        Instant now = Instant.now();
+        Instant expiresAt = now.plus(ttl);
+        Files.createDirectories(uploadDir);
+        Files.createFile(partFile(uploadId));
+        try {
+            jdbcTemplate.update("""
+                    INSERT INTO upload_sessions (upload_id, owner_id, class_id, assignment_id, file_name,
+                                                 declared_type, length_bytes, offset_bytes, created_at, expires_at)
+                    VALUES (?, ?, ?, ?, ?, ?, ?, 0, ?, ?)
+                    """, uploadId, ownerId, classId, assignmentId, fileName, declaredType, lengthBytes,
+                    Timestamp.from(now), Timestamp.from(expiresAt));
+        } catch (RuntimeException ex) {
+            Files.deleteIfExists(partFile(uploadId));
+            throw ex;
+        }
+        return Optional.of(new ResumableUpload(uploadId, ownerId, classId, assignmentId, fileName, declaredType,
+                lengthBytes, 0, expiresAt));
+    }
+
+    /**
+     * Loads an upload that has not expired.
+     *
+     * @param uploadId upload id
+     * @param ownerId user asking for it
+     * @return the upload, or empty when it does not exist, has expired or belongs to someone else
+     */
+    public Optional<ResumableUpload> find(UUID uploadId, UUID ownerId) {
+        return jdbcTemplate.query("""
+                        SELECT upload_id, owner_id, class_id, assignment_id, file_name, declared_type,
+                               length_bytes, offset_bytes, expires_at
+                        FROM upload_sessions
+                        WHERE upload_id = ? AND owner_id = ? AND expires_at > ?
+                        """, ROW_MAPPER, uploadId, ownerId, Timestamp.from(Instant.now()))
+                .stream()
+                .findFirst();
+    }
+
+    /**
+     * Appends a chunk at the given offset. Bytes left in the part file by an earlier request
+     * that failed before recording its offset are overwritten. When the chunk carries a
+     * checksum it is kept only if it arrives whole and matches; without one, whatever arrived
+     * before a dropped connection is kept so the client can resume from there.
+     * The upload is submitted once its last byte has been received.
+     *
+     * @param uploadId upload id
+     * @param ownerId user sending the chunk
+     * @param offset offset the client is writing at
+     * @param chunk chunk content
+     * @param expectedSha256 hex digest of the chunk, or null
+     * @return the upload state after the chunk, or empty when the upload does not exist
+     * @throws IOException when the chunk cannot be read or written
+     * @throws UploadRejectedException when the offset is stale, another request is writing, the chunk
+     *                                 runs past the announced length, does not match its checksum, or
+     *                                 the file turns out to be of a type that is not accepted
+     */
+    public Optional<AppendResult> append(UUID uploadId,
+                                         UUID ownerId,
+                                         long offset,
+                                         InputStream chunk,
+                                         String expectedSha256) throws IOException {
+        Optional<ResumableUpload> found = find(uploadId, ownerId);
+        if (found.isEmpty()) return Optional.empty();
+        ResumableUpload upload = found.get();
+        if (offset != upload.offsetBytes()) {
+            throw offsetMismatch();
+        }
+
+        long newOffset;
+        try (FileChannel channel = FileChannel.open(partFile(uploadId), StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+            FileLock lock = tryLock(channel);
+            try {
+                // Another request may have finished a chunk between the read above and the lock.
+                Optional<ResumableUpload> current = find(uploadId, ownerId);
+                if (current.isEmpty()) return Optional.empty();
+                if (current.get().offsetBytes() != offset) {
+                    throw offsetMismatch();
+                }
+                newOffset = offset + write(channel, upload, offset, chunk, expectedSha256);
+                if (newOffset > offset && offset < ContentSniffer.HEAD_SIZE) {
+                    checkHead(channel, upload, newOffset);
+                }
+                int updated = jdbcTemplate.update("""
+                        UPDATE upload_sessions
+                        SET offset_bytes = ?, expires_at = ?
+                        WHERE upload_id = ? AND offset_bytes = ?
+                        """, newOffset, Timestamp.from(Instant.now().plus(ttl)), uploadId, offset);
+                if (updated == 0) return Optional.empty();
+            } finally {
+                lock.release();
+            }
+        } catch (UploadRejectedException ex) {
+            if (ex.getReason() == UploadRejectedException.Reason.UNSUPPORTED_TYPE) {
+                delete(uploadId);
+            }
+            throw ex;
+        }
+
+        if (newOffset < upload.lengthBytes()) {
+            return Optional.of(new AppendResult(newOffset, upload.lengthBytes(), Instant.now().plus(ttl), null));
+        }
+        return Optional.of(new AppendResult(newOffset, upload.lengthBytes(), null, finish(upload)));
+    }
+
+    /**
+     * Returns the largest upload that can be started.
+     *
+     * @return size limit in bytes
+     */
+    public long getMaxUploadBytes() {
+        return attachmentService.getMaxUploadBytes();
+    }
+
+    /**
+     * Cancels an upload and deletes what was received.
+     *
+     * @param uploadId upload id
+     * @param ownerId user cancelling it
+     * @return true when the upload existed
+     */
+    public boolean terminate(UUID uploadId, UUID ownerId) {
+        if (find(uploadId, ownerId).isEmpty()) return false;
+        return delete(uploadId);
+    }
+
+    /**
+     * Removes uploads whose deadline has passed, and part files left without a session,
+     * for example after a classroom was deleted.
+     */
+    @Scheduled(fixedDelayString = "${attachments.resumable.sweep-interval:15m}",
+            initialDelayString = "${attachments.resumable.sweep-initial-delay:5m}")
+    public void expireUploads() {
+        Timestamp now = Timestamp.from(Instant.now());
+        List<UUID> expired = jdbcTemplate.query("""
+                SELECT upload_id
+                FROM upload_sessions
+                WHERE expires_at < ?
+                ORDER BY expires_at
+                LIMIT ?
+                """, (rs, rowNum) -> SqlValues.toUuid(rs.getObject("upload_id")), now, sweepBatchSize);
+
+        int removed = 0;
+        for (UUID uploadId : expired) {
+            // Re-checks the deadline, which a chunk arriving meanwhile may have pushed back.
+            if (jdbcTemplate.update("DELETE FROM upload_sessions WHERE upload_id = ? AND expires_at < ?",
+                    uploadId, now) > 0) {
+                deletePartFile(uploadId);
+                removed++;
+            }
+        }
+        removed += removeStrayPartFiles();
+        if (removed > 0) {
+            log.info("Removed {} expired resumable uploads", removed);
+        }
+    }
+
+    /**
+     * Copies the chunk to the part file at the offset and flushes it to disk.
+     *
+     * @return number of bytes kept
+     */
+    private long write(FileChannel channel,
+                       ResumableUpload upload,
+                       long offset,
+                       InputStream chunk,
+                       String expectedSha256) throws IOException {
+        channel.truncate(offset);
+        channel.position(offset);
+        MessageDigest digest = expectedSha256 == null ? null : sha256();
+        long remaining = upload.lengthBytes() - offset;
+        long written = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        IOException interrupted = null;
+        try {
+            int read;
+            while ((read = chunk.read(buffer)) != -1) {
+                if (written + read > remaining) {
+                    throw new UploadRejectedException(UploadRejectedException.Reason.TOO_LARGE,
+                            "The chunk runs past the end of the upload.");
+                }
+                if (digest != null) digest.update(buffer, 0, read);
+                ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+                written += read;
+            }
+        } catch (IOException ex) {
+            // The client went away; without a checksum the bytes that did arrive are still good.
+            interrupted = ex;
+        } catch (UploadRejectedException ex) {
+            channel.truncate(offset);
+            throw ex;
+        }
+
+        if (digest != null) {
+            if (interrupted != null) {
+                channel.truncate(offset);
+                throw interrupted;
+            }
+            if (!HexFormat.of().formatHex(digest.digest()).equalsIgnoreCase(expectedSha256)) {
+                channel.truncate(offset);
+                throw new UploadRejectedException(UploadRejectedException.Reason.CHECKSUM_MISMATCH,
+                        "The chunk does not match its checksum.");
+            }
+        }
+        channel.force(false);
+        if (interrupted != null && written == 0) {
+            throw interrupted;
+        }
+        return written;
+    }
+
+    /**
+     * Refuses the upload as soon as its first bytes show a type that is not accepted.
+     */
+    private void checkHead(FileChannel channel, ResumableUpload upload, long received) throws IOException {
+        if (received < ContentSniffer.HEAD_SIZE && received < upload.lengthBytes()) return;
+        ByteBuffer head = ByteBuffer.allocate((int) Math.min(received, ContentSniffer.HEAD_SIZE));
+        while (head.hasRemaining() && channel.read(head, head.position()) > 0) {
+            // Reads until the buffer is full.
+        }
+        attachmentService.checkUploadHead(head.array(), head.position(), received == upload.lengthBytes(),
+                upload.fileName(), upload.declaredType());
+    }
+
+    /**
+     * Submits a fully received upload. The session is marked as completing first, so only one
+     * request submits it even if the last chunk is repeated, and deleted in the transaction
+     * that saves the submission. Staging moves a link to the part file rather than the part
+     * file itself, so when the submission fails the session and its file are left for another
+     * attempt; an upload that is refused is removed.
+     *
+     * @return the saved attachment, or null when another request is submitting the upload or
+     *         the assignment no longer exists
+     */
+    private Attachment finish(ResumableUpload upload) throws IOException {
+        UUID uploadId = upload.uploadId();
+        Instant now = Instant.now();
+        int claimed = jdbcTemplate.update("""
+                UPDATE upload_sessions
+                SET completing_at = ?
+                WHERE upload_id = ? AND offset_bytes = length_bytes
+                  AND (completing_at IS NULL OR completing_at < ?)
+                """, Timestamp.from(now), uploadId, Timestamp.from(now.minus(completionTimeout)));
+        if (claimed == 0) return null;
+
+        Path completed = uploadDir.resolve(uploadId + ".complete");
+        boolean finished = false;
+        try {
+            linkOrCopy(partFile(uploadId), completed);
+            AttachmentService.StagedUpload staged =
+                    attachmentService.stage(completed, upload.fileName(), upload.declaredType());
+            Attachment saved = submissionService.submitAssignment(upload.classId(), upload.assignmentId(),
+                    upload.ownerId(), staged, () -> {
+                        if (jdbcTemplate.update("DELETE FROM upload_sessions WHERE upload_id = ?", uploadId) == 0) {
+                            throw new IllegalStateException("Upload " + uploadId + " was cancelled while it was submitted.");
+                        }
+                    }).orElse(null);
+            finished = true;
+            deletePartFile(uploadId);
+            return saved;
+        } catch (UploadRejectedException ex) {
+            finished = true;
+            delete(uploadId);
+            throw ex;
+        } finally {
+            Files.deleteIfExists(completed);
+            if (!finished) {
+                jdbcTemplate.update("UPDATE upload_sessions SET completing_at = NULL WHERE upload_id = ?", uploadId);
+            }
+        }
+    }
+
+    /**
+     * Gives a second name to a part file, copying it when the file system has no hard links.
+     */
+    private static void linkOrCopy(Path file, Path link) throws IOException {
+        Files.deleteIfExists(link);
+        try {
+            Files.createLink(link, file);
+        } catch (UnsupportedOperationException | IOException ex) {
+            Files.copy(file, link);
+        }
+    }
+
+    private boolean delete(UUID uploadId) {
+        boolean deleted = jdbcTemplate.update("DELETE FROM upload_sessions WHERE upload_id = ?", uploadId) > 0;
+        deletePartFile(uploadId);
+        return deleted;
+    }
+
+    /**
+     * Deletes part files older than the expiry period that no session refers to.
+     *
+     * @return number of files deleted
+     */
+    private int removeStrayPartFiles() {
+        if (!Files.isDirectory(uploadDir)) return 0;
+        Set<UUID> candidates = new HashSet<>();
+        Instant cutoff = Instant.now().minus(ttl);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(uploadDir, "*.part")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    if (Files.getLastModifiedTime(file).toInstant().isBefore(cutoff)) {
+                        candidates.add(UUID.fromString(name.substring(0, name.length() - ".part".length())));
+                    }
+                } catch (IllegalArgumentException | IOException ex) {
+                    log.debug("Skipping unexpected file {} in {}", name, uploadDir);
+                }
+            }
+        } catch (IOException ex) {
+            log.warn("Could not list resumable uploads in {}", uploadDir, ex);
+            return 0;
+        }
+
+        int removed = 0;
+        for (UUID uploadId : candidates) {
+            Integer sessions = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM upload_sessions WHERE upload_id = ?", Integer.class, uploadId);
+            if (sessions != null && sessions == 0) {
+                deletePartFile(uploadId);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private void deletePartFile(UUID uploadId) {
+        try {
+            Files.deleteIfExists(partFile(uploadId));
+            Files.deleteIfExists(uploadDir.resolve(uploadId + ".complete"));
+        } catch (IOException ex) {
+            log.warn("Could not delete resumable upload {}", uploadId, ex);
+        }
+    }
+
+    private Path partFile(UUID uploadId) {
+        return uploadDir.resolve(uploadId + ".part");
+    }
+
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            FileLock lock = channel.tryLock();
+            if (lock != null) return lock;
+        } catch (OverlappingFileLockException ex) {
+            // Held by another request in this process.
+        }
+        throw new UploadRejectedException(UploadRejectedException.Reason.OFFSET_MISMATCH,
+                "Another request is writing to this upload.");
+    }
+
+    private static UploadRejectedException offsetMismatch() {
+        return new UploadRejectedException(UploadRejectedException.Reason.OFFSET_MISMATCH,
+                "The chunk does not start at the current upload offset.");
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available.", ex);
+        }
+    }
+
+    /**
+     * A resumable upload in progress.
+     *
+     * @param uploadId upload id
+     * @param ownerId student sending it
+     * @param classId classroom id
+     * @param assignmentId assignment id
+     * @param fileName original filename
+     * @param declaredType content type supplied by the client
+     * @param lengthBytes total length
+     * @param offsetBytes bytes received so far
+     * @param expiresAt when the upload expires unless another chunk arrives
+     */
+    public record ResumableUpload(UUID uploadId,
+                                  UUID ownerId,
+                                  UUID classId,
+                                  UUID assignmentId,
+                                  String fileName,
+                                  String declaredType,
+                                  long lengthBytes,
+                                  long offsetBytes,
+                                  Instant expiresAt) {
+    }
+
+    /**
+     * Upload state after a chunk.
+     *
+     * @param offsetBytes bytes received so far
+     * @param lengthBytes total length
+     * @param expiresAt new deadline, or null once the upload is complete
+     * @param attachment submitted attachment once the upload is complete, otherwise null
+     */
+    public record AppendResult(long offsetBytes, long lengthBytes, Instant expiresAt, Attachment attachment) {
+
+        /**
+         * Returns whether every byte has been received.
+         *
+         * @return true when the upload is complete
+         */
+        public boolean complete() {
+            return offsetBytes == lengthBytes;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.binder.demo.services;
+
+import com.binder.demo.user.Role;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Imports classroom rosters from CSV files.
+ * The file is read one line at a time and enrolled in fixed-size chunks, each in its own
+ * transaction, so memory use depends on the batch size rather than the file size.
+ */
+@Service
+public class RosterImportService {
+
+    private static final Pattern EMAIL = Pattern.compile("^[^@\\s]+@[^@\\s]+\\.[^@\\s]+$");
+    private static final int MAX_EMAIL_LENGTH = 254;
+
+    /**
+     * User service used for set-based enrollment.
+     */
+    private final UserService userService;
+
+    /**
+     * Number of rows enrolled per transaction.
+     */
+    private final int batchSize;
+
+    public RosterImportService(UserService userService,
+                               @Value("${classroom.roster.batch-size:500}") int batchSize) {
+        this.userService = userService;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Enrolls the students listed in a CSV roster and writes a per-row result report.
+     * The email is read from the first column; an optional header row is skipped, as are blank lines.
+     * Re-importing a roster is safe because existing enrollments are left untouched and reported
+     * as already enrolled. An email repeated within one batch is reported as a duplicate; a repeat
+     * in a later batch finds the first one enrolled and is reported as already enrolled.
+     * The report ends with {@code summary} rows giving the enrolled and skipped totals.
+     *
+     * @param classId classroom id
+     * @param source CSV roster
+     * @param report destination for the "row,email,status" report
+     * @return totals for the import
+     * @throws IOException when the roster cannot be read or the report cannot be written
+     */
+    public ImportSummary importStudents(UUID classId, Reader source, Writer report) throws IOException {
+        BufferedReader reader = new BufferedReader(source);
+        ImportSummary summary = new ImportSummary();
+        List<RosterRow> chunk = new ArrayList<>(batchSize);
+
+        report.write("row,email,status\n");
+
+        String line;
+        long rowNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            rowNumber++;
+            if (rowNumber == 1 && !line.isEmpty() && line.charAt(0) == '\uFEFF') {
+                line = line.substring(1);
+            }
+
+            String email = firstField(line).trim();
+            if (email.isEmpty()) continue;
+            if (rowNumber == 1 && email.equalsIgnoreCase("email")) continue;
+
+            chunk.add(new RosterRow(rowNumber, email));
+            if (chunk.size() >= batchSize) {
+                enrollChunk(classId, chunk, report, summary);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            enrollChunk(classId, chunk, report, summary);
+        }
+
+        report.write("summary,enrolled," + summary.getEnrolled() + "\n");
+        report.write("summary,skipped," + summary.getSkipped() + "\n");
+        report.flush();
+        return summary;
+    }
+
+    private void enrollChunk(UUID classId, List<RosterRow> chunk, Writer report, ImportSummary summary) throws IOException {
+        List<String> valid = new ArrayList<>(chunk.size());
+        for (RosterRow row : chunk) {
+            if (isValidEmail(row.email())) valid.add(row.email());
+        }
+
+        UserService.BulkEnrollmentResult result = userService.enrollByEmails(classId, valid, Role.STUDENT);
+        Set<String> unknown = new HashSet<>(result.unknown());
+        Set<String> mismatched = new HashSet<>(result.roleMismatched());
+        Set<String> alreadyEnrolled = new HashSet<>(result.alreadyEnrolled());
+        Set<String> seen = new HashSet<>();
+
+        for (RosterRow row : chunk) {
+            RowStatus status;
+            if (!isValidEmail(row.email())) {
+                status = RowStatus.INVALID_EMAIL;
+            } else if (!seen.add(row.email())) {
+                status = RowStatus.DUPLICATE;
+            } else if (alreadyEnrolled.contains(row.email())) {
+                status = RowStatus.ALREADY_ENROLLED;
+            } else if (unknown.contains(row.email())) {
+                status = RowStatus.UNKNOWN_EMAIL;
+            } else if (mismatched.contains(row.email())) {
+                status = RowStatus.NOT_A_STUDENT;
+            } else {
+                status = RowStatus.ENROLLED;
+            }
+            summary.count(status);
+            report.write(row.rowNumber() + "," + CsvFields.escape(row.email()) + "," + status + "\n");
+        }
+        report.flush();
+    }
+
+    private static boolean isValidEmail(String email) {
+        return email.length() <= MAX_EMAIL_LENGTH && EMAIL.matcher(email).matches();
+    }
+
+    /**
+     * Returns the first column of a CSV line, unquoting it when needed.
+     *
+     * @param line CSV line
+     * @return first column value
+     */
+    private static String firstField(String line) {
+        if (line.isEmpty() || line.charAt(0) != '"') {
+            int comma = line.indexOf(',');
+            return comma < 0 ? line : line.substring(0, comma);
+        }
+
+        StringBuilder value = new StringBuilder();
+        for (int i = 1; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else {
+                    break;
+                }
+            } else {
+                value.append(c);
+            }
+        }
+        return value.toString();
+    }
+
+    private record RosterRow(long rowNumber, String email) {
+    }
+
+    /**
+     * Outcome of one roster row.
+     */
+    public enum RowStatus {
+        ENROLLED,
+        ALREADY_ENROLLED,
+        DUPLICATE,
+        UNKNOWN_EMAIL,
+        NOT_A_STUDENT,
+        INVALID_EMAIL
+    }
+
+    /**
+     * Running totals for a roster import.
+     */
+    public static final class ImportSummary {
+        private long enrolled;
+        private long alreadyEnrolled;
+        private long duplicates;
+        private long unknown;
+        private long notStudents;
+        private long invalid;
+
+        private void count(RowStatus status) {
+            switch (status) {
+                case ENROLLED -> enrolled++;
+                case ALREADY_ENROLLED -> alreadyEnrolled++;
+                case DUPLICATE -> duplicates++;
+                case UNKNOWN_EMAIL -> unknown++;
+                case NOT_A_STUDENT -> notStudents++;
+                case INVALID_EMAIL -> invalid++;
+            }
+        }
+
+        public long getEnrolled() {
+            return enrolled;
+        }
+
+        public long getAlreadyEnrolled() {
+            return alreadyEnrolled;
+        }
+
+        public long getDuplicates() {
+            return duplicates;
+        }
+
+        public long getUnknown() {
+            return unknown;
+        }
+
+        public long getNotStudents() {
+            return notStudents;
+        }
+
+        public long getInvalid() {
+            return invalid;
+        }
+
+        /**
+         * Rows that did not add a student to the classroom, whatever the reason.
+         *
+         * @return skipped rows
+         */
+        public long getSkipped() {
+            return alreadyEnrolled + duplicates + unknown + notStudents + invalid;
+        }
+
+        public long getTotal() {
+            return enrolled + getSkipped();
+        }
+    }
+}
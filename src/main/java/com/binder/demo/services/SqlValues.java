@@ -0,0 +1,60 @@
+package com.binder.demo.services;
+
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.UUID;
+
+/**
+ * Converts column values returned by native queries, which differ between Postgres and H2.
+ */
+final class SqlValues {
+
+    private SqlValues() {
+    }
+
+    /**
+     * Reads a UUID column returned as a UUID, 16 raw bytes, or text.
+     *
+     * @param value column value
+     * @return UUID value, or null for SQL NULL
+     */
+    static UUID toUuid(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof UUID uuid) {
+            return uuid;
+        }
+        if (value instanceof byte[] bytes && bytes.length == 16) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            return new UUID(buffer.getLong(), buffer.getLong());
+        }
+        return UUID.fromString(value.toString());
+    }
+
+    /**
+     * Reads a timestamp column as a local date-time in the system zone.
+     *
+     * @param value column value
+     * @return local date-time value
+     */
+    static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof LocalDateTime ldt) {
+            return ldt;
+        }
+        if (value instanceof Timestamp ts) {
+            return ts.toLocalDateTime();
+        }
+        if (value instanceof OffsetDateTime odt) {
+            return odt.atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+        }
+        if (value instanceof Instant instant) {
+            return LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
+        }
+        throw new IllegalStateException("Unexpected timestamp value: " + value);
+    }
+}
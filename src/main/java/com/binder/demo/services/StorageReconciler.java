@@ -0,0 +1,418 @@
+package com.binder.demo.services;
+
+import com.binder.demo.storage.AttachmentStorage;
+import com.binder.demo.storage.StoredObject;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Finds attachment content that nothing refers to any more and removes it in two steps.
+ * <p>
+ * Attachment rows that are no longer linked from a post or a submission, for example after
+ * a resubmission or after a file was removed from a post, are deleted, which releases their
+ * blob for {@link BlobStore#collectGarbage()}. The storage backend is then walked object by
+ * object and compared in batches against attachment_blobs, or for files uploaded before the
+ * blob store against attachments.url. Objects nobody refers to are moved under
+ * {@code quarantine/<date>/} rather than deleted, and only deleted once they have stayed
+ * there for the quarantine period, so a mistake can be undone by moving them back.
+ */
+@Service
+public class StorageReconciler {
+
+    private static final Logger log = LoggerFactory.getLogger(StorageReconciler.class);
+
+    private static final String BLOB_PREFIX = "blobs/";
+    private static final String COLD_PREFIX = "cold/";
+    private static final String LEGACY_PREFIX = "attachments/";
+    private static final String QUARANTINE_PREFIX = "quarantine/";
+    private static final Pattern BLOB_KEY = Pattern.compile("^(?:blobs|cold)/[0-9a-f]{2}/([0-9a-f]{64})(\\.[a-z]+\\.jpg|\\.gz)?$");
+
+    /**
+     * JDBC access to the attachment tables.
+     */
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Runs each attachment removal in its own transaction.
+     */
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Blob store whose references are released for removed attachments.
+     */
+    private final BlobStore blobStore;
+
+    /**
+     * Storage usage totals that removed attachments are taken off.
+     */
+    private final StorageUsageService usageService;
+
+    /**
+     * Backend holding the attachment content.
+     */
+    private final AttachmentStorage storage;
+
+    /**
+     * Minimum age of an attachment or object before it is treated as unreferenced, so
+     * uploads that are still being linked are left alone.
+     */
+    private final Duration gracePeriod;
+
+    /**
+     * How long quarantined objects are kept before they are deleted.
+     */
+    private final Duration quarantinePeriod;
+
+    /**
+     * Number of rows or objects handled per query.
+     */
+    private final int batchSize;
+
+    private final Counter quarantinedObjects;
+    private final Counter reclaimedBytes;
+
+    public StorageReconciler(JdbcTemplate jdbcTemplate,
+                             PlatformTransactionManager transactionManager,
+                             BlobStore blobStore,
+                             StorageUsageService usageService,
+                             AttachmentStorage storage,
+                             MeterRegistry meterRegistry,
+                             @Value("${attachments.reconcile.grace-period:24h}") Duration gracePeriod,
+                             @Value("${attachments.reconcile.quarantine-period:7d}") Duration quarantinePeriod,
+                             @Value("${attachments.reconcile.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.blobStore = blobStore;
+        this.usageService = usageService;
+        this.storage = storage;
+        this.gracePeriod = gracePeriod;
+        this.quarantinePeriod = quarantinePeriod;
+        this.batchSize = Math.max(1, batchSize);
+
+        this.quarantinedObjects = Counter.builder("attachments.reconcile.quarantined")
+                .description("Unreferenced storage objects moved to quarantine")
+                .register(meterRegistry);
+        this.reclaimedBytes = Counter.builder("attachments.reconcile.reclaimed")
+                .description("Bytes freed by deleting quarantined storage objects")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs a full reconciliation: removes unreferenced attachment rows, deletes quarantined
+     * objects whose quarantine has ended, and quarantines unreferenced objects.
+     *
+     * @return what was done
+     */
+    @Scheduled(fixedDelayString = "${attachments.reconcile.interval:24h}",
+            initialDelayString = "${attachments.reconcile.initial-delay:30m}")
+    public Report reconcile() {
+        Instant now = Instant.now();
+        Report report = new Report();
+        try {
+            removeUnreferencedAttachments(Timestamp.from(now.minus(gracePeriod)), report);
+            purgeQuarantine(now, report);
+            quarantineOrphans(BLOB_PREFIX, now, report, this::referencedBlobKeys);
+            quarantineOrphans(COLD_PREFIX, now, report, this::referencedBlobKeys);
+            quarantineOrphans(LEGACY_PREFIX, now, report, this::referencedLegacyKeys);
+        } catch (IOException | RuntimeException ex) {
+            log.error("Storage reconciliation stopped early", ex);
+        }
+        log.info("Storage reconciliation removed {} unreferenced attachments, scanned {} objects, quarantined {} "
+                        + "({} bytes), restored {}, deleted {} and reclaimed {} bytes",
+                report.attachmentsRemoved, report.objectsScanned, report.objectsQuarantined,
+                report.bytesQuarantined, report.objectsRestored, report.objectsDeleted, report.bytesReclaimed);
+        return report;
+    }
+
+    /**
+     * Deletes attachment rows older than the grace period that no post or submission links to,
+     * walking attachments in id order one page at a time.
+     */
+    private void removeUnreferencedAttachments(Timestamp cutoff, Report report) {
+        UUID after = new UUID(0, 0);
+        while (true) {
+            List<UUID> page = jdbcTemplate.query("""
+                            SELECT a.attachment_id
+                            FROM attachments a
+                            WHERE a.attachment_id > ? AND a.uploaded_at < ?
+                              AND NOT EXISTS (SELECT 1 FROM assignment_attachments x WHERE x.attachment_id = a.attachment_id)
+                              AND NOT EXISTS (SELECT 1 FROM resource_attachments x WHERE x.attachment_id = a.attachment_id)
+                              AND NOT EXISTS (SELECT 1 FROM assignment_submissions x WHERE x.attachment_id = a.attachment_id)
+                            ORDER BY a.attachment_id
+                            LIMIT ?
+                            """,
+                    (rs, rowNum) -> SqlValues.toUuid(rs.getObject("attachment_id")), after, cutoff, batchSize);
+            for (UUID attachmentId : page) {
+                try {
+                    if (Boolean.TRUE.equals(transactionTemplate.execute(status -> removeAttachment(attachmentId)))) {
+                        report.attachmentsRemoved++;
+                    }
+                } catch (RuntimeException ex) {
+                    log.warn("Could not remove unreferenced attachment {}", attachmentId, ex);
+                }
+            }
+            if (page.size() < batchSize) return;
+            after = page.get(page.size() - 1);
+        }
+    }
+
+    /**
+     * Deletes one attachment row if it is still unreferenced, takes it off the storage usage
+     * totals and releases its blob.
+     *
+     * @return true when the row was deleted
+     */
+    private boolean removeAttachment(UUID attachmentId) {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT blob_sha256, user_owner, class_id, size_bytes FROM attachments WHERE attachment_id = ?",
+                attachmentId);
+        if (rows.isEmpty()) return false;
+        Map<String, Object> row = rows.get(0);
+        // The check is repeated in the DELETE so a link added meanwhile keeps the row.
+        int deleted = jdbcTemplate.update("""
+                DELETE FROM attachments a
+                WHERE a.attachment_id = ?
+                  AND NOT EXISTS (SELECT 1 FROM assignment_attachments x WHERE x.attachment_id = a.attachment_id)
+                  AND NOT EXISTS (SELECT 1 FROM resource_attachments x WHERE x.attachment_id = a.attachment_id)
+                  AND NOT EXISTS (SELECT 1 FROM assignment_submissions x WHERE x.attachment_id = a.attachment_id)
+                """, attachmentId);
+        if (deleted == 0) return false;
+        if (row.get("size_bytes") instanceof Number sizeBytes) {
+            usageService.remove(SqlValues.toUuid(row.get("user_owner")), SqlValues.toUuid(row.get("class_id")),
+                    sizeBytes.longValue());
+        }
+        if (row.get("blob_sha256") instanceof String sha256) {
+            blobStore.release(sha256);
+        }
+        return true;
+    }
+
+    /**
+     * Deletes quarantined objects whose quarantine period has ended. A blob that has been
+     * uploaded again in the meantime is moved back instead.
+     */
+    private void purgeQuarantine(Instant now, Report report) throws IOException {
+        walk(QUARANTINE_PREFIX, batch -> {
+            Set<String> referenced = referencedBlobKeys(batch.stream()
+                    .map(object -> originalKey(object.key()))
+                    .filter(Objects::nonNull)
+                    .toList());
+            for (StoredObject object : batch) {
+                String originalKey = originalKey(object.key());
+                Instant quarantinedAt = quarantineDate(object.key());
+                if (originalKey == null || quarantinedAt == null || quarantinedAt.plus(quarantinePeriod).isAfter(now)) {
+                    continue;
+                }
+                try {
+                    if (referenced.contains(originalKey) && !storage.exists(originalKey)) {
+                        storage.move(object.key(), originalKey);
+                        report.objectsRestored++;
+                        log.warn("Restored quarantined object {}, which is referenced again", originalKey);
+                    } else {
+                        storage.delete(object.key());
+                        report.objectsDeleted++;
+                        report.bytesReclaimed += object.sizeBytes();
+                        reclaimedBytes.increment(object.sizeBytes());
+                    }
+                } catch (IOException ex) {
+                    log.warn("Could not purge quarantined object {}", object.key(), ex);
+                }
+            }
+        });
+    }
+
+    /**
+     * Moves unreferenced objects under a prefix into quarantine.
+     *
+     * @param prefix key prefix to walk
+     * @param referencedKeys returns the keys of a batch that are still referenced
+     */
+    private void quarantineOrphans(String prefix,
+                                   Instant now,
+                                   Report report,
+                                   Function<List<String>, Set<String>> referencedKeys) throws IOException {
+        Instant cutoff = now.minus(gracePeriod);
+        String quarantine = QUARANTINE_PREFIX + LocalDate.ofInstant(now, ZoneOffset.UTC) + "/";
+        walk(prefix, batch -> {
+            report.objectsScanned += batch.size();
+            Set<String> referenced = referencedKeys.apply(batch.stream().map(StoredObject::key).toList());
+            for (StoredObject object : batch) {
+                if (referenced.contains(object.key()) || !object.lastModified().isBefore(cutoff)) {
+                    continue;
+                }
+                try {
+                    storage.move(object.key(), quarantine + object.key());
+                    report.objectsQuarantined++;
+                    report.bytesQuarantined += object.sizeBytes();
+                    quarantinedObjects.increment();
+                } catch (IOException ex) {
+                    log.warn("Could not quarantine unreferenced object {}", object.key(), ex);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the blob, cold blob and rendition keys among {@code keys} whose blob has a row in attachment_blobs.
+     */
+    private Set<String> referencedBlobKeys(List<String> keys) {
+        Set<String> hashes = new HashSet<>();
+        for (String key : keys) {
+            String sha256 = blobHash(key);
+            if (sha256 != null) hashes.add(sha256);
+        }
+        Set<String> known = new HashSet<>();
+        if (!hashes.isEmpty()) {
+            String[] values = hashes.toArray(String[]::new);
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement("SELECT sha256 FROM attachment_blobs WHERE sha256 = ANY(?)");
+                ps.setArray(1, con.createArrayOf("text", values));
+                return ps;
+            }, rs -> {
+                known.add(rs.getString("sha256"));
+            });
+        }
+        Set<String> referenced = new HashSet<>();
+        for (String key : keys) {
+            if (known.contains(blobHash(key))) referenced.add(key);
+        }
+        return referenced;
+    }
+
+    /**
+     * Returns the keys among {@code keys} that an attachment uploaded before the blob store
+     * still points at; such attachment URLs are the key followed by {@code ?name=...}.
+     */
+    private Set<String> referencedLegacyKeys(List<String> keys) {
+        Set<String> referenced = new HashSet<>();
+        if (keys.isEmpty()) return referenced;
+        String[] values = keys.toArray(String[]::new);
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                    SELECT CASE WHEN POSITION('?' IN url) > 0 THEN SUBSTRING(url, 1, POSITION('?' IN url) - 1) ELSE url END AS path
+                    FROM attachments
+                    WHERE blob_sha256 IS NULL
+                      AND (CASE WHEN POSITION('?' IN url) > 0 THEN SUBSTRING(url, 1, POSITION('?' IN url) - 1) ELSE url END) = ANY(?)
+                    """);
+            ps.setArray(1, con.createArrayOf("text", values));
+            return ps;
+        }, rs -> {
+            referenced.add(rs.getString("path"));
+        });
+        return referenced;
+    }
+
+    /**
+     * Streams the objects under a prefix to {@code handler} in batches, so neither the
+     * listing nor the lookups ever hold more than one batch.
+     */
+    private void walk(String prefix, BatchHandler handler) throws IOException {
+        try (Stream<StoredObject> objects = storage.list(prefix)) {
+            Iterator<StoredObject> iterator = objects.iterator();
+            List<StoredObject> batch = new ArrayList<>(batchSize);
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                if (batch.size() == batchSize) {
+                    handler.handle(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                handler.handle(batch);
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * Returns the blob hash a hot or cold blob key or a rendition key belongs to, or null for any other key.
+     */
+    private static String blobHash(String key) {
+        Matcher matcher = BLOB_KEY.matcher(key);
+        return matcher.matches() ? matcher.group(1) : null;
+    }
+
+    /**
+     * Returns the key a quarantined object had before, or null when the key is not a quarantine key.
+     */
+    private static String originalKey(String quarantineKey) {
+        int slash = quarantineKey.indexOf('/', QUARANTINE_PREFIX.length());
+        return slash < 0 ? null : quarantineKey.substring(slash + 1);
+    }
+
+    /**
+     * Returns the start of the day an object was quarantined, or null when the key has no date.
+     */
+    private static Instant quarantineDate(String quarantineKey) {
+        int slash = quarantineKey.indexOf('/', QUARANTINE_PREFIX.length());
+        if (slash < 0) return null;
+        try {
+            return LocalDate.parse(quarantineKey.substring(QUARANTINE_PREFIX.length(), slash))
+                    .atStartOfDay(ZoneOffset.UTC)
+                    .toInstant();
+        } catch (DateTimeParseException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Receives one batch of listed objects.
+     */
+    @FunctionalInterface
+    private interface BatchHandler {
+        void handle(List<StoredObject> batch) throws IOException;
+    }
+
+    /**
+     * Counts of what one reconciliation run did.
+     */
+    public static final class Report {
+        private int attachmentsRemoved;
+        private long objectsScanned;
+        private long objectsQuarantined;
+        private long bytesQuarantined;
+        private long objectsRestored;
+        private long objectsDeleted;
+        private long bytesReclaimed;
+
+        public int getAttachmentsRemoved() { return attachmentsRemoved; }
+        public long getObjectsScanned() { return objectsScanned; }
+        public long getObjectsQuarantined() { return objectsQuarantined; }
+        public long getBytesQuarantined() { return bytesQuarantined; }
+        public long getObjectsRestored() { return objectsRestored; }
+        public long getObjectsDeleted() { return objectsDeleted; }
+        public long getBytesReclaimed() { return bytesReclaimed; }
+    }
+}
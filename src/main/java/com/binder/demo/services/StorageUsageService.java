@@ -0,0 +1,213 @@
+package com.binder.demo.services;
+
+import com.binder.demo.attachments.UsageScope;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.unit.DataSize;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Keeps running totals of stored attachment bytes per user and per classroom in the
+ * storage_usage table, and enforces the storage quotas against them. Totals change in the
+ * same transaction as the attachment row they account for, so they never drift from the
+ * attachments table, and reading one is a primary key lookup.
+ * <p>
+ * Bytes are counted per attachment as uploaded: an identical file uploaded twice counts
+ * twice even though the blob store keeps one copy, so a user's total does not depend on
+ * what other users happened to upload.
+ */
+@Service
+public class StorageUsageService {
+
+    /**
+     * JDBC access to the storage_usage table.
+     */
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Most bytes a user may store, or 0 for no limit.
+     */
+    private final long userQuotaBytes;
+
+    /**
+     * Most bytes that may be stored in one classroom, or 0 for no limit.
+     */
+    private final long classroomQuotaBytes;
+
+    public StorageUsageService(JdbcTemplate jdbcTemplate,
+                               @Value("${attachments.quota.user:2GB}") DataSize userQuota,
+                               @Value("${attachments.quota.classroom:20GB}") DataSize classroomQuota) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.userQuotaBytes = userQuota.toBytes();
+        this.classroomQuotaBytes = classroomQuota.toBytes();
+    }
+
+    /**
+     * Refuses an upload early when it would not fit in the remaining quota. Nothing is
+     * reserved, so {@link #add(UUID, UUID, long)} still decides when the attachment is saved;
+     * this only spares clients from sending bytes that are bound to be refused.
+     *
+     * @param userId uploading user
+     * @param classId classroom the upload is for, or null
+     * @param bytes size of the upload, when known
+     * @throws UploadRejectedException when the upload would exceed a quota
+     */
+    @Transactional(readOnly = true)
+    public void checkQuota(UUID userId, UUID classId, long bytes) {
+        if (bytes <= 0) {
+            return;
+        }
+        if (userId != null && !fits(getUsage(UsageScope.USER, userId), bytes)) {
+            throw quotaExceeded(UsageScope.USER);
+        }
+        if (classId != null && !fits(getUsage(UsageScope.CLASSROOM, classId), bytes)) {
+            throw quotaExceeded(UsageScope.CLASSROOM);
+        }
+    }
+
+    /**
+     * Adds a stored file to the totals of its owner and classroom. Each total is only raised
+     * while the result stays within its quota, so concurrent uploads cannot overshoot it, and
+     * the user row is always locked before the classroom row so they cannot deadlock.
+     * Must run in the transaction that inserts the attachment.
+     *
+     * @param userId owning user
+     * @param classId classroom the file was uploaded to, or null
+     * @param bytes file size
+     * @throws UploadRejectedException when the file would exceed a quota; the caller's
+     *                                 transaction is rolled back
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void add(UUID userId, UUID classId, long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("File size must not be negative.");
+        }
+        Timestamp now = Timestamp.from(Instant.now());
+        if (userId != null) {
+            addTo(UsageScope.USER, userId, bytes, now);
+        }
+        if (classId != null) {
+            addTo(UsageScope.CLASSROOM, classId, bytes, now);
+        }
+    }
+
+    /**
+     * Takes a removed file off the totals of its owner and classroom.
+     * Must run in the transaction that deletes the attachment.
+     *
+     * @param userId owning user
+     * @param classId classroom the file was uploaded to, or null
+     * @param bytes file size
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void remove(UUID userId, UUID classId, long bytes) {
+        Timestamp now = Timestamp.from(Instant.now());
+        if (userId != null) {
+            removeFrom(UsageScope.USER, userId, bytes, now);
+        }
+        if (classId != null) {
+            removeFrom(UsageScope.CLASSROOM, classId, bytes, now);
+        }
+    }
+
+    /**
+     * Returns a user's stored bytes and quota.
+     *
+     * @param userId user id
+     * @return usage, zero when the user has stored nothing
+     */
+    @Transactional(readOnly = true)
+    public Usage getUserUsage(UUID userId) {
+        return getUsage(UsageScope.USER, userId);
+    }
+
+    /**
+     * Returns the bytes stored in a classroom and its quota.
+     *
+     * @param classId classroom id
+     * @return usage, zero when nothing has been stored in the classroom
+     */
+    @Transactional(readOnly = true)
+    public Usage getClassroomUsage(UUID classId) {
+        return getUsage(UsageScope.CLASSROOM, classId);
+    }
+
+    private Usage getUsage(UsageScope scope, UUID scopeId) {
+        List<Usage> rows = jdbcTemplate.query("""
+                SELECT used_bytes, file_count
+                FROM storage_usage
+                WHERE scope = ? AND scope_id = ?
+                """,
+                (rs, rowNum) -> new Usage(rs.getLong("used_bytes"), rs.getLong("file_count"), quotaFor(scope)),
+                scope.name(), scopeId);
+        return rows.isEmpty() ? new Usage(0, 0, quotaFor(scope)) : rows.get(0);
+    }
+
+    private void addTo(UsageScope scope, UUID scopeId, long bytes, Timestamp now) {
+        long quota = quotaFor(scope);
+        if (quota > 0 && bytes > quota) {
+            throw quotaExceeded(scope);
+        }
+        // Highest total the row may hold before this file; subtracting here cannot overflow.
+        long ceiling = quota > 0 ? quota - bytes : Long.MAX_VALUE - bytes;
+        if (raise(scope, scopeId, bytes, ceiling, now) == 1) {
+            return;
+        }
+        jdbcTemplate.update("""
+                INSERT INTO storage_usage (scope, scope_id, used_bytes, file_count, updated_at)
+                VALUES (?, ?, 0, 0, ?)
+                ON CONFLICT DO NOTHING
+                """, scope.name(), scopeId, now);
+        if (raise(scope, scopeId, bytes, ceiling, now) == 0) {
+            throw quotaExceeded(scope);
+        }
+    }
+
+    private int raise(UsageScope scope, UUID scopeId, long bytes, long ceiling, Timestamp now) {
+        return jdbcTemplate.update("""
+                UPDATE storage_usage
+                SET used_bytes = used_bytes + ?, file_count = file_count + 1, updated_at = ?
+                WHERE scope = ? AND scope_id = ? AND used_bytes <= ?
+                """, bytes, now, scope.name(), scopeId, ceiling);
+    }
+
+    private void removeFrom(UsageScope scope, UUID scopeId, long bytes, Timestamp now) {
+        jdbcTemplate.update("""
+                UPDATE storage_usage
+                SET used_bytes = GREATEST(used_bytes - ?, 0), file_count = GREATEST(file_count - 1, 0), updated_at = ?
+                WHERE scope = ? AND scope_id = ?
+                """, bytes, now, scope.name(), scopeId);
+    }
+
+    private long quotaFor(UsageScope scope) {
+        return scope == UsageScope.USER ? userQuotaBytes : classroomQuotaBytes;
+    }
+
+    private static boolean fits(Usage usage, long bytes) {
+        return usage.quotaBytes() <= 0 || usage.usedBytes() <= usage.quotaBytes() - bytes;
+    }
+
+    private static UploadRejectedException quotaExceeded(UsageScope scope) {
+        return new UploadRejectedException(UploadRejectedException.Reason.QUOTA_EXCEEDED,
+                scope == UsageScope.USER
+                        ? "You have used all of your file storage."
+                        : "This classroom has used all of its file storage.");
+    }
+
+    /**
+     * Stored bytes of one user or classroom.
+     *
+     * @param usedBytes bytes stored
+     * @param fileCount number of stored files
+     * @param quotaBytes most bytes that may be stored, or 0 for no limit
+     */
+    public record Usage(long usedBytes, long fileCount, long quotaBytes) {
+    }
+}
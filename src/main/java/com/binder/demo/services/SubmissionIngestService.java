@@ -0,0 +1,446 @@
+package com.binder.demo.services;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Writes submission rows in batches for deadline rushes, when hundreds of students submit
+ * within seconds. Request threads stamp the submission time when the upload is accepted and
+ * queue the row; one writer drains the bounded queue and saves everything queued since its
+ * last flush with a fixed number of statements, so the number of transactions and pool
+ * connections stays flat however many students submit at once.
+ * <p>
+ * Only active when {@code classroom.submissions.ingest.enabled} is set; otherwise submissions
+ * are saved one per request as before.
+ */
+@Service
+public class SubmissionIngestService {
+
+    private static final Logger log = LoggerFactory.getLogger(SubmissionIngestService.class);
+
+    /**
+     * JDBC access for batched submission writes.
+     */
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Runs each flush in one transaction.
+     */
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Counts the saved submissions in the assignment statistics.
+     */
+    private final AssignmentStatsService statsService;
+
+    /**
+     * Whether submissions go through the queue at all.
+     */
+    private final boolean enabled;
+
+    /**
+     * Submissions accepted but not yet written.
+     */
+    private final BlockingQueue<PendingSubmission> queue;
+
+    /**
+     * Largest number of submissions written in one flush.
+     */
+    private final int batchSize;
+
+    /**
+     * How long a request waits for room in a full queue before it is refused.
+     */
+    private final Duration enqueueTimeout;
+
+    /**
+     * How long a request waits for its submission to be written.
+     */
+    private final Duration maxWait;
+
+    private final Timer flushTimer;
+    private final DistributionSummary batchSizes;
+
+    /**
+     * Writer thread, or null when ingest is disabled.
+     */
+    private final Thread writer;
+
+    private volatile boolean running = true;
+
+    public SubmissionIngestService(JdbcTemplate jdbcTemplate,
+                                   PlatformTransactionManager transactionManager,
+                                   AssignmentStatsService statsService,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${classroom.submissions.ingest.enabled:false}") boolean enabled,
+                                   @Value("${classroom.submissions.ingest.queue-capacity:2000}") int queueCapacity,
+                                   @Value("${classroom.submissions.ingest.batch-size:200}") int batchSize,
+                                   @Value("${classroom.submissions.ingest.enqueue-timeout:2s}") Duration enqueueTimeout,
+                                   @Value("${classroom.submissions.ingest.max-wait:10s}") Duration maxWait) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.statsService = statsService;
+        this.enabled = enabled;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.batchSize = Math.max(1, batchSize);
+        this.enqueueTimeout = enqueueTimeout;
+        this.maxWait = maxWait;
+
+        this.flushTimer = Timer.builder("submissions.ingest.flush")
+                .description("Time to write one batch of queued submissions")
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("submissions.ingest.batch.size")
+                .description("Submissions written per flush")
+                .register(meterRegistry);
+        Gauge.builder("submissions.ingest.queue.depth", queue, BlockingQueue::size)
+                .description("Submissions accepted but not yet written")
+                .register(meterRegistry);
+
+        if (enabled) {
+            this.writer = new Thread(this::drain, "submission-ingest");
+            this.writer.setDaemon(true);
+            this.writer.start();
+        } else {
+            this.writer = null;
+        }
+    }
+
+    /**
+     * Returns whether submissions should be queued rather than written by the request.
+     *
+     * @return true when ingest mode is enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues a submission and waits until the flush that includes it has committed.
+     * Waiting for room while the queue is full is what slows requests down under load.
+     * A submission the writer has not picked up within the maximum wait, or when the request
+     * is interrupted, is taken back out of the queue and left to the caller, as is one whose
+     * flush failed.
+     *
+     * @param submission submission to save
+     * @return whether the submission was saved, false only when the assignment is not in the
+     *         classroom; empty when it was not written because the queue stayed full, the writer
+     *         did not get to it in time, its flush failed or ingest is disabled, and the caller
+     *         should save it itself
+     */
+    public Optional<Boolean> submit(PendingSubmission submission) {
+        if (!enabled || !running) return Optional.empty();
+        boolean queued = false;
+        try {
+            queued = queue.offer(submission, enqueueTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            if (!queued) {
+                log.warn("Submission queue still full after {} ms", enqueueTimeout.toMillis());
+                return Optional.empty();
+            }
+            return Optional.of(submission.result().get(maxWait.toMillis(), TimeUnit.MILLISECONDS));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return queued ? withdraw(submission) : Optional.empty();
+        } catch (TimeoutException ex) {
+            log.warn("Submission by {} not written after {} ms; saving it directly",
+                    submission.studentId(), maxWait.toMillis());
+            return withdraw(submission);
+        } catch (ExecutionException ex) {
+            log.error("Could not save submission by {} in a batch; saving it directly",
+                    submission.studentId(), ex.getCause());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Takes a submission back from the writer so the caller can save it itself. One the writer
+     * has already picked up may be committing, so its flush is waited for instead.
+     *
+     * @return empty when the submission was withdrawn or its flush failed, otherwise the
+     *         outcome of its flush
+     */
+    private Optional<Boolean> withdraw(PendingSubmission submission) {
+        if (submission.claimed().compareAndSet(false, true)) {
+            queue.remove(submission);
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(submission.result().join());
+        } catch (CompletionException | CancellationException ex) {
+            log.error("Could not save submission by {} in a batch; saving it directly",
+                    submission.studentId(), ex.getCause());
+            return Optional.empty();
+        }
+    }
+
+    private void drain() {
+        List<PendingSubmission> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingSubmission first = queue.poll(500, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                // Whatever queued up during the previous flush goes into this one
+                queue.drainTo(batch, batchSize - 1);
+                // Requests that gave up waiting have withdrawn their submissions.
+                batch.removeIf(pending -> !pending.claimed().compareAndSet(false, true));
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                }
+            } catch (InterruptedException ex) {
+                if (!running) {
+                    queue.drainTo(batch);
+                    batch.forEach(pending -> {
+                        // Withdrawn ones are not waited for; the rest are failed, not left hanging.
+                        pending.claimed().set(true);
+                        pending.result().completeExceptionally(ex);
+                    });
+                    return;
+                }
+            } catch (RuntimeException ex) {
+                log.error("Submission flush failed", ex);
+                batch.forEach(pending -> pending.result().completeExceptionally(ex));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes a batch in one transaction. When the batch fails, its submissions are retried one
+     * by one so a single bad row does not lose the others.
+     */
+    private void flush(List<PendingSubmission> batch) {
+        long start = System.nanoTime();
+        try {
+            boolean[] saved = transactionTemplate.execute(status -> write(batch));
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result().complete(saved[i]);
+            }
+        } catch (RuntimeException ex) {
+            if (batch.size() == 1) throw ex;
+            log.warn("Submission batch of {} failed; retrying one by one", batch.size(), ex);
+            for (PendingSubmission pending : batch) {
+                try {
+                    flush(List.of(pending));
+                } catch (RuntimeException single) {
+                    pending.result().completeExceptionally(single);
+                }
+            }
+            return;
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        batchSizes.record(batch.size());
+    }
+
+    /**
+     * Saves a batch: one lookup of the assignments, one locking read of the existing rows,
+     * one batched insert, one batched update and one statistics update per assignment.
+     *
+     * @return whether each submission was saved, by position in the batch
+     */
+    private boolean[] write(List<PendingSubmission> batch) {
+        boolean[] saved = new boolean[batch.size()];
+        Map<UUID, AssignmentRef> assignments = loadAssignments(batch);
+
+        // Later submissions by the same student in the batch replace earlier ones, as they
+        // would have one request at a time.
+        Map<SubmissionKey, PendingSubmission> latest = new LinkedHashMap<>();
+        Map<SubmissionKey, UUID> attachments = new HashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            PendingSubmission pending = batch.get(i);
+            AssignmentRef assignment = assignments.get(pending.assignmentId());
+            saved[i] = assignment != null && assignment.classId().equals(pending.classroomId());
+            if (!saved[i]) continue;
+            SubmissionKey key = new SubmissionKey(pending.assignmentId(), pending.studentId());
+            latest.put(key, pending);
+            if (pending.attachmentId() != null) {
+                attachments.put(key, pending.attachmentId());
+            } else if (pending.removeAttachment()) {
+                attachments.put(key, null);
+            }
+        }
+        if (latest.isEmpty()) return saved;
+
+        Map<SubmissionKey, ExistingSubmission> existing = lockExisting(latest.keySet());
+        List<Object[]> inserts = new ArrayList<>();
+        List<SubmissionKey> inserted = new ArrayList<>();
+        for (Map.Entry<SubmissionKey, PendingSubmission> entry : latest.entrySet()) {
+            SubmissionKey key = entry.getKey();
+            if (existing.containsKey(key)) continue;
+            inserts.add(new Object[] {UUID.randomUUID(), key.assignmentId(), key.studentId(),
+                    Timestamp.from(entry.getValue().acceptedAt()), attachments.get(key)});
+            inserted.add(key);
+        }
+        if (!inserts.isEmpty()) {
+            // submission_id is new, so the only conflict is on (assignment_id, student_id)
+            int[] counts = jdbcTemplate.batchUpdate("""
+                    INSERT INTO assignment_submissions (submission_id, assignment_id, student_id, submission_time, attachment_id)
+                    VALUES (?, ?, ?, ?, ?)
+                    ON CONFLICT DO NOTHING
+                    """, inserts);
+            Set<SubmissionKey> raced = new LinkedHashSet<>();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) raced.add(inserted.get(i));
+            }
+            if (!raced.isEmpty()) {
+                // Saved by a request outside the queue since the read above; update those instead
+                existing.putAll(lockExisting(raced));
+                inserted.removeAll(raced);
+            }
+        }
+
+        List<Object[]> updates = new ArrayList<>();
+        List<AssignmentStatsService.SubmissionChange> changes = new ArrayList<>();
+        for (Map.Entry<SubmissionKey, PendingSubmission> entry : latest.entrySet()) {
+            SubmissionKey key = entry.getKey();
+            Instant acceptedAt = entry.getValue().acceptedAt();
+            ExistingSubmission current = existing.get(key);
+            if (current != null) {
+                updates.add(new Object[] {Timestamp.from(acceptedAt),
+                        attachments.containsKey(key) ? attachments.get(key) : current.attachmentId(),
+                        current.submissionId()});
+            }
+            changes.add(new AssignmentStatsService.SubmissionChange(key.assignmentId(),
+                    assignments.get(key.assignmentId()).dueDate(),
+                    current == null ? null : current.submissionTime(), acceptedAt));
+        }
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate("""
+                    UPDATE assignment_submissions
+                    SET submission_time = ?, attachment_id = ?
+                    WHERE submission_id = ?
+                    """, updates);
+        }
+        statsService.recordSubmissions(changes);
+        return saved;
+    }
+
+    private Map<UUID, AssignmentRef> loadAssignments(List<PendingSubmission> batch) {
+        UUID[] ids = batch.stream().map(PendingSubmission::assignmentId).distinct().toArray(UUID[]::new);
+        Map<UUID, AssignmentRef> assignments = new HashMap<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    "SELECT assignment_id, class_id, due_date FROM assignments WHERE assignment_id = ANY(?)");
+            ps.setArray(1, con.createArrayOf("uuid", ids));
+            return ps;
+        }, rs -> {
+            Timestamp dueDate = rs.getTimestamp("due_date");
+            assignments.put(SqlValues.toUuid(rs.getObject("assignment_id")), new AssignmentRef(
+                    SqlValues.toUuid(rs.getObject("class_id")), dueDate == null ? null : dueDate.toInstant()));
+        });
+        return assignments;
+    }
+
+    /**
+     * Reads and locks the existing submission rows of the given students, so the previous
+     * submission times counted in the statistics cannot change before they are replaced.
+     */
+    private Map<SubmissionKey, ExistingSubmission> lockExisting(Set<SubmissionKey> keys) {
+        UUID[] assignmentIds = keys.stream().map(SubmissionKey::assignmentId).distinct().toArray(UUID[]::new);
+        UUID[] studentIds = keys.stream().map(SubmissionKey::studentId).distinct().toArray(UUID[]::new);
+        Map<SubmissionKey, ExistingSubmission> existing = new HashMap<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                    SELECT submission_id, assignment_id, student_id, submission_time, attachment_id
+                    FROM assignment_submissions
+                    WHERE assignment_id = ANY(?) AND student_id = ANY(?)
+                    ORDER BY submission_id
+                    FOR UPDATE
+                    """);
+            ps.setArray(1, con.createArrayOf("uuid", assignmentIds));
+            ps.setArray(2, con.createArrayOf("uuid", studentIds));
+            return ps;
+        }, rs -> {
+            SubmissionKey key = new SubmissionKey(SqlValues.toUuid(rs.getObject("assignment_id")),
+                    SqlValues.toUuid(rs.getObject("student_id")));
+            if (!keys.contains(key)) return;
+            Timestamp submissionTime = rs.getTimestamp("submission_time");
+            existing.put(key, new ExistingSubmission(SqlValues.toUuid(rs.getObject("submission_id")),
+                    submissionTime == null ? null : submissionTime.toInstant(),
+                    SqlValues.toUuid(rs.getObject("attachment_id"))));
+        });
+        return existing;
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        running = false;
+        if (writer != null) {
+            // Lets the writer save what is already queued before the context closes
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+            writer.interrupt();
+        }
+    }
+
+    /**
+     * A submission accepted by a request and waiting to be written.
+     *
+     * @param classroomId classroom the student submitted in
+     * @param assignmentId assignment id
+     * @param studentId student id
+     * @param acceptedAt when the upload was accepted; recorded as the submission time
+     * @param attachmentId file saved for the submission, or null
+     * @param removeAttachment whether to remove the current file when no new one is given
+     * @param result completed once the submission is written
+     * @param claimed set by whichever of the writer and the waiting request takes the
+     *                submission first; the writer skips it when the request has given up
+     */
+    public record PendingSubmission(UUID classroomId,
+                                    UUID assignmentId,
+                                    UUID studentId,
+                                    Instant acceptedAt,
+                                    UUID attachmentId,
+                                    boolean removeAttachment,
+                                    CompletableFuture<Boolean> result,
+                                    AtomicBoolean claimed) {
+
+        public PendingSubmission(UUID classroomId, UUID assignmentId, UUID studentId, Instant acceptedAt,
+                                 UUID attachmentId, boolean removeAttachment) {
+            this(classroomId, assignmentId, studentId, acceptedAt, attachmentId, removeAttachment,
+                    new CompletableFuture<>(), new AtomicBoolean());
+        }
+    }
+
+    private record AssignmentRef(UUID classId, Instant dueDate) {
+    }
+
+    private record SubmissionKey(UUID assignmentId, UUID studentId) {
+    }
+
+    private record ExistingSubmission(UUID submissionId, Instant submissionTime, UUID attachmentId) {
+    }
+}
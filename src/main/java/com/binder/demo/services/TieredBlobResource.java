@@ -0,0 +1,115 @@
+package com.binder.demo.services;
+
+import com.binder.demo.attachments.StorageTier;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Blob content as stored in one tier. Compressed cold objects are decompressed while they are
+ * read and report the original length; everything else is passed through, so local files can
+ * still be sent with sendfile. The time taken to open the content is recorded per tier.
+ */
+final class TieredBlobResource extends AbstractResource {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Resource stored;
+    private final StorageTier tier;
+    private final boolean gzip;
+    private final long sizeBytes;
+    private final Timer openTimer;
+
+    /**
+     * @param stored object in the storage backend
+     * @param tier tier the object belongs to
+     * @param gzip whether the object is gzip-compressed
+     * @param sizeBytes original content length
+     * @param openTimer records how long opening the content takes
+     */
+    TieredBlobResource(Resource stored, StorageTier tier, boolean gzip, long sizeBytes, Timer openTimer) {
+        this.stored = stored;
+        this.tier = tier;
+        this.gzip = gzip;
+        this.sizeBytes = sizeBytes;
+        this.openTimer = openTimer;
+    }
+
+    @Override
+    public boolean exists() {
+        return stored.exists();
+    }
+
+    @Override
+    public boolean isReadable() {
+        return stored.isReadable();
+    }
+
+    @Override
+    public boolean isFile() {
+        return !gzip && stored.isFile();
+    }
+
+    @Override
+    public File getFile() throws IOException {
+        if (gzip) {
+            return super.getFile();
+        }
+        return stored.getFile();
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return gzip ? sizeBytes : stored.contentLength();
+    }
+
+    @Override
+    public long lastModified() throws IOException {
+        return stored.lastModified();
+    }
+
+    @Override
+    public String getFilename() {
+        return stored.getFilename();
+    }
+
+    @Override
+    public String getDescription() {
+        return tier.name().toLowerCase(Locale.ROOT) + " blob " + stored.getDescription();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        long start = System.nanoTime();
+        InputStream input = stored.getInputStream();
+        if (gzip) {
+            try {
+                // Reads the gzip header, so the timing covers the first bytes of the cold object.
+                input = new GZIPInputStream(input, BUFFER_SIZE);
+            } catch (IOException ex) {
+                input.close();
+                throw ex;
+            }
+        }
+        openTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return input;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return this == other || (other instanceof TieredBlobResource that
+                && stored.equals(that.stored) && tier == that.tier && gzip == that.gzip);
+    }
+
+    @Override
+    public int hashCode() {
+        return stored.hashCode();
+    }
+}
@@ -0,0 +1,42 @@
+package com.binder.demo.services;
+
+/**
+ * Thrown when an upload is refused while it is being received.
+ */
+public class UploadRejectedException extends IllegalArgumentException {
+
+    /**
+     * Why an upload was refused.
+     */
+    public enum Reason {
+        EMPTY,
+        TOO_LARGE,
+        UNSUPPORTED_TYPE,
+        CHECKSUM_MISMATCH,
+        /**
+         * A resumable upload chunk did not start where the upload left off, or another
+         * request is writing to the same upload.
+         */
+        OFFSET_MISMATCH,
+        /**
+         * Storing the upload would take its owner or classroom over its storage quota.
+         */
+        QUOTA_EXCEEDED
+    }
+
+    private final Reason reason;
+
+    public UploadRejectedException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    /**
+     * Returns why the upload was refused.
+     *
+     * @return rejection reason
+     */
+    public Reason getReason() {
+        return reason;
+    }
+}
@@ -5,11 +5,21 @@ import com.binder.demo.user.User;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.TypedQuery;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -24,6 +34,27 @@ public class UserService {
     @PersistenceContext
     private EntityManager em;
 
+    /**
+     * Cache of membership checks, invalidated on every enrollment change.
+     */
+    private final MembershipCache membershipCache;
+
+    /**
+     * Per-user dashboard cache, invalidated on every enrollment change.
+     */
+    private final DashboardCache dashboardCache;
+
+    /**
+     * JDBC template used for set-based enrollment statements.
+     */
+    private final JdbcTemplate jdbcTemplate;
+
+    public UserService(MembershipCache membershipCache, DashboardCache dashboardCache, JdbcTemplate jdbcTemplate) {
+        this.membershipCache = membershipCache;
+        this.dashboardCache = dashboardCache;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
     /**
      * Finds a user by email.
      *
@@ -93,6 +124,7 @@ public class UserService {
                 .setParameter("classId", classId)
                 .setParameter("studentId", studentId)
                 .executeUpdate();
+        membershipChanged(classId, studentId, Role.STUDENT);
     }
 
     /**
@@ -113,6 +145,7 @@ public class UserService {
                 .setParameter("classId", classId)
                 .setParameter("teacherId", teacherId)
                 .executeUpdate();
+        membershipChanged(classId, teacherId, Role.TEACHER);
     }
 
     /**
@@ -132,6 +165,7 @@ public class UserService {
                 .setParameter("classId", classId)
                 .setParameter("studentId", studentId)
                 .executeUpdate();
+        membershipChanged(classId, studentId, Role.STUDENT);
     }
 
     /**
@@ -151,6 +185,7 @@ public class UserService {
                 .setParameter("classId", classId)
                 .setParameter("teacherId", teacherId)
                 .executeUpdate();
+        membershipChanged(classId, teacherId, Role.TEACHER);
     }
 
     /**
@@ -161,20 +196,7 @@ public class UserService {
      */
     @Transactional
     public void enrollStudentsByEmails(UUID classId, String studentEmails) {
-        if (classId == null) return;
-        if (studentEmails == null || studentEmails.isBlank()) return;
-
-        String[] emails = studentEmails.split("[,\\s]+");
-        for (String email : emails) {
-            String e = (email == null) ? "" : email.trim();
-            if (e.isBlank()) continue;
-
-            findByEmail(e).ifPresent(user -> {
-                if (user.getRole() == Role.STUDENT) {
-                    addStudentToClass(classId, user.getUserId());
-                }
-            });
-        }
+        enrollByEmails(classId, studentEmails, Role.STUDENT);
     }
 
     /**
@@ -185,20 +207,7 @@ public class UserService {
      */
     @Transactional
     public void enrollTeachersByEmails(UUID classId, String teacherEmails) {
-        if (classId == null) return;
-        if (teacherEmails == null || teacherEmails.isBlank()) return;
-
-        String[] emails = teacherEmails.split("[,\\s]+");
-        for (String email : emails) {
-            String e = (email == null) ? "" : email.trim();
-            if (e.isBlank()) continue;
-
-            findByEmail(e).ifPresent(user -> {
-                if (user.getRole() == Role.TEACHER) {
-                    addTeacherToClass(classId, user.getUserId());
-                }
-            });
-        }
+        enrollByEmails(classId, teacherEmails, Role.TEACHER);
     }
 
     /**
@@ -211,31 +220,121 @@ public class UserService {
      */
     @Transactional
     public List<String> enrollUsersByEmailsWithRoleValidation(UUID classId, String emails, Role expectedRole) {
-        if (classId == null || expectedRole == null) return List.of();
-        if (emails == null || emails.isBlank()) return List.of();
+        return enrollByEmails(classId, emails, expectedRole).roleMismatched();
+    }
 
-        List<String> mismatched = new java.util.ArrayList<>();
-        String[] split = emails.split("[,\\s]+");
-        for (String email : split) {
+    /**
+     * Enrolls users from a comma or space separated email list.
+     *
+     * @param classId classroom id
+     * @param emails list of emails
+     * @param expectedRole role the users must hold
+     * @return enrollment outcome per email
+     */
+    @Transactional
+    public BulkEnrollmentResult enrollByEmails(UUID classId, String emails, Role expectedRole) {
+        if (emails == null || emails.isBlank()) return BulkEnrollmentResult.empty();
+        return enrollByEmails(classId, Arrays.asList(emails.split("[,\\s]+")), expectedRole);
+    }
+
+    /**
+     * Enrolls a set of users by email with a fixed number of statements:
+     * one lookup resolves every email, one finds the existing memberships and
+     * one insert adds every missing one, whatever the size of the list.
+     *
+     * @param classId classroom id
+     * @param emails emails to enroll; blanks and duplicates are ignored
+     * @param expectedRole role the users must hold
+     * @return enrollment outcome per email
+     */
+    @Transactional
+    public BulkEnrollmentResult enrollByEmails(UUID classId, Collection<String> emails, Role expectedRole) {
+        if (classId == null || expectedRole == null || emails == null) return BulkEnrollmentResult.empty();
+
+        Set<String> distinct = new LinkedHashSet<>();
+        for (String email : emails) {
             String e = (email == null) ? "" : email.trim();
-            if (e.isBlank()) continue;
-
-            findByEmail(e).ifPresent(user -> {
-                if (user.getRole() != expectedRole) {
-                    mismatched.add(e);
-                } else if (expectedRole == Role.STUDENT) {
-                    addStudentToClass(classId, user.getUserId());
-                } else if (expectedRole == Role.TEACHER) {
-                    addTeacherToClass(classId, user.getUserId());
-                }
+            if (!e.isBlank()) distinct.add(e);
+        }
+        if (distinct.isEmpty()) return BulkEnrollmentResult.empty();
+
+        String[] emailArray = distinct.toArray(String[]::new);
+        Map<String, ResolvedUser> resolved = new HashMap<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    "SELECT user_id, email, role FROM users WHERE email = ANY(?)");
+            ps.setArray(1, con.createArrayOf("text", emailArray));
+            return ps;
+        }, rs -> {
+            resolved.put(rs.getString("email"),
+                    new ResolvedUser(rs.getObject("user_id", UUID.class), Role.valueOf(rs.getString("role"))));
+        });
+
+        List<String> matched = new ArrayList<>();
+        List<UUID> matchedIds = new ArrayList<>();
+        List<String> unknown = new ArrayList<>();
+        List<String> mismatched = new ArrayList<>();
+        for (String email : distinct) {
+            ResolvedUser user = resolved.get(email);
+            if (user == null) {
+                unknown.add(email);
+            } else if (user.role() != expectedRole) {
+                mismatched.add(email);
+            } else {
+                matched.add(email);
+                matchedIds.add(user.userId());
+            }
+        }
+
+        int inserted = 0;
+        List<String> alreadyEnrolled = new ArrayList<>();
+        if (!matchedIds.isEmpty()) {
+            String existingSql = (expectedRole == Role.STUDENT)
+                    ? "SELECT student_id FROM enrollments WHERE class_id = ? AND student_id = ANY(?)"
+                    : "SELECT teacher_id FROM classroom_teachers WHERE class_id = ? AND teacher_id = ANY(?)";
+            UUID[] matchedArray = matchedIds.toArray(UUID[]::new);
+            Set<UUID> existing = new HashSet<>();
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(existingSql);
+                ps.setObject(1, classId);
+                ps.setArray(2, con.createArrayOf("uuid", matchedArray));
+                return ps;
+            }, rs -> {
+                existing.add(rs.getObject(1, UUID.class));
             });
+            for (int i = 0; i < matched.size(); i++) {
+                if (existing.contains(matchedIds.get(i))) alreadyEnrolled.add(matched.get(i));
+            }
+
+            String sql = (expectedRole == Role.STUDENT)
+                    ? """
+                    INSERT INTO enrollments (class_id, student_id)
+                    SELECT ?, u.user_id FROM users u WHERE u.user_id = ANY(?)
+                    ON CONFLICT DO NOTHING
+                    """
+                    : """
+                    INSERT INTO classroom_teachers (class_id, teacher_id)
+                    SELECT ?, u.user_id FROM users u WHERE u.user_id = ANY(?)
+                    ON CONFLICT DO NOTHING
+                    """;
+            UUID[] idArray = matchedIds.toArray(UUID[]::new);
+            inserted = jdbcTemplate.update(con -> {
+                PreparedStatement ps = con.prepareStatement(sql);
+                ps.setObject(1, classId);
+                ps.setArray(2, con.createArrayOf("uuid", idArray));
+                return ps;
+            });
+            for (UUID id : matchedIds) {
+                membershipChanged(classId, id, expectedRole);
+            }
         }
 
-        return mismatched;
+        return new BulkEnrollmentResult(matched, inserted, alreadyEnrolled, unknown, mismatched);
     }
 
     /**
      * Checks whether a user is enrolled in a classroom for a given role.
+     * Answers are served from the membership cache when present.
      *
      * @param classId classroom id
      * @param userId user id
@@ -244,32 +343,40 @@ public class UserService {
      */
     public boolean isUserInClass(UUID classId, UUID userId, Role role) {
         if (classId == null || userId == null || role == null) return false;
+        return membershipCache.isMember(classId, userId, role, () -> existsInClass(classId, userId, role));
+    }
 
-        if (role == Role.TEACHER) {
-            Number n = (Number) em.createNativeQuery("""
-                SELECT COUNT(*)
-                FROM classroom_teachers
-                WHERE class_id = :classId AND teacher_id = :userId
-                """)
-                    .setParameter("classId", classId)
-                    .setParameter("userId", userId)
-                    .getSingleResult();
-            return n.longValue() > 0;
-        }
-
-        if (role == Role.STUDENT) {
-            Number n = (Number) em.createNativeQuery("""
-                SELECT COUNT(*)
-                FROM enrollments
-                WHERE class_id = :classId AND student_id = :userId
-                """)
-                    .setParameter("classId", classId)
-                    .setParameter("userId", userId)
-                    .getSingleResult();
-            return n.longValue() > 0;
-        }
-
-        return false;
+    /**
+     * Probes the membership table for the role without counting rows.
+     *
+     * @param classId classroom id
+     * @param userId user id
+     * @param role role to verify
+     * @return true when a membership row exists
+     */
+    private boolean existsInClass(UUID classId, UUID userId, Role role) {
+        String sql = switch (role) {
+            case TEACHER -> """
+                SELECT EXISTS (
+                    SELECT 1
+                    FROM classroom_teachers
+                    WHERE class_id = :classId AND teacher_id = :userId
+                )
+                """;
+            case STUDENT -> """
+                SELECT EXISTS (
+                    SELECT 1
+                    FROM enrollments
+                    WHERE class_id = :classId AND student_id = :userId
+                )
+                """;
+        };
+
+        Object exists = em.createNativeQuery(sql)
+                .setParameter("classId", classId)
+                .setParameter("userId", userId)
+                .getSingleResult();
+        return Boolean.TRUE.equals(exists);
     }
 
     /**
@@ -286,4 +393,38 @@ public class UserService {
             removeStudentFromClass(classId, studentId);
         });
     }
+
+    private void membershipChanged(UUID classId, UUID userId, Role role) {
+        membershipCache.invalidate(classId, userId, role);
+        dashboardCache.invalidate(userId);
+    }
+
+    /**
+     * Outcome of a bulk enrollment.
+     *
+     * @param enrolled emails now enrolled in the classroom, including ones already enrolled
+     * @param newlyEnrolled number of memberships actually inserted
+     * @param alreadyEnrolled emails whose user was enrolled before this call
+     * @param unknown emails with no matching user
+     * @param roleMismatched emails whose user holds a different role
+     */
+    public record BulkEnrollmentResult(List<String> enrolled,
+                                       int newlyEnrolled,
+                                       List<String> alreadyEnrolled,
+                                       List<String> unknown,
+                                       List<String> roleMismatched) {
+        public BulkEnrollmentResult {
+            enrolled = List.copyOf(enrolled);
+            alreadyEnrolled = List.copyOf(alreadyEnrolled);
+            unknown = List.copyOf(unknown);
+            roleMismatched = List.copyOf(roleMismatched);
+        }
+
+        static BulkEnrollmentResult empty() {
+            return new BulkEnrollmentResult(List.of(), 0, List.of(), List.of(), List.of());
+        }
+    }
+
+    private record ResolvedUser(UUID userId, Role role) {
+    }
 }
@@ -0,0 +1,75 @@
+package com.binder.demo.storage;
+
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * Backend holding the bytes of stored attachments.
+ * Keys are relative, slash-separated paths such as {@code blobs/ab/<sha256>}. Callers stage
+ * content in a local file first and hand it over with {@link #put(String, Path)}, so an
+ * implementation never sees a partially received upload.
+ */
+public interface AttachmentStorage {
+
+    /**
+     * Stores a staged file under a key, replacing any existing object.
+     * The object becomes visible all at once; readers never observe a partial write.
+     * The staged file may be moved or consumed by this call.
+     *
+     * @param key object key
+     * @param stagedFile complete local copy of the content
+     * @throws IOException when the object cannot be written
+     */
+    void put(String key, Path stagedFile) throws IOException;
+
+    /**
+     * Checks whether an object exists.
+     *
+     * @param key object key
+     * @return true when the object exists
+     * @throws IOException when the backend cannot be reached
+     */
+    boolean exists(String key) throws IOException;
+
+    /**
+     * Returns a readable handle for an object. The object is not read until the
+     * resource is opened; use {@link Resource#exists()} to check for missing objects.
+     *
+     * @param key object key
+     * @return resource for the object
+     * @throws IOException when the key is invalid
+     */
+    Resource resource(String key) throws IOException;
+
+    /**
+     * Removes an object if present.
+     *
+     * @param key object key
+     * @throws IOException when the object exists but cannot be removed
+     */
+    void delete(String key) throws IOException;
+
+    /**
+     * Lists the objects whose keys start with a prefix. Objects are fetched lazily while the
+     * stream is consumed, in no particular order, so arbitrarily large stores can be walked;
+     * close the stream when done. Objects added or removed during the walk may or may not
+     * be included.
+     *
+     * @param prefix key prefix ending in {@code /}
+     * @return lazily populated stream of objects
+     * @throws IOException when the listing cannot be started
+     */
+    Stream<StoredObject> list(String prefix) throws IOException;
+
+    /**
+     * Moves an object to another key, replacing any object already there.
+     *
+     * @param key current object key
+     * @param targetKey new object key
+     * @throws IOException when the object does not exist or cannot be moved
+     */
+    void move(String key, String targetKey) throws IOException;
+}
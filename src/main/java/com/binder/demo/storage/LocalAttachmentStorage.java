@@ -0,0 +1,143 @@
+package com.binder.demo.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Stores attachments as files below {@code attachments.storage-dir}.
+ * This is the default backend.
+ */
+@Component
+@ConditionalOnProperty(name = "attachments.storage.type", havingValue = "local", matchIfMissing = true)
+public class LocalAttachmentStorage implements AttachmentStorage {
+
+    /**
+     * Root directory for stored objects.
+     */
+    private final Path root;
+
+    public LocalAttachmentStorage(@Value("${attachments.storage-dir:uploads}") String storageDir) {
+        this.root = Path.of(storageDir).toAbsolutePath().normalize();
+    }
+
+    @Override
+    public void put(String key, Path stagedFile) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        checkInsideRoot(target.getParent());
+        try {
+            Files.move(stagedFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            // Staging lives on another file system: copy next to the target, then rename.
+            Path temp = Files.createTempFile(target.getParent(), ".put-", ".part");
+            try {
+                Files.copy(stagedFile, temp, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                Files.deleteIfExists(stagedFile);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    @Override
+    public boolean exists(String key) throws IOException {
+        return Files.isRegularFile(resolve(key));
+    }
+
+    @Override
+    public Resource resource(String key) throws IOException {
+        return new FileSystemResource(resolve(key));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+    }
+
+    @Override
+    public Stream<StoredObject> list(String prefix) throws IOException {
+        Path start = resolve(prefix);
+        if (!Files.isDirectory(start, LinkOption.NOFOLLOW_LINKS)) {
+            return Stream.empty();
+        }
+        // Files.walk reads one directory at a time, so the tree is never listed in full.
+        return Files.walk(start)
+                .map(this::describe)
+                .filter(Objects::nonNull);
+    }
+
+    @Override
+    public void move(String key, String targetKey) throws IOException {
+        Path source = resolve(key);
+        Path target = resolve(targetKey);
+        Files.createDirectories(target.getParent());
+        checkInsideRoot(target.getParent());
+        Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Describes a regular file found by a walk.
+     *
+     * @param path walked path
+     * @return stored object, or null for directories, links and files removed meanwhile
+     */
+    private StoredObject describe(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            if (!attributes.isRegularFile()) return null;
+            String key = root.relativize(path).toString().replace(path.getFileSystem().getSeparator(), "/");
+            return new StoredObject(key, attributes.size(), attributes.lastModifiedTime().toInstant());
+        } catch (NoSuchFileException ex) {
+            return null;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Resolves a key below the root directory, rejecting keys that would escape it.
+     *
+     * @param key object key
+     * @return absolute path for the key
+     * @throws IOException when the key is empty or points outside the root
+     */
+    private Path resolve(String key) throws IOException {
+        if (key == null || key.isBlank()) {
+            throw new IOException("Storage key is required.");
+        }
+        Path candidate = root.resolve(key).normalize();
+        if (!candidate.startsWith(root) || candidate.equals(root)) {
+            throw new IOException("Storage key points outside the storage directory.");
+        }
+        return candidate;
+    }
+
+    /**
+     * Rejects directories that only appear to be inside the root because of a symbolic link.
+     *
+     * @param directory existing directory
+     * @throws IOException when the real path is outside the root
+     */
+    private void checkInsideRoot(Path directory) throws IOException {
+        Path realRoot = root.toRealPath();
+        if (!directory.toRealPath().startsWith(realRoot)) {
+            throw new IOException("Storage key points outside the storage directory.");
+        }
+    }
+}
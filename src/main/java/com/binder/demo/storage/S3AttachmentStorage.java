@@ -0,0 +1,235 @@
+package com.binder.demo.storage;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.checksums.RequestChecksumCalculation;
+import software.amazon.awssdk.core.checksums.ResponseChecksumValidation;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * Stores attachments in an S3-compatible bucket.
+ * Enabled with {@code attachments.storage.type=s3}; set {@code attachments.storage.s3.endpoint}
+ * to use a non-AWS service such as MinIO. Credentials come from the access-key properties
+ * when set, otherwise from the default AWS provider chain.
+ */
+@Component
+@ConditionalOnProperty(name = "attachments.storage.type", havingValue = "s3")
+public class S3AttachmentStorage implements AttachmentStorage {
+
+    /**
+     * Client for the configured endpoint.
+     */
+    private final S3Client s3;
+
+    /**
+     * Bucket holding all objects.
+     */
+    private final String bucket;
+
+    @Autowired
+    public S3AttachmentStorage(@Value("${attachments.storage.s3.bucket}") String bucket,
+                               @Value("${attachments.storage.s3.region:us-east-1}") String region,
+                               @Value("${attachments.storage.s3.endpoint:}") String endpoint,
+                               @Value("${attachments.storage.s3.path-style-access:false}") boolean pathStyleAccess,
+                               @Value("${attachments.storage.s3.access-key:}") String accessKey,
+                               @Value("${attachments.storage.s3.secret-key:}") String secretKey) {
+        this(buildClient(region, endpoint, pathStyleAccess, accessKey, secretKey), bucket);
+    }
+
+    S3AttachmentStorage(S3Client s3, String bucket) {
+        if (bucket == null || bucket.isBlank()) {
+            throw new IllegalArgumentException("attachments.storage.s3.bucket is required.");
+        }
+        this.s3 = s3;
+        this.bucket = bucket;
+    }
+
+    @Override
+    public void put(String key, Path stagedFile) throws IOException {
+        String objectKey = checkKey(key);
+        try {
+            // A single PUT is atomic in S3: the object is visible in full or not at all.
+            s3.putObject(request -> request.bucket(bucket).key(objectKey), RequestBody.fromFile(stagedFile));
+        } catch (SdkException ex) {
+            throw new IOException("Could not upload " + key, ex);
+        }
+        Files.deleteIfExists(stagedFile);
+    }
+
+    @Override
+    public boolean exists(String key) throws IOException {
+        return head(checkKey(key)) != null;
+    }
+
+    @Override
+    public Resource resource(String key) throws IOException {
+        return new S3ObjectResource(checkKey(key));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        String objectKey = checkKey(key);
+        try {
+            s3.deleteObject(request -> request.bucket(bucket).key(objectKey));
+        } catch (SdkException ex) {
+            throw new IOException("Could not delete " + key, ex);
+        }
+    }
+
+    @Override
+    public Stream<StoredObject> list(String prefix) throws IOException {
+        String objectPrefix = checkKey(prefix);
+        try {
+            // The paginator requests the next page of up to 1000 keys only when the stream reaches it.
+            return s3.listObjectsV2Paginator(request -> request.bucket(bucket).prefix(objectPrefix))
+                    .contents()
+                    .stream()
+                    .map(object -> new StoredObject(object.key(), object.size(), object.lastModified()));
+        } catch (SdkException ex) {
+            throw new IOException("Could not list " + prefix, ex);
+        }
+    }
+
+    @Override
+    public void move(String key, String targetKey) throws IOException {
+        String objectKey = checkKey(key);
+        String targetObjectKey = checkKey(targetKey);
+        try {
+            s3.copyObject(request -> request.sourceBucket(bucket).sourceKey(objectKey)
+                    .destinationBucket(bucket).destinationKey(targetObjectKey));
+            s3.deleteObject(request -> request.bucket(bucket).key(objectKey));
+        } catch (SdkException ex) {
+            throw new IOException("Could not move " + key + " to " + targetKey, ex);
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        s3.close();
+    }
+
+    /**
+     * Fetches object metadata.
+     *
+     * @param key object key
+     * @return metadata, or null when the object does not exist
+     * @throws IOException when the request fails for another reason
+     */
+    private HeadObjectResponse head(String key) throws IOException {
+        try {
+            return s3.headObject(request -> request.bucket(bucket).key(key));
+        } catch (NoSuchKeyException ex) {
+            return null;
+        } catch (S3Exception ex) {
+            if (ex.statusCode() == 404) return null;
+            throw new IOException("Could not read metadata for " + key, ex);
+        } catch (SdkException ex) {
+            throw new IOException("Could not read metadata for " + key, ex);
+        }
+    }
+
+    private static String checkKey(String key) throws IOException {
+        if (key == null || key.isBlank() || key.startsWith("/") || key.contains("..") || key.contains("\\")) {
+            throw new IOException("Invalid storage key.");
+        }
+        return key;
+    }
+
+    private static S3Client buildClient(String region, String endpoint, boolean pathStyleAccess,
+                                        String accessKey, String secretKey) {
+        AwsCredentialsProvider credentials = (accessKey == null || accessKey.isBlank())
+                ? DefaultCredentialsProvider.builder().build()
+                : StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey));
+        S3ClientBuilder builder = S3Client.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentials)
+                .forcePathStyle(pathStyleAccess);
+        if (endpoint != null && !endpoint.isBlank()) {
+            // Many S3-compatible servers reject the SDK's default trailing checksums.
+            builder.endpointOverride(URI.create(endpoint))
+                    .requestChecksumCalculation(RequestChecksumCalculation.WHEN_REQUIRED)
+                    .responseChecksumValidation(ResponseChecksumValidation.WHEN_REQUIRED);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Lazily fetched object; metadata and content are only requested when asked for.
+     */
+    private final class S3ObjectResource extends AbstractResource {
+
+        private final String key;
+
+        private S3ObjectResource(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public boolean exists() {
+            try {
+                return head(key) != null;
+            } catch (IOException ex) {
+                return false;
+            }
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            HeadObjectResponse metadata = head(key);
+            if (metadata == null) throw new FileNotFoundException(getDescription());
+            return metadata.contentLength();
+        }
+
+        @Override
+        public long lastModified() throws IOException {
+            HeadObjectResponse metadata = head(key);
+            if (metadata == null) throw new FileNotFoundException(getDescription());
+            return metadata.lastModified().toEpochMilli();
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            try {
+                return s3.getObject(request -> request.bucket(bucket).key(key));
+            } catch (NoSuchKeyException ex) {
+                throw new FileNotFoundException(getDescription());
+            } catch (SdkException ex) {
+                throw new IOException("Could not read " + key, ex);
+            }
+        }
+
+        @Override
+        public String getFilename() {
+            return key.substring(key.lastIndexOf('/') + 1);
+        }
+
+        @Override
+        public String getDescription() {
+            return "S3 object [s3://" + bucket + "/" + key + "]";
+        }
+    }
+}
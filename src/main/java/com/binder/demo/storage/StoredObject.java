@@ -0,0 +1,13 @@
+package com.binder.demo.storage;
+
+import java.time.Instant;
+
+/**
+ * An object found while listing an {@link AttachmentStorage}.
+ *
+ * @param key object key
+ * @param sizeBytes object size
+ * @param lastModified time the object was last written
+ */
+public record StoredObject(String key, long sizeBytes, Instant lastModified) {
+}
@@ -0,0 +1,11 @@
+-- Blobs whose content has been committed but not yet written to the storage backend.
+-- pending_file names the staged copy in the staging directory. The row keeps it until the
+-- backend holds the content, so writes that fail or are cut off by a restart are retried.
+ALTER TABLE attachment_blobs ADD COLUMN IF NOT EXISTS pending_file TEXT;
+ALTER TABLE attachment_blobs ADD COLUMN IF NOT EXISTS pending_since TIMESTAMP;
+ALTER TABLE attachment_blobs ADD COLUMN IF NOT EXISTS next_write_at TIMESTAMP;
+
+-- The retry sweep looks up pending blobs that are due, earliest first.
+CREATE INDEX IF NOT EXISTS idx_attachment_blobs_pending_writes
+    ON attachment_blobs (next_write_at)
+    WHERE pending_file IS NOT NULL;
@@ -0,0 +1,4 @@
+-- Set while a fully received upload is being submitted. The session is only deleted in the
+-- transaction that saves the submission, so a submission that fails can be finished again;
+-- a mark older than the completion timeout is left by a process that stopped and is ignored.
+ALTER TABLE upload_sessions ADD COLUMN IF NOT EXISTS completing_at TIMESTAMP;
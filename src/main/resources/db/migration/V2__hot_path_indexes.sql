@@ -0,0 +1,21 @@
+-- Indexes for the hot query paths.
+-- authentications needs no new index: the login lookup by (user_id, provider)
+-- is served by its UNIQUE (user_id, provider) constraint.
+
+-- Classroom feed: class filter plus the (created_at, id) keyset order, newest first.
+CREATE INDEX IF NOT EXISTS idx_assignments_class_created
+    ON assignments (class_id, created_at DESC, assignment_id DESC);
+
+CREATE INDEX IF NOT EXISTS idx_resources_class_created
+    ON resources (class_id, created_at DESC, resource_id DESC);
+
+-- Per-student submission lookups; UNIQUE (assignment_id, student_id) only serves lookups by assignment.
+CREATE INDEX IF NOT EXISTS idx_assignment_submissions_student
+    ON assignment_submissions (student_id, assignment_id);
+
+-- Dashboard and membership lookups by user; the primary/unique keys lead with class_id.
+CREATE INDEX IF NOT EXISTS idx_classroom_teachers_teacher
+    ON classroom_teachers (teacher_id, class_id);
+
+CREATE INDEX IF NOT EXISTS idx_enrollments_student
+    ON enrollments (student_id, class_id);
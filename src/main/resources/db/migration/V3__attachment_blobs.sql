@@ -0,0 +1,18 @@
+-- Content-addressed storage for uploaded files.
+-- Identical uploads share one blob; attachments reference it by SHA-256 and
+-- ref_count tracks how many attachment rows point at it.
+CREATE TABLE IF NOT EXISTS attachment_blobs (
+	sha256     TEXT PRIMARY KEY CHECK (length(sha256) = 64),
+	size_bytes BIGINT NOT NULL CHECK (size_bytes >= 0),
+	ref_count  INTEGER NOT NULL DEFAULT 0 CHECK (ref_count >= 0),
+	created_at TIMESTAMP NOT NULL DEFAULT NOW(),
+	updated_at TIMESTAMP NOT NULL DEFAULT NOW()
+);
+
+-- NULL for links and for files uploaded before the blob store existed.
+ALTER TABLE attachments ADD COLUMN IF NOT EXISTS blob_sha256 TEXT REFERENCES attachment_blobs(sha256);
+
+-- The garbage collector only ever looks at unreferenced blobs, oldest first.
+CREATE INDEX IF NOT EXISTS idx_attachment_blobs_unreferenced
+    ON attachment_blobs (updated_at)
+    WHERE ref_count = 0;
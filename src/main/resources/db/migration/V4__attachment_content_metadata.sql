@@ -0,0 +1,9 @@
+-- Content metadata recorded at upload so downloads need no file probing.
+-- Both stay NULL for links; older uploads fall back to the display name and file size.
+ALTER TABLE attachments ADD COLUMN IF NOT EXISTS content_type TEXT;
+ALTER TABLE attachments ADD COLUMN IF NOT EXISTS size_bytes BIGINT CHECK (size_bytes >= 0);
+
+UPDATE attachments a
+SET size_bytes = b.size_bytes
+FROM attachment_blobs b
+WHERE a.blob_sha256 = b.sha256 AND a.size_bytes IS NULL;
@@ -0,0 +1,18 @@
+-- Resumable submission uploads in progress.
+-- offset_bytes is the number of bytes safely written to the session's staging file;
+-- a session is finished once it reaches length_bytes and is then deleted.
+CREATE TABLE IF NOT EXISTS upload_sessions (
+	upload_id     UUID PRIMARY KEY,
+	owner_id      UUID NOT NULL REFERENCES users(user_id) ON DELETE CASCADE,
+	class_id      UUID NOT NULL REFERENCES classrooms(class_id) ON DELETE CASCADE,
+	assignment_id UUID NOT NULL REFERENCES assignments(assignment_id) ON DELETE CASCADE,
+	file_name     TEXT,
+	declared_type TEXT,
+	length_bytes  BIGINT NOT NULL CHECK (length_bytes > 0),
+	offset_bytes  BIGINT NOT NULL DEFAULT 0 CHECK (offset_bytes >= 0 AND offset_bytes <= length_bytes),
+	created_at    TIMESTAMP NOT NULL DEFAULT NOW(),
+	expires_at    TIMESTAMP NOT NULL
+);
+
+-- The expiry sweep reads sessions oldest deadline first.
+CREATE INDEX IF NOT EXISTS idx_upload_sessions_expires_at ON upload_sessions (expires_at);
@@ -0,0 +1,12 @@
+-- Lookups of the rows that reference an attachment, used by the storage reconciliation job
+-- to find unreferenced attachments, and by the ON DELETE actions when an attachment is deleted.
+-- The join tables' primary keys lead with the post id, so they cannot serve these.
+CREATE INDEX IF NOT EXISTS idx_assignment_attachments_attachment
+    ON assignment_attachments (attachment_id);
+
+CREATE INDEX IF NOT EXISTS idx_resource_attachments_attachment
+    ON resource_attachments (attachment_id);
+
+CREATE INDEX IF NOT EXISTS idx_assignment_submissions_attachment
+    ON assignment_submissions (attachment_id)
+    WHERE attachment_id IS NOT NULL;
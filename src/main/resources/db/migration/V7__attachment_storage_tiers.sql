@@ -0,0 +1,21 @@
+-- Storage tiers for blob content.
+-- Blobs that nobody has read for attachments.tiering.cold-after move from blobs/ to cold/,
+-- gzip-compressed when that saves space; stored_bytes is then the size of the cold object.
+ALTER TABLE attachment_blobs ADD COLUMN IF NOT EXISTS last_accessed_at TIMESTAMP NOT NULL DEFAULT NOW();
+ALTER TABLE attachment_blobs ADD COLUMN IF NOT EXISTS storage_tier TEXT NOT NULL DEFAULT 'HOT'
+    CHECK (storage_tier IN ('HOT', 'COLD'));
+ALTER TABLE attachment_blobs ADD COLUMN IF NOT EXISTS compression TEXT CHECK (compression IN ('gzip'));
+ALTER TABLE attachment_blobs ADD COLUMN IF NOT EXISTS stored_bytes BIGINT CHECK (stored_bytes >= 0);
+
+-- Reads were not tracked before; the last upload is the best available estimate.
+UPDATE attachment_blobs SET last_accessed_at = updated_at;
+
+-- The tiering job walks referenced hot blobs least recently read first.
+CREATE INDEX IF NOT EXISTS idx_attachment_blobs_hot_last_access
+    ON attachment_blobs (last_accessed_at, sha256)
+    WHERE storage_tier = 'HOT' AND ref_count > 0;
+
+-- Looks up the content type of a blob's attachments when choosing whether to compress it.
+CREATE INDEX IF NOT EXISTS idx_attachments_blob_sha256
+    ON attachments (blob_sha256)
+    WHERE blob_sha256 IS NOT NULL;
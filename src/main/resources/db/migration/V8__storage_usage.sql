@@ -0,0 +1,49 @@
+-- Running totals of stored attachment bytes per user and per classroom.
+-- Updated in the same transaction as every attachment insert and delete, so quota checks
+-- and dashboards read one row instead of summing attachments or statting files. Bytes are
+-- counted per attachment as uploaded, so identical files shared through one blob count for
+-- each uploader.
+CREATE TABLE IF NOT EXISTS storage_usage (
+	scope      TEXT NOT NULL CHECK (scope IN ('USER', 'CLASSROOM')),
+	scope_id   UUID NOT NULL,
+	used_bytes BIGINT NOT NULL DEFAULT 0 CHECK (used_bytes >= 0),
+	file_count BIGINT NOT NULL DEFAULT 0 CHECK (file_count >= 0),
+	updated_at TIMESTAMP NOT NULL DEFAULT NOW(),
+	PRIMARY KEY (scope, scope_id)
+);
+
+-- Classroom an attachment was uploaded to, so its bytes can be taken off the right total
+-- when it is deleted. Attribution only: NULL for links and for uploads outside a classroom.
+ALTER TABLE attachments ADD COLUMN IF NOT EXISTS class_id UUID;
+
+UPDATE attachments a
+SET class_id = asg.class_id
+FROM assignment_submissions s
+JOIN assignments asg ON asg.assignment_id = s.assignment_id
+WHERE s.attachment_id = a.attachment_id AND a.class_id IS NULL;
+
+UPDATE attachments a
+SET class_id = asg.class_id
+FROM assignment_attachments x
+JOIN assignments asg ON asg.assignment_id = x.assignment_id
+WHERE x.attachment_id = a.attachment_id AND a.class_id IS NULL;
+
+UPDATE attachments a
+SET class_id = r.class_id
+FROM resource_attachments x
+JOIN resources r ON r.resource_id = x.resource_id
+WHERE x.attachment_id = a.attachment_id AND a.class_id IS NULL;
+
+INSERT INTO storage_usage (scope, scope_id, used_bytes, file_count)
+SELECT 'USER', user_owner, SUM(size_bytes), COUNT(*)
+FROM attachments
+WHERE size_bytes IS NOT NULL
+GROUP BY user_owner
+ON CONFLICT DO NOTHING;
+
+INSERT INTO storage_usage (scope, scope_id, used_bytes, file_count)
+SELECT 'CLASSROOM', class_id, SUM(size_bytes), COUNT(*)
+FROM attachments
+WHERE size_bytes IS NOT NULL AND class_id IS NOT NULL
+GROUP BY class_id
+ON CONFLICT DO NOTHING;
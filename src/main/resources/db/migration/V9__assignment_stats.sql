@@ -0,0 +1,42 @@
+-- Submission counts and mark totals per assignment, kept up to date by the statements that
+-- submit and grade, so the classroom page reads one row per assignment instead of every
+-- submission. A periodic job rebuilds them from the submissions to repair any drift.
+CREATE TABLE IF NOT EXISTS assignment_stats (
+	assignment_id   UUID PRIMARY KEY REFERENCES assignments(assignment_id) ON DELETE CASCADE,
+	submitted_count INT NOT NULL DEFAULT 0 CHECK (submitted_count >= 0),
+	graded_count    INT NOT NULL DEFAULT 0 CHECK (graded_count >= 0),
+	late_count      INT NOT NULL DEFAULT 0 CHECK (late_count >= 0),
+	marks_count     INT NOT NULL DEFAULT 0 CHECK (marks_count >= 0),
+	marks_sum       BIGINT NOT NULL DEFAULT 0,
+	updated_at      TIMESTAMP NOT NULL DEFAULT NOW()
+);
+
+-- Histogram of marks per assignment; marks are bounded by maximum_marks, so an assignment
+-- has at most a few dozen rows and the median is read by walking them in order.
+CREATE TABLE IF NOT EXISTS assignment_mark_counts (
+	assignment_id UUID NOT NULL REFERENCES assignments(assignment_id) ON DELETE CASCADE,
+	marks         INT NOT NULL,
+	submissions   INT NOT NULL CHECK (submissions > 0),
+	PRIMARY KEY (assignment_id, marks)
+);
+
+INSERT INTO assignment_stats (assignment_id, submitted_count, graded_count, late_count, marks_count, marks_sum)
+SELECT a.assignment_id,
+       COUNT(s.submission_id),
+       COUNT(CASE WHEN g.marks_scored IS NOT NULL OR g.feedback IS NOT NULL THEN 1 END),
+       COUNT(CASE WHEN a.due_date IS NOT NULL AND s.submission_time > a.due_date THEN 1 END),
+       COUNT(g.marks_scored),
+       COALESCE(SUM(g.marks_scored), 0)
+FROM assignments a
+LEFT JOIN assignment_submissions s ON s.assignment_id = a.assignment_id
+LEFT JOIN grades g ON g.submission_id = s.submission_id
+GROUP BY a.assignment_id
+ON CONFLICT DO NOTHING;
+
+INSERT INTO assignment_mark_counts (assignment_id, marks, submissions)
+SELECT s.assignment_id, g.marks_scored, COUNT(*)
+FROM assignment_submissions s
+JOIN grades g ON g.submission_id = s.submission_id
+WHERE g.marks_scored IS NOT NULL
+GROUP BY s.assignment_id, g.marks_scored
+ON CONFLICT DO NOTHING;
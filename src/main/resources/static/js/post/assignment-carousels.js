@@ -2,16 +2,6 @@ document.addEventListener('DOMContentLoaded', () => {
     const utils = window.PostUtils || {};
     const setupCarousel = utils.setupCarousel || (() => {});
 
-    setupCarousel({
-        filterId: 'submissionFilter',
-        prevId: 'submissionPrev',
-        nextId: 'submissionNext',
-        statusId: 'submissionNavStatus',
-        cardSelector: '[data-submission-card]',
-        emptyId: 'submissionReviewEmpty',
-        dueData: true
-    });
-
     setupCarousel({
         filterId: 'studentResultFilter',
         prevId: 'studentResultPrev',
@@ -0,0 +1,51 @@
+document.addEventListener('DOMContentLoaded', () => {
+    const stream = document.getElementById('postStream');
+    if (!stream) return;
+
+    let loading = false;
+
+    // Fetch the next feed page and swap it in place of the "load more" marker
+    const loadMore = async (marker) => {
+        const url = marker?.dataset.feedUrl;
+        if (!url || loading) return;
+        loading = true;
+        const button = marker.querySelector('[data-action="load-more-posts"]');
+        if (button) button.disabled = true;
+        try {
+            const response = await fetch(url, { headers: { 'Accept': 'text/html' } });
+            if (!response.ok) throw new Error('Feed request failed');
+            const template = document.createElement('template');
+            template.innerHTML = await response.text();
+            marker.replaceWith(template.content);
+
+            // Keep the current post filter applied to the new posts
+            document.getElementById('postFilter')?.dispatchEvent(new Event('change'));
+            observeMarker();
+        } catch (err) {
+            if (button) button.disabled = false;
+        } finally {
+            loading = false;
+        }
+    };
+
+    const observer = 'IntersectionObserver' in window
+        ? new IntersectionObserver((entries) => {
+            entries.forEach((entry) => {
+                if (entry.isIntersecting) loadMore(entry.target);
+            });
+        }, { rootMargin: '200px' })
+        : null;
+
+    const observeMarker = () => {
+        const marker = stream.querySelector('.feed-more');
+        if (marker && observer) observer.observe(marker);
+    };
+
+    document.addEventListener('click', (event) => {
+        const actionEl = event.target.closest('[data-action="load-more-posts"]');
+        if (!actionEl) return;
+        loadMore(actionEl.closest('.feed-more'));
+    });
+
+    observeMarker();
+});
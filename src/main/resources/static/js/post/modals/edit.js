@@ -72,6 +72,7 @@ document.addEventListener('DOMContentLoaded', () => {
                 name: el.dataset.attachmentName,
                 isImage: el.dataset.attachmentImage === 'true',
                 inlineUrl: el.dataset.attachmentInline,
+                thumbUrl: el.dataset.attachmentThumb,
                 downloadUrl: el.dataset.attachmentDownload
             })).filter((att) => att.id);
 
@@ -84,7 +85,7 @@ document.addEventListener('DOMContentLoaded', () => {
 
                     if (att.isImage && att.inlineUrl) {
                         const img = document.createElement('img');
-                        img.src = att.inlineUrl;
+                        img.src = att.thumbUrl || att.inlineUrl;
                         img.alt = att.name || 'Existing image';
                         img.className = 'file-preview-image';
                         item.appendChild(img);
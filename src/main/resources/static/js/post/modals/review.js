@@ -10,9 +10,9 @@ document.addEventListener('DOMContentLoaded', () => {
         const filter = document.getElementById('submissionFilter');
         if (filter && assignmentId) {
             filter.value = assignmentId;
-            filter.dispatchEvent(new Event('change'));
         }
         openModal('submissionReviewModal');
+        reviews?.reload();
     });
 
     document.addEventListener('click', (event) => {
@@ -27,4 +27,132 @@ document.addEventListener('DOMContentLoaded', () => {
         }
         openModal('studentResultModal');
     });
+
+    // Submission cards are fetched a page at a time for the selected assignment and status,
+    // and the next page is requested when the teacher steps past the last loaded card.
+    const setupReviews = () => {
+        const list = document.getElementById('submissionReviewList');
+        const filter = document.getElementById('submissionFilter');
+        if (!list || !filter) return null;
+        const statusFilter = document.getElementById('submissionStatusFilter');
+        const prev = document.getElementById('submissionPrev');
+        const next = document.getElementById('submissionNext');
+        const status = document.getElementById('submissionNavStatus');
+        const empty = document.getElementById('submissionReviewEmpty');
+        const summary = document.getElementById('submissionStats');
+
+        const state = {
+            cards: [],
+            index: 0,
+            nextUrl: null,
+            loading: false,
+            generation: 0
+        };
+
+        const dueDate = () => {
+            const option = filter.options[filter.selectedIndex];
+            const date = new Date(option?.dataset.due || '');
+            return Number.isNaN(date.getTime()) ? null : date;
+        };
+
+        // Counts and marks for the selected assignment come with the page, so they show
+        // before any submission card has loaded.
+        const showStats = () => {
+            if (!summary) return;
+            const data = filter.options[filter.selectedIndex]?.dataset;
+            if (!data) {
+                summary.textContent = '';
+                return;
+            }
+            const marks = (value) => (value === '' || value == null ? '–' : Number(value).toFixed(1));
+            summary.textContent = `${data.submitted || 0} submitted · ${data.graded || 0} graded · `
+                + `${data.late || 0} late · mean ${marks(data.mean)} · median ${marks(data.median)}`;
+        };
+
+        const update = () => {
+            state.cards.forEach((card) => card.classList.remove('is-active', 'is-overdue'));
+            const card = state.cards[state.index];
+            if (card) {
+                card.classList.add('is-active');
+                const due = dueDate();
+                const submitted = new Date(card.getAttribute('data-submitted-at') || '');
+                if (due && !Number.isNaN(submitted.getTime()) && submitted.getTime() > due.getTime()) {
+                    card.classList.add('is-overdue');
+                }
+            }
+            const total = state.cards.length;
+            if (status) {
+                status.textContent = total ? `${state.index + 1} / ${total}${state.nextUrl ? '+' : ''}` : '0 / 0';
+            }
+            if (prev) prev.disabled = state.index <= 0;
+            if (next) next.disabled = state.loading || (state.index >= total - 1 && !state.nextUrl);
+            if (empty) empty.style.display = total === 0 && !state.loading ? '' : 'none';
+        };
+
+        const fetchPage = async (url) => {
+            const generation = state.generation;
+            state.loading = true;
+            update();
+            try {
+                const response = await fetch(url, { headers: { 'Accept': 'text/html' } });
+                if (!response.ok) throw new Error('Review request failed');
+                const template = document.createElement('template');
+                template.innerHTML = await response.text();
+                // A newer selection replaced the list while this page was loading
+                if (generation !== state.generation) return;
+                const more = template.content.querySelector('.submission-more');
+                state.nextUrl = more?.dataset.reviewUrl || null;
+                more?.remove();
+                state.cards.push(...template.content.querySelectorAll('[data-submission-card]'));
+                list.append(template.content);
+            } catch (err) {
+                if (generation === state.generation) state.nextUrl = state.nextUrl || url;
+            } finally {
+                if (generation === state.generation) {
+                    state.loading = false;
+                    update();
+                }
+            }
+        };
+
+        const reload = () => {
+            state.generation += 1;
+            state.cards = [];
+            state.index = 0;
+            state.nextUrl = null;
+            state.loading = false;
+            list.replaceChildren();
+            showStats();
+            if (!filter.value) {
+                update();
+                return;
+            }
+            const params = new URLSearchParams({
+                assignmentId: filter.value,
+                status: statusFilter?.value || 'ALL'
+            });
+            fetchPage(`${list.dataset.reviewUrl}&${params}`);
+        };
+
+        filter.addEventListener('change', reload);
+        statusFilter?.addEventListener('change', reload);
+        prev?.addEventListener('click', () => {
+            state.index = Math.max(0, state.index - 1);
+            update();
+        });
+        next?.addEventListener('click', async () => {
+            if (state.index >= state.cards.length - 1) {
+                if (!state.nextUrl || state.loading) return;
+                const generation = state.generation;
+                await fetchPage(state.nextUrl);
+                if (generation !== state.generation) return;
+            }
+            state.index = Math.min(state.index + 1, state.cards.length - 1);
+            update();
+        });
+        update();
+        return { reload };
+    };
+
+    const reviews = setupReviews();
 });
@@ -74,6 +74,138 @@ document.addEventListener('DOMContentLoaded', () => {
         openModal('submitModal');
     });
 
+    // Large files are sent in chunks that survive a dropped connection (tus 1.0, see ResumableUploadController).
+    const RESUMABLE_THRESHOLD = 8 * 1024 * 1024;
+    const CHUNK_SIZE = 5 * 1024 * 1024;
+    const MAX_RETRIES = 8;
+    const UPLOADS_URL = '/classroom/post/assignment/submit/uploads';
+    const TUS_HEADERS = { 'Tus-Resumable': '1.0.0' };
+
+    const sleep = (ms) => new Promise((resolve) => setTimeout(resolve, ms));
+
+    const toBase64 = (bytes) => {
+        let binary = '';
+        bytes.forEach((b) => { binary += String.fromCharCode(b); });
+        return btoa(binary);
+    };
+
+    const failureMessage = async (response) => {
+        if (response.status === 413) return 'The file is too large.';
+        return (await response.text()) || 'Upload failed.';
+    };
+
+    const chunkChecksum = async (chunk) => {
+        if (!window.crypto?.subtle) return null;
+        const digest = await crypto.subtle.digest('SHA-256', await chunk.arrayBuffer());
+        return `sha256 ${toBase64(new Uint8Array(digest))}`;
+    };
+
+    const serverOffset = async (location) => {
+        const response = await fetch(location, { method: 'HEAD', headers: TUS_HEADERS, credentials: 'same-origin' });
+        return response.ok ? Number(response.headers.get('Upload-Offset')) : null;
+    };
+
+    const createUpload = async (file, classroomId, assignmentId) => {
+        const encoder = new TextEncoder();
+        const metadata = [`filename ${toBase64(encoder.encode(file.name))}`];
+        if (file.type) metadata.push(`filetype ${toBase64(encoder.encode(file.type))}`);
+        const response = await fetch(`${UPLOADS_URL}?${new URLSearchParams({ classroomId, assignmentId })}`, {
+            method: 'POST',
+            headers: { ...TUS_HEADERS, 'Upload-Length': String(file.size), 'Upload-Metadata': metadata.join(',') },
+            credentials: 'same-origin'
+        });
+        if (response.status !== 201) throw new Error(await failureMessage(response));
+        return response.headers.get('Location');
+    };
+
+    // Resumes an earlier attempt for the same file when the server still has it.
+    const uploadResumable = async (file, classroomId, assignmentId, onProgress) => {
+        const storageKey = `binder-upload:${assignmentId}:${file.name}:${file.size}:${file.lastModified}`;
+        let location = localStorage.getItem(storageKey);
+        let offset = location ? await serverOffset(location) : null;
+        if (offset === null) {
+            location = await createUpload(file, classroomId, assignmentId);
+            localStorage.setItem(storageKey, location);
+            offset = 0;
+        }
+
+        let failures = 0;
+        while (offset < file.size) {
+            onProgress(offset / file.size);
+            const chunk = file.slice(offset, offset + CHUNK_SIZE);
+            let response;
+            try {
+                const headers = {
+                    ...TUS_HEADERS,
+                    'Upload-Offset': String(offset),
+                    'Content-Type': 'application/offset+octet-stream'
+                };
+                const checksum = await chunkChecksum(chunk);
+                if (checksum) headers['Upload-Checksum'] = checksum;
+                response = await fetch(location, { method: 'PATCH', headers, body: chunk, credentials: 'same-origin' });
+            } catch (networkError) {
+                response = null;
+            }
+
+            if (response?.ok) {
+                offset = Number(response.headers.get('Upload-Offset'));
+                failures = 0;
+                continue;
+            }
+            // Stale offset, corrupted chunk or dropped connection: back off, then ask where to carry on.
+            const retryable = !response || response.status === 409 || response.status === 460 || response.status >= 500;
+            if (!retryable || ++failures > MAX_RETRIES) {
+                localStorage.removeItem(storageKey);
+                throw new Error(response ? await failureMessage(response) : 'Upload failed.');
+            }
+            await sleep(Math.min(30000, 500 * 2 ** failures));
+            const resumed = await serverOffset(location).catch(() => null);
+            if (resumed !== null) offset = resumed;
+        }
+        localStorage.removeItem(storageKey);
+        onProgress(1);
+    };
+
+    // Send a chosen file as the raw request body, so the server checks and stores it as it arrives.
+    const submitForm = document.getElementById('smForm');
+    submitForm?.addEventListener('submit', async (event) => {
+        const fileInput = document.getElementById('smFile');
+        const file = fileInput?.files && fileInput.files[0];
+        if (!file || !window.fetch) return;
+
+        event.preventDefault();
+        const statusEl = document.getElementById('smUploadStatus');
+        const submitButton = submitForm.querySelector('button[type="submit"]');
+        if (submitButton) submitButton.disabled = true;
+        if (statusEl) statusEl.textContent = 'Uploading…';
+
+        const classroomId = submitForm.elements.classroomId.value;
+        const params = new URLSearchParams({
+            classroomId,
+            assignmentId: submitForm.elements.assignmentId.value,
+            name: file.name
+        });
+        try {
+            if (file.size > RESUMABLE_THRESHOLD) {
+                await uploadResumable(file, classroomId, submitForm.elements.assignmentId.value, (fraction) => {
+                    if (statusEl) statusEl.textContent = `Uploading… ${Math.floor(fraction * 100)}%`;
+                });
+            } else {
+                const response = await fetch(`/classroom/post/assignment/submit/stream?${params}`, {
+                    method: 'POST',
+                    headers: { 'Content-Type': file.type || 'application/octet-stream' },
+                    body: file,
+                    credentials: 'same-origin'
+                });
+                if (!response.ok) throw new Error(await failureMessage(response));
+            }
+            window.location.href = `/classrooms/${classroomId}`;
+        } catch (error) {
+            if (statusEl) statusEl.textContent = error.message || 'Upload failed.';
+            if (submitButton) submitButton.disabled = false;
+        }
+    });
+
     document.addEventListener('click', (event) => {
         const actionEl = event.target.closest('[data-action="remove-submission-attachment"]');
         if (!actionEl) return;
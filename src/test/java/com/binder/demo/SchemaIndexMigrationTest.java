@@ -0,0 +1,190 @@
+package com.binder.demo;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.postgresql.PostgreSQLContainer;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Applies the Flyway migrations to a throwaway Postgres and checks with EXPLAIN that the
+ * planner picks the hot-path indexes. Skipped when Docker is not available.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class SchemaIndexMigrationTest {
+
+    @Container
+    private static final PostgreSQLContainer POSTGRES = new PostgreSQLContainer("postgres:16");
+
+    private static JdbcTemplate jdbcTemplate;
+    private static UUID classId;
+    private static UUID studentId;
+    private static UUID teacherId;
+
+    @BeforeAll
+    static void migrateAndSeed() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword());
+        Flyway.configure().dataSource(dataSource).load().migrate();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        // Enough rows per table that a sequential scan is clearly the more expensive plan.
+        jdbcTemplate.execute("""
+                INSERT INTO users (user_id, email, full_name, role)
+                SELECT gen_random_uuid(), 'teacher' || g || '@binder.test', 'Teacher ' || g, 'TEACHER'
+                FROM generate_series(1, 200) g;
+                INSERT INTO users (user_id, email, full_name, role)
+                SELECT gen_random_uuid(), 'student' || g || '@binder.test', 'Student ' || g, 'STUDENT'
+                FROM generate_series(1, 4000) g;
+                INSERT INTO authentications (user_id, provider, provider_id, password_hash)
+                SELECT user_id, 'LOCAL', email, 'x' FROM users;
+                INSERT INTO classrooms (name)
+                SELECT 'Class ' || g FROM generate_series(1, 400) g;
+                INSERT INTO classroom_teachers (class_id, teacher_id)
+                SELECT c.class_id, t.user_id
+                FROM (SELECT class_id, row_number() OVER () AS n FROM classrooms) c
+                JOIN (SELECT user_id, row_number() OVER () AS n FROM users WHERE role = 'TEACHER') t
+                  ON t.n = (c.n % 200) + 1;
+                INSERT INTO enrollments (class_id, student_id)
+                SELECT c.class_id, s.user_id
+                FROM (SELECT class_id, row_number() OVER () AS n FROM classrooms) c
+                JOIN (SELECT user_id, row_number() OVER () AS n FROM users WHERE role = 'STUDENT') s
+                  ON s.n % 400 = c.n % 400 OR (s.n + 7) % 400 = c.n % 400;
+                INSERT INTO assignments (class_id, title, creator_teacher_id, created_at)
+                SELECT ct.class_id, 'Assignment ' || g, ct.teacher_id, NOW() - g * INTERVAL '1 hour'
+                FROM classroom_teachers ct, generate_series(1, 50) g;
+                INSERT INTO resources (class_id, title, creator_teacher_id, created_at)
+                SELECT ct.class_id, 'Resource ' || g, ct.teacher_id, NOW() - g * INTERVAL '1 hour'
+                FROM classroom_teachers ct, generate_series(1, 50) g;
+                INSERT INTO assignment_submissions (assignment_id, student_id)
+                SELECT a.assignment_id, e.student_id
+                FROM assignments a
+                JOIN enrollments e ON e.class_id = a.class_id
+                WHERE a.title IN ('Assignment 1', 'Assignment 2', 'Assignment 3');
+                INSERT INTO attachment_blobs (sha256, size_bytes, ref_count, updated_at)
+                SELECT encode(sha256(g::text::bytea), 'hex'), g, CASE WHEN g % 100 = 0 THEN 0 ELSE 1 END,
+                       NOW() - g * INTERVAL '1 minute'
+                FROM generate_series(1, 20000) g;
+                INSERT INTO attachments (attachment_type, url, user_owner, blob_sha256)
+                SELECT 'FILE', 'blobs/' || b.sha256, (SELECT user_id FROM users LIMIT 1), b.sha256
+                FROM attachment_blobs b;
+                INSERT INTO assignment_attachments (assignment_id, attachment_id)
+                SELECT a.assignment_id, att.attachment_id
+                FROM (SELECT assignment_id, row_number() OVER () AS n FROM assignments) a
+                JOIN (SELECT attachment_id, row_number() OVER () AS n FROM attachments) att ON att.n = a.n;
+                UPDATE assignment_submissions s
+                SET attachment_id = att.attachment_id
+                FROM (SELECT attachment_id, row_number() OVER () AS n FROM attachments) att,
+                     (SELECT submission_id, row_number() OVER () AS n FROM assignment_submissions) sn
+                WHERE sn.submission_id = s.submission_id AND att.n = sn.n + 10000;
+                ANALYZE;
+                """);
+
+        classId = jdbcTemplate.queryForObject("SELECT class_id FROM classrooms LIMIT 1", UUID.class);
+        studentId = jdbcTemplate.queryForObject("SELECT student_id FROM enrollments LIMIT 1", UUID.class);
+        teacherId = jdbcTemplate.queryForObject("SELECT teacher_id FROM classroom_teachers LIMIT 1", UUID.class);
+    }
+
+    @Test
+    void assignmentFeedUsesClassCreatedIndex() {
+        assertPlanUses("idx_assignments_class_created", """
+                SELECT a.assignment_id, a.created_at FROM assignments a
+                WHERE a.class_id = '%s'
+                ORDER BY a.created_at DESC, a.assignment_id DESC LIMIT 21
+                """.formatted(classId));
+    }
+
+    @Test
+    void resourceFeedUsesClassCreatedIndex() {
+        assertPlanUses("idx_resources_class_created", """
+                SELECT r.resource_id, r.created_at FROM resources r
+                WHERE r.class_id = '%s'
+                ORDER BY r.created_at DESC, r.resource_id DESC LIMIT 21
+                """.formatted(classId));
+    }
+
+    @Test
+    void studentSubmissionsUseStudentIndex() {
+        assertPlanUses("idx_assignment_submissions_student", """
+                SELECT s.assignment_id FROM assignment_submissions s
+                WHERE s.student_id = '%s'
+                """.formatted(studentId));
+    }
+
+    @Test
+    void teacherClassroomsUseTeacherIndex() {
+        assertPlanUses("idx_classroom_teachers_teacher", """
+                SELECT ct.class_id FROM classroom_teachers ct
+                WHERE ct.teacher_id = '%s'
+                """.formatted(teacherId));
+    }
+
+    @Test
+    void studentEnrollmentsUseStudentIndex() {
+        assertPlanUses("idx_enrollments_student", """
+                SELECT e.class_id FROM enrollments e
+                WHERE e.student_id = '%s'
+                """.formatted(studentId));
+    }
+
+    @Test
+    void dashboardLookupUsesPerUserIndexes() {
+        String sql = """
+                SELECT c.class_id, c.name, c.description, m.role
+                FROM (
+                    SELECT e.class_id, 'STUDENT' AS role FROM enrollments e WHERE e.student_id = '%s'
+                    UNION
+                    SELECT ct.class_id, 'TEACHER' AS role FROM classroom_teachers ct WHERE ct.teacher_id = '%s'
+                ) m
+                JOIN classrooms c ON c.class_id = m.class_id
+                ORDER BY c.created_at DESC, c.class_id
+                """.formatted(studentId, studentId);
+        assertPlanUses("idx_enrollments_student", sql);
+        assertPlanUses("idx_classroom_teachers_teacher", sql);
+    }
+
+    @Test
+    void loginLookupUsesUserProviderConstraint() {
+        assertPlanUses("authentications_user_id_provider_key", """
+                SELECT a.password_hash FROM authentications a
+                WHERE a.user_id = '%s' AND a.provider = 'LOCAL'
+                """.formatted(studentId));
+    }
+
+    @Test
+    void blobGarbageCollectionUsesUnreferencedIndex() {
+        assertPlanUses("idx_attachment_blobs_unreferenced", """
+                SELECT sha256 FROM attachment_blobs
+                WHERE ref_count = 0 AND updated_at < NOW() - INTERVAL '1 hour'
+                ORDER BY updated_at LIMIT 500
+                """);
+    }
+
+    @Test
+    void unreferencedAttachmentRecheckUsesReferenceIndexes() {
+        UUID attachmentId = jdbcTemplate.queryForObject("SELECT attachment_id FROM attachments LIMIT 1", UUID.class);
+        String sql = """
+                DELETE FROM attachments a
+                WHERE a.attachment_id = '%s'
+                  AND NOT EXISTS (SELECT 1 FROM assignment_attachments x WHERE x.attachment_id = a.attachment_id)
+                  AND NOT EXISTS (SELECT 1 FROM resource_attachments x WHERE x.attachment_id = a.attachment_id)
+                  AND NOT EXISTS (SELECT 1 FROM assignment_submissions x WHERE x.attachment_id = a.attachment_id)
+                """.formatted(attachmentId);
+        assertPlanUses("idx_assignment_attachments_attachment", sql);
+        assertPlanUses("idx_assignment_submissions_attachment", sql);
+    }
+
+    private void assertPlanUses(String indexName, String sql) {
+        List<String> plan = jdbcTemplate.queryForList("EXPLAIN " + sql, String.class);
+        assertTrue(plan.stream().anyMatch(line -> line.contains(indexName)),
+                () -> "Expected plan to use " + indexName + ":\n" + String.join("\n", plan));
+    }
+}
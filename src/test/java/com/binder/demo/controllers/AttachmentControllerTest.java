@@ -0,0 +1,149 @@
+package com.binder.demo.controllers;
+
+import com.binder.demo.attachments.Attachment;
+import com.binder.demo.services.AttachmentService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "attachments.storage-dir=target/test-uploads")
+@AutoConfigureMockMvc
+class AttachmentControllerTest {
+
+    private static final String CONTENT = "%PDF-1.7 0123456789abcdef";
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private AttachmentService attachmentService;
+
+    private MockHttpSession session;
+    private Attachment attachment;
+    private String etag;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        UUID userId = UUID.randomUUID();
+        session = new MockHttpSession();
+        session.setAttribute("userId", userId);
+
+        MockMultipartFile file = new MockMultipartFile("file", "lecture notes.pdf", "application/pdf",
+                CONTENT.getBytes(StandardCharsets.UTF_8));
+        attachment = attachmentService.upload(attachmentService.stage(file), userId);
+        etag = "\"" + attachment.getBlobSha256() + "\"";
+    }
+
+    @Test
+    void fullDownloadCarriesValidatorsAndStoredContentType() throws Exception {
+        mvc.perform(get("/attachments/" + attachment.getAttachmentId()).session(session))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=3600, private"))
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "application/pdf"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, CONTENT.length()))
+                .andExpect(content().string(CONTENT));
+    }
+
+    @Test
+    void matchingIfNoneMatchReturnsNotModified() throws Exception {
+        mvc.perform(get("/attachments/" + attachment.getAttachmentId()).session(session)
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    void byteRangeReturnsPartialContent() throws Exception {
+        mvc.perform(get("/attachments/" + attachment.getAttachmentId()).session(session)
+                        .header(HttpHeaders.RANGE, "bytes=2-5"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/" + CONTENT.length()))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 4))
+                .andExpect(content().string("DF-1"));
+
+        mvc.perform(get("/attachments/" + attachment.getAttachmentId()).session(session)
+                        .header(HttpHeaders.RANGE, "bytes=-3"))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().string("def"));
+    }
+
+    @Test
+    void rangeOutsideFileIsNotSatisfiable() throws Exception {
+        mvc.perform(get("/attachments/" + attachment.getAttachmentId()).session(session)
+                        .header(HttpHeaders.RANGE, "bytes=100-200"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */" + CONTENT.length()));
+    }
+
+    @Test
+    void staleIfRangeReturnsWholeFile() throws Exception {
+        mvc.perform(get("/attachments/" + attachment.getAttachmentId()).session(session)
+                        .header(HttpHeaders.RANGE, "bytes=2-5")
+                        .header(HttpHeaders.IF_RANGE, "\"outdated\""))
+                .andExpect(status().isOk())
+                .andExpect(content().string(CONTENT));
+    }
+
+    @Test
+    void thumbnailIsDownscaledJpegWithLongLivedCaching() throws Exception {
+        UUID userId = (UUID) session.getAttribute("userId");
+        MockMultipartFile photo = new MockMultipartFile("file", "board.png", "image/png", png(1600, 900));
+        Attachment image = attachmentService.upload(attachmentService.stage(photo), userId);
+        String thumbEtag = "\"" + image.getBlobSha256() + "-thumb\"";
+
+        MvcResult result = mvc.perform(get("/attachments/" + image.getAttachmentId() + "/thumb").session(session))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "image/jpeg"))
+                .andExpect(header().string(HttpHeaders.ETAG, thumbEtag))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=31536000, private, immutable"))
+                .andReturn();
+        BufferedImage thumb = ImageIO.read(new ByteArrayInputStream(result.getResponse().getContentAsByteArray()));
+        assertEquals(320, thumb.getWidth());
+        assertEquals(180, thumb.getHeight());
+
+        mvc.perform(get("/attachments/" + image.getAttachmentId() + "/thumb").session(session)
+                        .header(HttpHeaders.IF_NONE_MATCH, thumbEtag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void thumbnailOfNonImageRedirectsToOriginal() throws Exception {
+        mvc.perform(get("/attachments/" + attachment.getAttachmentId() + "/thumb").session(session))
+                .andExpect(status().isFound())
+                .andExpect(header().string(HttpHeaders.LOCATION, "/attachments/" + attachment.getAttachmentId() + "/inline"));
+    }
+
+    private static byte[] png(int width, int height) throws Exception {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < width; x++) {
+            image.setRGB(x, height / 2, 0xff0000);
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", output);
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,60 @@
+package com.binder.demo.controllers;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.redirectedUrl;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class AuthControllerTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Test
+    void registersAndLogsInAsynchronously() throws Exception {
+        String email = "auth-" + UUID.randomUUID() + "@binder.test";
+
+        MvcResult registered = mvc.perform(post("/register")
+                        .param("email", email)
+                        .param("password", "secret123")
+                        .param("fullName", "Ada Lovelace")
+                        .param("role", "STUDENT"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(registered)).andExpect(redirectedUrl("/login"));
+
+        MockHttpSession session = new MockHttpSession();
+        MvcResult wrongPassword = mvc.perform(post("/login")
+                        .param("email", email)
+                        .param("password", "wrong1234")
+                        .session(session))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(wrongPassword)).andExpect(view().name("login"));
+
+        MvcResult loggedIn = mvc.perform(post("/login")
+                        .param("email", email)
+                        .param("password", "secret123")
+                        .session(session))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(loggedIn)).andExpect(redirectedUrl("/dashboard"));
+        assertNotNull(session.getAttribute("userId"));
+        assertEquals(email, session.getAttribute("userEmail"));
+    }
+}
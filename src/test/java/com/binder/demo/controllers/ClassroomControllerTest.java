@@ -0,0 +1,144 @@
+package com.binder.demo.controllers;
+
+import com.binder.demo.services.ClassroomEnrollmentService;
+import com.binder.demo.user.Role;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "classroom.roster.batch-size=3")
+@AutoConfigureMockMvc
+class ClassroomControllerTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockitoBean
+    private ClassroomEnrollmentService enrollmentService;
+
+    private UUID classId;
+    private MockHttpSession session;
+
+    @BeforeEach
+    void setUp() {
+        classId = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO classrooms (class_id, name, created_at) VALUES (?, 'Roster', ?)",
+                classId, Timestamp.from(Instant.now()));
+        UUID teacherId = user("roster-teacher-" + classId + "@binder.test", "TEACHER");
+        when(enrollmentService.isUserInClass(classId, teacherId, Role.TEACHER)).thenReturn(true);
+        session = new MockHttpSession();
+        session.setAttribute("userId", teacherId);
+        session.setAttribute("userRole", "TEACHER");
+    }
+
+    @Test
+    void reportsEachRowAndTheEnrolledAndSkippedTotals() throws Exception {
+        String ada = email("ada");
+        String grace = email("grace");
+        String alan = email("alan");
+        String teacher = email("teacher");
+        UUID adaId = user(ada, "STUDENT");
+        UUID graceId = user(grace, "STUDENT");
+        UUID alanId = user(alan, "STUDENT");
+        user(teacher, "TEACHER");
+        enroll(graceId);
+
+        String report = importRoster("\uFEFFEmail,Name\n"
+                + ada + ",Ada\n"
+                + "not-an-email\n"
+                + ada + "\n"
+                + grace + "\n"
+                + ada + "\n"
+                + teacher + "\n"
+                + "\"" + alan + "\",Alan\n"
+                + "\n"
+                + email("nobody") + "\n");
+
+        assertEquals("row,email,status\n"
+                + "2," + ada + ",ENROLLED\n"
+                + "3,not-an-email,INVALID_EMAIL\n"
+                + "4," + ada + ",DUPLICATE\n"
+                + "5," + grace + ",ALREADY_ENROLLED\n"
+                + "6," + ada + ",ALREADY_ENROLLED\n"
+                + "7," + teacher + ",NOT_A_STUDENT\n"
+                + "8," + alan + ",ENROLLED\n"
+                + "10," + email("nobody") + ",UNKNOWN_EMAIL\n"
+                + "summary,enrolled,2\n"
+                + "summary,skipped,6\n", report);
+        assertEquals(1, enrollmentCount(adaId));
+        assertEquals(1, enrollmentCount(graceId));
+        assertEquals(1, enrollmentCount(alanId));
+    }
+
+    @Test
+    void keepsAFirstRowThatIsAnEmail() throws Exception {
+        String bob = email("bob");
+        UUID bobId = user(bob, "STUDENT");
+
+        assertEquals("row,email,status\n"
+                + "1," + bob + ",ENROLLED\n"
+                + "summary,enrolled,1\n"
+                + "summary,skipped,0\n", importRoster(bob + "\n"));
+        assertEquals(1, enrollmentCount(bobId));
+    }
+
+    @Test
+    void refusesStudents() throws Exception {
+        session.setAttribute("userRole", "STUDENT");
+        mvc.perform(multipart("/classrooms/{id}/roster", classId)
+                        .file(new MockMultipartFile("file", "roster.csv", "text/csv", new byte[] {'x'}))
+                        .session(session))
+                .andExpect(status().isForbidden());
+    }
+
+    private String importRoster(String csv) throws Exception {
+        return mvc.perform(multipart("/classrooms/{id}/roster", classId)
+                        .file(new MockMultipartFile("file", "roster.csv", "text/csv",
+                                csv.getBytes(StandardCharsets.UTF_8)))
+                        .session(session))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString(StandardCharsets.UTF_8);
+    }
+
+    private String email(String name) {
+        return name + "-" + classId + "@binder.test";
+    }
+
+    private UUID user(String email, String role) {
+        UUID userId = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO users (user_id, email, full_name, role, created_at) VALUES (?, ?, ?, ?, ?)",
+                userId, email, email, role, Timestamp.from(Instant.now()));
+        return userId;
+    }
+
+    private void enroll(UUID studentId) {
+        jdbcTemplate.update("INSERT INTO enrollments (class_id, student_id) VALUES (?, ?)", classId, studentId);
+    }
+
+    private int enrollmentCount(UUID studentId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM enrollments WHERE class_id = ? AND student_id = ?",
+                Integer.class, classId, studentId);
+    }
+}
@@ -0,0 +1,130 @@
+package com.binder.demo.controllers.classroompost;
+
+import com.binder.demo.services.ClassroomEnrollmentService;
+import com.binder.demo.user.Role;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "classroom.gradebook.fetch-size=2")
+@AutoConfigureMockMvc
+class GradebookControllerTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockitoBean
+    private ClassroomEnrollmentService enrollmentService;
+
+    @Test
+    void streamsOneRowPerStudentAndOneColumnPerAssignment() throws Exception {
+        UUID teacherId = user("gradebook-teacher@binder.test", "Teacher", "TEACHER");
+        UUID classId = classroom("Period 3: Algebra");
+        UUID otherClassId = classroom("Other");
+        when(enrollmentService.isUserInClass(classId, teacherId, Role.TEACHER)).thenReturn(true);
+        Instant now = Instant.now();
+        UUID essay = assignment(classId, "Essay, draft", null, now.plus(Duration.ofDays(2)));
+        UUID quiz = assignment(classId, "Quiz 1", 10, now.plus(Duration.ofDays(1)));
+        UUID homework = assignment(classId, "Homework", null, null);
+        UUID otherQuiz = assignment(otherClassId, "Other quiz", null, null);
+
+        UUID ada = user("gradebook-ada@binder.test", "Ada Lovelace", "STUDENT");
+        UUID formula = user("gradebook-sum@binder.test", "=SUM(A1)", "STUDENT");
+        UUID grace = user("gradebook-grace@binder.test", "Grace Hopper", "STUDENT");
+        enroll(classId, ada);
+        enroll(classId, formula);
+        enroll(otherClassId, user("gradebook-alan@binder.test", "Alan Turing", "STUDENT"));
+        grade(submit(quiz, ada), teacherId, 9);
+        submit(essay, ada);
+        grade(submit(otherQuiz, ada), teacherId, 3);
+        // Left the class after handing in homework
+        grade(submit(homework, grace), teacherId, 7);
+
+        MockHttpSession session = new MockHttpSession();
+        session.setAttribute("userId", teacherId);
+        session.setAttribute("userRole", "TEACHER");
+        MvcResult result = mvc.perform(get("/classroom/gradebook/download")
+                        .param("classroomId", classId.toString())
+                        .session(session))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertEquals("text/csv;charset=UTF-8", result.getResponse().getContentType());
+        assertTrue(result.getResponse().getHeader("Content-Disposition")
+                .contains("filename*=UTF-8''Period%203_%20Algebra%20gradebook.csv"));
+        assertEquals("""
+                Student,Email,Quiz 1 (/10),"Essay, draft",Homework\r
+                '=SUM(A1),gradebook-sum@binder.test,,,\r
+                Ada Lovelace,gradebook-ada@binder.test,9,,\r
+                Grace Hopper,gradebook-grace@binder.test,,,7\r
+                """, result.getResponse().getContentAsString(StandardCharsets.UTF_8));
+
+        session.setAttribute("userRole", "STUDENT");
+        mvc.perform(get("/classroom/gradebook/download")
+                        .param("classroomId", classId.toString())
+                        .session(session))
+                .andExpect(status().isForbidden());
+    }
+
+    private UUID user(String email, String name, String role) {
+        UUID userId = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO users (user_id, email, full_name, role, created_at) VALUES (?, ?, ?, ?, ?)",
+                userId, email, name, role, Timestamp.from(Instant.now()));
+        return userId;
+    }
+
+    private UUID classroom(String name) {
+        UUID classId = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO classrooms (class_id, name, created_at) VALUES (?, ?, ?)",
+                classId, name, Timestamp.from(Instant.now()));
+        return classId;
+    }
+
+    private UUID assignment(UUID classId, String title, Integer maxMarks, Instant dueDate) {
+        UUID assignmentId = UUID.randomUUID();
+        jdbcTemplate.update("""
+                INSERT INTO assignments (assignment_id, class_id, title, creator_teacher_id, created_at, maximum_marks, due_date)
+                VALUES (?, ?, ?, ?, ?, ?, ?)
+                """, assignmentId, classId, title, UUID.randomUUID(), Timestamp.from(Instant.now()), maxMarks,
+                dueDate == null ? null : Timestamp.from(dueDate));
+        return assignmentId;
+    }
+
+    private void enroll(UUID classId, UUID studentId) {
+        jdbcTemplate.update("INSERT INTO enrollments (class_id, student_id) VALUES (?, ?)", classId, studentId);
+    }
+
+    private UUID submit(UUID assignmentId, UUID studentId) {
+        UUID submissionId = UUID.randomUUID();
+        jdbcTemplate.update("""
+                INSERT INTO assignment_submissions (submission_id, assignment_id, student_id, submission_time)
+                VALUES (?, ?, ?, ?)
+                """, submissionId, assignmentId, studentId, Timestamp.from(Instant.now()));
+        return submissionId;
+    }
+
+    private void grade(UUID submissionId, UUID teacherId, int marks) {
+        jdbcTemplate.update("INSERT INTO grades (submission_id, teacher_id, marks_scored) VALUES (?, ?, ?)",
+                submissionId, teacherId, marks);
+    }
+}
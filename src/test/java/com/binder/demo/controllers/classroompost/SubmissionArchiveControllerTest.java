@@ -0,0 +1,133 @@
+package com.binder.demo.controllers.classroompost;
+
+import com.binder.demo.attachments.Attachment;
+import com.binder.demo.services.AttachmentService;
+import com.binder.demo.services.ClassroomEnrollmentService;
+import com.binder.demo.user.Role;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "attachments.storage-dir=target/test-uploads")
+@AutoConfigureMockMvc
+class SubmissionArchiveControllerTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private AttachmentService attachmentService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockitoBean
+    private ClassroomEnrollmentService enrollmentService;
+
+    @Test
+    void streamsOneEntryPerStudentAndStoresCompressedFormats() throws Exception {
+        UUID teacherId = user("archive-teacher@binder.test", "Teacher", "TEACHER");
+        UUID classId = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO classrooms (class_id, name, created_at) VALUES (?, 'Archive', ?)",
+                classId, Timestamp.from(Instant.now()));
+        when(enrollmentService.isUserInClass(classId, teacherId, Role.TEACHER)).thenReturn(true);
+        UUID assignmentId = UUID.randomUUID();
+        jdbcTemplate.update("""
+                INSERT INTO assignments (assignment_id, class_id, title, creator_teacher_id, created_at)
+                VALUES (?, ?, 'Essay 1', ?, ?)
+                """, assignmentId, classId, teacherId, Timestamp.from(Instant.now()));
+
+        String pdf = "%PDF-1.7 " + "essay ".repeat(200);
+        String text = "notes ".repeat(500);
+        submit(assignmentId, user("grace@binder.test", "Grace Hopper", "STUDENT"),
+                upload("essay.pdf", "application/pdf", pdf, teacherId).getAttachmentId());
+        submit(assignmentId, user("ada1@binder.test", "Ada Lovelace", "STUDENT"),
+                upload("notes.txt", "text/plain", text, teacherId).getAttachmentId());
+        submit(assignmentId, user("ada2@binder.test", "Ada Lovelace", "STUDENT"),
+                upload("notes.txt", "text/plain", "other " + text, teacherId).getAttachmentId());
+        UUID legacyId = UUID.randomUUID();
+        jdbcTemplate.update("""
+                INSERT INTO attachments (attachment_id, attachment_type, url, uploaded_at, user_owner)
+                VALUES (?, 'FILE', 'attachments/missing.docx?name=late.docx', ?, ?)
+                """, legacyId, Timestamp.from(Instant.now()), teacherId);
+        submit(assignmentId, user("alan@binder.test", "Alan/Turing", "STUDENT"), legacyId);
+
+        MockHttpSession session = new MockHttpSession();
+        session.setAttribute("userId", teacherId);
+        session.setAttribute("userRole", "TEACHER");
+        MvcResult result = mvc.perform(get("/classroom/post/assignment/submissions/download")
+                        .param("classroomId", classId.toString())
+                        .param("assignmentId", assignmentId.toString())
+                        .session(session))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertEquals("application/zip", result.getResponse().getContentType());
+        assertTrue(result.getResponse().getHeader("Content-Disposition").contains("filename*=UTF-8''Essay%201.zip"));
+
+        Map<String, ZipEntry> entries = new HashMap<>();
+        Map<String, String> contents = new HashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(
+                new ByteArrayInputStream(result.getResponse().getContentAsByteArray()), StandardCharsets.UTF_8)) {
+            for (ZipEntry entry; (entry = zip.getNextEntry()) != null; ) {
+                entries.put(entry.getName(), entry);
+                contents.put(entry.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        assertEquals(4, entries.size());
+        assertEquals(ZipEntry.STORED, entries.get("Grace Hopper - essay.pdf").getMethod());
+        assertEquals(pdf, contents.get("Grace Hopper - essay.pdf"));
+        assertEquals(ZipEntry.DEFLATED, entries.get("Ada Lovelace - notes.txt").getMethod());
+        assertEquals(ZipEntry.DEFLATED, entries.get("Ada Lovelace - notes (2).txt").getMethod());
+        assertTrue(contents.get("Ada Lovelace - notes.txt").endsWith(text));
+        assertTrue(contents.get("MISSING.txt").contains("Alan/Turing <alan@binder.test>: late.docx"));
+
+        session.setAttribute("userRole", "STUDENT");
+        mvc.perform(get("/classroom/post/assignment/submissions/download")
+                        .param("classroomId", classId.toString())
+                        .param("assignmentId", assignmentId.toString())
+                        .session(session))
+                .andExpect(status().isForbidden());
+    }
+
+    private UUID user(String email, String name, String role) {
+        UUID userId = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO users (user_id, email, full_name, role, created_at) VALUES (?, ?, ?, ?, ?)",
+                userId, email, name, role, Timestamp.from(Instant.now()));
+        return userId;
+    }
+
+    private Attachment upload(String name, String type, String content, UUID ownerId) throws Exception {
+        return attachmentService.upload(attachmentService.stage(
+                new MockMultipartFile("file", name, type, content.getBytes(StandardCharsets.UTF_8))), ownerId);
+    }
+
+    private void submit(UUID assignmentId, UUID studentId, UUID attachmentId) {
+        jdbcTemplate.update("""
+                INSERT INTO assignment_submissions (submission_id, assignment_id, student_id, submission_time, attachment_id)
+                VALUES (?, ?, ?, ?, ?)
+                """, UUID.randomUUID(), assignmentId, studentId, Timestamp.from(Instant.now()), attachmentId);
+    }
+}
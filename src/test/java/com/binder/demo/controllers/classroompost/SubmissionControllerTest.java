@@ -0,0 +1,251 @@
+package com.binder.demo.controllers.classroompost;
+
+import com.binder.demo.services.ClassroomEnrollmentService;
+import com.binder.demo.user.Role;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.hamcrest.Matchers.contains;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.flash;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.redirectedUrl;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "classroom.reviews.page-size=2")
+@AutoConfigureMockMvc
+class SubmissionControllerTest {
+
+    private static final Pattern EMAIL = Pattern.compile("class=\"submission-email\">([^<]+)<");
+    private static final Pattern CURSOR = Pattern.compile("cursor=([^&\"]+)");
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockitoBean
+    private ClassroomEnrollmentService enrollmentService;
+
+    @Test
+    void pagesThroughOneAssignmentByStudentNameAndFiltersByGradedStatus() throws Exception {
+        UUID teacherId = user("review-teacher@binder.test", "Teacher", "TEACHER");
+        UUID classId = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO classrooms (class_id, name, created_at) VALUES (?, 'Review', ?)",
+                classId, Timestamp.from(Instant.now()));
+        when(enrollmentService.isUserInClass(classId, teacherId, Role.TEACHER)).thenReturn(true);
+        UUID essay = assignment(classId, teacherId, "Essay");
+        UUID quiz = assignment(classId, teacherId, "Quiz");
+
+        UUID grace = submit(essay, user("grace@review.test", "Grace Hopper", "STUDENT"));
+        submit(essay, user("ada1@review.test", "Ada Lovelace", "STUDENT"));
+        UUID ada2 = submit(essay, user("ada2@review.test", "Ada Lovelace", "STUDENT"));
+        submit(essay, user("alan@review.test", "Alan Turing", "STUDENT"));
+        submit(essay, user("barbara@review.test", "Barbara Liskov", "STUDENT"));
+        submit(quiz, user("edsger@review.test", "Edsger Dijkstra", "STUDENT"));
+        grade(grace, teacherId, 8, null);
+        grade(ada2, teacherId, null, "Good structure");
+
+        MockHttpSession session = new MockHttpSession();
+        session.setAttribute("userId", teacherId);
+        session.setAttribute("userRole", "TEACHER");
+
+        List<String> all = readAll(session, classId, essay, "ALL");
+        assertEquals(5, all.size());
+        assertEquals(Set.of("ada1@review.test", "ada2@review.test"), Set.copyOf(all.subList(0, 2)));
+        assertEquals(List.of("alan@review.test", "barbara@review.test", "grace@review.test"), all.subList(2, 5));
+        assertEquals(5, all.stream().distinct().count());
+
+        assertEquals(List.of("ada2@review.test", "grace@review.test"), readAll(session, classId, essay, "GRADED"));
+        List<String> ungraded = readAll(session, classId, essay, "UNGRADED");
+        assertEquals(3, ungraded.size());
+        assertEquals(List.of("alan@review.test", "barbara@review.test"), ungraded.subList(1, 3));
+        assertEquals(List.of("edsger@review.test"), readAll(session, classId, quiz, "ALL"));
+
+        mvc.perform(get("/classroom/post/assignment/submissions")
+                        .param("classroomId", classId.toString())
+                        .param("assignmentId", essay.toString())
+                        .param("cursor", "not a cursor")
+                        .session(session))
+                .andExpect(status().isBadRequest());
+        session.setAttribute("userRole", "STUDENT");
+        mvc.perform(get("/classroom/post/assignment/submissions")
+                        .param("classroomId", classId.toString())
+                        .param("assignmentId", essay.toString())
+                        .session(session))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void gradesABatchInOneRequestAndReportsEachRow() throws Exception {
+        UUID teacherId = user("batch-teacher@binder.test", "Teacher", "TEACHER");
+        UUID classId = UUID.randomUUID();
+        UUID otherClassId = UUID.randomUUID();
+        for (UUID id : List.of(classId, otherClassId)) {
+            jdbcTemplate.update("INSERT INTO classrooms (class_id, name, created_at) VALUES (?, 'Batch', ?)",
+                    id, Timestamp.from(Instant.now()));
+        }
+        when(enrollmentService.isUserInClass(classId, teacherId, Role.TEACHER)).thenReturn(true);
+        UUID essay = assignment(classId, teacherId, "Essay");
+        jdbcTemplate.update("UPDATE assignments SET maximum_marks = 10 WHERE assignment_id = ?", essay);
+        UUID elsewhere = assignment(otherClassId, teacherId, "Elsewhere");
+
+        UUID ada = submit(essay, user("ada@batch.test", "Ada", "STUDENT"));
+        UUID alan = submit(essay, user("alan@batch.test", "Alan", "STUDENT"));
+        UUID grace = submit(essay, user("grace@batch.test", "Grace", "STUDENT"));
+        UUID foreign = submit(elsewhere, user("edsger@batch.test", "Edsger", "STUDENT"));
+        grade(grace, teacherId, 4, null);
+
+        MockHttpSession session = new MockHttpSession();
+        session.setAttribute("userId", teacherId);
+        session.setAttribute("userRole", "TEACHER");
+        String body = """
+                [{"submissionId": "%s", "marksScored": 15, "feedback": "Great"},
+                 {"submissionId": "%s", "marksScored": 6},
+                 {"submissionId": "%s", "marksScored": 9, "feedback": " "},
+                 {"submissionId": "%s", "marksScored": 3},
+                 {"submissionId": "%s", "marksScored": 1}]
+                """.formatted(ada, alan, grace, foreign, ada);
+
+        mvc.perform(post("/classroom/post/assignment/grades")
+                        .param("classroomId", classId.toString())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body)
+                        .session(session))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].outcome").value(
+                        contains("CREATED", "CREATED", "UPDATED", "NOT_FOUND", "DUPLICATE")))
+                .andExpect(jsonPath("$[0].marksScored").value(10))
+                .andExpect(jsonPath("$[2].marksScored").value(9));
+
+        assertEquals(List.of("10 Great", "9 -", "6 -"), jdbcTemplate.queryForList("""
+                SELECT CONCAT(marks_scored, ' ', COALESCE(feedback, '-')) FROM grades
+                WHERE submission_id IN (?, ?, ?)
+                ORDER BY marks_scored DESC
+                """, String.class, ada, alan, grace));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM grades WHERE submission_id = ?", Integer.class, foreign));
+
+        session.setAttribute("userRole", "STUDENT");
+        mvc.perform(post("/classroom/post/assignment/grades")
+                        .param("classroomId", classId.toString())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body)
+                        .session(session))
+                .andExpect(status().isForbidden());
+    }
+
+    private List<String> readAll(MockHttpSession session, UUID classId, UUID assignmentId, String reviewStatus)
+            throws Exception {
+        List<String> emails = new ArrayList<>();
+        String cursor = null;
+        do {
+            var request = get("/classroom/post/assignment/submissions")
+                    .param("classroomId", classId.toString())
+                    .param("assignmentId", assignmentId.toString())
+                    .param("status", reviewStatus)
+                    .session(session);
+            if (cursor != null) {
+                request.param("cursor", cursor);
+            }
+            String html = mvc.perform(request)
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            Matcher email = EMAIL.matcher(html);
+            int onPage = 0;
+            while (email.find()) {
+                emails.add(email.group(1));
+                onPage++;
+            }
+            Matcher next = CURSOR.matcher(html);
+            cursor = next.find() ? URLDecoder.decode(next.group(1), StandardCharsets.UTF_8) : null;
+            if (cursor != null) {
+                assertEquals(2, onPage);
+            }
+        } while (cursor != null);
+        assertNull(cursor);
+        return emails;
+    }
+
+    @Test
+    void tellsTheStudentWhyAFileWasRefused() throws Exception {
+        UUID teacherId = user("refused-teacher@binder.test", "Teacher", "TEACHER");
+        UUID studentId = user("refused-student@binder.test", "Student", "STUDENT");
+        UUID classId = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO classrooms (class_id, name, created_at) VALUES (?, 'Refused', ?)",
+                classId, Timestamp.from(Instant.now()));
+        when(enrollmentService.isUserInClass(classId, studentId, Role.STUDENT)).thenReturn(true);
+        UUID essay = assignment(classId, teacherId, "Essay");
+        MockHttpSession session = new MockHttpSession();
+        session.setAttribute("userId", studentId);
+        session.setAttribute("userRole", "STUDENT");
+
+        mvc.perform(multipart("/classroom/post/assignment/submit")
+                        .file(new MockMultipartFile("file", "essay.pdf", "application/pdf",
+                                new byte[] {'M', 'Z', (byte) 0x90, 0, 3, 0, 0, 0}))
+                        .param("classroomId", classId.toString())
+                        .param("assignmentId", essay.toString())
+                        .session(session))
+                .andExpect(redirectedUrl("/classrooms/" + classId))
+                .andExpect(flash().attribute("submissionError", "This file type is not accepted."));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM assignment_submissions WHERE assignment_id = ?", Integer.class, essay));
+    }
+
+    private UUID user(String email, String name, String role) {
+        UUID userId = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO users (user_id, email, full_name, role, created_at) VALUES (?, ?, ?, ?, ?)",
+                userId, email, name, role, Timestamp.from(Instant.now()));
+        return userId;
+    }
+
+    private UUID assignment(UUID classId, UUID teacherId, String title) {
+        UUID assignmentId = UUID.randomUUID();
+        jdbcTemplate.update("""
+                INSERT INTO assignments (assignment_id, class_id, title, creator_teacher_id, created_at)
+                VALUES (?, ?, ?, ?, ?)
+                """, assignmentId, classId, title, teacherId, Timestamp.from(Instant.now()));
+        return assignmentId;
+    }
+
+    private UUID submit(UUID assignmentId, UUID studentId) {
+        UUID submissionId = UUID.randomUUID();
+        jdbcTemplate.update("""
+                INSERT INTO assignment_submissions (submission_id, assignment_id, student_id, submission_time)
+                VALUES (?, ?, ?, ?)
+                """, submissionId, assignmentId, studentId, Timestamp.from(Instant.now()));
+        return submissionId;
+    }
+
+    private void grade(UUID submissionId, UUID teacherId, Integer marks, String feedback) {
+        jdbcTemplate.update("""
+                INSERT INTO grades (submission_id, teacher_id, marks_scored, feedback)
+                VALUES (?, ?, ?, ?)
+                """, submissionId, teacherId, marks, feedback);
+    }
+}
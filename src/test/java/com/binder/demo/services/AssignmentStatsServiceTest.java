@@ -0,0 +1,95 @@
+package com.binder.demo.services;
+
+import com.binder.demo.classroom.Assignment;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class AssignmentStatsServiceTest {
+
+    @Autowired
+    private AssignmentStatsService statsService;
+
+    @Autowired
+    private ClassroomSubmissionService submissionService;
+
+    @Autowired
+    private AssignmentPostService assignmentPostService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void keepsCountsAndMarksInStepWithSubmissionsAndGradesAndRepairsDrift() {
+        UUID classId = UUID.randomUUID();
+        UUID teacherId = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO classrooms (class_id, name, created_at) VALUES (?, 'Stats', ?)",
+                classId, Timestamp.from(Instant.now()));
+        Assignment assignment = new Assignment();
+        assignment.setClassId(classId);
+        assignment.setTitle("Essay");
+        assignment.setCreatorTeacherId(teacherId);
+        assignment.setDueDate(Instant.now().plus(Duration.ofDays(1)));
+        assignmentPostService.addAssignment(assignment);
+        UUID assignmentId = assignment.getAssignmentId();
+
+        UUID ada = submit(classId, assignmentId);
+        UUID grace = submit(classId, assignmentId);
+        UUID alan = submit(classId, assignmentId);
+        assertStats(classId, assignmentId, 3, 0, 0, null, null);
+
+        submissionService.gradeSubmission(classId, ada, teacherId, 8, null);
+        submissionService.gradeSubmission(classId, grace, teacherId, 5, "");
+        submissionService.gradeSubmission(classId, alan, teacherId, null, "Needs sources");
+        assertStats(classId, assignmentId, 3, 3, 0, 6.5, 6.5);
+
+        submissionService.gradeSubmission(classId, grace, teacherId, 9, null);
+        submissionService.gradeSubmission(classId, alan, teacherId, 8, "Needs sources");
+        assertStats(classId, assignmentId, 3, 3, 0, 25 / 3.0, 8.0);
+
+        Assignment stored = assignmentPostService.findAssignment(assignmentId).orElseThrow();
+        stored.setDueDate(Instant.now().minus(Duration.ofDays(1)));
+        assignmentPostService.updateAssignment(stored);
+        assertStats(classId, assignmentId, 3, 3, 3, 25 / 3.0, 8.0);
+        submissionService.submitAssignment(classId, assignmentId,
+                jdbcTemplate.queryForObject("SELECT student_id FROM assignment_submissions WHERE submission_id = ?",
+                        UUID.class, ada), null, true, false);
+        assertStats(classId, assignmentId, 3, 3, 3, 25 / 3.0, 8.0);
+
+        jdbcTemplate.update("UPDATE assignment_stats SET submitted_count = 7, marks_sum = 0 WHERE assignment_id = ?",
+                assignmentId);
+        jdbcTemplate.update("DELETE FROM assignment_mark_counts WHERE assignment_id = ? AND marks = 9", assignmentId);
+        assertTrue(statsService.rebuildAll() >= 1);
+        assertStats(classId, assignmentId, 3, 3, 3, 25 / 3.0, 8.0);
+        assertFalse(statsService.rebuild(assignmentId));
+    }
+
+    private UUID submit(UUID classId, UUID assignmentId) {
+        UUID studentId = UUID.randomUUID();
+        submissionService.submitAssignment(classId, assignmentId, studentId, null, true, false);
+        return jdbcTemplate.queryForObject(
+                "SELECT submission_id FROM assignment_submissions WHERE assignment_id = ? AND student_id = ?",
+                UUID.class, assignmentId, studentId);
+    }
+
+    private void assertStats(UUID classId, UUID assignmentId, int submitted, int graded, int late,
+                             Double mean, Double median) {
+        AssignmentStatsService.Stats stats = statsService.getStatsForClassroom(classId).get(assignmentId);
+        assertEquals(submitted, stats.submittedCount());
+        assertEquals(graded, stats.gradedCount());
+        assertEquals(late, stats.lateCount());
+        assertEquals(mean, stats.meanMarks());
+        assertEquals(median, stats.medianMarks());
+    }
+}
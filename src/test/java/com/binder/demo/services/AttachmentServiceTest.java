@@ -9,12 +9,21 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
 import java.time.Instant;
+import java.util.HexFormat;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -22,6 +31,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -30,11 +40,20 @@ class AttachmentServiceTest {
     @Mock
     private EntityManager em;
 
+    @Mock
+    private BlobStore blobStore;
+
+    @Mock
+    private RenditionService renditionService;
+
+    @Mock
+    private StorageUsageService usageService;
+
     private AttachmentService service;
 
     @BeforeEach
     void setUp() {
-        service = new AttachmentService();
+        service = new AttachmentService(blobStore, renditionService, usageService, DataSize.ofMegabytes(50));
         ReflectionTestUtils.setField(service, "em", em);
     }
 
@@ -79,6 +98,22 @@ class AttachmentServiceTest {
         assertTrue(service.get(uploaded.getAttachmentId()).isEmpty());
     }
 
+    @Test
+    void blobReferenceIsHeldWhileAttachmentExists() {
+        Attachment attachment = new Attachment();
+        attachment.setAttachmentType(AttachmentType.FILE);
+        attachment.setUrl("blobs/ab/abcdef?name=file.pdf");
+        attachment.setBlobSha256("abcdef");
+        attachment.setUserOwner(UUID.randomUUID());
+
+        Attachment uploaded = service.upload(attachment);
+        verify(blobStore).retain("abcdef");
+
+        when(em.find(Attachment.class, uploaded.getAttachmentId())).thenReturn(uploaded);
+        service.delete(uploaded.getAttachmentId());
+        verify(blobStore).release("abcdef");
+    }
+
     @Test
     void updateWithoutIdCreatesNewId() {
         Attachment attachment = new Attachment();
@@ -192,4 +227,115 @@ class AttachmentServiceTest {
         Attachment uploaded = service.upload(attachment);
         assertNotNull(uploaded.getAttachmentId());
     }
+
+    @Test
+    void stageTakesTypeFromContentNotFromClient() throws Exception {
+        byte[] png = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 13};
+        when(blobStore.stage(any())).thenAnswer(invocation -> stagedBlob(invocation.getArgument(0)));
+
+        AttachmentService.StagedUpload upload = service.stage(
+                new ByteArrayInputStream(png), "notes.txt", "text/plain", png.length, null);
+
+        assertEquals("image/png", upload.contentType());
+        assertEquals(AttachmentType.IMAGE, upload.type());
+        assertEquals(png.length, upload.blob().sizeBytes());
+    }
+
+    @Test
+    void stageRejectsExecutablesBeforeStaging() {
+        byte[] executable = {'M', 'Z', (byte) 0x90, 0, 3, 0, 0, 0};
+
+        UploadRejectedException ex = assertThrows(UploadRejectedException.class, () -> service.stage(
+                new ByteArrayInputStream(executable), "homework.pdf", "application/pdf", executable.length, null));
+
+        assertEquals(UploadRejectedException.Reason.UNSUPPORTED_TYPE, ex.getReason());
+        verifyNoInteractions(blobStore);
+    }
+
+    @Test
+    void stageNamesIsoMediaByBrandAndAcceptsAudioWithoutId3() throws Exception {
+        when(blobStore.stage(any())).thenAnswer(invocation -> stagedBlob(invocation.getArgument(0)));
+
+        assertEquals("image/heic", stagedType(ftyp("heic", "mif1", "heic"), "photo.mp4"));
+        assertEquals("image/avif", stagedType(ftyp("avif", "avif", "mif1"), "photo.avif"));
+        assertEquals("image/avif", stagedType(ftyp("mif1", "mif1", "avif"), "photo.avif"));
+        assertEquals("video/quicktime", stagedType(ftyp("qt  ", "qt  "), "clip.mov"));
+        assertEquals("audio/mp4", stagedType(ftyp("M4A ", "M4A ", "mp42"), "song.mp4"));
+        assertEquals("video/mp4", stagedType(ftyp("isom", "isom", "mp41"), "clip.mp4"));
+        assertEquals(AttachmentType.IMAGE, service.stage(new ByteArrayInputStream(ftyp("heic", "heic")),
+                "photo.heic", "application/octet-stream", -1, null).type());
+
+        byte[] wav = {'R', 'I', 'F', 'F', 36, 0, 0, 0, 'W', 'A', 'V', 'E', 'f', 'm', 't', ' '};
+        byte[] ogg = {'O', 'g', 'g', 'S', 0, 2, 0, 0, 0, 0, 0, 0, 0, 0};
+        byte[] mp3 = {(byte) 0xFF, (byte) 0xFB, (byte) 0x90, 0x64, 0, 0, 0, 0};
+        assertEquals("audio/wav", stagedType(wav, "lecture.wav"));
+        assertEquals("audio/ogg", stagedType(ogg, "lecture.ogg"));
+        assertEquals("audio/mpeg", stagedType(mp3, "lecture.mp3"));
+    }
+
+    @Test
+    void stageRejectsOversizedBodies() throws Exception {
+        AttachmentService small = new AttachmentService(blobStore, renditionService, usageService, DataSize.ofBytes(1024));
+        when(blobStore.stage(any())).thenAnswer(invocation -> stagedBlob(invocation.getArgument(0)));
+        byte[] text = "a".repeat(2048).getBytes(StandardCharsets.UTF_8);
+        AtomicBoolean read = new AtomicBoolean();
+        InputStream unread = new ByteArrayInputStream(text) {
+            @Override
+            public synchronized int read(byte[] buffer, int offset, int length) {
+                read.set(true);
+                return super.read(buffer, offset, length);
+            }
+        };
+
+        UploadRejectedException declared = assertThrows(UploadRejectedException.class,
+                () -> small.stage(unread, "essay.txt", "text/plain", text.length, null));
+        assertEquals(UploadRejectedException.Reason.TOO_LARGE, declared.getReason());
+        assertFalse(read.get());
+
+        UploadRejectedException streamed = assertThrows(UploadRejectedException.class,
+                () -> small.stage(new ByteArrayInputStream(text), "essay.txt", "text/plain", -1, null));
+        assertEquals(UploadRejectedException.Reason.TOO_LARGE, streamed.getReason());
+    }
+
+    @Test
+    void stageDiscardsUploadWithWrongChecksum() throws Exception {
+        byte[] text = "my essay".getBytes(StandardCharsets.UTF_8);
+        when(blobStore.stage(any())).thenAnswer(invocation -> stagedBlob(invocation.getArgument(0)));
+
+        UploadRejectedException ex = assertThrows(UploadRejectedException.class, () -> service.stage(
+                new ByteArrayInputStream(text), "essay.txt", "text/plain", text.length, "00".repeat(32)));
+
+        assertEquals(UploadRejectedException.Reason.CHECKSUM_MISMATCH, ex.getReason());
+        verify(blobStore).discard(any());
+    }
+
+    private String stagedType(byte[] content, String name) throws Exception {
+        return service.stage(new ByteArrayInputStream(content), name, "application/octet-stream", content.length, null)
+                .contentType();
+    }
+
+    /**
+     * Builds the leading ftyp box of an ISO base media file.
+     */
+    private static byte[] ftyp(String majorBrand, String... compatibleBrands) {
+        int size = 16 + 4 * compatibleBrands.length;
+        StringBuilder box = new StringBuilder("ftyp").append(majorBrand).append("\0\0\0\0");
+        for (String brand : compatibleBrands) {
+            box.append(brand);
+        }
+        byte[] brands = box.toString().getBytes(StandardCharsets.US_ASCII);
+        byte[] content = new byte[size];
+        content[3] = (byte) size;
+        System.arraycopy(brands, 0, content, 4, brands.length);
+        return content;
+    }
+
+    /**
+     * Reads a staged stream the way the blob store does and returns a blob for its bytes.
+     */
+    private static BlobStore.StagedBlob stagedBlob(InputStream input) throws Exception {
+        byte[] content = input.readAllBytes();
+        String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        return new BlobStore.StagedBlob(sha256, content.length, Path.of("staged.part"));
+    }
 }
@@ -0,0 +1,95 @@
+package com.binder.demo.services;
+
+import com.binder.demo.attachments.Attachment;
+import com.binder.demo.storage.AttachmentStorage;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest(properties = "attachments.storage-dir=target/test-blob-store")
+class BlobStoreTest {
+
+    private static final Path ROOT = Path.of("target/test-blob-store");
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private AttachmentService attachmentService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockitoSpyBean
+    private AttachmentStorage storage;
+
+    @Test
+    void keepsAFailedWriteAndRetriesItUntilStored() throws Exception {
+        FileSystemUtils.deleteRecursively(ROOT);
+        doThrow(new IOException("backend unavailable")).doCallRealMethod()
+                .when(storage).put(anyString(), any());
+        String content = "lab report " + UUID.randomUUID();
+
+        Attachment attachment = attachmentService.upload(attachmentService.stage(
+                new MockMultipartFile("file", "report.txt", "text/plain", content.getBytes(StandardCharsets.UTF_8))),
+                UUID.randomUUID());
+        String sha256 = attachment.getBlobSha256();
+        verify(storage, timeout(5_000)).put(anyString(), any());
+
+        Map<String, Object> pending = pendingState(sha256);
+        assertNotNull(pending.get("pending_file"));
+        assertNotNull(pending.get("pending_since"));
+        assertFalse(Files.exists(ROOT.resolve(BlobStore.keyFor(sha256))));
+        assertEquals(content, blobStore.resource(sha256).getContentAsString(StandardCharsets.UTF_8));
+
+        // The failed write may still be recording its retry; make it due until the sweep picks it up.
+        int scheduled = 0;
+        for (int i = 0; i < 50 && scheduled == 0; i++) {
+            jdbcTemplate.update("UPDATE attachment_blobs SET next_write_at = ? WHERE sha256 = ?",
+                    Timestamp.from(Instant.now().minusSeconds(1)), sha256);
+            scheduled = blobStore.retryPendingWrites();
+            if (scheduled == 0) Thread.sleep(100);
+        }
+        assertEquals(1, scheduled);
+        for (int i = 0; i < 50 && pendingState(sha256).get("pending_file") != null; i++) {
+            Thread.sleep(100);
+        }
+
+        Map<String, Object> stored = pendingState(sha256);
+        assertNull(stored.get("pending_file"));
+        assertNull(stored.get("pending_since"));
+        assertNull(stored.get("next_write_at"));
+        assertTrue(Files.exists(ROOT.resolve(BlobStore.keyFor(sha256))));
+        assertEquals(content, blobStore.resource(sha256).getContentAsString(StandardCharsets.UTF_8));
+    }
+
+    private Map<String, Object> pendingState(String sha256) {
+        return jdbcTemplate.queryForMap(
+                "SELECT pending_file, pending_since, next_write_at FROM attachment_blobs WHERE sha256 = ?", sha256);
+    }
+}
@@ -0,0 +1,108 @@
+package com.binder.demo.services;
+
+import com.binder.demo.attachments.Attachment;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.Resource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "attachments.storage-dir=target/test-tiering")
+class BlobTieringServiceTest {
+
+    private static final Path ROOT = Path.of("target/test-tiering");
+
+    @Autowired
+    private BlobTieringService tieringService;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private AttachmentService attachmentService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void movesUnreadBlobsToColdTierAndDecompressesOnRead() throws Exception {
+        FileSystemUtils.deleteRecursively(ROOT);
+        UUID ownerId = UUID.randomUUID();
+        String text = "Week 3 reading notes. ".repeat(2_000);
+        String pdf = "%PDF-1.7 " + UUID.randomUUID();
+        Attachment notes = upload("notes.txt", "text/plain", text, ownerId);
+        Attachment paper = upload("paper.pdf", "application/pdf", pdf, ownerId);
+        Attachment recent = upload("recent.txt", "text/plain", "still in use " + UUID.randomUUID(), ownerId);
+        for (Attachment attachment : new Attachment[] {notes, paper, recent}) {
+            Path hot = ROOT.resolve(BlobStore.keyFor(attachment.getBlobSha256()));
+            for (int i = 0; i < 50 && !Files.exists(hot); i++) {
+                Thread.sleep(100);
+            }
+            jdbcTemplate.update("UPDATE attachment_blobs SET ref_count = 1, last_accessed_at = ? WHERE sha256 = ?",
+                    Timestamp.from(Instant.now().minus(200, ChronoUnit.DAYS)), attachment.getBlobSha256());
+        }
+        tieringService.recordAccess(recent.getBlobSha256());
+
+        BlobTieringService.Report report = tieringService.moveColdBlobs();
+
+        assertEquals(2, report.getBlobsMoved());
+        assertEquals("HOT", tier(recent).get("storage_tier"));
+
+        Map<String, Object> notesRow = tier(notes);
+        assertEquals("COLD", notesRow.get("storage_tier"));
+        assertEquals("gzip", notesRow.get("compression"));
+        assertTrue(((Number) notesRow.get("stored_bytes")).longValue() < text.length() / 10);
+        assertFalse(Files.exists(ROOT.resolve(BlobStore.keyFor(notes.getBlobSha256()))));
+        assertTrue(Files.exists(ROOT.resolve(BlobStore.coldKeyFor(notes.getBlobSha256(), true))));
+        Resource cold = blobStore.resource(notes.getBlobSha256());
+        assertEquals(text.length(), cold.contentLength());
+        assertFalse(cold.isFile());
+        try (InputStream input = cold.getInputStream()) {
+            assertEquals(text, new String(input.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        Map<String, Object> paperRow = tier(paper);
+        assertEquals("COLD", paperRow.get("storage_tier"));
+        assertNull(paperRow.get("compression"));
+        Resource storedAsIs = blobStore.resource(paper.getBlobSha256());
+        assertTrue(storedAsIs.isFile());
+        assertEquals(pdf, storedAsIs.getContentAsString(StandardCharsets.UTF_8));
+
+        Attachment again = upload("notes-again.txt", "text/plain", text, ownerId);
+        assertEquals(notes.getBlobSha256(), again.getBlobSha256());
+        for (int i = 0; i < 50 && !"HOT".equals(tier(notes).get("storage_tier")); i++) {
+            Thread.sleep(100);
+        }
+        assertEquals("HOT", tier(notes).get("storage_tier"));
+        assertFalse(Files.exists(ROOT.resolve(BlobStore.coldKeyFor(notes.getBlobSha256(), true))));
+        assertEquals(text, blobStore.resource(notes.getBlobSha256()).getContentAsString(StandardCharsets.UTF_8));
+    }
+
+    private Attachment upload(String name, String type, String content, UUID ownerId) throws Exception {
+        return attachmentService.upload(attachmentService.stage(
+                new MockMultipartFile("file", name, type, content.getBytes(StandardCharsets.UTF_8))), ownerId);
+    }
+
+    private Map<String, Object> tier(Attachment attachment) {
+        return jdbcTemplate.queryForMap(
+                "SELECT storage_tier, compression, stored_bytes FROM attachment_blobs WHERE sha256 = ?",
+                attachment.getBlobSha256());
+    }
+}
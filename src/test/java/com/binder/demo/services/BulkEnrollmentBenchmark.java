@@ -0,0 +1,144 @@
+package com.binder.demo.services;
+
+import com.binder.demo.user.Role;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares per-email enrollment with the set-based {@link UserService#enrollByEmails} path.
+ * Not part of the regular test run; start it with
+ * {@code mvn test -Dtest=BulkEnrollmentBenchmark}.
+ * Statement counts come from H2 query statistics; timings are the median of several runs.
+ * The enrollments table comes from the shared test schema in {@code schema.sql}.
+ */
+@SpringBootTest
+class BulkEnrollmentBenchmark {
+
+    private static final int[] SIZES = {10, 100, 1000};
+    private static final int WARMUP_RUNS = 3;
+    private static final int MEASURED_RUNS = 7;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void compareEnrollmentPaths() {
+        System.out.printf("%n%-8s %-10s %12s %12s%n", "emails", "path", "statements", "median ms");
+        for (int size : SIZES) {
+            List<String> emails = createRoster(size);
+            String roster = String.join(",", emails);
+
+            assertEquals(enrolledCount(run(c -> enrollPerEmail(c, emails))),
+                    enrolledCount(run(c -> userService.enrollByEmails(c, roster, Role.STUDENT))));
+
+            report(size, "per-email", c -> enrollPerEmail(c, emails));
+            report(size, "bulk", c -> userService.enrollByEmails(c, roster, Role.STUDENT));
+        }
+    }
+
+    /**
+     * The enrollment loop as it was before the bulk path: one lookup and one insert per email.
+     */
+    private void enrollPerEmail(UUID classId, List<String> emails) {
+        for (String email : emails) {
+            userService.findByEmail(email).ifPresent(user -> {
+                if (user.getRole() == Role.STUDENT) {
+                    em.createNativeQuery("""
+                        INSERT INTO enrollments (class_id, student_id)
+                        VALUES (:classId, :studentId)
+                        ON CONFLICT DO NOTHING
+                        """)
+                            .setParameter("classId", classId)
+                            .setParameter("studentId", user.getUserId())
+                            .executeUpdate();
+                }
+            });
+        }
+    }
+
+    private void report(int size, String label, Consumer<UUID> enrollment) {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            run(enrollment);
+        }
+
+        // Turning the statistics off and on again clears counters from earlier runs
+        jdbcTemplate.execute("SET QUERY_STATISTICS FALSE");
+        jdbcTemplate.execute("SET QUERY_STATISTICS TRUE");
+        run(enrollment);
+        Long statements = jdbcTemplate.queryForObject("""
+                SELECT COALESCE(SUM(EXECUTION_COUNT), 0)
+                FROM INFORMATION_SCHEMA.QUERY_STATISTICS
+                WHERE SQL_STATEMENT NOT LIKE '%QUERY_STATISTICS%'
+                """, Long.class);
+        jdbcTemplate.execute("SET QUERY_STATISTICS FALSE");
+
+        long[] nanos = new long[MEASURED_RUNS];
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            long start = System.nanoTime();
+            run(enrollment);
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        System.out.printf("%-8d %-10s %12d %12.2f%n", size, label, statements, nanos[MEASURED_RUNS / 2] / 1_000_000.0);
+    }
+
+    /**
+     * Runs one enrollment into a fresh classroom inside its own transaction.
+     */
+    private UUID run(Consumer<UUID> enrollment) {
+        UUID classId = UUID.randomUUID();
+        transactionTemplate.executeWithoutResult(status -> {
+            enrollment.accept(classId);
+            em.clear();
+        });
+        return classId;
+    }
+
+    private int enrolledCount(UUID classId) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM enrollments WHERE class_id = ?", Integer.class, classId);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Creates a roster of the given size: mostly students, with a few teachers and unknown emails mixed in.
+     */
+    private List<String> createRoster(int size) {
+        String prefix = UUID.randomUUID().toString().substring(0, 8);
+        List<String> emails = new ArrayList<>(size);
+        List<Object[]> users = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            String email = prefix + "-" + i + "@bench.test";
+            emails.add(email);
+            if (i % 20 == 19) continue;
+            String role = (i % 20 == 18) ? "TEACHER" : "STUDENT";
+            users.add(new Object[]{UUID.randomUUID(), email, "Bench User " + i, role});
+        }
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO users (user_id, email, full_name, role, created_at)
+                VALUES (?, ?, ?, ?, CURRENT_TIMESTAMP)
+                """, users);
+        return emails;
+    }
+}
@@ -0,0 +1,94 @@
+package com.binder.demo.services;
+
+import com.binder.demo.classroom.Classroom;
+import com.binder.demo.user.Role;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ClassroomPageServiceTest {
+
+    private final UUID classId = UUID.randomUUID();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ClassroomService classroomService = mock(ClassroomService.class);
+    private final ClassroomPostService postService = mock(ClassroomPostService.class);
+    private final ClassroomEnrollmentService enrollmentService = mock(ClassroomEnrollmentService.class);
+    private final AssignmentStatsService statsService = mock(AssignmentStatsService.class);
+    private ClassroomPageService pageService;
+
+    @BeforeEach
+    void setUp() {
+        // The classroom section holds the only thread, so the others queue up behind it
+        when(classroomService.getClassById(classId)).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return Optional.of(new Classroom());
+        });
+        when(postService.getFeedPage(classId, null)).thenReturn(ClassroomPostService.FeedPage.empty());
+        when(postService.getAssignmentOptions(classId)).thenReturn(List.of());
+        when(enrollmentService.getEnrolledStudentEmails(classId)).thenReturn(List.of("ada@binder.test"));
+        when(enrollmentService.getEnrolledTeacherEmails(classId)).thenReturn(List.of("grace@binder.test"));
+        when(statsService.getStatsForClassroom(classId)).thenReturn(Map.of());
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        pageService.shutdown();
+    }
+
+    @Test
+    void failsRatherThanShowARejectedRosterAsEmpty() {
+        // Room for the feed only; the assignment options may be left out, the students may not
+        pageService = pageService(1);
+
+        assertThrows(IllegalStateException.class, () -> pageService.loadPage(classId, UUID.randomUUID(), Role.TEACHER));
+        assertEquals(1, meterRegistry.counter("classroom.page.section.rejected", "section", "students").count());
+    }
+
+    @Test
+    void listsTheOptionalSectionsThatWereNotLoaded() {
+        // Room for every section but the statistics, which the teacher page can do without
+        pageService = pageService(4);
+        Thread releaser = new Thread(() -> {
+            while (meterRegistry.counter("classroom.page.section.rejected", "section", "assignmentStats").count() == 0) {
+                Thread.onSpinWait();
+            }
+            release.countDown();
+        });
+        releaser.setDaemon(true);
+        releaser.start();
+
+        ClassroomPageService.ClassroomPage page = pageService.loadPage(classId, UUID.randomUUID(), Role.TEACHER)
+                .orElseThrow();
+
+        assertEquals(List.of("assignmentStats"), page.degradedSections());
+        assertEquals(Map.of(), page.assignmentStats());
+        assertEquals(List.of("ada@binder.test"), page.enrolledStudents());
+    }
+
+    private ClassroomPageService pageService(int queueCapacity) {
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        return new ClassroomPageService(classroomService, postService, enrollmentService,
+                mock(ClassroomSubmissionService.class), statsService, transactionManager, meterRegistry,
+                1, queueCapacity, Duration.ofSeconds(5), Duration.ofSeconds(5));
+    }
+}
@@ -0,0 +1,138 @@
+package com.binder.demo.services;
+
+import com.binder.demo.attachments.Attachment;
+import com.binder.demo.attachments.AttachmentType;
+import com.binder.demo.classroom.Assignment;
+import com.binder.demo.classroom.Classroom;
+import com.binder.demo.classroom.ClassroomPost;
+import com.binder.demo.classroom.Resource;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@SpringBootTest
+class ClassroomPostServiceTest {
+
+    @Autowired
+    private ClassroomPostService postService;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private EntityManagerFactory emf;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+    }
+
+    @Test
+    void feedPageUsesFixedStatementCountRegardlessOfPostCount() {
+        UUID smallClass = createClassWithPosts(2);
+        UUID largeClass = createClassWithPosts(9);
+
+        assertEquals(3, statementsToRenderFirstPage(smallClass, 4));
+        assertEquals(3, statementsToRenderFirstPage(largeClass, 18));
+    }
+
+    @Test
+    void feedPagesWalkEveryPostOnce() {
+        UUID classId = createClassWithPosts(15);
+
+        Set<UUID> seen = new HashSet<>();
+        ClassroomPostService.FeedPage page = postService.getFeedPage(classId, null);
+        assertNotNull(page.nextCursor());
+        page.posts().forEach(post -> seen.add(post.getPostId()));
+
+        page = postService.getFeedPage(classId, page.nextCursor());
+        page.posts().forEach(post -> seen.add(post.getPostId()));
+
+        assertNull(page.nextCursor());
+        assertEquals(30, seen.size());
+    }
+
+    /**
+     * Loads the first feed page and touches every attachment, as the stream view does.
+     */
+    private long statementsToRenderFirstPage(UUID classId, int expectedPosts) {
+        statistics.clear();
+
+        ClassroomPostService.FeedPage page = postService.getFeedPage(classId, null);
+        int attachmentCount = 0;
+        for (ClassroomPost post : page.posts()) {
+            if (post instanceof Assignment assignment) {
+                attachmentCount += assignment.getAttachments().size();
+            } else if (post instanceof Resource resource) {
+                attachmentCount += resource.getAttachments().size();
+            }
+        }
+
+        assertEquals(expectedPosts, page.posts().size());
+        assertEquals(expectedPosts * 2, attachmentCount);
+        return statistics.getPrepareStatementCount();
+    }
+
+    private UUID createClassWithPosts(int postsPerType) {
+        return transactionTemplate.execute(status -> {
+            Classroom classroom = new Classroom();
+            classroom.setName("Feed test");
+            em.persist(classroom);
+
+            UUID teacherId = UUID.randomUUID();
+            Instant now = Instant.now();
+            for (int i = 0; i < postsPerType; i++) {
+                Assignment assignment = new Assignment();
+                assignment.setClassId(classroom.getClassId());
+                assignment.setTitle("Assignment " + i);
+                assignment.setCreatorTeacherId(teacherId);
+                assignment.setCreatedAt(now.minusSeconds(i * 10L));
+                assignment.setAttachments(attachments(teacherId));
+                em.persist(assignment);
+
+                Resource resource = new Resource();
+                resource.setClassId(classroom.getClassId());
+                resource.setTitle("Resource " + i);
+                resource.setCreatorTeacherId(teacherId);
+                resource.setCreatedAt(now.minusSeconds(i * 10L + 5));
+                resource.setAttachments(attachments(teacherId));
+                em.persist(resource);
+            }
+            return classroom.getClassId();
+        });
+    }
+
+    private Set<Attachment> attachments(UUID ownerId) {
+        Set<Attachment> attachments = new HashSet<>();
+        for (int i = 0; i < 2; i++) {
+            Attachment attachment = new Attachment();
+            attachment.setAttachmentType(AttachmentType.FILE);
+            attachment.setUrl("attachments/" + UUID.randomUUID() + ".pdf");
+            attachment.setUserOwner(ownerId);
+            em.persist(attachment);
+            attachments.add(attachment);
+        }
+        return attachments;
+    }
+}
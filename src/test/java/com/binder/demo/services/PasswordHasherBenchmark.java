@@ -0,0 +1,68 @@
+package com.binder.demo.services;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hash and verify latency of {@link PasswordHasher} at each candidate BCrypt cost.
+ * Sample-time mode reports percentiles, so the p99 of {@code verify} can be compared
+ * directly with the login latency budget when choosing {@code auth.bcrypt.cost}.
+ *
+ * <p>Run with:
+ * {@code mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test}
+ * then {@code java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.binder.demo.services.PasswordHasherBenchmark}.
+ * Standard JMH options such as {@code -p cost=12,14} are accepted.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordHasherBenchmark {
+
+    @Param({"10", "11", "12", "13"})
+    public int cost;
+
+    private PasswordHasher hasher;
+    private String storedHash;
+
+    @Setup
+    public void setUp() {
+        hasher = new PasswordHasher(cost);
+        storedHash = hasher.hash("correct horse 42");
+    }
+
+    @Benchmark
+    public String hash() {
+        return hasher.hash("correct horse 42");
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return hasher.matches("correct horse 42", storedHash);
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(PasswordHasherBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,47 @@
+package com.binder.demo.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PasswordHasherTest {
+
+    private final PasswordHasher hasher = new PasswordHasher(4);
+
+    @Test
+    void treatsMalformedStoredHashesAsFailedMatches() {
+        String hash = hasher.hash("secret123");
+        assertTrue(hasher.matches("secret123", hash));
+        assertFalse(hasher.matches("wrong1234", hash));
+        assertEquals(PasswordHasher.Verification.MISMATCH, hasher.verify("wrong1234", hash));
+
+        assertFalse(hasher.matches("secret123", null));
+        assertFalse(hasher.matches("secret123", "5f4dcc3b5aa765d61d8327deb882cf99"));
+        // Looks like BCrypt but the salt and digest are truncated or not BCrypt's base64
+        assertFalse(hasher.matches("secret123", "$2a$10$short"));
+        assertFalse(hasher.matches("secret123", "$2a$10$" + "!".repeat(53)));
+        assertFalse(hasher.matches("secret123", "$2x$10$" + hash.substring(7)));
+        assertEquals(PasswordHasher.Verification.MALFORMED_HASH,
+                hasher.verify("secret123", "5f4dcc3b5aa765d61d8327deb882cf99"));
+        assertEquals(PasswordHasher.Verification.MALFORMED_HASH, hasher.verify("secret123", "$2a$10$short"));
+    }
+
+    @Test
+    void countsEveryLoginAgainstAMalformedHash() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PasswordHashingService service = new PasswordHashingService(hasher, registry, 1, 4);
+        try {
+            assertFalse(service.verify(UUID.randomUUID(), "secret123", "$2a$10$short").get());
+            assertFalse(service.verify(UUID.randomUUID(), "secret123", "plain").get());
+            assertTrue(service.verify(UUID.randomUUID(), "secret123", hasher.hash("secret123")).get());
+        } finally {
+            service.shutdown();
+        }
+        assertEquals(2, registry.counter("auth.hash.malformed").count());
+    }
+}
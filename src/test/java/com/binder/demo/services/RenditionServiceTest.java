@@ -0,0 +1,124 @@
+package com.binder.demo.services;
+
+import com.binder.demo.attachments.Rendition;
+import com.binder.demo.storage.LocalAttachmentStorage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RenditionServiceTest {
+
+    private static final String SHA = "ab".repeat(32);
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    void concurrentRequestsRenderOnce() throws Exception {
+        BufferedImage image = new BufferedImage(2000, 1000, BufferedImage.TYPE_INT_RGB);
+        Path original = tempDir.resolve("original.png");
+        ImageIO.write(image, "png", original.toFile());
+
+        AtomicInteger reads = new AtomicInteger();
+        BlobStore blobStore = mock(BlobStore.class);
+        when(blobStore.resource(SHA)).thenAnswer(invocation -> new FileSystemResource(original) {
+            @Override
+            public boolean isFile() {
+                return false;
+            }
+
+            @Override
+            public InputStream getInputStream() throws IOException {
+                reads.incrementAndGet();
+                return super.getInputStream();
+            }
+        });
+        LocalAttachmentStorage storage = new LocalAttachmentStorage(tempDir.resolve("store").toString());
+        RenditionService service = new RenditionService(blobStore, storage, new SimpleMeterRegistry(),
+                tempDir.resolve("staging").toString(), 2, 16, Duration.ofSeconds(30), 40_000_000, Duration.ofHours(1));
+
+        int viewers = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(viewers);
+        try {
+            List<Future<Optional<Resource>>> results = new ArrayList<>();
+            for (int i = 0; i < viewers; i++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return service.rendition(SHA, Rendition.PREVIEW);
+                }));
+            }
+            start.countDown();
+            for (Future<Optional<Resource>> result : results) {
+                assertTrue(result.get().isPresent());
+            }
+        } finally {
+            pool.shutdownNow();
+            service.shutdown();
+        }
+
+        assertEquals(1, reads.get());
+        Path stored = tempDir.resolve("store").resolve(BlobStore.renditionKeyFor(SHA, Rendition.PREVIEW));
+        BufferedImage preview = ImageIO.read(stored.toFile());
+        assertEquals(1280, preview.getWidth());
+        assertEquals(640, preview.getHeight());
+        try (var staged = Files.list(tempDir.resolve("staging"))) {
+            assertEquals(0, staged.count());
+        }
+    }
+
+    @Test
+    void retriesAfterAReadFailureButRemembersImagesThatDoNotDecode() throws Exception {
+        Path original = tempDir.resolve("original.png");
+        ImageIO.write(new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB), "png", original.toFile());
+        Path corrupt = tempDir.resolve("corrupt.png");
+        Files.write(corrupt, new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 1, 2, 3, 4, 5});
+        String corruptSha = "cd".repeat(32);
+
+        AtomicInteger corruptReads = new AtomicInteger();
+        BlobStore blobStore = mock(BlobStore.class);
+        when(blobStore.resource(SHA))
+                .thenThrow(new IOException("storage unavailable"))
+                .thenReturn(new FileSystemResource(original));
+        when(blobStore.resource(corruptSha)).thenAnswer(invocation -> {
+            corruptReads.incrementAndGet();
+            return new FileSystemResource(corrupt);
+        });
+        LocalAttachmentStorage storage = new LocalAttachmentStorage(tempDir.resolve("store").toString());
+        RenditionService service = new RenditionService(blobStore, storage, new SimpleMeterRegistry(),
+                tempDir.resolve("staging").toString(), 1, 16, Duration.ofSeconds(30), 40_000_000, Duration.ofHours(1));
+        try {
+            assertTrue(service.rendition(SHA, Rendition.THUMB).isEmpty());
+            assertTrue(service.rendition(SHA, Rendition.THUMB).isPresent());
+
+            assertTrue(service.rendition(corruptSha, Rendition.THUMB).isEmpty());
+            assertTrue(service.rendition(corruptSha, Rendition.THUMB).isEmpty());
+            assertEquals(1, corruptReads.get());
+        } finally {
+            service.shutdown();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.binder.demo.services;
+
+import com.binder.demo.attachments.Attachment;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = "attachments.storage-dir=target/test-uploads")
+class ResumableUploadServiceTest {
+
+    private static final Path UPLOAD_DIR = Path.of("target/test-uploads/.staging/resumable");
+
+    @Autowired
+    private ResumableUploadService uploadService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockitoBean
+    private ClassroomSubmissionService submissionService;
+
+    @Test
+    void chunksResumeAfterRejectedChunkAndSubmitOnLastByte() throws Exception {
+        byte[] content = ("%PDF-1.7\n" + "x".repeat(10_000)).getBytes(StandardCharsets.US_ASCII);
+        UUID studentId = UUID.randomUUID();
+        UUID classId = UUID.randomUUID();
+        UUID assignmentId = assignment(classId);
+        Attachment attachment = new Attachment();
+        when(submissionService.submitAssignment(eq(classId), eq(assignmentId), eq(studentId), any(), any()))
+                .thenAnswer(invocation -> {
+                    invocation.<Runnable>getArgument(4).run();
+                    return Optional.of(attachment);
+                });
+
+        ResumableUploadService.ResumableUpload upload = uploadService.create(studentId, classId, assignmentId,
+                content.length, "essay.pdf", "application/pdf").orElseThrow();
+        UUID uploadId = upload.uploadId();
+
+        assertEquals(6000, append(uploadId, studentId, 0, Arrays.copyOfRange(content, 0, 6000), true).offsetBytes());
+
+        byte[] rest = Arrays.copyOfRange(content, 6000, content.length);
+        byte[] corrupted = rest.clone();
+        corrupted[0] ^= 1;
+        UploadRejectedException mismatch = assertThrows(UploadRejectedException.class, () ->
+                uploadService.append(uploadId, studentId, 6000, new ByteArrayInputStream(corrupted), sha256(rest)));
+        assertEquals(UploadRejectedException.Reason.CHECKSUM_MISMATCH, mismatch.getReason());
+        assertEquals(6000, uploadService.find(uploadId, studentId).orElseThrow().offsetBytes());
+
+        UploadRejectedException stale = assertThrows(UploadRejectedException.class, () ->
+                append(uploadId, studentId, 0, rest, false));
+        assertEquals(UploadRejectedException.Reason.OFFSET_MISMATCH, stale.getReason());
+        assertTrue(uploadService.find(uploadId, UUID.randomUUID()).isEmpty());
+
+        ResumableUploadService.AppendResult last = append(uploadId, studentId, 6000, rest, true);
+        assertTrue(last.complete());
+        assertEquals(attachment, last.attachment());
+
+        ArgumentCaptor<AttachmentService.StagedUpload> staged = ArgumentCaptor.forClass(AttachmentService.StagedUpload.class);
+        verify(submissionService).submitAssignment(eq(classId), eq(assignmentId), eq(studentId), staged.capture(), any());
+        assertEquals(sha256(content), staged.getValue().blob().sha256());
+        assertEquals("application/pdf", staged.getValue().contentType());
+        assertEquals("essay.pdf", staged.getValue().displayName());
+        assertTrue(uploadService.find(uploadId, studentId).isEmpty());
+        assertFalse(Files.exists(UPLOAD_DIR.resolve(uploadId + ".part")));
+        Files.deleteIfExists(staged.getValue().blob().file());
+    }
+
+    @Test
+    void failedSubmissionKeepsTheUploadSoTheLastChunkCanBeRepeated() throws Exception {
+        byte[] content = "lab notes".getBytes(StandardCharsets.US_ASCII);
+        UUID studentId = UUID.randomUUID();
+        UUID classId = UUID.randomUUID();
+        UUID assignmentId = assignment(classId);
+        Attachment attachment = new Attachment();
+        when(submissionService.submitAssignment(eq(classId), eq(assignmentId), eq(studentId), any(), any()))
+                .thenThrow(new IllegalStateException("database unavailable"))
+                .thenAnswer(invocation -> {
+                    invocation.<Runnable>getArgument(4).run();
+                    return Optional.of(attachment);
+                });
+        UUID uploadId = uploadService.create(studentId, classId, assignmentId, content.length, "notes.txt",
+                "text/plain").orElseThrow().uploadId();
+
+        assertThrows(IllegalStateException.class, () -> append(uploadId, studentId, 0, content, true));
+        assertEquals(content.length, uploadService.find(uploadId, studentId).orElseThrow().offsetBytes());
+        assertTrue(Files.exists(UPLOAD_DIR.resolve(uploadId + ".part")));
+
+        ResumableUploadService.AppendResult retried = append(uploadId, studentId, content.length, new byte[0], false);
+        assertTrue(retried.complete());
+        assertEquals(attachment, retried.attachment());
+        assertTrue(uploadService.find(uploadId, studentId).isEmpty());
+        assertFalse(Files.exists(UPLOAD_DIR.resolve(uploadId + ".part")));
+    }
+
+    @Test
+    void refusesAnAssignmentFromAnotherClassroomBeforeTheUpload() throws Exception {
+        UUID assignmentId = assignment(UUID.randomUUID());
+
+        assertTrue(uploadService.create(UUID.randomUUID(), UUID.randomUUID(), assignmentId, 1_000,
+                "notes.txt", "text/plain").isEmpty());
+        assertTrue(uploadService.create(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), 1_000,
+                "notes.txt", "text/plain").isEmpty());
+    }
+
+    @Test
+    void expiredUploadsAreRemoved() throws Exception {
+        UUID studentId = UUID.randomUUID();
+        UUID classId = UUID.randomUUID();
+        ResumableUploadService.ResumableUpload upload = uploadService.create(studentId, classId,
+                assignment(classId), 1_000, "notes.txt", "text/plain").orElseThrow();
+        append(upload.uploadId(), studentId, 0, "first part".getBytes(StandardCharsets.US_ASCII), false);
+        jdbcTemplate.update("UPDATE upload_sessions SET expires_at = ? WHERE upload_id = ?",
+                Timestamp.from(Instant.now().minusSeconds(60)), upload.uploadId());
+
+        uploadService.expireUploads();
+
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM upload_sessions WHERE upload_id = ?", Integer.class, upload.uploadId()));
+        assertFalse(Files.exists(UPLOAD_DIR.resolve(upload.uploadId() + ".part")));
+    }
+
+    private ResumableUploadService.AppendResult append(UUID uploadId, UUID ownerId, long offset, byte[] chunk,
+                                                       boolean withChecksum) throws Exception {
+        return uploadService.append(uploadId, ownerId, offset, new ByteArrayInputStream(chunk),
+                withChecksum ? sha256(chunk) : null).orElseThrow();
+    }
+
+    private UUID assignment(UUID classId) {
+        UUID assignmentId = UUID.randomUUID();
+        jdbcTemplate.update("""
+                INSERT INTO assignments (assignment_id, class_id, title, creator_teacher_id, created_at)
+                VALUES (?, ?, 'Essay', ?, ?)
+                """, assignmentId, classId, UUID.randomUUID(), Timestamp.from(Instant.now()));
+        return assignmentId;
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+}
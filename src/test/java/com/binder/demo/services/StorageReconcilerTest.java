@@ -0,0 +1,99 @@
+package com.binder.demo.services;
+
+import com.binder.demo.attachments.Attachment;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.FileSystemUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "attachments.storage-dir=target/test-reconcile")
+class StorageReconcilerTest {
+
+    private static final Path ROOT = Path.of("target/test-reconcile");
+
+    @Autowired
+    private StorageReconciler reconciler;
+
+    @Autowired
+    private AttachmentService attachmentService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void removesUnlinkedAttachmentsAndQuarantinesThenDeletesOrphanedFiles() throws Exception {
+        FileSystemUtils.deleteRecursively(ROOT);
+        Instant old = Instant.now().minus(3, ChronoUnit.DAYS);
+        UUID ownerId = UUID.randomUUID();
+
+        Attachment replaced = attachmentService.upload(attachmentService.stage(
+                new MockMultipartFile("file", "draft.txt", "text/plain", "first draft".getBytes(StandardCharsets.UTF_8))), ownerId);
+        jdbcTemplate.update("UPDATE attachments SET uploaded_at = ? WHERE attachment_id = ?",
+                Timestamp.from(old), replaced.getAttachmentId());
+        Attachment recent = attachmentService.upload(attachmentService.stage(
+                new MockMultipartFile("file", "final.txt", "text/plain", "final version".getBytes(StandardCharsets.UTF_8))), ownerId);
+        jdbcTemplate.update("""
+                INSERT INTO attachments (attachment_id, attachment_type, url, uploaded_at, user_owner)
+                VALUES (?, 'FILE', 'attachments/kept.pdf?name=kept.pdf', ?, ?)
+                """, UUID.randomUUID(), Timestamp.from(Instant.now()), ownerId);
+
+        Path referencedBlob = ROOT.resolve(BlobStore.keyFor(recent.getBlobSha256()));
+        for (int i = 0; i < 50 && !Files.exists(referencedBlob); i++) {
+            Thread.sleep(100);
+        }
+        String orphanSha = "cd".repeat(32);
+        Path orphanBlob = writeOld(BlobStore.keyFor(orphanSha), "orphan", old);
+        Path orphanRendition = writeOld(BlobStore.keyFor(orphanSha) + ".thumb.jpg", "thumb", old);
+        Path orphanLegacy = writeOld("attachments/old-notes.pdf", "old notes", old);
+        Path keptLegacy = writeOld("attachments/kept.pdf", "kept", old);
+        Files.setLastModifiedTime(referencedBlob, FileTime.from(old));
+        Path expired = writeOld("quarantine/2000-01-01/blobs/ef/" + "ef".repeat(32), "12345", old);
+
+        StorageReconciler.Report report = reconciler.reconcile();
+
+        assertEquals(1, report.getAttachmentsRemoved());
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM attachments WHERE attachment_id = ?",
+                Integer.class, replaced.getAttachmentId()));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT ref_count FROM attachment_blobs WHERE sha256 = ?",
+                Integer.class, replaced.getBlobSha256()));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM attachments WHERE attachment_id = ?",
+                Integer.class, recent.getAttachmentId()));
+
+        assertEquals(3, report.getObjectsQuarantined());
+        assertEquals(1, report.getObjectsDeleted());
+        assertEquals(5, report.getBytesReclaimed());
+        assertTrue(Files.exists(referencedBlob));
+        assertTrue(Files.exists(keptLegacy));
+        assertFalse(Files.exists(expired));
+        Path quarantine = ROOT.resolve("quarantine").resolve(LocalDate.now(ZoneOffset.UTC).toString());
+        for (Path orphan : new Path[] {orphanBlob, orphanRendition, orphanLegacy}) {
+            assertFalse(Files.exists(orphan));
+            assertTrue(Files.exists(quarantine.resolve(ROOT.relativize(orphan))));
+        }
+    }
+
+    private static Path writeOld(String key, String content, Instant modified) throws Exception {
+        Path file = ROOT.resolve(key);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+        Files.setLastModifiedTime(file, FileTime.from(modified));
+        return file;
+    }
+}
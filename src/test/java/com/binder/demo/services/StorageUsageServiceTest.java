@@ -0,0 +1,66 @@
+package com.binder.demo.services;
+
+import com.binder.demo.attachments.Attachment;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest(properties = {
+        "attachments.storage-dir=target/test-usage",
+        "attachments.quota.user=100B",
+        "attachments.quota.classroom=150B"
+})
+class StorageUsageServiceTest {
+
+    @Autowired
+    private StorageUsageService usageService;
+
+    @Autowired
+    private AttachmentService attachmentService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void tracksUploadsAndDeletesAndRefusesUploadsOverQuota() throws Exception {
+        UUID classId = UUID.randomUUID();
+        UUID ada = UUID.randomUUID();
+        UUID grace = UUID.randomUUID();
+
+        Attachment first = upload(ada, classId, 60);
+        upload(grace, classId, 70);
+        assertEquals(new StorageUsageService.Usage(60, 1, 100), usageService.getUserUsage(ada));
+        assertEquals(new StorageUsageService.Usage(130, 2, 150), usageService.getClassroomUsage(classId));
+
+        UploadRejectedException userQuota = assertThrows(UploadRejectedException.class, () -> upload(ada, null, 50));
+        assertEquals(UploadRejectedException.Reason.QUOTA_EXCEEDED, userQuota.getReason());
+        UploadRejectedException classQuota = assertThrows(UploadRejectedException.class, () -> upload(grace, classId, 30));
+        assertEquals(UploadRejectedException.Reason.QUOTA_EXCEEDED, classQuota.getReason());
+        assertThrows(UploadRejectedException.class, () -> usageService.checkQuota(grace, classId, 30));
+        assertEquals(2, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM attachments WHERE user_owner IN (?, ?)", Integer.class, ada, grace));
+        assertEquals(new StorageUsageService.Usage(70, 1, 100), usageService.getUserUsage(grace));
+        assertEquals(new StorageUsageService.Usage(130, 2, 150), usageService.getClassroomUsage(classId));
+
+        attachmentService.delete(first.getAttachmentId());
+        assertEquals(new StorageUsageService.Usage(0, 0, 100), usageService.getUserUsage(ada));
+        assertEquals(new StorageUsageService.Usage(70, 1, 150), usageService.getClassroomUsage(classId));
+        upload(grace, classId, 20);
+        assertEquals(new StorageUsageService.Usage(90, 2, 150), usageService.getClassroomUsage(classId));
+    }
+
+    private Attachment upload(UUID ownerId, UUID classId, int size) throws Exception {
+        byte[] content = ("x".repeat(size - 8) + UUID.randomUUID().toString().substring(0, 8))
+                .getBytes(StandardCharsets.UTF_8);
+        return attachmentService.upload(attachmentService.stage(
+                new MockMultipartFile("file", "notes.txt", "text/plain", content)), ownerId, classId);
+    }
+}
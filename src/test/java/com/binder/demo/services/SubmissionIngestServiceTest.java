@@ -0,0 +1,221 @@
+package com.binder.demo.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = {
+        "classroom.submissions.ingest.enabled=true",
+        "attachments.storage-dir=target/test-ingest"
+})
+class SubmissionIngestServiceTest {
+
+    @Autowired
+    private ClassroomSubmissionService submissionService;
+
+    @MockitoSpyBean
+    private AssignmentStatsService statsService;
+
+    @MockitoSpyBean
+    private AttachmentService attachmentService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void writesConcurrentSubmissionsInBatchesWithTheirAcceptedTimes() throws Exception {
+        UUID classId = UUID.randomUUID();
+        UUID otherClassId = UUID.randomUUID();
+        UUID assignmentId = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO classrooms (class_id, name, created_at) VALUES (?, 'Rush', ?)",
+                classId, Timestamp.from(Instant.now()));
+        jdbcTemplate.update("""
+                INSERT INTO assignments (assignment_id, class_id, title, creator_teacher_id, created_at)
+                VALUES (?, ?, 'Essay', ?, ?)
+                """, assignmentId, classId, UUID.randomUUID(), Timestamp.from(Instant.now()));
+        double flushedBefore = meterRegistry.summary("submissions.ingest.batch.size").totalAmount();
+
+        List<UUID> students = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            students.add(UUID.randomUUID());
+        }
+        Instant start = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        ExecutorService requests = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<?>> submitted = new ArrayList<>();
+            for (UUID studentId : students) {
+                submitted.add(requests.submit(() ->
+                        submissionService.submitAssignment(classId, assignmentId, studentId, null, true, false)));
+            }
+            submitted.add(requests.submit(() ->
+                    submissionService.submitAssignment(otherClassId, assignmentId, UUID.randomUUID(), null, true, false)));
+            for (Future<?> future : submitted) {
+                future.get();
+            }
+        } finally {
+            requests.shutdown();
+        }
+        Instant end = Instant.now();
+
+        assertEquals(40, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM assignment_submissions WHERE assignment_id = ?", Integer.class, assignmentId));
+        for (Timestamp time : jdbcTemplate.queryForList(
+                "SELECT submission_time FROM assignment_submissions WHERE assignment_id = ?", Timestamp.class, assignmentId)) {
+            assertTrue(!time.toInstant().isBefore(start) && !time.toInstant().isAfter(end));
+        }
+        // The submission for another classroom is refused before it reaches the queue
+        assertEquals(40, meterRegistry.summary("submissions.ingest.batch.size").totalAmount() - flushedBefore);
+
+        UUID student = students.get(0);
+        Timestamp firstTime = jdbcTemplate.queryForObject("""
+                SELECT submission_time FROM assignment_submissions WHERE assignment_id = ? AND student_id = ?
+                """, Timestamp.class, assignmentId, student);
+        submissionService.submitAssignment(classId, assignmentId, student,
+                new MockMultipartFile("file", "essay.txt", "text/plain", "final draft".getBytes(StandardCharsets.UTF_8)),
+                false, false);
+        assertNotNull(jdbcTemplate.queryForObject("""
+                SELECT attachment_id FROM assignment_submissions
+                WHERE assignment_id = ? AND student_id = ? AND submission_time > ?
+                """, Object.class, assignmentId, student, firstTime));
+        submissionService.submitAssignment(classId, assignmentId, student, null, false, true);
+        assertEquals(0, jdbcTemplate.queryForObject("""
+                SELECT COUNT(attachment_id) FROM assignment_submissions WHERE assignment_id = ? AND student_id = ?
+                """, Integer.class, assignmentId, student));
+
+        assertEquals(40, statsService.getStatsForClassroom(classId).get(assignmentId).submittedCount());
+        assertEquals(40, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM assignment_submissions WHERE assignment_id = ?", Integer.class, assignmentId));
+    }
+
+    @Test
+    void savesDirectlyWhenAFlushFailsAndReportsWhenThatFailsToo() {
+        UUID classId = UUID.randomUUID();
+        UUID assignmentId = assignment(classId);
+        doThrow(new DataAccessResourceFailureException("connection lost")).doCallRealMethod()
+                .when(statsTarget()).recordSubmissions(any());
+
+        UUID student = UUID.randomUUID();
+        submissionService.submitAssignment(classId, assignmentId, student, null, true, false);
+        assertEquals(1, submissionCount(assignmentId, student));
+        assertEquals(1, statsService.getStatsForClassroom(classId).get(assignmentId).submittedCount());
+
+        doThrow(new DataAccessResourceFailureException("connection lost"))
+                .when(statsTarget()).recordSubmissions(any());
+        UUID unlucky = UUID.randomUUID();
+        assertThrows(DataAccessResourceFailureException.class, () -> submissionService.submitAssignment(
+                classId, assignmentId, unlucky, essay(), false, false));
+        assertEquals(0, submissionCount(assignmentId, unlucky));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM attachments WHERE user_owner = ?", Integer.class, unlucky));
+    }
+
+    @Test
+    void storesNoFileForAnAssignmentFromAnotherClassroom() {
+        UUID assignmentId = assignment(UUID.randomUUID());
+        UUID student = UUID.randomUUID();
+
+        submissionService.submitAssignment(UUID.randomUUID(), assignmentId, student, essay(), false, false);
+
+        assertEquals(0, submissionCount(assignmentId, student));
+        verify(attachmentService, never()).upload(any(), any(), any());
+    }
+
+    @Test
+    void handsASubmissionBackWhenTheWriterDoesNotGetToItInTime() throws Exception {
+        CountDownLatch flushStarted = new CountDownLatch(1);
+        CountDownLatch releaseFlush = new CountDownLatch(1);
+        PlatformTransactionManager stalled = mock(PlatformTransactionManager.class);
+        when(stalled.getTransaction(any())).thenAnswer(invocation -> {
+            flushStarted.countDown();
+            releaseFlush.await();
+            return new SimpleTransactionStatus();
+        });
+        SubmissionIngestService ingest = new SubmissionIngestService(mock(JdbcTemplate.class), stalled,
+                mock(AssignmentStatsService.class), new SimpleMeterRegistry(), true, 10, 10,
+                Duration.ofSeconds(1), Duration.ofMillis(200));
+        ExecutorService requests = Executors.newSingleThreadExecutor();
+        try {
+            requests.submit(() -> ingest.submit(pending()));
+            assertTrue(flushStarted.await(5, TimeUnit.SECONDS));
+
+            SubmissionIngestService.PendingSubmission late = pending();
+            assertEquals(Optional.empty(), ingest.submit(late));
+            assertTrue(late.claimed().get());
+        } finally {
+            releaseFlush.countDown();
+            requests.shutdown();
+            ingest.shutdown();
+        }
+    }
+
+    private UUID assignment(UUID classId) {
+        UUID assignmentId = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO classrooms (class_id, name, created_at) VALUES (?, 'Rush', ?)",
+                classId, Timestamp.from(Instant.now()));
+        jdbcTemplate.update("""
+                INSERT INTO assignments (assignment_id, class_id, title, creator_teacher_id, created_at)
+                VALUES (?, ?, 'Essay', ?, ?)
+                """, assignmentId, classId, UUID.randomUUID(), Timestamp.from(Instant.now()));
+        return assignmentId;
+    }
+
+    /**
+     * The spied service itself, so stubbing its calls skips the transaction it requires.
+     */
+    private AssignmentStatsService statsTarget() {
+        return AopTestUtils.getUltimateTargetObject(statsService);
+    }
+
+    private int submissionCount(UUID assignmentId, UUID studentId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM assignment_submissions WHERE assignment_id = ? AND student_id = ?",
+                Integer.class, assignmentId, studentId);
+    }
+
+    private static MockMultipartFile essay() {
+        return new MockMultipartFile("file", "essay.txt", "text/plain", "final draft".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static SubmissionIngestService.PendingSubmission pending() {
+        return new SubmissionIngestService.PendingSubmission(UUID.randomUUID(), UUID.randomUUID(),
+                UUID.randomUUID(), Instant.now(), null, false);
+    }
+}
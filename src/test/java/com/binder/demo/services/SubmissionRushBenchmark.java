@@ -0,0 +1,160 @@
+package com.binder.demo.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.TestPropertySource;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Simulates the last seconds before a due date: every student of a large class submits at once,
+ * from more request threads than the connection pool has connections. Compares saving each
+ * submission in its own request with the batched ingest path of {@link SubmissionIngestService}.
+ * Not part of the regular test run; start it with
+ * {@code mvn test -Dtest=SubmissionRushBenchmark}.
+ * Pool wait is the time requests and the ingest writer spent waiting for a connection, from
+ * the {@code hikaricp.connections.acquire} timer.
+ */
+@SpringBootTest(properties = {
+        // Waits for row locks as Postgres would, rather than failing after H2's default second
+        "spring.datasource.url=jdbc:h2:mem:testdb;DB_CLOSE_DELAY=-1;MODE=PostgreSQL;LOCK_TIMEOUT=30000",
+        "spring.datasource.hikari.maximum-pool-size=10",
+        "attachments.storage-dir=target/bench-rush"
+})
+class SubmissionRushBenchmark {
+
+    private static final int STUDENTS = 600;
+    private static final int REQUEST_THREADS = 100;
+
+    /**
+     * One student in this many uploads a file; the others mark the assignment complete.
+     */
+    private static final int FILE_EVERY = 3;
+
+    @Nested
+    @TestPropertySource(properties = "classroom.submissions.ingest.enabled=false")
+    class PerRequest {
+
+        @Test
+        void rush(@Autowired ClassroomSubmissionService submissionService,
+                  @Autowired MeterRegistry meterRegistry,
+                  @Autowired JdbcTemplate jdbcTemplate) throws Exception {
+            report("per-request", submissionService, meterRegistry, jdbcTemplate);
+        }
+    }
+
+    @Nested
+    @TestPropertySource(properties = "classroom.submissions.ingest.enabled=true")
+    class Batched {
+
+        @Test
+        void rush(@Autowired ClassroomSubmissionService submissionService,
+                  @Autowired MeterRegistry meterRegistry,
+                  @Autowired JdbcTemplate jdbcTemplate) throws Exception {
+            report("batched", submissionService, meterRegistry, jdbcTemplate);
+        }
+    }
+
+    private static void report(String label,
+                               ClassroomSubmissionService submissionService,
+                               MeterRegistry meterRegistry,
+                               JdbcTemplate jdbcTemplate) throws Exception {
+        // A smaller rush first, so class loading and JIT do not count against either path
+        rush(submissionService, jdbcTemplate, STUDENTS / 10);
+
+        Timer acquire = meterRegistry.find("hikaricp.connections.acquire").timer();
+        long acquiresBefore = acquire == null ? 0 : acquire.count();
+        double waitBefore = acquire == null ? 0 : acquire.totalTime(TimeUnit.MILLISECONDS);
+
+        long start = System.nanoTime();
+        long[] nanos = rush(submissionService, jdbcTemplate, STUDENTS);
+        double elapsedMs = (System.nanoTime() - start) / 1_000_000.0;
+
+        long acquires = acquire == null ? 0 : acquire.count() - acquiresBefore;
+        double waitMs = acquire == null ? 0 : acquire.totalTime(TimeUnit.MILLISECONDS) - waitBefore;
+        Arrays.sort(nanos);
+        System.out.printf("%n%-12s %9s %9s %9s %9s %10s %12s %12s%n", "path", "students", "p50 ms", "p99 ms",
+                "max ms", "total ms", "pool gets", "pool wait ms");
+        System.out.printf("%-12s %9d %9.2f %9.2f %9.2f %10.0f %12d %12.1f%n", label, STUDENTS,
+                percentile(nanos, 0.50), percentile(nanos, 0.99), nanos[nanos.length - 1] / 1_000_000.0,
+                elapsedMs, acquires, waitMs);
+        if (acquire != null) {
+            System.out.printf("%-12s mean pool wait %.3f ms, longest %.1f ms%n", label,
+                    acquires == 0 ? 0 : waitMs / acquires, acquire.max(TimeUnit.MILLISECONDS));
+        }
+    }
+
+    /**
+     * Releases every student's submission at the same moment and times each call.
+     *
+     * @return latency of each submission in nanoseconds
+     */
+    private static long[] rush(ClassroomSubmissionService submissionService, JdbcTemplate jdbcTemplate, int students)
+            throws Exception {
+        UUID classId = UUID.randomUUID();
+        UUID assignmentId = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO classrooms (class_id, name, created_at) VALUES (?, 'Rush', ?)",
+                classId, Timestamp.from(Instant.now()));
+        jdbcTemplate.update("""
+                INSERT INTO assignments (assignment_id, class_id, title, creator_teacher_id, created_at, due_date)
+                VALUES (?, ?, 'Final essay', ?, ?, ?)
+                """, assignmentId, classId, UUID.randomUUID(), Timestamp.from(Instant.now()),
+                Timestamp.from(Instant.now().plusSeconds(60)));
+
+        long[] nanos = new long[students];
+        CountDownLatch go = new CountDownLatch(1);
+        ExecutorService requests = Executors.newFixedThreadPool(REQUEST_THREADS);
+        try {
+            List<Future<?>> calls = new ArrayList<>(students);
+            for (int i = 0; i < students; i++) {
+                int index = i;
+                UUID studentId = UUID.randomUUID();
+                MockMultipartFile file = index % FILE_EVERY == 0
+                        ? new MockMultipartFile("file", "essay.txt", "text/plain",
+                                ("Essay by " + studentId).getBytes(StandardCharsets.UTF_8))
+                        : null;
+                calls.add(requests.submit(() -> {
+                    go.await();
+                    long start = System.nanoTime();
+                    submissionService.submitAssignment(classId, assignmentId, studentId, file, file == null, false);
+                    nanos[index] = System.nanoTime() - start;
+                    return null;
+                }));
+            }
+            go.countDown();
+            for (Future<?> call : calls) {
+                call.get();
+            }
+        } finally {
+            requests.shutdown();
+        }
+
+        assertEquals(students, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM assignment_submissions WHERE assignment_id = ?", Integer.class, assignmentId));
+        return nanos;
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,118 @@
+package com.binder.demo.storage;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.Resource;
+import org.testcontainers.containers.MinIOContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.checksums.RequestChecksumCalculation;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs {@link S3AttachmentStorage} against a MinIO container standing in for S3.
+ * Skipped when Docker is not available.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class S3AttachmentStorageTest {
+
+    private static final String BUCKET = "binder-attachments";
+
+    @Container
+    private static final MinIOContainer MINIO = new MinIOContainer("minio/minio:RELEASE.2024-10-13T13-34-11Z");
+
+    private static S3AttachmentStorage storage;
+
+    @TempDir
+    private Path tempDir;
+
+    @BeforeAll
+    static void createBucket() {
+        S3Client client = S3Client.builder()
+                .endpointOverride(URI.create(MINIO.getS3URL()))
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create(MINIO.getUserName(), MINIO.getPassword())))
+                .forcePathStyle(true)
+                .requestChecksumCalculation(RequestChecksumCalculation.WHEN_REQUIRED)
+                .build();
+        client.createBucket(request -> request.bucket(BUCKET));
+        storage = new S3AttachmentStorage(client, BUCKET);
+    }
+
+    @AfterAll
+    static void closeClient() {
+        storage.close();
+    }
+
+    @Test
+    void putMakesObjectReadableAndConsumesStagedFile() throws IOException {
+        byte[] content = "quarterly report".getBytes(StandardCharsets.UTF_8);
+        Path staged = Files.write(tempDir.resolve("staged.part"), content);
+
+        storage.put("blobs/ab/put-test", staged);
+
+        assertFalse(Files.exists(staged));
+        assertTrue(storage.exists("blobs/ab/put-test"));
+        Resource resource = storage.resource("blobs/ab/put-test");
+        assertTrue(resource.exists());
+        assertEquals(content.length, resource.contentLength());
+        try (InputStream input = resource.getInputStream()) {
+            assertArrayEquals(content, input.readAllBytes());
+        }
+    }
+
+    @Test
+    void deleteRemovesObject() throws IOException {
+        storage.put("blobs/cd/delete-test", Files.writeString(tempDir.resolve("staged.part"), "x"));
+
+        storage.delete("blobs/cd/delete-test");
+
+        assertFalse(storage.exists("blobs/cd/delete-test"));
+        assertFalse(storage.resource("blobs/cd/delete-test").exists());
+        storage.delete("blobs/cd/delete-test");
+    }
+
+    @Test
+    void listFindsObjectsUnderPrefixAndMoveRenamesThem() throws IOException {
+        storage.put("blobs/ef/list-a", Files.writeString(tempDir.resolve("a.part"), "a"));
+        storage.put("blobs/ef/list-b", Files.writeString(tempDir.resolve("b.part"), "bb"));
+
+        try (Stream<StoredObject> objects = storage.list("blobs/ef/")) {
+            assertEquals(Set.of("blobs/ef/list-a", "blobs/ef/list-b"),
+                    objects.map(StoredObject::key).collect(Collectors.toSet()));
+        }
+
+        storage.move("blobs/ef/list-b", "quarantine/2024-01-01/blobs/ef/list-b");
+
+        assertFalse(storage.exists("blobs/ef/list-b"));
+        assertEquals(2, storage.resource("quarantine/2024-01-01/blobs/ef/list-b").contentLength());
+    }
+
+    @Test
+    void rejectsKeysThatLookLikePaths() {
+        assertThrows(IOException.class, () -> storage.exists("../outside"));
+        assertThrows(IOException.class, () -> storage.exists("/absolute"));
+    }
+}